@@ -148,6 +148,12 @@ public interface ClientLibrary extends Comparable<ClientLibrary> {
      */
     public Boolean isIncludedForRunModes(Set<String> runModes);
 
+    /**
+     *
+     * @return The set of Brand Identifiers this library belongs to.  An empty set indicates an Unbranded Library.
+     */
+    public Set<String> getBrands();
+
     /**
      * Determines whether the library should be included based on the provided brand identifier.  A library
      * is included if it either does not belong to any particular brand or if it belongs to the brand requested.
@@ -17,6 +17,9 @@ package com.citytechinc.cq.clientlibs.api.jmx;
 
 
 import com.adobe.granite.jmx.annotation.Description;
+import com.adobe.granite.jmx.annotation.Name;
+
+import javax.management.openmbean.TabularData;
 
 public interface ClientLibraryRepositoryReportingAndMaintenanceMBean {
 
@@ -29,4 +32,35 @@ public interface ClientLibraryRepositoryReportingAndMaintenanceMBean {
     @Description("The count of client libraries found in the content repository.")
     Integer getClientLibraryCount();
 
+    @Description("Compile and cache the Page Libraries of the page at the provided path and every page below it.")
+    String compilePageLibraries(
+            @Name("rootPath") @Description("The path of the page at which to start") String rootPath,
+            @Name("types") @Description("Comma separated library types to compile - js, css.  Both when blank.") String types,
+            @Name("brands") @Description("Comma separated brands to compile.  The default brand when blank.") String brands);
+
+    @Description("Export the Page Libraries of the page at the provided path and every page below it to the configured docroot.")
+    String exportPageLibraries(
+            @Name("rootPath") @Description("The path of the page at which to start") String rootPath);
+
+    @Description("Discard the current shared chunks so that a new generation is derived from the Page Libraries sampled so far.")
+    void recomputeSharedChunks();
+
+    @Description("The proportion of cache lookups, across all library types, which found the library already compiled.")
+    Double getCacheHitRatio();
+
+    @Description("Cache lookups, hits, misses, compilations and bytes served per library type, along with lookup and compilation latency percentiles in milliseconds.")
+    TabularData getLibraryTypeMetrics();
+
+    @Description("The number of cache invalidations per cause.")
+    TabularData getInvalidationMetrics();
+
+    @Description("Latency percentiles in milliseconds of each phase of Page Library compilation.")
+    TabularData getPhaseMetrics();
+
+    @Description("The slowest Page Library compilations within the configured window, slowest first, with the time spent in each phase in milliseconds.")
+    TabularData getSlowCompilations();
+
+    @Description("Reset all cache, compilation and serving metrics to zero.")
+    void resetMetrics();
+
 }
@@ -28,6 +28,13 @@ public interface ClientLibraryManager {
     public Map<String, Set<ClientLibrary>> getLibrariesByCategory();
     public Integer getClientLibraryCount();
 
+    /**
+     *
+     * @return A version stamp for the current set of known Client Libraries.  The value changes every time the set
+     *         is rebuilt, allowing consumers to invalidate anything they have derived from a previous set.
+     */
+    public Long getVersion();
+
     public void requestRefresh();
 
 }
@@ -17,18 +17,169 @@ package com.citytechinc.cq.clientlibs.api.services.clientlibs;
 
 import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary;
 import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.bulk.BulkCompilationResult;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.chunks.PageLibraryPartition;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.CachedLibrary;
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCompilationException;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.granular.GranularLibrary;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.granular.GranularPageLibrary;
 import com.citytechinc.cq.clientlibs.api.structures.graph.DependencyGraph;
 import com.google.common.base.Optional;
 import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.Resource;
 
 import javax.jcr.RepositoryException;
+import java.util.List;
+import java.util.Set;
 
 public interface ClientLibraryRepository {
 
     public String compileClientLibrary(Resource root, LibraryType type, Optional<String> brand) throws ClientLibraryCompilationException;
 
+    /**
+     * Compiles the Page Library of the provided root, as {@link #compileClientLibrary(Resource, LibraryType, Optional)}
+     * does, returning it as the encoded bytes it is cached as.  The returned library must be closed once read.
+     *
+     * @param root
+     * @param type
+     * @param brand
+     * @return The compiled library
+     * @throws ClientLibraryCompilationException
+     */
+    public CachedLibrary compileClientLibraryEntry(Resource root, LibraryType type, Optional<String> brand) throws ClientLibraryCompilationException;
+
+    /**
+     * Compiles and caches the Page Libraries of many pages in a single job.  Pages resolving to identical ordered
+     * sets of Client Libraries and identical variables share a single compilation, and distinct compilations are run
+     * in parallel.  Page Libraries which are already cached are not compiled again.
+     *
+     * @param roots The page content resources, as would be passed to compileClientLibrary
+     * @param types The library types to compile for each page
+     * @param brands The brands to compile for each page
+     * @return A summary of the job
+     */
+    public BulkCompilationResult compileClientLibraries(List<Resource> roots, Set<LibraryType> types, Set<String> brands);
+
+    /**
+     * Determines which shared chunks, if any, the Page Library of the provided root is served from.  When shared
+     * chunks are disabled or not yet derived the returned partition is unpartitioned.
+     *
+     * @param root
+     * @param type
+     * @param brand
+     * @return The partition of the Page Library
+     * @throws ClientLibraryCompilationException
+     */
+    public PageLibraryPartition partitionClientLibrary(Resource root, LibraryType type, Optional<String> brand) throws ClientLibraryCompilationException;
+
+    /**
+     *
+     * @return The generation of the current shared chunks or absent if no shared chunks are available
+     */
+    public Optional<Long> getSharedChunkGeneration();
+
+    /**
+     * Compiles a shared chunk of the current generation.
+     *
+     * @param index
+     * @param type
+     * @param brand
+     * @return The compiled chunk or absent if the chunk does not exist in the current generation
+     * @throws ClientLibraryCompilationException
+     */
+    public Optional<String> compileSharedChunk(Integer index, LibraryType type, Optional<String> brand) throws ClientLibraryCompilationException;
+
+    /**
+     * Compiles the portion of the Page Library of the provided root which is not served by shared chunks.  If the
+     * Page Library is not partitioned the whole Page Library is returned.
+     *
+     * @param root
+     * @param type
+     * @param brand
+     * @return The compiled remainder
+     * @throws ClientLibraryCompilationException
+     */
+    public String compileClientLibraryRemainder(Resource root, LibraryType type, Optional<String> brand) throws ClientLibraryCompilationException;
+
+    /**
+     * Compiles the remainder of the Page Library of the provided root, as
+     * {@link #compileClientLibraryRemainder(Resource, LibraryType, Optional)} does, returning it as the encoded bytes it
+     * is cached as.  The returned library must be closed once read.
+     *
+     * @param root
+     * @param type
+     * @param brand
+     * @return The compiled remainder
+     * @throws ClientLibraryCompilationException
+     */
+    public CachedLibrary compileClientLibraryRemainderEntry(Resource root, LibraryType type, Optional<String> brand) throws ClientLibraryCompilationException;
+
+    /**
+     * Discards the current shared chunks so that they are derived again from the Page Libraries sampled so far.
+     */
+    public void recomputeSharedChunks();
+
+    /**
+     * Splits the Page Library of the provided root into Client Libraries served individually, in dependency order,
+     * and a page specific remainder.
+     *
+     * @param root
+     * @param type
+     * @param brand
+     * @return The split Page Library
+     * @throws ClientLibraryCompilationException
+     */
+    public GranularPageLibrary getGranularPageLibrary(Resource root, LibraryType type, Optional<String> brand) throws ClientLibraryCompilationException;
+
+    /**
+     * Compiles a single Client Library on its own.  The compiled library is held until the Client Library registry
+     * changes.
+     *
+     * @param clientLibraryPath The path to the cq:ClientLibraryFolder of the library
+     * @param type
+     * @return The compiled library or absent if the library does not exist or may not be served individually
+     * @throws ClientLibraryCompilationException
+     */
+    public Optional<GranularLibrary> compileGranularLibrary(String clientLibraryPath, LibraryType type) throws ClientLibraryCompilationException;
+
+    /**
+     * Compiles the portion of the Page Library of the provided root which is not served as individual Client
+     * Libraries.  If no library is served individually the whole Page Library is returned.
+     *
+     * @param root
+     * @param type
+     * @param brand
+     * @return The compiled remainder
+     * @throws ClientLibraryCompilationException
+     */
+    public String compileGranularRemainder(Resource root, LibraryType type, Optional<String> brand) throws ClientLibraryCompilationException;
+
+    /**
+     * Compiles the granular remainder of the Page Library of the provided root, as
+     * {@link #compileGranularRemainder(Resource, LibraryType, Optional)} does, returning it as the encoded bytes it is
+     * cached as.  The returned library must be closed once read.
+     *
+     * @param root
+     * @param type
+     * @param brand
+     * @return The compiled remainder
+     * @throws ClientLibraryCompilationException
+     */
+    public CachedLibrary compileGranularRemainderEntry(Resource root, LibraryType type, Optional<String> brand) throws ClientLibraryCompilationException;
+
+    /**
+     * Looks up the source map of the Page Library of the provided root, compiling the Page Library if it has not
+     * yet been compiled.
+     *
+     * @param root
+     * @param type
+     * @param brand
+     * @return The source map as JSON, or absent if source maps are disabled or no source map could be produced for
+     *         the Page Library
+     * @throws ClientLibraryCompilationException
+     */
+    public Optional<String> getSourceMap(Resource root, LibraryType type, Optional<String> brand) throws ClientLibraryCompilationException;
+
     public DependencyGraph<ClientLibrary> getClientLibraryDependencyGraph(Resource root);
 
     public void refresh() throws RepositoryException, LoginException;
@@ -0,0 +1,58 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.api.services.clientlibs.bulk;
+
+import java.util.Map;
+
+/**
+ * The outcome of compiling the Page Libraries of many pages in a single job.  A Page Library is identified by the
+ * combination of a page, a library type, and a brand.
+ */
+public interface BulkCompilationResult {
+
+    public Integer getPageCount();
+
+    /**
+     *
+     * @return The number of Page Libraries requested, being the page count multiplied by the number of requested
+     *         types and brands
+     */
+    public Integer getLibraryCount();
+
+    /**
+     *
+     * @return The number of requested Page Libraries which were already cached and therefore not compiled again
+     */
+    public Integer getCachedLibraryCount();
+
+    /**
+     *
+     * @return The number of distinct compilations performed.  Page Libraries sharing an identical ordered set of
+     *         Client Libraries and identical variables are compiled once.
+     */
+    public Integer getDistinctCompilationCount();
+
+    public Integer getCompiledLibraryCount();
+
+    /**
+     *
+     * @return Failure messages keyed by the path of the page content for which compilation failed
+     */
+    public Map<String, String> getFailures();
+
+    public Long getDurationMillis();
+
+}
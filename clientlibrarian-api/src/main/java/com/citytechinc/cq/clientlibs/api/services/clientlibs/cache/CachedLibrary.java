@@ -0,0 +1,49 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.api.services.clientlibs.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A compiled library as held by a cache, exposed as the encoded bytes it is stored as so that it may be served
+ * without being decoded.  An entry must be closed once it has been read, allowing the cache to reclaim any resources
+ * held for the duration of the read.
+ */
+public interface CachedLibrary extends Closeable {
+
+    /**
+     *
+     * @return The length of the library in bytes
+     */
+    public long getLength();
+
+    /**
+     *
+     * @return The character encoding of the library's bytes
+     */
+    public String getEncoding();
+
+    /**
+     * Writes the bytes of the library to the provided stream.
+     *
+     * @param outputStream
+     * @throws IOException
+     */
+    public void writeTo(OutputStream outputStream) throws IOException;
+
+}
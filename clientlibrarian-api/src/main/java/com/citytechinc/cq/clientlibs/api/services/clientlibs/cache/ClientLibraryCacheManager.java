@@ -33,6 +33,18 @@ public interface ClientLibraryCacheManager {
 
     public Optional<String> getCachedLibrary(Resource root, LibraryType type, String brand) throws CachedClientLibraryLookupException, LoginException;
 
+    /**
+     * Looks up a cached library as the bytes it is stored as.  The returned entry must be closed once read.
+     *
+     * @param root
+     * @param type
+     * @param brand
+     * @return The cached library or absent if no library is cached for the root, type and brand
+     * @throws CachedClientLibraryLookupException
+     * @throws LoginException
+     */
+    public Optional<CachedLibrary> getCachedLibraryEntry(Resource root, LibraryType type, String brand) throws CachedClientLibraryLookupException, LoginException;
+
     public void cacheLibrary(Resource root, LibraryType type, String libraryContent) throws ClientLibraryCachingException;
 
     public void cacheLibrary(Resource root, LibraryType type, String brand, String libraryContent) throws ClientLibraryCachingException;
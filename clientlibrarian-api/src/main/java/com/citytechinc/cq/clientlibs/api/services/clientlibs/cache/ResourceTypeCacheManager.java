@@ -0,0 +1,79 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.api.services.clientlibs.cache;
+
+import com.google.common.base.Optional;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Caches the set of resource types resolved for a page so that the page content need not be inspected again until
+ * it changes.  Also caches the typed resources which an inheriting paragraph system on a page passes down to the
+ * pages below it.
+ */
+public interface ResourceTypeCacheManager {
+
+    /**
+     * Read before resolving the resource types which are to be cached and passed back when caching them, so that an
+     * invalidation occurring while the content is being read is not overwritten by the stale result.
+     *
+     * @return The current invalidation generation of the cache
+     */
+    public long getGeneration();
+
+    public Optional<Set<String>> getCachedResourceTypes(String rootPath);
+
+    /**
+     *
+     * @param rootPath
+     * @param resourceTypes
+     * @param generation The generation read through {@link #getGeneration()} before the resource types were resolved.
+     *                   The resource types are not cached if the page, or a page above it, has been invalidated since.
+     */
+    public void cacheResourceTypes(String rootPath, Set<String> resourceTypes, long generation);
+
+    /**
+     *
+     * @param iParsysPath The path of an inheriting paragraph system on an ancestor page, whether or not a resource
+     *                    exists at that path
+     * @return The resource types, keyed by resource path, inherited through the paragraph system from the ancestor
+     *         page and the pages above it
+     */
+    public Optional<Map<String, String>> getCachedInheritedResourceTypes(String iParsysPath);
+
+    public void cacheInheritedResourceTypes(String iParsysPath, Map<String, String> resourceTypesByPath, long generation);
+
+    /**
+     * Allows state derived from page content outside of this cache to be invalidated along with it.
+     *
+     * @param path
+     * @param generation The generation read through {@link #getGeneration()} before the content was read
+     * @return Whether the page containing the path, or a page above it, has been invalidated since the generation
+     */
+    public boolean isInvalidatedSince(String path, long generation);
+
+    /**
+     * Invalidates the cached resource types and inherited resource types of the page containing the provided path
+     * along with those of every page below it, since pages may inherit content from their ancestors.
+     *
+     * @param path
+     */
+    public void invalidateCache(String path);
+
+    public void clearCache();
+
+}
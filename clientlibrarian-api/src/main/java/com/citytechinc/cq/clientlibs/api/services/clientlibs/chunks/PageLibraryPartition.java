@@ -0,0 +1,52 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.api.services.clientlibs.chunks;
+
+import java.util.List;
+
+/**
+ * Describes how the Page Library of a page, for a given type and brand, is split between the shared chunks derived
+ * from library usage across pages and a page specific remainder.
+ */
+public interface PageLibraryPartition {
+
+    /**
+     *
+     * @return false when the Page Library is to be served whole, in which case no other property of the partition
+     *         is meaningful
+     */
+    public boolean isPartitioned();
+
+    /**
+     *
+     * @return The generation of the shared chunk definitions the partition was made against.  URLs for the chunks
+     *         and the remainder carry the generation so that they may be cached for as long as the generation lives.
+     */
+    public Long getGeneration();
+
+    /**
+     *
+     * @return The indices of the shared chunks to be included by the page, in inclusion order
+     */
+    public List<Integer> getChunkIndices();
+
+    /**
+     *
+     * @return Whether any content remains to be served in the page specific remainder
+     */
+    public boolean hasRemainder();
+
+}
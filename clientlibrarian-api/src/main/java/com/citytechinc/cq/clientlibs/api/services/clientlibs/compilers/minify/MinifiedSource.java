@@ -0,0 +1,32 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.api.services.clientlibs.compilers.minify;
+
+/**
+ * Minified content along with the position in the original source of each of its characters.
+ */
+public interface MinifiedSource {
+
+    public String getContent();
+
+    /**
+     *
+     * @param contentOffset An offset into the minified content
+     * @return The offset into the original source of the character at the provided offset of the minified content
+     */
+    public int getSourceOffset(int contentOffset);
+
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.api.services.clientlibs.compilers.minify;
+
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.compilers.minify.exceptions.MinificationException;
+
+public interface Minifier {
+
+    public String minifyJs(String source) throws MinificationException;
+
+    public String minifyCss(String source) throws MinificationException;
+
+    /**
+     * Minifies JavaScript, keeping track of where each character of the minified content came from so that a
+     * source map may be produced for it.
+     *
+     * @param source
+     * @return The minified source
+     * @throws MinificationException
+     */
+    public MinifiedSource minifyJsMapped(String source) throws MinificationException;
+
+    /**
+     * Minifies CSS, keeping track of where each character of the minified content came from so that a source map
+     * may be produced for it.
+     *
+     * @param source
+     * @return The minified source
+     * @throws MinificationException
+     */
+    public MinifiedSource minifyCssMapped(String source) throws MinificationException;
+
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.api.services.clientlibs.export;
+
+import java.util.Map;
+
+public interface ClientLibraryExportResult {
+
+    public Integer getPageCount();
+
+    public Integer getWrittenFileCount();
+
+    /**
+     *
+     * @return The number of files skipped because their fingerprint matched the one recorded in the manifest of the
+     *         previous export
+     */
+    public Integer getUnchangedFileCount();
+
+    /**
+     *
+     * @return The number of files of the previous export which were deleted because their page is no longer found
+     *         under the exported root
+     */
+    public Integer getRemovedFileCount();
+
+    /**
+     *
+     * @return Failure messages keyed by the path, relative to the docroot, of the file which could not be exported
+     */
+    public Map<String, String> getFailures();
+
+    public Long getDurationMillis();
+
+}
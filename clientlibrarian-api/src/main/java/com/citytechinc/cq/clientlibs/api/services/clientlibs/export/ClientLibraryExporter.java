@@ -0,0 +1,36 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.api.services.clientlibs.export;
+
+import org.apache.sling.api.resource.ResourceResolver;
+
+/**
+ * Exports compiled Page Libraries to a directory on the local filesystem laid out to mirror the Page Library URL
+ * space, allowing a web tier to serve them as static files.
+ */
+public interface ClientLibraryExporter {
+
+    /**
+     * Exports the CSS and JS Page Libraries, for each configured brand, of the page at the provided path and every
+     * page below it.
+     *
+     * @param resourceResolver
+     * @param rootPath
+     * @return A summary of the export
+     */
+    public ClientLibraryExportResult export(ResourceResolver resourceResolver, String rootPath);
+
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.api.services.clientlibs.granular;
+
+/**
+ * A single Client Library compiled on its own for a library type.  Its content is the same for every page including
+ * it, so it may be served from a URL shared site-wide.
+ */
+public interface GranularLibrary {
+
+    /**
+     *
+     * @return The path to the cq:ClientLibraryFolder resource of the library
+     */
+    public String getClientLibraryPath();
+
+    /**
+     *
+     * @return A fingerprint of the compiled content, suitable for use in the library's URL
+     */
+    public String getFingerprint();
+
+    public String getContent();
+
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.api.services.clientlibs.granular;
+
+import java.util.List;
+
+/**
+ * Describes how the Page Library of a page, for a given type and brand, is split between individually served Client
+ * Libraries and a page specific remainder.
+ */
+public interface GranularPageLibrary {
+
+    /**
+     *
+     * @return The Client Libraries to be included individually, in inclusion order, ahead of any remainder
+     */
+    public List<GranularLibrary> getLibraries();
+
+    /**
+     *
+     * @return Whether any content remains to be served in the page specific remainder
+     */
+    public boolean hasRemainder();
+
+}
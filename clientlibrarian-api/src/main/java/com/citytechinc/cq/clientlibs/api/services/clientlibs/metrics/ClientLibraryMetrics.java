@@ -0,0 +1,98 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics;
+
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the counters and latencies describing how Page Libraries are looked up, compiled and served.  Recording
+ * must be cheap and must not block as it happens on the request path.
+ */
+public interface ClientLibraryMetrics {
+
+    /**
+     * Records a lookup of a compiled library in the cache.
+     *
+     * @param type
+     * @param hit Whether the library was found in the cache
+     * @param durationNanos
+     */
+    public void recordCacheLookup(LibraryType type, boolean hit, long durationNanos);
+
+    /**
+     * Records the compilation of a library.
+     *
+     * @param type
+     * @param durationNanos
+     */
+    public void recordCompilation(LibraryType type, long durationNanos);
+
+    public void recordCompilationFailure(LibraryType type);
+
+    /**
+     * Records the time spent in a single phase of a compilation.
+     *
+     * @param phase
+     * @param durationNanos
+     */
+    public void recordPhase(CompilationPhase phase, long durationNanos);
+
+    public void recordBytesServed(LibraryType type, long bytes);
+
+    /**
+     * Records the invalidation of cached libraries.  A single invalidation may discard any number of libraries.
+     *
+     * @param cause
+     */
+    public void recordInvalidation(InvalidationCause cause);
+
+    /**
+     * Lets callers skip building the record of a compilation which would not be kept.
+     *
+     * @param durationMillis
+     * @return Whether a compilation of the provided duration is currently among the slowest recorded compilations
+     */
+    public boolean isSlowCompilation(long durationMillis);
+
+    /**
+     * Offers a compilation to the record of the slowest compilations.  The compilation is kept only if it is among
+     * the slowest within the configured window.
+     *
+     * @param compilation
+     */
+    public void recordSlowCompilation(SlowCompilation compilation);
+
+    public LibraryTypeStatistics getStatistics(LibraryType type);
+
+    public Map<InvalidationCause, Long> getInvalidationCounts();
+
+    public LatencyStatistics getPhaseStatistics(CompilationPhase phase);
+
+    /**
+     *
+     * @return The slowest compilations within the configured window, slowest first
+     */
+    public List<SlowCompilation> getSlowCompilations();
+
+    /**
+     * Resets every counter and latency histogram to zero and forgets every recorded slow compilation.
+     */
+    public void reset();
+
+}
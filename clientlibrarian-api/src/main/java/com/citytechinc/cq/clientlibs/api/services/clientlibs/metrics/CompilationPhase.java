@@ -0,0 +1,71 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics;
+
+/**
+ * The phases of the Page Library compilation pipeline which are timed individually.
+ */
+public enum CompilationPhase {
+
+    /**
+     * Asking the Resource Dependency Providers for the libraries a page depends on, including the flattening of the
+     * page's resource tree performed by the providers
+     */
+    DEPENDENCY_PROVIDERS,
+
+    /**
+     * Building the dependency graph from the libraries the page depends on
+     */
+    GRAPH_BUILD,
+
+    /**
+     * Ordering the dependency graph
+     */
+    ORDERING,
+
+    /**
+     * Filtering the ordered libraries by run mode and brand
+     */
+    FILTERING,
+
+    /**
+     * Merging the content of the ordered libraries.  When no source map is produced variables are substituted as
+     * part of the merge.
+     */
+    FRAGMENT_MERGE,
+
+    /**
+     * Looking up the variables of the page and, when a source map is produced, substituting them into the merged
+     * library
+     */
+    VARIABLE_TRANSFORM,
+
+    /**
+     * Compiling LESS, including the minification of the compiled CSS
+     */
+    LESS_COMPILE,
+
+    /**
+     * Building, caching and referencing the source map of the library
+     */
+    SOURCE_MAP,
+
+    /**
+     * Writing the compiled library to the cache
+     */
+    CACHE_WRITE
+
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics;
+
+/**
+ * The reason for which cached libraries were discarded.
+ */
+public enum InvalidationCause {
+
+    /**
+     * Page content was changed, moved or removed, invalidating the libraries cached for the page and those below it
+     */
+    PAGE_CONTENT,
+
+    /**
+     * A Client Library was added, changed or removed, clearing the cache
+     */
+    CLIENT_LIBRARY,
+
+    /**
+     * A component declaring dependencies was added, changed or removed, clearing the cache
+     */
+    COMPONENT,
+
+    /**
+     * A configuration change altered the form of compiled libraries, clearing the cache
+     */
+    CONFIGURATION,
+
+    /**
+     * The cache was cleared on request, for instance via JMX
+     */
+    MANUAL,
+
+    /**
+     * Shared chunks were derived which differ from those the cached page remainders were built against, clearing the
+     * cache
+     */
+    SHARED_CHUNKS,
+
+    /**
+     * A library was evicted by a capacity bounded cache to make room for another
+     */
+    EVICTION
+
+}
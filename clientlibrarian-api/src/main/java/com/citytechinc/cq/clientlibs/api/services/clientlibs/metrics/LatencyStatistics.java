@@ -0,0 +1,39 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics;
+
+/**
+ * A point in time view of the latencies recorded for an operation.  All durations are in nanoseconds.  Percentiles
+ * are approximations whose error is bounded by the resolution of the underlying histogram.
+ */
+public interface LatencyStatistics {
+
+    public long getCount();
+
+    public long getTotal();
+
+    public long getMean();
+
+    public long getMax();
+
+    /**
+     *
+     * @param percentile A percentile between 0 and 100
+     * @return The latency at or below which the provided percentage of the recorded latencies fall
+     */
+    public long getPercentile(double percentile);
+
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics;
+
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType;
+
+/**
+ * A point in time view of the metrics recorded for the libraries of a single {@link LibraryType}.
+ */
+public interface LibraryTypeStatistics {
+
+    public LibraryType getType();
+
+    public long getCacheLookupCount();
+
+    public long getCacheHitCount();
+
+    public long getCacheMissCount();
+
+    /**
+     *
+     * @return The proportion of cache lookups which were hits, or 0 when no lookups have been recorded
+     */
+    public double getCacheHitRatio();
+
+    public long getCompilationCount();
+
+    public long getCompilationFailureCount();
+
+    public long getBytesServed();
+
+    public LatencyStatistics getCacheLookupLatency();
+
+    public LatencyStatistics getCompilationLatency();
+
+}
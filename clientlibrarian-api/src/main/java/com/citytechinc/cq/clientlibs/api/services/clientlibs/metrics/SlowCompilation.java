@@ -0,0 +1,70 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics;
+
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType;
+
+import java.util.Map;
+
+/**
+ * The record of a single slow Page Library compilation.
+ */
+public interface SlowCompilation {
+
+    /**
+     *
+     * @return The time at which the compilation completed, in milliseconds since the epoch
+     */
+    public long getTimestamp();
+
+    /**
+     *
+     * @return The path of the page content for which the library was compiled
+     */
+    public String getPath();
+
+    public LibraryType getType();
+
+    /**
+     *
+     * @return The brand under which the library was cached.  Remainder and granular libraries are cached under a
+     *         brand carrying a prefix identifying the kind of library.
+     */
+    public String getBrand();
+
+    /**
+     *
+     * @return The number of Client Libraries merged into the library, or 0 when not known
+     */
+    public int getLibraryCount();
+
+    /**
+     *
+     * @return The length of the compiled library in UTF-8 bytes
+     */
+    public long getBytes();
+
+    public long getDurationMillis();
+
+    public long getLessCompileMillis();
+
+    /**
+     *
+     * @return The time spent in each phase of the compilation in milliseconds
+     */
+    public Map<CompilationPhase, Long> getPhaseMillis();
+
+}
@@ -0,0 +1,35 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.api.services.clientlibs.transformer;
+
+/**
+ * A {@link VariableProvider} whose variables may be cached by the Client Librarian.  The variables produced for a
+ * page are reused for every other page within the same scope until they expire, the provider is unbound, or, for
+ * site root and page scoped providers, the content of the site root page or page they were produced for changes.
+ * Variable Providers not implementing this interface are asked for their variables on every compilation.
+ */
+public interface ScopedVariableProvider extends VariableProvider {
+
+    public VariableScope getScope();
+
+    /**
+     *
+     * @return The number of milliseconds for which produced variables may be reused.  A value of 0 or less indicates
+     *         that they do not expire.
+     */
+    public long getTimeToLive();
+
+}
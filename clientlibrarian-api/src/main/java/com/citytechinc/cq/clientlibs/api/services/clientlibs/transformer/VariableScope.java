@@ -0,0 +1,38 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.api.services.clientlibs.transformer;
+
+/**
+ * The breadth of content over which the variables of a {@link ScopedVariableProvider} stay the same.
+ */
+public enum VariableScope {
+
+    /**
+     * The variables are the same for every page
+     */
+    GLOBAL,
+
+    /**
+     * The variables are the same for every page below a site root page
+     */
+    SITE_ROOT,
+
+    /**
+     * The variables may differ from page to page
+     */
+    PAGE
+
+}
@@ -34,6 +34,13 @@ public interface DependentComponentManager {
 
     public Set<DependentComponent> getComponents();
 
+    /**
+     *
+     * @return A version stamp for the current set of known Dependent Components.  The value changes every time the set
+     *         is rebuilt, allowing consumers to invalidate anything they have derived from a previous set.
+     */
+    public Long getVersion();
+
     public void requestRefresh();
 
 }
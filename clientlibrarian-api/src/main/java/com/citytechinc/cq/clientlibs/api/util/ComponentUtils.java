@@ -15,14 +15,17 @@
  */
 package com.citytechinc.cq.clientlibs.api.util;
 
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.Set;
 
 import javax.jcr.query.Query;
 
+import com.google.common.collect.Queues;
 import com.google.common.collect.Sets;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,15 +35,46 @@ public class ComponentUtils {
 
     private static final String TYPED_COMPONENT_QUERY = "SELECT * FROM \"nt:base\" WHERE ISDESCENDANTNODE( \'{path}\' ) AND [sling:resourceType] IS NOT NULL";
 
+    private static final String SLING_RESOURCE_TYPE_PROPERTY = "sling:resourceType";
+
+    /**
+     * The default maximum number of resources visited by a {@link ResourceTreeFlatteningStrategy#TRAVERSAL} before
+     * falling back to a query.
+     */
+    public static final int DEFAULT_TRAVERSAL_LIMIT = 5000;
+
     public static Set<String> getNestedComponentTypes(Resource root) {
         return getNestedComponentTypes(root, true);
     }
 
     public static Set<Resource> flattenResourceTree(Resource root, boolean inclusive) {
+        return flattenResourceTree(root, inclusive, ResourceTreeFlatteningStrategy.TRAVERSAL, DEFAULT_TRAVERSAL_LIMIT);
+    }
 
-        Iterator<Resource> typedResourceIterator = root.getResourceResolver().findResources(TYPED_COMPONENT_QUERY.replace("{path}", root.getPath()), Query.JCR_SQL2);
+    /**
+     * Collects all resources under the provided root which declare a sling:resourceType.
+     *
+     * @param root The resource under which to look for typed resources
+     * @param inclusive Whether the root itself should be included in the returned set
+     * @param strategy The mechanism used to collect the resources
+     * @param traversalLimit The maximum number of resources a traversal will visit before giving up in favor of a query
+     * @return The set of typed resources under the root
+     */
+    public static Set<Resource> flattenResourceTree(Resource root, boolean inclusive, ResourceTreeFlatteningStrategy strategy, int traversalLimit) {
+
+        Set<Resource> flattenedResourceTree = null;
 
-        Set<Resource> flattenedResourceTree = Sets.newHashSet(typedResourceIterator);
+        if (strategy == ResourceTreeFlatteningStrategy.TRAVERSAL) {
+            flattenedResourceTree = traverseResourceTree(root, traversalLimit);
+
+            if (flattenedResourceTree == null) {
+                LOG.debug("Traversal limit of " + traversalLimit + " exceeded under " + root.getPath() + ", falling back to a query");
+            }
+        }
+
+        if (flattenedResourceTree == null) {
+            flattenedResourceTree = queryResourceTree(root);
+        }
 
         if (inclusive) {
             flattenedResourceTree.add(root);
@@ -50,9 +84,67 @@ public class ComponentUtils {
 
     }
 
+    /**
+     * Walks the tree under the provided root via child iteration.
+     *
+     * @param root
+     * @param traversalLimit
+     * @return The typed resources under the root or null if more than traversalLimit resources would have to be visited
+     */
+    protected static Set<Resource> traverseResourceTree(Resource root, int traversalLimit) {
+
+        Set<Resource> flattenedResourceTree = Sets.newHashSet();
+        Deque<Resource> resourcesToVisit = Queues.newArrayDeque();
+        int visitedResourceCount = 0;
+
+        pushChildren(root, resourcesToVisit);
+
+        while (!resourcesToVisit.isEmpty()) {
+
+            if (++visitedResourceCount > traversalLimit) {
+                return null;
+            }
+
+            Resource currentResource = resourcesToVisit.pop();
+            ValueMap currentValueMap = currentResource.adaptTo(ValueMap.class);
+
+            if (currentValueMap != null && currentValueMap.containsKey(SLING_RESOURCE_TYPE_PROPERTY)) {
+                flattenedResourceTree.add(currentResource);
+            }
+
+            pushChildren(currentResource, resourcesToVisit);
+
+        }
+
+        return flattenedResourceTree;
+
+    }
+
+    protected static Set<Resource> queryResourceTree(Resource root) {
+
+        Iterator<Resource> typedResourceIterator = root.getResourceResolver().findResources(TYPED_COMPONENT_QUERY.replace("{path}", root.getPath()), Query.JCR_SQL2);
+
+        return Sets.newHashSet(typedResourceIterator);
+
+    }
+
+    private static void pushChildren(Resource resource, Deque<Resource> resourcesToVisit) {
+
+        Iterator<Resource> childIterator = resource.listChildren();
+
+        while (childIterator.hasNext()) {
+            resourcesToVisit.push(childIterator.next());
+        }
+
+    }
+
     public static Set<String> getNestedComponentTypes(Resource root, boolean inclusive) {
+        return getNestedComponentTypes(root, inclusive, ResourceTreeFlatteningStrategy.TRAVERSAL, DEFAULT_TRAVERSAL_LIMIT);
+    }
+
+    public static Set<String> getNestedComponentTypes(Resource root, boolean inclusive, ResourceTreeFlatteningStrategy strategy, int traversalLimit) {
 
-        Set<Resource> flattenedResourceTree = flattenResourceTree(root, inclusive);
+        Set<Resource> flattenedResourceTree = flattenResourceTree(root, inclusive, strategy, traversalLimit);
 
         Set<String> resourceTypeSet = Sets.newHashSet();
 
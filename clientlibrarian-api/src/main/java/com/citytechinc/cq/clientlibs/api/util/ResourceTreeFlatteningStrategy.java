@@ -0,0 +1,46 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.api.util;
+
+/**
+ * The mechanisms available for collecting the typed resources found under a root resource.
+ */
+public enum ResourceTreeFlatteningStrategy {
+
+    /**
+     * Walk the resource tree directly via child iteration, falling back to {@link #QUERY} only when the tree is
+     * larger than the configured traversal limit.
+     */
+    TRAVERSAL,
+
+    /**
+     * Issue a JCR-SQL2 descendant query for all resources with a sling:resourceType under the root.
+     */
+    QUERY;
+
+    public static ResourceTreeFlatteningStrategy fromString(String strategy, ResourceTreeFlatteningStrategy defaultStrategy) {
+
+        for (ResourceTreeFlatteningStrategy currentStrategy : values()) {
+            if (currentStrategy.name().equalsIgnoreCase(strategy)) {
+                return currentStrategy;
+            }
+        }
+
+        return defaultStrategy;
+
+    }
+
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.benchmarks;
+
+import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary;
+import com.citytechinc.cq.clientlibs.api.domain.sling.runmode.SlingRunModeGroup;
+import com.citytechinc.cq.clientlibs.benchmarks.synthetic.SyntheticRepository;
+import com.citytechinc.cq.clientlibs.core.domain.library.ClientLibraries;
+import com.google.common.collect.Sets;
+import org.apache.sling.api.resource.Resource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Reading a single Client Library out of the repository.
+ * </p>
+ * <ul>
+ *     <li><code>parseInclusionFiles</code> measures the construction of a <code>DefaultClientLibrary</code>, which
+ *         reads and parses its <code>js.txt</code> and <code>css.txt</code> files.</li>
+ *     <li><code>mergeJs</code> and <code>mergeCss</code> measure the merging of the files listed by them.</li>
+ * </ul>
+ * <p>
+ * The library lists <code>fileCount</code> JS files below a <code>#base</code> and as many CSS files by absolute path,
+ * each file being <code>fileLines</code> lines long.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClientLibraryInclusionBenchmark {
+
+    public static final String LIBRARY_PATH = "/apps/benchmark/clientlibs/inclusion";
+
+    @Param({ "10", "100" })
+    public int fileCount;
+
+    @Param({ "50", "500" })
+    public int fileLines;
+
+    private Resource libraryResource;
+    private ClientLibrary library;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+
+        SyntheticRepository repository = new SyntheticRepository();
+
+        repository.addFolder(LIBRARY_PATH);
+
+        StringBuilder jsInclusions = new StringBuilder("#base=js\n");
+        StringBuilder cssInclusions = new StringBuilder();
+
+        for (int i = 0; i < fileCount; i++) {
+            jsInclusions.append("file").append(i).append(".js\n");
+            cssInclusions.append(LIBRARY_PATH).append("/css/file").append(i).append(".css\n");
+
+            repository.addFile(LIBRARY_PATH + "/js/file" + i + ".js", generateFile("    window.benchmark" + i + ".values.push( 'line' );\n"));
+            repository.addFile(LIBRARY_PATH + "/css/file" + i + ".css", generateFile(".benchmark-" + i + " .line { margin: 0 auto; }\n"));
+        }
+
+        repository.addFile(LIBRARY_PATH + "/" + ClientLibrary.JS_FILE, jsInclusions.toString());
+        repository.addFile(LIBRARY_PATH + "/" + ClientLibrary.CSS_FILE, cssInclusions.toString());
+
+        libraryResource = repository.getResource(LIBRARY_PATH);
+        library = parseInclusionFiles();
+
+    }
+
+    private String generateFile(String line) {
+
+        StringBuilder fileBuilder = new StringBuilder(line.length() * fileLines);
+
+        for (int i = 0; i < fileLines; i++) {
+            fileBuilder.append(line);
+        }
+
+        return fileBuilder.toString();
+
+    }
+
+    @Benchmark
+    public ClientLibrary parseInclusionFiles() {
+        return ClientLibraries.newDefaultClientLibrary(
+                Sets.newHashSet("benchmark.inclusion"),
+                libraryResource,
+                Collections.<String>emptyList(),
+                Collections.<String>emptyList(),
+                Collections.<String>emptyList(),
+                Collections.<SlingRunModeGroup>emptySet(),
+                Collections.<String>emptySet());
+    }
+
+    @Benchmark
+    public String mergeJs() {
+        return library.getJs();
+    }
+
+    @Benchmark
+    public String mergeCss() {
+        return library.getCss();
+    }
+
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.benchmarks;
+
+import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.ResourceDependencyProvider;
+import com.citytechinc.cq.clientlibs.api.structures.graph.DependencyGraph;
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.metrics.CompilationPhaseTimer;
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.metrics.impl.DefaultClientLibraryMetrics;
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.state.manager.impl.ClientLibraryRepositoryStateManager;
+import com.citytechinc.cq.clientlibs.core.structures.graph.dag.DirectedAcyclicGraph;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Building and ordering the dependency graph of a page.
+ * </p>
+ * <ul>
+ *     <li><code>buildDependencyGraph</code> measures {@link ClientLibraryRepositoryStateManager#requestDependencyGraph},
+ *         the graph search from the page's libraries through everything they depend on.</li>
+ *     <li><code>orderDependencyGraph</code> measures the topological sort of {@link DirectedAcyclicGraph} over a graph
+ *         of the whole registry.</li>
+ *     <li><code>orderedDependencies</code> measures both together as done for every compilation missing the ordered
+ *         dependencies cache.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DependencyGraphBenchmark {
+
+    private ClientLibraryRepositoryStateManager stateManager;
+    private List<ResourceDependencyProvider> resourceDependencyProviders;
+    private DirectedAcyclicGraph<ClientLibrary> registryGraph;
+
+    @Setup(Level.Trial)
+    public void setUp(RegistryState registryState) {
+
+        stateManager = new ClientLibraryRepositoryStateManager(
+                registryState.registry.newClientLibraryManager(),
+                registryState.registry.newDependentComponentManager(),
+                ImmutableSet.<String>of(),
+                ClientLibraryRepositoryStateManager.DEFAULT_ORDERED_DEPENDENCIES_CACHE_SIZE,
+                new CompilationPhaseTimer(new DefaultClientLibraryMetrics()));
+
+        resourceDependencyProviders = ImmutableList.of(registryState.registry.newPageDependencyProvider());
+        registryGraph = registryState.registry.toDependencyGraph();
+
+    }
+
+    @Benchmark
+    public DependencyGraph<ClientLibrary> buildDependencyGraph(RegistryState registryState) {
+        return stateManager.requestDependencyGraph(registryState.registry.getPage(), resourceDependencyProviders);
+    }
+
+    @Benchmark
+    public List<ClientLibrary> orderDependencyGraph() {
+        return registryGraph.getReverseOrdering();
+    }
+
+    @Benchmark
+    public List<ClientLibrary> orderedDependencies(RegistryState registryState) {
+        return stateManager.requestDependencyGraph(registryState.registry.getPage(), resourceDependencyProviders).getReverseOrdering();
+    }
+
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.benchmarks;
+
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.compilers.less.exceptions.LessCompilationException;
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.compilers.less.impl.RhinoLessCompiler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Compiling a LESS library with the {@link RhinoLessCompiler}, including the evaluation of the LESS compiler script
+ * which happens on every call.
+ * </p>
+ * <p>
+ * The source declares a handful of variables and a mixin followed by <code>ruleCount</code> nested rules using them.
+ * Compilations take long enough for single shot iterations to be meaningful.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LessCompilerBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    public int ruleCount;
+
+    private RhinoLessCompiler compiler;
+    private String source;
+
+    @Setup(Level.Trial)
+    public void setUp() throws LessCompilationException {
+
+        compiler = new RhinoLessCompiler();
+
+        StringBuilder sourceBuilder = new StringBuilder()
+                .append("@base-color: #336699;\n")
+                .append("@base-padding: 4px;\n")
+                .append(".rounded(@radius: 2px) { border-radius: @radius; -webkit-border-radius: @radius; }\n");
+
+        for (int i = 0; i < ruleCount; i++) {
+            sourceBuilder.append(".benchmark-").append(i).append(" {\n")
+                    .append("  color: darken(@base-color, ").append(i % 50).append("%);\n")
+                    .append("  padding: @base-padding * ").append(i % 8 + 1).append(";\n")
+                    .append("  .rounded(").append(i % 6).append("px);\n")
+                    .append("  &:hover { color: lighten(@base-color, 10%); }\n")
+                    .append("  .child { margin: (@base-padding / 2) auto; }\n")
+                    .append("}\n");
+        }
+
+        source = sourceBuilder.toString();
+
+        /*
+         * Fail the trial up front rather than measuring a compiler which can not find its script
+         */
+        compiler.compile(source);
+
+    }
+
+    @Benchmark
+    public String compile() throws LessCompilationException {
+        return compiler.compile(source);
+    }
+
+}
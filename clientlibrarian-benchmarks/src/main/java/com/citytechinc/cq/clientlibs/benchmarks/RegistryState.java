@@ -0,0 +1,50 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.benchmarks;
+
+import com.citytechinc.cq.clientlibs.benchmarks.synthetic.SyntheticRegistry;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A synthetic registry shared by the benchmarks of a trial.  See {@link SyntheticRegistry} for the meaning of the
+ * parameters, each of which may be overridden from the command line, for instance <code>-p libraryCount=2000</code>.
+ */
+@State(Scope.Benchmark)
+public class RegistryState {
+
+    public static final long SEED = 20140601L;
+
+    @Param({ "100", "1000", "10000", "50000" })
+    public int libraryCount;
+
+    @Param({ "4", "12" })
+    public int depth;
+
+    @Param({ "3" })
+    public int fanOut;
+
+    public SyntheticRegistry registry;
+
+    @Setup(Level.Trial)
+    public void generateRegistry() {
+        registry = SyntheticRegistry.generate(libraryCount, depth, fanOut, SEED);
+    }
+
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.benchmarks;
+
+import com.citytechinc.cq.clientlibs.api.util.ComponentUtils;
+import com.citytechinc.cq.clientlibs.api.util.ResourceTreeFlatteningStrategy;
+import com.citytechinc.cq.clientlibs.benchmarks.synthetic.SyntheticRepository;
+import org.apache.sling.api.resource.Resource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Flattening page content into its typed resources by each <code>strategy</code> of the
+ * <code>DefaultResourceDependencyProvider</code>.
+ * </p>
+ * <ul>
+ *     <li><code>flattenWidePage</code> flattens a paragraph system holding <code>componentCount</code> components,
+ *         each with an untyped child.</li>
+ *     <li><code>flattenDeepPage</code> flattens <code>depth</code> levels of nested resources, every other one
+ *         typed.</li>
+ * </ul>
+ * <p>
+ * Each page is built in its own state so that the parameters of one page are not multiplied by those of the other.
+ * The synthetic repository answers the query strategy by scanning every node it holds, so its scores stand for an
+ * unindexed query rather than for the repository's index.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResourceTreeFlatteningBenchmark {
+
+    public static final String WIDE_PAGE_CONTENT = "/content/flattening/wide/jcr:content";
+    public static final String DEEP_PAGE_CONTENT = "/content/flattening/deep/jcr:content";
+
+    @Param({ "TRAVERSAL", "QUERY" })
+    public ResourceTreeFlatteningStrategy strategy;
+
+    @State(Scope.Benchmark)
+    public static class WidePageState {
+
+        @Param({ "50", "500" })
+        public int componentCount;
+
+        public Resource pageContent;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+
+            SyntheticRepository repository = new SyntheticRepository();
+
+            repository.addNode(WIDE_PAGE_CONTENT, SyntheticRepository.UNSTRUCTURED_TYPE);
+            repository.setProperty(WIDE_PAGE_CONTENT, SyntheticRepository.RESOURCE_TYPE_PROPERTY, "benchmark/components/page");
+
+            String paragraphSystemPath = WIDE_PAGE_CONTENT + "/par";
+
+            repository.addNode(paragraphSystemPath, SyntheticRepository.UNSTRUCTURED_TYPE);
+            repository.setProperty(paragraphSystemPath, SyntheticRepository.RESOURCE_TYPE_PROPERTY, "foundation/components/parsys");
+
+            for (int i = 0; i < componentCount; i++) {
+                String componentPath = paragraphSystemPath + "/component" + i;
+
+                repository.addNode(componentPath, SyntheticRepository.UNSTRUCTURED_TYPE);
+                repository.setProperty(componentPath, SyntheticRepository.RESOURCE_TYPE_PROPERTY, "benchmark/components/component" + (i % 10));
+                repository.addNode(componentPath + "/image", SyntheticRepository.UNSTRUCTURED_TYPE);
+            }
+
+            pageContent = repository.getResource(WIDE_PAGE_CONTENT);
+
+        }
+
+    }
+
+    @State(Scope.Benchmark)
+    public static class DeepPageState {
+
+        @Param({ "10", "60" })
+        public int depth;
+
+        public Resource pageContent;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+
+            SyntheticRepository repository = new SyntheticRepository();
+
+            repository.addNode(DEEP_PAGE_CONTENT, SyntheticRepository.UNSTRUCTURED_TYPE);
+            repository.setProperty(DEEP_PAGE_CONTENT, SyntheticRepository.RESOURCE_TYPE_PROPERTY, "benchmark/components/page");
+
+            String currentPath = DEEP_PAGE_CONTENT;
+
+            for (int i = 0; i < depth; i++) {
+                currentPath = currentPath + "/level" + i;
+
+                repository.addNode(currentPath, SyntheticRepository.UNSTRUCTURED_TYPE);
+
+                if (i % 2 == 0) {
+                    repository.setProperty(currentPath, SyntheticRepository.RESOURCE_TYPE_PROPERTY, "benchmark/components/nested" + (i % 5));
+                }
+            }
+
+            pageContent = repository.getResource(DEEP_PAGE_CONTENT);
+
+        }
+
+    }
+
+    @Benchmark
+    public Set<Resource> flattenWidePage(WidePageState state) {
+        return ComponentUtils.flattenResourceTree(state.pageContent, true, strategy, ComponentUtils.DEFAULT_TRAVERSAL_LIMIT);
+    }
+
+    @Benchmark
+    public Set<Resource> flattenDeepPage(DeepPageState state) {
+        return ComponentUtils.flattenResourceTree(state.pageContent, true, strategy, ComponentUtils.DEFAULT_TRAVERSAL_LIMIT);
+    }
+
+}
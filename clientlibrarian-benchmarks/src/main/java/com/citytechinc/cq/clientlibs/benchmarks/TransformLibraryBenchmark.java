@@ -0,0 +1,112 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.benchmarks;
+
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.variables.VariableSubstitution;
+import com.google.common.collect.Maps;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Replacing the variable placeholders of a merged Page Library, the work done by
+ * <code>DefaultClientLibraryRepository.transformLibrary</code> once the variables of the page are known.
+ * </p>
+ * <p>
+ * The library is <code>libraryKilobytes</code> of script with a placeholder every <code>placeholderSpacing</code>
+ * characters.  Placeholders cycle through <code>variableCount</code> variable names, every tenth naming an unknown
+ * variable which is left in place.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformLibraryBenchmark {
+
+    private static final String LIBRARY_LINE = "    window.benchmark.values.push( document.getElementById( 'element' ).offsetWidth );\n";
+
+    @Param({ "64", "1024" })
+    public int libraryKilobytes;
+
+    @Param({ "10", "100" })
+    public int variableCount;
+
+    @Param({ "500" })
+    public int placeholderSpacing;
+
+    private String library;
+    private Map<String, String> variables;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+
+        variables = Maps.newHashMap();
+
+        for (int i = 0; i < variableCount; i++) {
+            variables.put("benchmarkVariable" + i, "value-of-benchmark-variable-" + i);
+        }
+
+        StringBuilder libraryBuilder = new StringBuilder(libraryKilobytes * 1024);
+        int placeholderIndex = 0;
+        int nextPlaceholder = placeholderSpacing;
+
+        while (libraryBuilder.length() < libraryKilobytes * 1024) {
+
+            libraryBuilder.append(LIBRARY_LINE);
+
+            if (libraryBuilder.length() >= nextPlaceholder) {
+                String variableName = placeholderIndex % 10 == 9 ?
+                        "unknownVariable" + placeholderIndex :
+                        "benchmarkVariable" + placeholderIndex % variableCount;
+
+                libraryBuilder.append("    var setting = '")
+                        .append(VariableSubstitution.PLACEHOLDER_START)
+                        .append(variableName)
+                        .append(VariableSubstitution.PLACEHOLDER_END)
+                        .append("';\n");
+
+                placeholderIndex++;
+                nextPlaceholder += placeholderSpacing;
+            }
+
+        }
+
+        library = libraryBuilder.toString();
+
+    }
+
+    @Benchmark
+    public String transformLibrary() {
+        return VariableSubstitution.substitute(library, variables);
+    }
+
+}
@@ -0,0 +1,233 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.benchmarks.load;
+
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.LatencyStatistics;
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.metrics.LatencyHistogram;
+
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>
+ * The measurements taken over one phase of a load simulation.
+ * </p>
+ * <ul>
+ *     <li>Requests answered from the cache of compiled libraries are timed as warm requests, those which compiled a
+ *         library as cold requests.</li>
+ *     <li>Lock contention is the number of times, and the time for which, the request threads were blocked entering
+ *         a monitor or waiting on a lock, as reported by the JVM, along with samples of the lock taken for every Page
+ *         Library compilation.</li>
+ *     <li>Allocation is the memory allocated by the request threads as reported by the JVM, where it supports
+ *         reporting it.</li>
+ * </ul>
+ */
+public class LoadPhase {
+
+    private static final double NANOS_PER_MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final double BYTES_PER_MEGABYTE = 1024 * 1024;
+
+    private final String name;
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    private final LatencyHistogram coldLatency = new LatencyHistogram();
+    private final LatencyHistogram warmLatency = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+    private volatile Throwable firstFailure;
+
+    private final AtomicLong threadCount = new AtomicLong();
+    private final AtomicLong blockedCount = new AtomicLong();
+    private final AtomicLong blockedMillis = new AtomicLong();
+    private final AtomicLong waitedCount = new AtomicLong();
+    private final AtomicLong waitedMillis = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+
+    /*
+     * Only written by the single sampling thread
+     */
+    private volatile long lockSamples;
+    private volatile long writeLockedSamples;
+    private volatile long queuedThreadSamples;
+    private volatile int maximumQueueLength;
+
+    private long startNanos;
+    private long elapsedNanos;
+    private long[] garbageCollectionTotals;
+
+    public LoadPhase(String name) {
+        this.name = name;
+    }
+
+    public void start() {
+        garbageCollectionTotals = getGarbageCollectionTotals();
+        startNanos = System.nanoTime();
+    }
+
+    public void finish() {
+
+        elapsedNanos = System.nanoTime() - startNanos;
+
+        long[] finalGarbageCollectionTotals = getGarbageCollectionTotals();
+
+        garbageCollectionTotals[0] = finalGarbageCollectionTotals[0] - garbageCollectionTotals[0];
+        garbageCollectionTotals[1] = finalGarbageCollectionTotals[1] - garbageCollectionTotals[1];
+
+    }
+
+    public void recordRequest(boolean warm, long durationNanos, long bytes) {
+        (warm ? warmLatency : coldLatency).record(durationNanos);
+        bytesServed.addAndGet(bytes);
+    }
+
+    public void recordError(Throwable failure) {
+
+        errors.incrementAndGet();
+
+        if (failure != null && firstFailure == null) {
+            firstFailure = failure;
+        }
+
+    }
+
+    /**
+     * Takes a snapshot of the contention and allocation counters of the calling thread, to be passed to
+     * {@link #recordThreadUsage(long[])} once the thread has finished its share of the phase.
+     *
+     * @return The counters of the calling thread
+     */
+    public long[] getThreadUsage() {
+
+        long threadId = Thread.currentThread().getId();
+        ThreadInfo threadInfo = threadMXBean.getThreadInfo(threadId);
+
+        return new long[] {
+                threadInfo.getBlockedCount(),
+                Math.max(0, threadInfo.getBlockedTime()),
+                threadInfo.getWaitedCount(),
+                Math.max(0, threadInfo.getWaitedTime()),
+                getAllocatedBytes(threadId) };
+
+    }
+
+    public void recordThreadUsage(long[] initialUsage) {
+
+        long[] finalUsage = getThreadUsage();
+
+        threadCount.incrementAndGet();
+        blockedCount.addAndGet(finalUsage[0] - initialUsage[0]);
+        blockedMillis.addAndGet(finalUsage[1] - initialUsage[1]);
+        waitedCount.addAndGet(finalUsage[2] - initialUsage[2]);
+        waitedMillis.addAndGet(finalUsage[3] - initialUsage[3]);
+        allocatedBytes.addAndGet(finalUsage[4] - initialUsage[4]);
+
+    }
+
+    public void sampleLock(ReentrantReadWriteLock lock) {
+
+        int queueLength = lock.getQueueLength();
+
+        lockSamples++;
+        queuedThreadSamples += queueLength;
+
+        if (lock.isWriteLocked()) {
+            writeLockedSamples++;
+        }
+
+        if (queueLength > maximumQueueLength) {
+            maximumQueueLength = queueLength;
+        }
+
+    }
+
+    public void report(PrintStream out) {
+
+        LatencyStatistics coldStatistics = coldLatency.snapshot();
+        LatencyStatistics warmStatistics = warmLatency.snapshot();
+        long requests = coldStatistics.getCount() + warmStatistics.getCount();
+        double elapsedSeconds = elapsedNanos / (NANOS_PER_MILLISECOND * 1000);
+
+        out.println();
+        out.println("== " + name + " ==");
+        out.println(String.format("Requests            %d in %.1f s, %.1f requests/s, %.2f MB/s served",
+                requests, elapsedSeconds, requests / elapsedSeconds, bytesServed.get() / BYTES_PER_MEGABYTE / elapsedSeconds));
+        out.println(String.format("Errors              %d%s", errors.get(), firstFailure != null ? ", first: " + firstFailure : ""));
+        out.println("Cold latency (ms)   " + formatLatency(coldStatistics));
+        out.println("Warm latency (ms)   " + formatLatency(warmStatistics));
+        out.println(String.format("Contention          blocked %d times for %d ms, waited %d times for %d ms across %d request threads",
+                blockedCount.get(), blockedMillis.get(), waitedCount.get(), waitedMillis.get(), threadCount.get()));
+
+        if (lockSamples > 0) {
+            out.println(String.format("Library cache lock  write locked in %.1f%% of %d samples, %.2f threads queued on average, %d at most",
+                    100.0 * writeLockedSamples / lockSamples, lockSamples, (double) queuedThreadSamples / lockSamples, maximumQueueLength));
+        }
+
+        if (isAllocationReported()) {
+            out.println(String.format("Allocation          %.1f MB by request threads, %.1f MB/s, %.1f KB per request",
+                    allocatedBytes.get() / BYTES_PER_MEGABYTE, allocatedBytes.get() / BYTES_PER_MEGABYTE / elapsedSeconds, requests > 0 ? allocatedBytes.get() / 1024.0 / requests : 0));
+        }
+        else {
+            out.println("Allocation          not reported by this JVM");
+        }
+
+        out.println(String.format("Garbage collection  %d collections taking %d ms", garbageCollectionTotals[0], garbageCollectionTotals[1]));
+
+    }
+
+    private static String formatLatency(LatencyStatistics statistics) {
+
+        if (statistics.getCount() == 0) {
+            return "count 0";
+        }
+
+        return String.format("count %d, mean %.2f, p50 %.2f, p95 %.2f, p99 %.2f, max %.2f",
+                statistics.getCount(),
+                statistics.getMean() / NANOS_PER_MILLISECOND,
+                statistics.getPercentile(50) / NANOS_PER_MILLISECOND,
+                statistics.getPercentile(95) / NANOS_PER_MILLISECOND,
+                statistics.getPercentile(99) / NANOS_PER_MILLISECOND,
+                statistics.getMax() / NANOS_PER_MILLISECOND);
+
+    }
+
+    private boolean isAllocationReported() {
+        return threadMXBean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemoryEnabled();
+    }
+
+    private long getAllocatedBytes(long threadId) {
+        return isAllocationReported() ? ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(threadId) : 0;
+    }
+
+    private static long[] getGarbageCollectionTotals() {
+
+        long[] totals = new long[2];
+
+        for (GarbageCollectorMXBean currentCollector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            totals[0] += Math.max(0, currentCollector.getCollectionCount());
+            totals[1] += Math.max(0, currentCollector.getCollectionTime());
+        }
+
+        return totals;
+
+    }
+
+}
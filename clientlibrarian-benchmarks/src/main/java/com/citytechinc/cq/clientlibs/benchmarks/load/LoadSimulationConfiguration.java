@@ -0,0 +1,195 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.benchmarks.load;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+
+/**
+ * <p>
+ * The parameters of a load simulation, read from <code>key=value</code> arguments.  Any parameter not provided keeps
+ * its default.
+ * </p>
+ * <ul>
+ *     <li>Site: <code>libraries</code>, <code>depth</code>, <code>fanOut</code>, <code>lessPercentage</code>,
+ *         <code>fileLines</code>, <code>components</code>, <code>componentDependencies</code>, <code>pages</code>
+ *         and <code>componentsPerPage</code> shape the generated site - see
+ *         {@link com.citytechinc.cq.clientlibs.benchmarks.synthetic.SyntheticSite}.</li>
+ *     <li>Traffic: <code>threads</code> request Page Libraries for <code>durationSeconds</code> once every page has
+ *         been requested cold.  <code>hotTrafficPercentage</code> percent of requests go to the first
+ *         <code>hotPagePercentage</code> percent of pages.</li>
+ *     <li>Change: <code>contentChangesPerSecond</code>, <code>libraryChangesPerSecond</code> and
+ *         <code>componentChangesPerSecond</code> set how often page content, a Client Library and a component are
+ *         modified while the traffic runs.</li>
+ *     <li>Service: <code>cacheMegabytes</code> sizes the heap cache of compiled libraries.</li>
+ * </ul>
+ */
+public class LoadSimulationConfiguration {
+
+    private static final Map<String, String> DEFAULTS = ImmutableMap.<String, String>builder()
+            .put("libraries", "300")
+            .put("depth", "6")
+            .put("fanOut", "3")
+            .put("lessPercentage", "5")
+            .put("fileLines", "20")
+            .put("components", "50")
+            .put("componentDependencies", "2")
+            .put("pages", "200")
+            .put("componentsPerPage", "20")
+            .put("threads", "8")
+            .put("durationSeconds", "60")
+            .put("hotPagePercentage", "20")
+            .put("hotTrafficPercentage", "80")
+            .put("contentChangesPerSecond", "5")
+            .put("libraryChangesPerSecond", "0.1")
+            .put("componentChangesPerSecond", "0.05")
+            .put("cacheMegabytes", "32")
+            .put("seed", "42")
+            .build();
+
+    private final Map<String, String> values;
+
+    private LoadSimulationConfiguration(Map<String, String> values) {
+        this.values = values;
+    }
+
+    public static LoadSimulationConfiguration fromArguments(String[] arguments) {
+
+        Map<String, String> values = Maps.newLinkedHashMap(DEFAULTS);
+
+        for (String currentArgument : arguments) {
+
+            int separatorIndex = currentArgument.indexOf('=');
+
+            if (separatorIndex < 1 || !DEFAULTS.containsKey(currentArgument.substring(0, separatorIndex))) {
+                throw new IllegalArgumentException("Unrecognized argument " + currentArgument + ", expected key=value where key is one of " + Joiner.on(", ").join(DEFAULTS.keySet()));
+            }
+
+            values.put(currentArgument.substring(0, separatorIndex), currentArgument.substring(separatorIndex + 1));
+
+        }
+
+        return new LoadSimulationConfiguration(values);
+
+    }
+
+    public int getLibraries() {
+        return getInteger("libraries");
+    }
+
+    public int getDepth() {
+        return getInteger("depth");
+    }
+
+    public int getFanOut() {
+        return getInteger("fanOut");
+    }
+
+    public int getLessPercentage() {
+        return getInteger("lessPercentage");
+    }
+
+    public int getFileLines() {
+        return getInteger("fileLines");
+    }
+
+    public int getComponents() {
+        return getInteger("components");
+    }
+
+    public int getComponentDependencies() {
+        return getInteger("componentDependencies");
+    }
+
+    public int getPages() {
+        return getInteger("pages");
+    }
+
+    public int getComponentsPerPage() {
+        return getInteger("componentsPerPage");
+    }
+
+    public int getThreads() {
+        return getInteger("threads");
+    }
+
+    public int getDurationSeconds() {
+        return getInteger("durationSeconds");
+    }
+
+    public int getHotPagePercentage() {
+        return getInteger("hotPagePercentage");
+    }
+
+    public int getHotTrafficPercentage() {
+        return getInteger("hotTrafficPercentage");
+    }
+
+    public double getContentChangesPerSecond() {
+        return getDouble("contentChangesPerSecond");
+    }
+
+    public double getLibraryChangesPerSecond() {
+        return getDouble("libraryChangesPerSecond");
+    }
+
+    public double getComponentChangesPerSecond() {
+        return getDouble("componentChangesPerSecond");
+    }
+
+    public int getCacheMegabytes() {
+        return getInteger("cacheMegabytes");
+    }
+
+    public long getSeed() {
+
+        try {
+            return Long.parseLong(values.get("seed"));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The value of seed must be a whole number, not " + values.get("seed"), e);
+        }
+
+    }
+
+    private int getInteger(String key) {
+
+        try {
+            return Integer.parseInt(values.get(key));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The value of " + key + " must be a whole number, not " + values.get(key), e);
+        }
+
+    }
+
+    private double getDouble(String key) {
+
+        try {
+            return Double.parseDouble(values.get(key));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The value of " + key + " must be a number, not " + values.get(key), e);
+        }
+
+    }
+
+    @Override
+    public String toString() {
+        return Joiner.on(' ').withKeyValueSeparator("=").join(values);
+    }
+
+}
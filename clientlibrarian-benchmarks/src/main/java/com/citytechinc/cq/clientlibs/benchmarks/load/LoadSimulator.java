@@ -0,0 +1,396 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.benchmarks.load;
+
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.ClientLibraryMetrics;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.CompilationPhase;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.InvalidationCause;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.LatencyStatistics;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.LibraryTypeStatistics;
+import com.citytechinc.cq.clientlibs.benchmarks.synthetic.SyntheticSite;
+import com.google.common.collect.Lists;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * Drives the {@link com.citytechinc.cq.clientlibs.core.servlets.ComponentClientLibraryServlet}, wired to the Client
+ * Librarian's own services over a generated site, with concurrent requests for Page Libraries while the site is
+ * being modified.
+ * </p>
+ * <p>
+ * The simulation runs in two phases.  The cold pass requests the JS and CSS library of every page once, spread over
+ * the request threads, so nearly every request compiles a library.  The steady phase then has every request thread
+ * issue requests back to back for the configured duration, mostly for a small set of hot pages, while page content,
+ * Client Libraries and components are modified at the configured rates.  Each modification invalidates compiled
+ * libraries the way an author's change would, so the steady phase mixes warm requests with cold ones.
+ * </p>
+ * <p>
+ * Run with <code>key=value</code> arguments as described by {@link LoadSimulationConfiguration}.
+ * </p>
+ */
+public class LoadSimulator {
+
+    private static final long LOCK_SAMPLE_INTERVAL_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+    private static final LibraryType[] LIBRARY_TYPES = { LibraryType.JS, LibraryType.CSS };
+
+    private final LoadSimulationConfiguration configuration;
+    private final PrintStream out;
+
+    private final AtomicLong pageModifications = new AtomicLong();
+    private final AtomicLong libraryModifications = new AtomicLong();
+    private final AtomicLong componentModifications = new AtomicLong();
+    private final AtomicLong failedModifications = new AtomicLong();
+
+    public LoadSimulator(LoadSimulationConfiguration configuration, PrintStream out) {
+        this.configuration = configuration;
+        this.out = out;
+    }
+
+    public static void main(String[] arguments) throws InterruptedException {
+        new LoadSimulator(LoadSimulationConfiguration.fromArguments(arguments), System.out).run();
+    }
+
+    public void run() throws InterruptedException {
+
+        out.println("Load simulation with " + configuration);
+
+        long generationStart = System.nanoTime();
+
+        SyntheticSite site = SyntheticSite.generate(
+                configuration.getLibraries(),
+                configuration.getDepth(),
+                configuration.getFanOut(),
+                configuration.getLessPercentage(),
+                configuration.getFileLines(),
+                configuration.getComponents(),
+                configuration.getComponentDependencies(),
+                configuration.getPages(),
+                configuration.getComponentsPerPage(),
+                configuration.getSeed());
+
+        out.println(String.format("Generated %d nodes in %d ms", site.getRepository().getNodeCount(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - generationStart)));
+
+        ServiceWiring services = ServiceWiring.wire(site.getRepository(), configuration.getCacheMegabytes());
+
+        long refreshStart = System.nanoTime();
+
+        services.getClientLibraryManager().requestRefresh();
+        services.getDependentComponentManager().requestRefresh();
+
+        out.println(String.format("Loaded %d Client Libraries and %d components in %d ms",
+                services.getClientLibraryManager().getClientLibraryCount(),
+                services.getDependentComponentManager().getComponents().size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - refreshStart)));
+
+        enableThreadMonitoring();
+
+        /*
+         * Cold pass - every library of every page, once
+         */
+        List<PageLibraryRequest> allRequests = Lists.newArrayListWithCapacity(configuration.getPages() * LIBRARY_TYPES.length);
+
+        for (int i = 0; i < configuration.getPages(); i++) {
+            for (LibraryType currentType : LIBRARY_TYPES) {
+                allRequests.add(new PageLibraryRequest(i, currentType));
+            }
+        }
+
+        Collections.shuffle(allRequests, new Random(configuration.getSeed()));
+
+        final ConcurrentLinkedQueue<PageLibraryRequest> coldRequests = new ConcurrentLinkedQueue<PageLibraryRequest>(allRequests);
+
+        LoadPhase coldPass = runPhase("Cold pass", site, services, new RequestSource() {
+            @Override
+            public PageLibraryRequest next(Random random) {
+                return coldRequests.poll();
+            }
+        });
+
+        /*
+         * Steady phase - hot and cold pages under modification
+         */
+        final int pageCount = configuration.getPages();
+        final int hotPageCount = Math.max(1, pageCount * configuration.getHotPagePercentage() / 100);
+        final int hotTrafficPercentage = configuration.getHotTrafficPercentage();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(configuration.getDurationSeconds());
+
+        ScheduledExecutorService modificationExecutor = startModifications(site);
+
+        LoadPhase steadyPhase = runPhase("Steady phase", site, services, new RequestSource() {
+            @Override
+            public PageLibraryRequest next(Random random) {
+                if (System.nanoTime() >= deadline) {
+                    return null;
+                }
+
+                int pageIndex = random.nextInt(100) < hotTrafficPercentage ? random.nextInt(hotPageCount) : random.nextInt(pageCount);
+
+                return new PageLibraryRequest(pageIndex, LIBRARY_TYPES[random.nextInt(LIBRARY_TYPES.length)]);
+            }
+        });
+
+        modificationExecutor.shutdownNow();
+        modificationExecutor.awaitTermination(1, TimeUnit.MINUTES);
+
+        coldPass.report(out);
+        steadyPhase.report(out);
+        reportModifications();
+        reportServiceMetrics(services.getMetrics());
+
+    }
+
+    private LoadPhase runPhase(String name, final SyntheticSite site, final ServiceWiring services, final RequestSource requestSource) throws InterruptedException {
+
+        final LoadPhase phase = new LoadPhase(name);
+        List<Thread> requestThreads = Lists.newArrayListWithCapacity(configuration.getThreads());
+
+        for (int i = 0; i < configuration.getThreads(); i++) {
+
+            final Random random = new Random(configuration.getSeed() + i);
+
+            requestThreads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+
+                    long[] initialUsage = phase.getThreadUsage();
+
+                    for (PageLibraryRequest currentRequest = requestSource.next(random); currentRequest != null; currentRequest = requestSource.next(random)) {
+                        serve(currentRequest, site, services, phase);
+                    }
+
+                    phase.recordThreadUsage(initialUsage);
+
+                }
+            }, "load-simulator-request-" + i));
+
+        }
+
+        final Thread samplingThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!Thread.currentThread().isInterrupted()) {
+                    phase.sampleLock(services.getLibraryCacheLock());
+                    LockSupport.parkNanos(LOCK_SAMPLE_INTERVAL_NANOS);
+                }
+            }
+        }, "load-simulator-lock-sampler");
+
+        samplingThread.setDaemon(true);
+
+        phase.start();
+        samplingThread.start();
+
+        for (Thread currentThread : requestThreads) {
+            currentThread.start();
+        }
+
+        for (Thread currentThread : requestThreads) {
+            currentThread.join();
+        }
+
+        phase.finish();
+        samplingThread.interrupt();
+        samplingThread.join();
+
+        return phase;
+
+    }
+
+    private static void serve(PageLibraryRequest request, SyntheticSite site, ServiceWiring services, LoadPhase phase) {
+
+        SimulatedExchange exchange = new SimulatedExchange(site.getRepository().getResource(site.getPagePaths().get(request.pageIndex)), request.type);
+        RequestClassifyingMetrics metrics = services.getMetrics();
+
+        metrics.beginRequest();
+
+        long start = System.nanoTime();
+
+        try {
+            services.getServlet().doGet(exchange.getRequest(), exchange.getResponse());
+        } catch (Exception e) {
+            phase.recordError(e);
+            return;
+        }
+
+        long duration = System.nanoTime() - start;
+
+        if (exchange.getStatus() != HttpServletResponse.SC_OK) {
+            phase.recordError(null);
+            return;
+        }
+
+        phase.recordRequest(Boolean.TRUE.equals(metrics.wasCacheHit()), duration, exchange.getBytesWritten());
+
+    }
+
+    /**
+     * Modifications are applied from a single thread, as the JCR delivers observation events from a single thread,
+     * so the listeners of the services run on it as well
+     */
+    private ScheduledExecutorService startModifications(final SyntheticSite site) {
+
+        ScheduledExecutorService modificationExecutor = Executors.newSingleThreadScheduledExecutor();
+        final Random random = new Random(configuration.getSeed());
+
+        schedule(modificationExecutor, configuration.getContentChangesPerSecond(), new Runnable() {
+            @Override
+            public void run() {
+                site.modifyPage(random.nextInt(site.getPagePaths().size()), pageModifications.incrementAndGet());
+            }
+        });
+
+        schedule(modificationExecutor, configuration.getLibraryChangesPerSecond(), new Runnable() {
+            @Override
+            public void run() {
+                site.modifyLibrary(random.nextInt(site.getLibraryPaths().size()), libraryModifications.incrementAndGet());
+            }
+        });
+
+        schedule(modificationExecutor, configuration.getComponentChangesPerSecond(), new Runnable() {
+            @Override
+            public void run() {
+                site.modifyComponent(random.nextInt(site.getComponentPaths().size()), random);
+                componentModifications.incrementAndGet();
+            }
+        });
+
+        return modificationExecutor;
+
+    }
+
+    private void schedule(ScheduledExecutorService executor, double perSecond, final Runnable modification) {
+
+        if (perSecond <= 0) {
+            return;
+        }
+
+        long periodNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / perSecond));
+
+        /*
+         * A scheduled task which throws is never run again, so failures are counted rather than thrown
+         */
+        executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    modification.run();
+                } catch (RuntimeException e) {
+                    failedModifications.incrementAndGet();
+                }
+            }
+        }, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+
+    }
+
+    private void enableThreadMonitoring() {
+
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+        if (threadMXBean.isThreadContentionMonitoringSupported()) {
+            threadMXBean.setThreadContentionMonitoringEnabled(true);
+        }
+
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemorySupported()) {
+            ((com.sun.management.ThreadMXBean) threadMXBean).setThreadAllocatedMemoryEnabled(true);
+        }
+
+    }
+
+    private void reportModifications() {
+
+        out.println();
+        out.println("== Modifications ==");
+        out.println(String.format("Pages %d, Client Libraries %d, components %d, failed %d",
+                pageModifications.get(), libraryModifications.get(), componentModifications.get(), failedModifications.get()));
+
+    }
+
+    private void reportServiceMetrics(ClientLibraryMetrics metrics) {
+
+        out.println();
+        out.println("== Service metrics ==");
+
+        for (LibraryType currentType : LIBRARY_TYPES) {
+            LibraryTypeStatistics currentStatistics = metrics.getStatistics(currentType);
+
+            out.println(String.format("%-4s lookups %d, hit ratio %.3f, compilations %d, failures %d, compilation mean %.2f ms, p99 %.2f ms",
+                    currentType,
+                    currentStatistics.getCacheLookupCount(),
+                    currentStatistics.getCacheHitRatio(),
+                    currentStatistics.getCompilationCount(),
+                    currentStatistics.getCompilationFailureCount(),
+                    currentStatistics.getCompilationLatency().getMean() / 1e6,
+                    currentStatistics.getCompilationLatency().getPercentile(99) / 1e6));
+        }
+
+        StringBuilder invalidations = new StringBuilder("Invalidations");
+
+        for (Map.Entry<InvalidationCause, Long> currentInvalidationCount : metrics.getInvalidationCounts().entrySet()) {
+            invalidations.append(' ').append(currentInvalidationCount.getKey()).append(' ').append(currentInvalidationCount.getValue());
+        }
+
+        out.println(invalidations);
+
+        for (CompilationPhase currentPhase : CompilationPhase.values()) {
+            LatencyStatistics currentStatistics = metrics.getPhaseStatistics(currentPhase);
+
+            if (currentStatistics.getCount() > 0) {
+                out.println(String.format("Phase %-20s count %d, mean %.3f ms, p99 %.3f ms",
+                        currentPhase, currentStatistics.getCount(), currentStatistics.getMean() / 1e6, currentStatistics.getPercentile(99) / 1e6));
+            }
+        }
+
+    }
+
+    private interface RequestSource {
+
+        /**
+         *
+         * @param random The random source of the calling request thread
+         * @return The next request to make or null once the phase is over
+         */
+        public PageLibraryRequest next(Random random);
+
+    }
+
+    private static class PageLibraryRequest {
+
+        private final int pageIndex;
+        private final LibraryType type;
+
+        private PageLibraryRequest(int pageIndex, LibraryType type) {
+            this.pageIndex = pageIndex;
+            this.type = type;
+        }
+
+    }
+
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.benchmarks.load;
+
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.ClientLibraryMetrics;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.CompilationPhase;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.InvalidationCause;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.LatencyStatistics;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.LibraryTypeStatistics;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.SlowCompilation;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Passes every recording on to the metrics the services would otherwise be given while remembering, for the calling
+ * thread, whether the first cache lookup since {@link #beginRequest()} was a hit.  This lets the simulator tell the
+ * requests served from the cache apart from those which compiled a library without timing the two separately inside
+ * the services.
+ */
+public class RequestClassifyingMetrics implements ClientLibraryMetrics {
+
+    private final ClientLibraryMetrics delegate;
+    private final ThreadLocal<Boolean> firstLookupHit = new ThreadLocal<Boolean>();
+
+    public RequestClassifyingMetrics(ClientLibraryMetrics delegate) {
+        this.delegate = delegate;
+    }
+
+    public void beginRequest() {
+        firstLookupHit.remove();
+    }
+
+    /**
+     *
+     * @return Whether the first cache lookup made by the calling thread since the request began was a hit, or null
+     *         if no lookup was made
+     */
+    public Boolean wasCacheHit() {
+        return firstLookupHit.get();
+    }
+
+    @Override
+    public void recordCacheLookup(LibraryType type, boolean hit, long durationNanos) {
+
+        if (firstLookupHit.get() == null) {
+            firstLookupHit.set(hit);
+        }
+
+        delegate.recordCacheLookup(type, hit, durationNanos);
+
+    }
+
+    @Override
+    public void recordCompilation(LibraryType type, long durationNanos) {
+        delegate.recordCompilation(type, durationNanos);
+    }
+
+    @Override
+    public void recordCompilationFailure(LibraryType type) {
+        delegate.recordCompilationFailure(type);
+    }
+
+    @Override
+    public void recordPhase(CompilationPhase phase, long durationNanos) {
+        delegate.recordPhase(phase, durationNanos);
+    }
+
+    @Override
+    public void recordBytesServed(LibraryType type, long bytes) {
+        delegate.recordBytesServed(type, bytes);
+    }
+
+    @Override
+    public void recordInvalidation(InvalidationCause cause) {
+        delegate.recordInvalidation(cause);
+    }
+
+    @Override
+    public boolean isSlowCompilation(long durationMillis) {
+        return delegate.isSlowCompilation(durationMillis);
+    }
+
+    @Override
+    public void recordSlowCompilation(SlowCompilation compilation) {
+        delegate.recordSlowCompilation(compilation);
+    }
+
+    @Override
+    public LibraryTypeStatistics getStatistics(LibraryType type) {
+        return delegate.getStatistics(type);
+    }
+
+    @Override
+    public Map<InvalidationCause, Long> getInvalidationCounts() {
+        return delegate.getInvalidationCounts();
+    }
+
+    @Override
+    public LatencyStatistics getPhaseStatistics(CompilationPhase phase) {
+        return delegate.getPhaseStatistics(phase);
+    }
+
+    @Override
+    public List<SlowCompilation> getSlowCompilations() {
+        return delegate.getSlowCompilations();
+    }
+
+    @Override
+    public void reset() {
+        delegate.reset();
+    }
+
+}
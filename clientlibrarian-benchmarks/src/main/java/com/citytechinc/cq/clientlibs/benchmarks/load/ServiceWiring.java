@@ -0,0 +1,241 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.benchmarks.load;
+
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.ClientLibraryManager;
+import com.citytechinc.cq.clientlibs.api.services.components.DependentComponentManager;
+import com.citytechinc.cq.clientlibs.benchmarks.synthetic.SyntheticRepository;
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.cache.impl.DefaultResourceTypeCacheManager;
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.cache.impl.HeapClientLibraryCacheManager;
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.compilers.less.impl.RhinoLessCompiler;
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.compilers.minify.impl.DefaultMinifier;
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.impl.DefaultClientLibraryManager;
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.impl.DefaultClientLibraryRepository;
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.impl.DefaultResourceDependencyProvider;
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.metrics.impl.DefaultClientLibraryMetrics;
+import com.citytechinc.cq.clientlibs.core.services.components.impl.DefaultDependentComponentManager;
+import com.citytechinc.cq.clientlibs.core.servlets.ComponentClientLibraryServlet;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.apache.sling.settings.SlingSettingsService;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>
+ * The Client Librarian's own services, wired together over a {@link SyntheticRepository} as the OSGi container would
+ * wire them: references are set on the fields SCR would set, dynamic references are bound through their bind methods
+ * and each service is then activated with an empty configuration, other than the capacity of the heap cache.
+ * </p>
+ * <p>
+ * The services are those of a default installation - the heap cache, the Rhino LESS compiler and the default
+ * minifier, Client Library and Dependent Component managers and Resource Dependency Provider.  Run modes are fixed at
+ * <code>publish</code>.
+ * </p>
+ */
+public class ServiceWiring {
+
+    public static final Set<String> RUN_MODES = ImmutableSet.of("publish");
+
+    private final ComponentClientLibraryServlet servlet;
+    private final ClientLibraryManager clientLibraryManager;
+    private final DependentComponentManager dependentComponentManager;
+    private final RequestClassifyingMetrics metrics;
+    private final ReentrantReadWriteLock libraryCacheLock;
+
+    private ServiceWiring(ComponentClientLibraryServlet servlet, ClientLibraryManager clientLibraryManager, DependentComponentManager dependentComponentManager, RequestClassifyingMetrics metrics, ReentrantReadWriteLock libraryCacheLock) {
+        this.servlet = servlet;
+        this.clientLibraryManager = clientLibraryManager;
+        this.dependentComponentManager = dependentComponentManager;
+        this.metrics = metrics;
+        this.libraryCacheLock = libraryCacheLock;
+    }
+
+    public static ServiceWiring wire(SyntheticRepository repository, int cacheMegabytes) {
+
+        Map<String, Object> emptyConfiguration = Collections.emptyMap();
+
+        DefaultClientLibraryMetrics defaultMetrics = new DefaultClientLibraryMetrics();
+        invoke(defaultMetrics, "configure", emptyConfiguration);
+
+        RequestClassifyingMetrics metrics = new RequestClassifyingMetrics(defaultMetrics);
+
+        HeapClientLibraryCacheManager clientLibraryCacheManager = new HeapClientLibraryCacheManager();
+        inject(clientLibraryCacheManager, "clientLibraryMetrics", metrics);
+        invoke(clientLibraryCacheManager, "activate", ImmutableMap.<String, Object>of("capacityMegabytes", cacheMegabytes));
+
+        DefaultResourceTypeCacheManager resourceTypeCacheManager = new DefaultResourceTypeCacheManager();
+        invoke(resourceTypeCacheManager, "activate", emptyConfiguration);
+
+        DefaultClientLibraryManager clientLibraryManager = new DefaultClientLibraryManager();
+        inject(clientLibraryManager, "resourceResolverFactory", repository.getResourceResolverFactory());
+        inject(clientLibraryManager, "repository", repository.getSlingRepository());
+        inject(clientLibraryManager, "clientLibraryCacheManager", clientLibraryCacheManager);
+        inject(clientLibraryManager, "clientLibraryMetrics", metrics);
+        invoke(clientLibraryManager, "activate", emptyConfiguration);
+
+        DefaultDependentComponentManager dependentComponentManager = new DefaultDependentComponentManager();
+        inject(dependentComponentManager, "resourceResolverFactory", repository.getResourceResolverFactory());
+        inject(dependentComponentManager, "repository", repository.getSlingRepository());
+        inject(dependentComponentManager, "clientLibraryCacheManager", clientLibraryCacheManager);
+        inject(dependentComponentManager, "clientLibraryMetrics", metrics);
+        invoke(dependentComponentManager, "activate", emptyConfiguration);
+
+        DefaultResourceDependencyProvider resourceDependencyProvider = new DefaultResourceDependencyProvider();
+        inject(resourceDependencyProvider, "clientLibraryManager", clientLibraryManager);
+        inject(resourceDependencyProvider, "dependentComponentManager", dependentComponentManager);
+        inject(resourceDependencyProvider, "resourceTypeCacheManager", resourceTypeCacheManager);
+        invoke(resourceDependencyProvider, "activate", emptyConfiguration);
+
+        DefaultClientLibraryRepository clientLibraryRepository = new DefaultClientLibraryRepository();
+        inject(clientLibraryRepository, "clientLibraryManager", clientLibraryManager);
+        inject(clientLibraryRepository, "dependentComponentManager", dependentComponentManager);
+        inject(clientLibraryRepository, "lessCompiler", new RhinoLessCompiler());
+        inject(clientLibraryRepository, "minifier", new DefaultMinifier());
+        inject(clientLibraryRepository, "slingSettingsService", newSlingSettingsService());
+        inject(clientLibraryRepository, "clientLibraryCacheManager", clientLibraryCacheManager);
+        inject(clientLibraryRepository, "resourceTypeCacheManager", resourceTypeCacheManager);
+        inject(clientLibraryRepository, "clientLibraryMetrics", metrics);
+        inject(clientLibraryRepository, "repository", repository.getSlingRepository());
+        invoke(clientLibraryRepository, "bindDependencyProvider", resourceDependencyProvider);
+        invoke(clientLibraryRepository, "activate", emptyConfiguration);
+
+        ComponentClientLibraryServlet servlet = new ComponentClientLibraryServlet();
+        inject(servlet, "clientLibraryRepository", clientLibraryRepository);
+        inject(servlet, "clientLibraryMetrics", metrics);
+
+        return new ServiceWiring(servlet, clientLibraryManager, dependentComponentManager, metrics, (ReentrantReadWriteLock) read(clientLibraryRepository, "libraryCacheReadWriteLock"));
+
+    }
+
+    private static SlingSettingsService newSlingSettingsService() {
+
+        return (SlingSettingsService) Proxy.newProxyInstance(ServiceWiring.class.getClassLoader(), new Class<?>[] { SlingSettingsService.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("getRunModes".equals(method.getName())) {
+                    return RUN_MODES;
+                }
+                if ("toString".equals(method.getName())) {
+                    return "SlingSettingsService " + RUN_MODES;
+                }
+
+                throw new UnsupportedOperationException(method.getName() + " is not supported by the simulated Sling Settings Service");
+            }
+        });
+
+    }
+
+    private static void inject(Object target, String fieldName, Object value) {
+
+        try {
+            Field field = findField(target.getClass(), fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Unable to set " + fieldName + " on " + target.getClass().getName(), e);
+        }
+
+    }
+
+    private static Object read(Object target, String fieldName) {
+
+        try {
+            Field field = findField(target.getClass(), fieldName);
+            field.setAccessible(true);
+            return field.get(target);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Unable to read " + fieldName + " of " + target.getClass().getName(), e);
+        }
+
+    }
+
+    private static void invoke(Object target, String methodName, Object argument) {
+
+        Method method = findMethod(target.getClass(), methodName);
+
+        try {
+            method.setAccessible(true);
+            method.invoke(target, argument);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Unable to call " + methodName + " on " + target.getClass().getName(), e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Call to " + methodName + " on " + target.getClass().getName() + " failed", e.getCause());
+        }
+
+    }
+
+    private static Field findField(Class<?> type, String fieldName) {
+
+        for (Class<?> currentType = type; currentType != null; currentType = currentType.getSuperclass()) {
+            try {
+                return currentType.getDeclaredField(fieldName);
+            } catch (NoSuchFieldException e) {
+                // Look further up the hierarchy
+            }
+        }
+
+        throw new IllegalStateException(type.getName() + " has no field named " + fieldName);
+
+    }
+
+    private static Method findMethod(Class<?> type, String methodName) {
+
+        for (Class<?> currentType = type; currentType != null; currentType = currentType.getSuperclass()) {
+            for (Method currentMethod : currentType.getDeclaredMethods()) {
+                if (currentMethod.getName().equals(methodName) && currentMethod.getParameterTypes().length == 1) {
+                    return currentMethod;
+                }
+            }
+        }
+
+        throw new IllegalStateException(type.getName() + " has no single argument method named " + methodName);
+
+    }
+
+    public ComponentClientLibraryServlet getServlet() {
+        return servlet;
+    }
+
+    public ClientLibraryManager getClientLibraryManager() {
+        return clientLibraryManager;
+    }
+
+    public DependentComponentManager getDependentComponentManager() {
+        return dependentComponentManager;
+    }
+
+    public RequestClassifyingMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     *
+     * @return The lock every Page Library compilation takes for writing
+     */
+    public ReentrantReadWriteLock getLibraryCacheLock() {
+        return libraryCacheLock;
+    }
+
+}
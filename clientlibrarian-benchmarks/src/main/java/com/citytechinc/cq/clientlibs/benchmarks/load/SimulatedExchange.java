@@ -0,0 +1,169 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.benchmarks.load;
+
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType;
+import com.citytechinc.cq.clientlibs.core.servlets.ComponentClientLibraryServlet;
+import com.google.common.base.Charsets;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.resource.Resource;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * A single request for the Page Library of a page along with the response to it.  The response body is counted
+ * rather than kept.  Only the parts of the request and response used by the {@link ComponentClientLibraryServlet}
+ * are supported.
+ */
+public class SimulatedExchange {
+
+    private final SlingHttpServletRequest request;
+    private final SlingHttpServletResponse response;
+    private final CountingOutputStream outputStream = new CountingOutputStream();
+
+    private int status = HttpServletResponse.SC_OK;
+
+    public SimulatedExchange(final Resource page, final LibraryType type) {
+
+        final String extension = type == LibraryType.JS ? LibraryType.JS_EXTENSION : LibraryType.CSS_EXTENSION;
+
+        final RequestPathInfo requestPathInfo = newProxy(RequestPathInfo.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String methodName = method.getName();
+
+                if ("getExtension".equals(methodName)) {
+                    return extension;
+                }
+                if ("getSelectors".equals(methodName)) {
+                    return new String[] { ComponentClientLibraryServlet.SELECTOR };
+                }
+                if ("getSelectorString".equals(methodName)) {
+                    return ComponentClientLibraryServlet.SELECTOR;
+                }
+                if ("getResourcePath".equals(methodName)) {
+                    return page.getPath();
+                }
+                if ("getSuffix".equals(methodName)) {
+                    return null;
+                }
+
+                return unsupported(method);
+            }
+        });
+
+        request = newProxy(SlingHttpServletRequest.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String methodName = method.getName();
+
+                if ("getRequestPathInfo".equals(methodName)) {
+                    return requestPathInfo;
+                }
+                if ("getResource".equals(methodName)) {
+                    return page;
+                }
+                if ("getResourceResolver".equals(methodName)) {
+                    return page.getResourceResolver();
+                }
+                if ("getMethod".equals(methodName)) {
+                    return "GET";
+                }
+                if ("getRequestURI".equals(methodName) || "toString".equals(methodName)) {
+                    return page.getPath() + "." + ComponentClientLibraryServlet.SELECTOR + "." + extension;
+                }
+
+                return unsupported(method);
+            }
+        });
+
+        response = newProxy(SlingHttpServletResponse.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String methodName = method.getName();
+
+                if ("setContentType".equals(methodName) || "setCharacterEncoding".equals(methodName) || "setContentLength".equals(methodName)) {
+                    return null;
+                }
+                if ("getOutputStream".equals(methodName)) {
+                    return outputStream;
+                }
+                if ("getWriter".equals(methodName)) {
+                    return new PrintWriter(new OutputStreamWriter(outputStream, Charsets.UTF_8), true);
+                }
+                if ("sendError".equals(methodName) || "setStatus".equals(methodName)) {
+                    status = (Integer) args[0];
+                    return null;
+                }
+                if ("toString".equals(methodName)) {
+                    return "Response to " + request;
+                }
+
+                return unsupported(method);
+            }
+        });
+
+    }
+
+    public SlingHttpServletRequest getRequest() {
+        return request;
+    }
+
+    public SlingHttpServletResponse getResponse() {
+        return response;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public long getBytesWritten() {
+        return outputStream.count;
+    }
+
+    private static Object unsupported(Method method) {
+        throw new UnsupportedOperationException(method.getName() + " is not supported by the simulated exchange");
+    }
+
+    private static <T> T newProxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(SimulatedExchange.class.getClassLoader(), new Class<?>[] { type }, handler));
+    }
+
+    private static class CountingOutputStream extends ServletOutputStream {
+
+        private long count = 0;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+
+    }
+
+}
@@ -0,0 +1,310 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.benchmarks.synthetic;
+
+import com.citytechinc.cq.clientlibs.api.domain.component.DependentComponent;
+import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary;
+import com.citytechinc.cq.clientlibs.api.domain.sling.runmode.SlingRunModeGroup;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.ClientLibraryManager;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.ResourceDependencyProvider;
+import com.citytechinc.cq.clientlibs.api.services.components.DependentComponentManager;
+import com.citytechinc.cq.clientlibs.core.domain.library.ClientLibraries;
+import com.citytechinc.cq.clientlibs.core.structures.graph.dag.DirectedAcyclicGraph;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.sling.api.resource.Resource;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * <p>
+ * A generated set of Client Libraries standing in for the registry kept by the {@link ClientLibraryManager}.
+ * </p>
+ * <p>
+ * Libraries are laid out in <code>depth</code> levels of roughly equal size.  Each library answers to a single
+ * category of its own and, above the first level, depends on <code>fanOut</code> distinct libraries picked at random
+ * from the level below, so the longest dependency chain is <code>depth</code> libraries long.  The libraries of the top
+ * level are the ones a page asks for.  Libraries have no inclusion files - the cost of reading those is measured
+ * separately.  The same parameters and seed always produce the same registry.
+ * </p>
+ */
+public class SyntheticRegistry {
+
+    public static final String LIBRARY_ROOT = "/apps/benchmark/clientlibs";
+    public static final String PAGE_PATH = "/content/benchmark/page";
+    public static final String CATEGORY_PREFIX = "benchmark.library";
+
+    private final List<List<ClientLibrary>> levels;
+    private final Set<ClientLibrary> libraries;
+    private final Map<String, Set<ClientLibrary>> librariesByCategory;
+    private final Resource page;
+    private final int dependencyCount;
+
+    private SyntheticRegistry(List<List<ClientLibrary>> levels, Map<String, Set<ClientLibrary>> librariesByCategory, Resource page, int dependencyCount) {
+        this.levels = levels;
+        this.librariesByCategory = librariesByCategory;
+        this.page = page;
+        this.dependencyCount = dependencyCount;
+
+        ImmutableSet.Builder<ClientLibrary> librariesBuilder = ImmutableSet.builder();
+
+        for (List<ClientLibrary> currentLevel : levels) {
+            librariesBuilder.addAll(currentLevel);
+        }
+
+        this.libraries = librariesBuilder.build();
+    }
+
+    public static SyntheticRegistry generate(int libraryCount, int depth, int fanOut, long seed) {
+
+        if (libraryCount < depth || depth < 1 || fanOut < 0) {
+            throw new IllegalArgumentException("A registry of " + libraryCount + " libraries can not be " + depth + " levels deep with a fan out of " + fanOut);
+        }
+
+        Random random = new Random(seed);
+        SyntheticRepository repository = new SyntheticRepository();
+
+        List<List<ClientLibrary>> levels = Lists.newArrayListWithCapacity(depth);
+        Map<String, Set<ClientLibrary>> librariesByCategory = Maps.newHashMapWithExpectedSize(libraryCount);
+        int dependencyCount = 0;
+
+        int levelSize = libraryCount / depth;
+        int libraryIndex = 0;
+
+        for (int currentDepth = 0; currentDepth < depth; currentDepth++) {
+
+            /*
+             * The remainder goes to the first level so that every level above it has the same size
+             */
+            int currentLevelSize = currentDepth == 0 ? levelSize + libraryCount % depth : levelSize;
+            List<ClientLibrary> currentLevel = Lists.newArrayListWithCapacity(currentLevelSize);
+
+            for (int i = 0; i < currentLevelSize; i++) {
+
+                List<String> dependencies = currentDepth == 0 ?
+                        Collections.<String>emptyList() :
+                        pickCategories(levels.get(currentDepth - 1), fanOut, random);
+
+                String category = CATEGORY_PREFIX + libraryIndex;
+                String path = LIBRARY_ROOT + "/level" + currentDepth + "/library" + libraryIndex;
+
+                repository.addFolder(path);
+
+                ClientLibrary library = ClientLibraries.newDefaultClientLibrary(
+                        Sets.newHashSet(category),
+                        repository.getResource(path),
+                        Collections.<String>emptyList(),
+                        dependencies,
+                        Collections.<String>emptyList(),
+                        Collections.<SlingRunModeGroup>emptySet(),
+                        Collections.<String>emptySet());
+
+                currentLevel.add(library);
+                librariesByCategory.put(category, Collections.singleton(library));
+                dependencyCount += dependencies.size();
+                libraryIndex++;
+
+            }
+
+            levels.add(currentLevel);
+
+        }
+
+        repository.addFolder(PAGE_PATH);
+
+        return new SyntheticRegistry(levels, librariesByCategory, repository.getResource(PAGE_PATH), dependencyCount);
+
+    }
+
+    private static List<String> pickCategories(List<ClientLibrary> candidates, int count, Random random) {
+
+        Set<String> picked = Sets.newLinkedHashSet();
+        int pickCount = Math.min(count, candidates.size());
+
+        while (picked.size() < pickCount) {
+            picked.add(candidates.get(random.nextInt(candidates.size())).getCategories().iterator().next());
+        }
+
+        return Lists.newArrayList(picked);
+
+    }
+
+    public Set<ClientLibrary> getLibraries() {
+        return libraries;
+    }
+
+    public Map<String, Set<ClientLibrary>> getLibrariesByCategory() {
+        return librariesByCategory;
+    }
+
+    /**
+     *
+     * @return The libraries of the top level, those a page rendering against this registry depends on directly
+     */
+    public Set<ClientLibrary> getPageLibraries() {
+        return ImmutableSet.copyOf(levels.get(levels.size() - 1));
+    }
+
+    public Resource getPage() {
+        return page;
+    }
+
+    public int getDependencyCount() {
+        return dependencyCount;
+    }
+
+    /**
+     *
+     * @return A graph of every library in the registry with an edge from each library to each of its dependencies
+     */
+    public DirectedAcyclicGraph<ClientLibrary> toDependencyGraph() {
+
+        DirectedAcyclicGraph<ClientLibrary> graph = new DirectedAcyclicGraph<ClientLibrary>();
+
+        for (ClientLibrary currentLibrary : libraries) {
+            graph.addNode(currentLibrary);
+        }
+
+        for (ClientLibrary currentLibrary : libraries) {
+            for (String currentDependency : currentLibrary.getDependencies()) {
+                for (ClientLibrary currentDependencyLibrary : librariesByCategory.get(currentDependency)) {
+                    graph.addEdge(currentLibrary, currentDependencyLibrary);
+                }
+            }
+        }
+
+        return graph;
+
+    }
+
+    public ClientLibraryManager newClientLibraryManager() {
+        return new SyntheticClientLibraryManager();
+    }
+
+    public DependentComponentManager newDependentComponentManager() {
+        return new SyntheticDependentComponentManager();
+    }
+
+    /**
+     *
+     * @return A provider answering the page libraries for any resource
+     */
+    public ResourceDependencyProvider newPageDependencyProvider() {
+
+        final Set<ClientLibrary> pageLibraries = getPageLibraries();
+
+        return new ResourceDependencyProvider() {
+            @Override
+            public Set<ClientLibrary> getDependenciesForResource(Resource r) {
+                return pageLibraries;
+            }
+        };
+
+    }
+
+    private class SyntheticClientLibraryManager implements ClientLibraryManager {
+
+        @Override
+        public ClientLibrary getLibrary(String path) {
+
+            for (ClientLibrary currentLibrary : libraries) {
+                if (currentLibrary.getClientLibraryPath().equals(path)) {
+                    return currentLibrary;
+                }
+            }
+
+            return null;
+
+        }
+
+        @Override
+        public Set<ClientLibrary> getLibraries() {
+            return libraries;
+        }
+
+        @Override
+        public Set<ClientLibrary> getLibrariesForCategory(String category) {
+            return librariesByCategory.containsKey(category) ? librariesByCategory.get(category) : Collections.<ClientLibrary>emptySet();
+        }
+
+        @Override
+        public Map<String, Set<ClientLibrary>> getLibrariesByCategory() {
+            return librariesByCategory;
+        }
+
+        @Override
+        public Integer getClientLibraryCount() {
+            return libraries.size();
+        }
+
+        @Override
+        public Long getVersion() {
+            return 0L;
+        }
+
+        @Override
+        public void requestRefresh() {
+        }
+
+    }
+
+    private static class SyntheticDependentComponentManager implements DependentComponentManager {
+
+        @Override
+        public Optional<DependentComponent> getDependentComponentForResource(Resource r) {
+            return Optional.absent();
+        }
+
+        @Override
+        public Optional<DependentComponent> getDependentComponentForResourceType(String resourceType) {
+            return Optional.absent();
+        }
+
+        @Override
+        public Set<DependentComponent> getComponentsDependentOnLibraryCategory(String category) {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public Map<String, DependentComponent> getComponentsByPath() {
+            return ImmutableMap.of();
+        }
+
+        @Override
+        public Set<DependentComponent> getComponents() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public Long getVersion() {
+            return 0L;
+        }
+
+        @Override
+        public void requestRefresh() {
+        }
+
+    }
+
+}
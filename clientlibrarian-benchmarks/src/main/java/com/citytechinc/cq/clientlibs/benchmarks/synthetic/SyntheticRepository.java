@@ -0,0 +1,944 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.benchmarks.synthetic;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceMetadata;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.jcr.api.SlingRepository;
+
+import javax.jcr.Binary;
+import javax.jcr.Node;
+import javax.jcr.PathNotFoundException;
+import javax.jcr.Property;
+import javax.jcr.Session;
+import javax.jcr.Workspace;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import javax.jcr.observation.ObservationManager;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * An in memory stand in for the parts of the JCR Repository, and of Sling's view of it, used by the Client Librarian.
+ * Content is a tree of nodes, each with a primary type and a set of properties.  Files are <code>nt:file</code> nodes
+ * whose data is the <code>jcr:data</code> property of their <code>jcr:content</code> child, as in the JCR.
+ * </p>
+ * <p>
+ * The content is exposed as Resources, Nodes, Properties, a Session, a Resource Resolver and a Sling Repository, all
+ * of them dynamic proxies answering only the methods the Client Librarian calls.  Anything else throws an
+ * {@link UnsupportedOperationException} so that a harness silently exercising a different code path fails loudly
+ * instead.  The only queries supported are those selecting every node of a primary type, through the Session, and those
+ * selecting the typed descendants of a path, through the Resource Resolver.  Changes are announced to the registered
+ * observation listeners via {@link #dispatch(int, String)} which, unlike the JCR, delivers events on the calling
+ * thread.
+ * </p>
+ * <p>
+ * Content is expected to be built up before it is shared between threads.  Property values may be replaced at any
+ * time afterwards.
+ * </p>
+ */
+public class SyntheticRepository {
+
+    public static final String FOLDER_TYPE = "nt:folder";
+    public static final String FILE_TYPE = "nt:file";
+    public static final String FILE_CONTENT_TYPE = "nt:resource";
+    public static final String UNSTRUCTURED_TYPE = "nt:unstructured";
+
+    public static final String FILE_CONTENT = "jcr:content";
+    public static final String FILE_DATA = "jcr:data";
+    public static final String RESOURCE_TYPE_PROPERTY = "sling:resourceType";
+    public static final String RESOURCE_SUPER_TYPE_PROPERTY = "sling:resourceSuperType";
+
+    private static final String[] SEARCH_PATH = { "/apps/", "/libs/" };
+    private static final Pattern NODE_TYPE_QUERY = Pattern.compile("^SELECT \\* FROM \\[?\"?([^\"\\]]+)\"?\\]?$");
+    private static final Pattern TYPED_DESCENDANT_QUERY = Pattern.compile("^SELECT \\* FROM \\[?\"?nt:base\"?\\]? WHERE ISDESCENDANTNODE\\( *'([^']+)' *\\) AND \\[sling:resourceType\\] IS NOT NULL$");
+
+    private final ConcurrentMap<String, SyntheticNode> nodes = new ConcurrentHashMap<String, SyntheticNode>();
+    private final List<ListenerRegistration> listenerRegistrations = new CopyOnWriteArrayList<ListenerRegistration>();
+
+    private final ResourceResolver resourceResolver;
+    private final Session session;
+    private final SlingRepository slingRepository;
+    private final ResourceResolverFactory resourceResolverFactory;
+
+    public SyntheticRepository() {
+
+        nodes.put("/", new SyntheticNode("/", "rep:root"));
+
+        resourceResolver = newProxy(ResourceResolver.class, new SyntheticInvocationHandler("ResourceResolver") {
+            @Override
+            protected Object invoke(String methodName, Object[] args) {
+                if ("getResource".equals(methodName) && args.length == 1) {
+                    return getResource((String) args[0]);
+                }
+                if ("getResource".equals(methodName) && args.length == 2) {
+                    return getResource(resolvePath(((Resource) args[0]).getPath(), (String) args[1]));
+                }
+                if ("getSearchPath".equals(methodName)) {
+                    return SEARCH_PATH.clone();
+                }
+                if ("listChildren".equals(methodName)) {
+                    return ((Resource) args[0]).listChildren();
+                }
+                if ("findResources".equals(methodName)) {
+                    return findResources((String) args[0]);
+                }
+                if ("adaptTo".equals(methodName)) {
+                    return Session.class.equals(args[0]) ? session : null;
+                }
+                if ("isLive".equals(methodName)) {
+                    return true;
+                }
+                if ("close".equals(methodName)) {
+                    return null;
+                }
+
+                return unsupported(methodName);
+            }
+        });
+
+        final Workspace workspace = newProxy(Workspace.class, new SyntheticInvocationHandler("Workspace") {
+            @Override
+            protected Object invoke(String methodName, Object[] args) {
+                if ("getObservationManager".equals(methodName)) {
+                    return newObservationManager();
+                }
+                if ("getQueryManager".equals(methodName)) {
+                    return newQueryManager();
+                }
+                if ("getName".equals(methodName)) {
+                    return "default";
+                }
+                if ("getSession".equals(methodName)) {
+                    return session;
+                }
+
+                return unsupported(methodName);
+            }
+        });
+
+        session = newProxy(Session.class, new SyntheticInvocationHandler("Session") {
+            @Override
+            protected Object invoke(String methodName, Object[] args) throws PathNotFoundException {
+                if ("getNode".equals(methodName)) {
+                    return newNode(getExistingNode((String) args[0]));
+                }
+                if ("getProperty".equals(methodName)) {
+                    return getExistingProperty((String) args[0]);
+                }
+                if ("nodeExists".equals(methodName)) {
+                    return nodes.containsKey(args[0]);
+                }
+                if ("propertyExists".equals(methodName)) {
+                    return findProperty((String) args[0]) != null;
+                }
+                if ("getRootNode".equals(methodName)) {
+                    return newNode(nodes.get("/"));
+                }
+                if ("getWorkspace".equals(methodName)) {
+                    return workspace;
+                }
+                if ("getUserID".equals(methodName)) {
+                    return "admin";
+                }
+                if ("isLive".equals(methodName)) {
+                    return true;
+                }
+                if ("logout".equals(methodName)) {
+                    return null;
+                }
+
+                return unsupported(methodName);
+            }
+        });
+
+        slingRepository = newProxy(SlingRepository.class, new SyntheticInvocationHandler("SlingRepository") {
+            @Override
+            protected Object invoke(String methodName, Object[] args) {
+                if ("loginAdministrative".equals(methodName) || "login".equals(methodName)) {
+                    return session;
+                }
+                if ("getDefaultWorkspace".equals(methodName)) {
+                    return "default";
+                }
+
+                return unsupported(methodName);
+            }
+        });
+
+        resourceResolverFactory = newProxy(ResourceResolverFactory.class, new SyntheticInvocationHandler("ResourceResolverFactory") {
+            @Override
+            protected Object invoke(String methodName, Object[] args) {
+                if ("getAdministrativeResourceResolver".equals(methodName) || "getResourceResolver".equals(methodName)) {
+                    return resourceResolver;
+                }
+
+                return unsupported(methodName);
+            }
+        });
+
+    }
+
+    /**
+     * Adds a node of the provided primary type, adding any missing ancestors as folders.  An existing node is left as
+     * it is.
+     *
+     * @param path
+     * @param primaryType
+     */
+    public void addNode(String path, String primaryType) {
+
+        if (nodes.containsKey(path)) {
+            return;
+        }
+
+        String parentPath = getParentPath(path);
+
+        addNode(parentPath, FOLDER_TYPE);
+
+        nodes.put(path, new SyntheticNode(path, primaryType));
+        nodes.get(parentPath).childNames.add(getName(path));
+
+    }
+
+    public void addFolder(String path) {
+        addNode(path, FOLDER_TYPE);
+    }
+
+    public void addFile(String path, String content) {
+        addNode(path, FILE_TYPE);
+        addNode(path + "/" + FILE_CONTENT, FILE_CONTENT_TYPE);
+        setFileContent(path, content);
+    }
+
+    public void setFileContent(String path, String content) {
+        setProperty(path + "/" + FILE_CONTENT, FILE_DATA, content.getBytes(Charsets.UTF_8));
+    }
+
+    /**
+     *
+     * @param nodePath
+     * @param name
+     * @param value A String, String array, Long, Boolean, or for file data a byte array
+     */
+    public void setProperty(String nodePath, String name, Object value) {
+
+        SyntheticNode node = nodes.get(nodePath);
+
+        if (node == null) {
+            throw new IllegalArgumentException("No node exists at " + nodePath);
+        }
+
+        node.properties.put(name, value);
+
+    }
+
+    /**
+     * Delivers an event of the provided type to every listener registered for it, as the JCR would following a save.
+     *
+     * @param eventType One of the types defined by {@link Event}
+     * @param path The path of the node or property the event is about
+     */
+    public void dispatch(int eventType, String path) {
+
+        Event event = newEvent(eventType, path);
+
+        for (ListenerRegistration currentRegistration : listenerRegistrations) {
+            if (currentRegistration.accepts(eventType, path)) {
+                currentRegistration.listener.onEvent(newEventIterator(event));
+            }
+        }
+
+    }
+
+    /**
+     *
+     * @param path
+     * @return The Resource at the provided absolute path or null if no node exists at that path
+     */
+    public Resource getResource(String path) {
+
+        SyntheticNode node = nodes.get(path);
+
+        if (node == null) {
+            return null;
+        }
+
+        return newResource(node);
+
+    }
+
+    public ResourceResolver getResourceResolver() {
+        return resourceResolver;
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    public SlingRepository getSlingRepository() {
+        return slingRepository;
+    }
+
+    public ResourceResolverFactory getResourceResolverFactory() {
+        return resourceResolverFactory;
+    }
+
+    public int getNodeCount() {
+        return nodes.size();
+    }
+
+    /**
+     * Answers the query issued by <code>ComponentUtils</code> for the typed resources below a path by scanning every
+     * node, there being no index to consult.
+     *
+     * @param statement
+     * @return The typed resources below the path of the query in path order
+     */
+    private Iterator<Resource> findResources(String statement) {
+
+        Matcher typedDescendantMatcher = TYPED_DESCENDANT_QUERY.matcher(statement.trim());
+
+        if (!typedDescendantMatcher.matches()) {
+            throw new UnsupportedOperationException("Only queries for the typed descendants of a path are supported by the synthetic resource resolver, not " + statement);
+        }
+
+        String pathPrefix = typedDescendantMatcher.group(1) + "/";
+        List<String> paths = Lists.newArrayList();
+
+        for (SyntheticNode currentNode : nodes.values()) {
+            if (currentNode.path.startsWith(pathPrefix) && currentNode.properties.containsKey(RESOURCE_TYPE_PROPERTY)) {
+                paths.add(currentNode.path);
+            }
+        }
+
+        Collections.sort(paths);
+
+        List<Resource> resources = Lists.newArrayListWithCapacity(paths.size());
+
+        for (String currentPath : paths) {
+            resources.add(newResource(nodes.get(currentPath)));
+        }
+
+        return resources.iterator();
+
+    }
+
+    private Resource newResource(final SyntheticNode node) {
+
+        return newProxy(Resource.class, new SyntheticInvocationHandler("Resource " + node.path) {
+            @Override
+            protected Object invoke(String methodName, Object[] args) {
+                if ("getPath".equals(methodName)) {
+                    return node.path;
+                }
+                if ("getName".equals(methodName)) {
+                    return getName(node.path);
+                }
+                if ("getResourceType".equals(methodName)) {
+                    Object resourceType = node.properties.get(RESOURCE_TYPE_PROPERTY);
+                    return resourceType != null ? resourceType : node.primaryType;
+                }
+                if ("getResourceSuperType".equals(methodName)) {
+                    return node.properties.get(RESOURCE_SUPER_TYPE_PROPERTY);
+                }
+                if ("getResourceResolver".equals(methodName)) {
+                    return resourceResolver;
+                }
+                if ("getResourceMetadata".equals(methodName)) {
+                    ResourceMetadata resourceMetadata = new ResourceMetadata();
+                    resourceMetadata.setResolutionPath(node.path);
+                    return resourceMetadata;
+                }
+                if ("getParent".equals(methodName)) {
+                    return "/".equals(node.path) ? null : getResource(getParentPath(node.path));
+                }
+                if ("getChild".equals(methodName)) {
+                    return getResource(resolvePath(node.path, (String) args[0]));
+                }
+                if ("listChildren".equals(methodName)) {
+                    return listChildren(node);
+                }
+                if ("hasChildren".equals(methodName)) {
+                    return !node.childNames.isEmpty();
+                }
+                if ("adaptTo".equals(methodName)) {
+                    if (ValueMap.class.equals(args[0]) || Map.class.equals(args[0])) {
+                        return newValueMap(node);
+                    }
+                    if (Node.class.equals(args[0])) {
+                        return newNode(node);
+                    }
+
+                    return null;
+                }
+
+                return unsupported(methodName);
+            }
+        });
+
+    }
+
+    private Iterator<Resource> listChildren(SyntheticNode node) {
+
+        List<Resource> children = Lists.newArrayListWithCapacity(node.childNames.size());
+
+        for (String currentChildName : node.childNames) {
+            children.add(getResource(resolvePath(node.path, currentChildName)));
+        }
+
+        return children.iterator();
+
+    }
+
+    private ValueMap newValueMap(SyntheticNode node) {
+
+        final Map<String, Object> properties = ImmutableMap.copyOf(node.properties);
+
+        return newProxy(ValueMap.class, new SyntheticInvocationHandler("ValueMap " + node.path) {
+            @Override
+            protected Object invoke(Method method, String methodName, Object[] args) throws Throwable {
+
+                if ("get".equals(methodName) && args.length == 2) {
+                    Object value = properties.get(args[0]);
+
+                    if (args[1] instanceof Class) {
+                        return convert(value, (Class<?>) args[1]);
+                    }
+
+                    if (args[1] == null) {
+                        return value;
+                    }
+
+                    Object convertedValue = convert(value, args[1].getClass());
+
+                    return convertedValue != null ? convertedValue : args[1];
+                }
+
+                /*
+                 * Everything else is answered by the underlying map
+                 */
+                if (Map.class.equals(method.getDeclaringClass()) || Object.class.equals(method.getDeclaringClass())) {
+                    try {
+                        return method.invoke(properties, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+
+                return unsupported(methodName);
+
+            }
+        });
+
+    }
+
+    private static Object convert(Object value, Class<?> type) {
+
+        if (value == null || type.isInstance(value)) {
+            return value;
+        }
+
+        if (String[].class.equals(type) && value instanceof String) {
+            return new String[] { (String) value };
+        }
+
+        if (String.class.equals(type)) {
+            return value instanceof String[] ? ((String[]) value).length > 0 ? ((String[]) value)[0] : null : value.toString();
+        }
+
+        return null;
+
+    }
+
+    private Node newNode(final SyntheticNode node) {
+
+        return newProxy(Node.class, new SyntheticInvocationHandler("Node " + node.path) {
+            @Override
+            protected Object invoke(String methodName, Object[] args) throws PathNotFoundException {
+                if ("getPath".equals(methodName) || "getIdentifier".equals(methodName)) {
+                    return node.path;
+                }
+                if ("getName".equals(methodName)) {
+                    return getName(node.path);
+                }
+                if ("getParent".equals(methodName)) {
+                    return newNode(getExistingNode(getParentPath(node.path)));
+                }
+                if ("isNodeType".equals(methodName)) {
+                    return node.primaryType.equals(args[0]) || "nt:base".equals(args[0]);
+                }
+                if ("hasProperty".equals(methodName)) {
+                    return findProperty(resolvePath(node.path, (String) args[0])) != null;
+                }
+                if ("getProperty".equals(methodName)) {
+                    return getExistingProperty(resolvePath(node.path, (String) args[0]));
+                }
+                if ("hasNode".equals(methodName)) {
+                    return nodes.containsKey(resolvePath(node.path, (String) args[0]));
+                }
+                if ("getNode".equals(methodName)) {
+                    return newNode(getExistingNode(resolvePath(node.path, (String) args[0])));
+                }
+                if ("getSession".equals(methodName)) {
+                    return session;
+                }
+
+                return unsupported(methodName);
+            }
+        });
+
+    }
+
+    private Property getExistingProperty(String path) throws PathNotFoundException {
+
+        Property property = findProperty(path);
+
+        if (property == null) {
+            throw new PathNotFoundException(path);
+        }
+
+        return property;
+
+    }
+
+    private Property findProperty(final String path) {
+
+        final SyntheticNode node = nodes.get(getParentPath(path));
+        final String name = getName(path);
+
+        if (node == null || !node.properties.containsKey(name)) {
+            return null;
+        }
+
+        return newProxy(Property.class, new SyntheticInvocationHandler("Property " + path) {
+            @Override
+            protected Object invoke(String methodName, Object[] args) {
+                if ("getName".equals(methodName)) {
+                    return name;
+                }
+                if ("getPath".equals(methodName)) {
+                    return path;
+                }
+                if ("getParent".equals(methodName)) {
+                    return newNode(node);
+                }
+                if ("isMultiple".equals(methodName)) {
+                    return node.properties.get(name) instanceof Object[];
+                }
+                if ("getString".equals(methodName)) {
+                    Object value = node.properties.get(name);
+                    return value instanceof byte[] ? new String((byte[]) value, Charsets.UTF_8) : convert(value, String.class);
+                }
+                if ("getBinary".equals(methodName)) {
+                    return newBinary(path, (byte[]) node.properties.get(name));
+                }
+                if ("getSession".equals(methodName)) {
+                    return session;
+                }
+
+                return unsupported(methodName);
+            }
+        });
+
+    }
+
+    private Binary newBinary(String path, final byte[] data) {
+
+        return newProxy(Binary.class, new SyntheticInvocationHandler("Binary " + path) {
+            @Override
+            protected Object invoke(String methodName, Object[] args) {
+                if ("getStream".equals(methodName)) {
+                    return new ByteArrayInputStream(data);
+                }
+                if ("getSize".equals(methodName)) {
+                    return (long) data.length;
+                }
+                if ("dispose".equals(methodName)) {
+                    return null;
+                }
+
+                return unsupported(methodName);
+            }
+        });
+
+    }
+
+    private SyntheticNode getExistingNode(String path) throws PathNotFoundException {
+
+        SyntheticNode node = nodes.get(path);
+
+        if (node == null) {
+            throw new PathNotFoundException(path);
+        }
+
+        return node;
+
+    }
+
+    private QueryManager newQueryManager() {
+
+        return newProxy(QueryManager.class, new SyntheticInvocationHandler("QueryManager") {
+            @Override
+            protected Object invoke(String methodName, Object[] args) {
+                if ("createQuery".equals(methodName)) {
+                    return newQuery((String) args[0], (String) args[1]);
+                }
+
+                return unsupported(methodName);
+            }
+        });
+
+    }
+
+    private Query newQuery(final String statement, final String language) {
+
+        final Matcher nodeTypeMatcher = NODE_TYPE_QUERY.matcher(statement.trim());
+
+        if (!nodeTypeMatcher.matches()) {
+            throw new UnsupportedOperationException("Only queries for all nodes of a type are supported by the synthetic repository, not " + statement);
+        }
+
+        final String nodeType = nodeTypeMatcher.group(1);
+
+        return newProxy(Query.class, new SyntheticInvocationHandler("Query " + statement) {
+            @Override
+            protected Object invoke(String methodName, Object[] args) {
+                if ("execute".equals(methodName)) {
+                    return newQueryResult(statement, nodeType);
+                }
+                if ("getStatement".equals(methodName)) {
+                    return statement;
+                }
+                if ("getLanguage".equals(methodName)) {
+                    return language;
+                }
+
+                return unsupported(methodName);
+            }
+        });
+
+    }
+
+    private QueryResult newQueryResult(String statement, String nodeType) {
+
+        final List<String> paths = Lists.newArrayList();
+
+        for (SyntheticNode currentNode : nodes.values()) {
+            if (currentNode.primaryType.equals(nodeType)) {
+                paths.add(currentNode.path);
+            }
+        }
+
+        Collections.sort(paths);
+
+        return newProxy(QueryResult.class, new SyntheticInvocationHandler("QueryResult " + statement) {
+            @Override
+            protected Object invoke(String methodName, Object[] args) {
+                if ("getRows".equals(methodName)) {
+                    return newRowIterator(paths);
+                }
+
+                return unsupported(methodName);
+            }
+        });
+
+    }
+
+    private RowIterator newRowIterator(List<String> paths) {
+
+        final Iterator<String> pathIterator = paths.iterator();
+        final long size = paths.size();
+
+        return newProxy(RowIterator.class, new SyntheticInvocationHandler("RowIterator") {
+            private long position = 0;
+
+            @Override
+            protected Object invoke(String methodName, Object[] args) {
+                if ("hasNext".equals(methodName)) {
+                    return pathIterator.hasNext();
+                }
+                if ("nextRow".equals(methodName) || "next".equals(methodName)) {
+                    position++;
+                    return newRow(pathIterator.next());
+                }
+                if ("getSize".equals(methodName)) {
+                    return size;
+                }
+                if ("getPosition".equals(methodName)) {
+                    return position;
+                }
+
+                return unsupported(methodName);
+            }
+        });
+
+    }
+
+    private Row newRow(final String path) {
+
+        return newProxy(Row.class, new SyntheticInvocationHandler("Row " + path) {
+            @Override
+            protected Object invoke(String methodName, Object[] args) {
+                if ("getPath".equals(methodName) && args.length == 0) {
+                    return path;
+                }
+                if ("getNode".equals(methodName) && args.length == 0) {
+                    return newNode(nodes.get(path));
+                }
+
+                return unsupported(methodName);
+            }
+        });
+
+    }
+
+    private ObservationManager newObservationManager() {
+
+        return newProxy(ObservationManager.class, new SyntheticInvocationHandler("ObservationManager") {
+            @Override
+            protected Object invoke(String methodName, Object[] args) {
+                if ("addEventListener".equals(methodName)) {
+                    listenerRegistrations.add(new ListenerRegistration((EventListener) args[0], (Integer) args[1], (String) args[2], (Boolean) args[3], (String[]) args[5]));
+                    return null;
+                }
+                if ("removeEventListener".equals(methodName)) {
+                    for (ListenerRegistration currentRegistration : listenerRegistrations) {
+                        if (currentRegistration.listener == args[0]) {
+                            listenerRegistrations.remove(currentRegistration);
+                        }
+                    }
+                    return null;
+                }
+
+                return unsupported(methodName);
+            }
+        });
+
+    }
+
+    private Event newEvent(final int eventType, final String path) {
+
+        final long date = System.currentTimeMillis();
+
+        return newProxy(Event.class, new SyntheticInvocationHandler("Event " + eventType + " " + path) {
+            @Override
+            protected Object invoke(String methodName, Object[] args) {
+                if ("getType".equals(methodName)) {
+                    return eventType;
+                }
+                if ("getPath".equals(methodName) || "getIdentifier".equals(methodName)) {
+                    return path;
+                }
+                if ("getInfo".equals(methodName)) {
+                    return Collections.emptyMap();
+                }
+                if ("getUserID".equals(methodName)) {
+                    return "admin";
+                }
+                if ("getUserData".equals(methodName)) {
+                    return null;
+                }
+                if ("getDate".equals(methodName)) {
+                    return date;
+                }
+
+                return unsupported(methodName);
+            }
+        });
+
+    }
+
+    private EventIterator newEventIterator(final Event event) {
+
+        return newProxy(EventIterator.class, new SyntheticInvocationHandler("EventIterator") {
+            private boolean delivered = false;
+
+            @Override
+            protected Object invoke(String methodName, Object[] args) {
+                if ("hasNext".equals(methodName)) {
+                    return !delivered;
+                }
+                if ("nextEvent".equals(methodName) || "next".equals(methodName)) {
+                    delivered = true;
+                    return event;
+                }
+                if ("getSize".equals(methodName)) {
+                    return 1L;
+                }
+                if ("getPosition".equals(methodName)) {
+                    return delivered ? 1L : 0L;
+                }
+
+                return unsupported(methodName);
+            }
+        });
+
+    }
+
+    private static String resolvePath(String basePath, String relativePath) {
+
+        if (relativePath.startsWith("/")) {
+            return relativePath;
+        }
+
+        return "/".equals(basePath) ? "/" + relativePath : basePath + "/" + relativePath;
+
+    }
+
+    private static String getParentPath(String path) {
+
+        int lastSeparator = path.lastIndexOf('/');
+
+        return lastSeparator <= 0 ? "/" : path.substring(0, lastSeparator);
+
+    }
+
+    private static String getName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private static <T> T newProxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(SyntheticRepository.class.getClassLoader(), new Class<?>[] { type }, handler));
+    }
+
+    private static class SyntheticNode {
+
+        private final String path;
+        private final String primaryType;
+        private final Map<String, Object> properties = Maps.newConcurrentMap();
+        private final List<String> childNames = new CopyOnWriteArrayList<String>();
+
+        private SyntheticNode(String path, String primaryType) {
+            this.path = path;
+            this.primaryType = primaryType;
+            this.properties.put("jcr:primaryType", primaryType);
+        }
+
+    }
+
+    private class ListenerRegistration {
+
+        private final EventListener listener;
+        private final int eventTypes;
+        private final String absolutePath;
+        private final boolean deep;
+        private final List<String> nodeTypeNames;
+
+        private ListenerRegistration(EventListener listener, int eventTypes, String absolutePath, boolean deep, String[] nodeTypeNames) {
+            this.listener = listener;
+            this.eventTypes = eventTypes;
+            this.absolutePath = absolutePath;
+            this.deep = deep;
+            this.nodeTypeNames = nodeTypeNames != null ? Arrays.asList(nodeTypeNames) : null;
+        }
+
+        /**
+         * As in the JCR, the path and node type restrictions apply to the node a property event is about or to the
+         * parent of the node a node event is about
+         */
+        private boolean accepts(int eventType, String path) {
+
+            if ((eventTypes & eventType) == 0) {
+                return false;
+            }
+
+            String associatedPath = getParentPath(path);
+
+            if (!associatedPath.equals(absolutePath) && !(deep && (associatedPath + "/").startsWith("/".equals(absolutePath) ? "/" : absolutePath + "/"))) {
+                return false;
+            }
+
+            if (nodeTypeNames != null) {
+                SyntheticNode associatedNode = nodes.get(associatedPath);
+                return associatedNode != null && nodeTypeNames.contains(associatedNode.primaryType);
+            }
+
+            return true;
+
+        }
+
+    }
+
+    private abstract static class SyntheticInvocationHandler implements InvocationHandler {
+
+        private final String description;
+
+        protected SyntheticInvocationHandler(String description) {
+            this.description = description;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+            String methodName = method.getName();
+
+            if ("equals".equals(methodName) && args != null && args.length == 1) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(methodName) && args == null) {
+                return System.identityHashCode(proxy);
+            }
+            if ("toString".equals(methodName) && args == null) {
+                return description;
+            }
+
+            return invoke(method, methodName, args == null ? new Object[0] : args);
+
+        }
+
+        protected Object invoke(Method method, String methodName, Object[] args) throws Throwable {
+            return invoke(methodName, args);
+        }
+
+        protected Object invoke(String methodName, Object[] args) throws Exception {
+            return unsupported(methodName);
+        }
+
+        protected Object unsupported(String methodName) {
+            throw new UnsupportedOperationException(methodName + " is not supported by the synthetic " + description);
+        }
+
+    }
+
+}
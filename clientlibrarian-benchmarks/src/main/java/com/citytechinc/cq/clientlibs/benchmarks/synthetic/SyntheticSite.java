@@ -0,0 +1,299 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.benchmarks.synthetic;
+
+import com.citytechinc.cq.clientlibs.api.constants.Properties;
+import com.citytechinc.cq.clientlibs.api.constants.Types;
+import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import javax.jcr.observation.Event;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * <p>
+ * A generated site, written into a {@link SyntheticRepository}, made up of Client Library folders, components
+ * depending on them and pages built out of those components.
+ * </p>
+ * <p>
+ * Libraries are laid out in levels as in the {@link SyntheticRegistry}.  Each library lists a JS file in its
+ * <code>js.txt</code> and a CSS file in its <code>css.txt</code>, roughly <code>lessPercentage</code> percent of
+ * the libraries listing a LESS file in place of the CSS file.  Components depend on libraries of the top level and pages are made up of a
+ * paragraph system holding <code>componentsPerPage</code> components picked at random.  The same parameters and seed
+ * always produce the same site.  Pages, libraries and components may be modified once the site is generated, each
+ * modification being announced to the listeners of the repository as an author's save would be.
+ * </p>
+ */
+public class SyntheticSite {
+
+    public static final String LIBRARY_ROOT = "/apps/benchmark/clientlibs";
+    public static final String COMPONENT_ROOT = "/apps/benchmark/components";
+    public static final String PAGE_COMPONENT = "benchmark/components/page";
+    public static final String PAGE_ROOT = "/content/benchmark";
+    public static final String CATEGORY_PREFIX = "benchmark.library";
+
+    public static final String PAGE_TYPE = "cq:Page";
+    public static final String PAGE_CONTENT_TYPE = "cq:PageContent";
+    public static final String COMPONENT_TYPE = "cq:Component";
+
+    private final SyntheticRepository repository;
+    private final List<String> libraryPaths;
+    private final List<String> componentPaths;
+    private final List<String> pagePaths;
+    private final List<String> topLevelCategories;
+    private final int componentDependencies;
+
+    private SyntheticSite(SyntheticRepository repository, List<String> libraryPaths, List<String> componentPaths, List<String> pagePaths, List<String> topLevelCategories, int componentDependencies) {
+        this.repository = repository;
+        this.libraryPaths = libraryPaths;
+        this.componentPaths = componentPaths;
+        this.pagePaths = pagePaths;
+        this.topLevelCategories = topLevelCategories;
+        this.componentDependencies = componentDependencies;
+    }
+
+    /**
+     *
+     * @param libraryCount
+     * @param depth
+     * @param fanOut
+     * @param lessPercentage
+     * @param fileLines The number of lines in each JS and CSS file
+     * @param componentCount
+     * @param componentDependencies The number of top level libraries each component depends on
+     * @param pageCount
+     * @param componentsPerPage
+     * @param seed
+     * @return The generated site
+     */
+    public static SyntheticSite generate(int libraryCount, int depth, int fanOut, int lessPercentage, int fileLines,
+                                         int componentCount, int componentDependencies, int pageCount, int componentsPerPage, long seed) {
+
+        if (libraryCount < depth || depth < 1 || fanOut < 0 || componentCount < 1 || pageCount < 1) {
+            throw new IllegalArgumentException("A site of " + libraryCount + " libraries " + depth + " levels deep, " + componentCount + " components and " + pageCount + " pages can not be generated");
+        }
+
+        Random random = new Random(seed);
+        SyntheticRepository repository = new SyntheticRepository();
+
+        /*
+         * Client Libraries
+         */
+        List<List<String>> levelCategories = Lists.newArrayListWithCapacity(depth);
+        ImmutableList.Builder<String> libraryPathsBuilder = ImmutableList.builder();
+
+        int levelSize = libraryCount / depth;
+        int libraryIndex = 0;
+
+        for (int currentDepth = 0; currentDepth < depth; currentDepth++) {
+
+            int currentLevelSize = currentDepth == 0 ? levelSize + libraryCount % depth : levelSize;
+            List<String> currentLevel = Lists.newArrayListWithCapacity(currentLevelSize);
+
+            for (int i = 0; i < currentLevelSize; i++) {
+
+                String category = CATEGORY_PREFIX + libraryIndex;
+                String path = LIBRARY_ROOT + "/level" + currentDepth + "/library" + libraryIndex;
+
+                repository.addNode(path, Types.CQ_CLIENT_LIBRARY_FOLDER);
+                repository.setProperty(path, Properties.CLIENT_LIBRARY_CATEGORIES, new String[] { category });
+
+                if (currentDepth > 0) {
+                    repository.setProperty(path, Properties.CLIENT_LIBRARY_DEPENDENCIES, toArray(pickCategories(levelCategories.get(currentDepth - 1), fanOut, random)));
+                }
+
+                boolean less = random.nextInt(100) < lessPercentage;
+                String styleFile = "style" + libraryIndex + (less ? ".less" : ".css");
+
+                repository.addFile(path + "/js/script" + libraryIndex + ".js", generateFile("    window.benchmark" + libraryIndex + ".values.push( 'line' );\n", fileLines));
+                repository.addFile(path + "/css/" + styleFile, generateFile(less ?
+                        "@library" + libraryIndex + ": 10px;\n.benchmark-" + libraryIndex + " { .line { margin: @library" + libraryIndex + " auto; } }\n" :
+                        ".benchmark-" + libraryIndex + " .line { margin: 0 auto; }\n", fileLines));
+                repository.addFile(path + "/" + ClientLibrary.JS_FILE, getJsInclusions(libraryIndex, 0));
+                repository.addFile(path + "/" + ClientLibrary.CSS_FILE, "#base=css\n" + styleFile + "\n");
+
+                currentLevel.add(category);
+                libraryPathsBuilder.add(path);
+                libraryIndex++;
+
+            }
+
+            levelCategories.add(currentLevel);
+
+        }
+
+        List<String> topLevelCategories = levelCategories.get(depth - 1);
+
+        /*
+         * Components
+         */
+        ImmutableList.Builder<String> componentPathsBuilder = ImmutableList.builder();
+        List<String> componentResourceTypes = Lists.newArrayListWithCapacity(componentCount);
+
+        for (int i = 0; i < componentCount; i++) {
+
+            String path = COMPONENT_ROOT + "/component" + i;
+
+            repository.addNode(path, COMPONENT_TYPE);
+            repository.setProperty(path, Properties.CLIENT_LIBRARY_DEPENDENCIES, toArray(pickCategories(topLevelCategories, componentDependencies, random)));
+
+            componentPathsBuilder.add(path);
+            componentResourceTypes.add("benchmark/components/component" + i);
+
+        }
+
+        String pageComponentPath = "/apps/" + PAGE_COMPONENT;
+
+        repository.addNode(pageComponentPath, COMPONENT_TYPE);
+        repository.setProperty(pageComponentPath, Properties.CLIENT_LIBRARY_DEPENDENCIES, toArray(pickCategories(topLevelCategories, componentDependencies, random)));
+
+        /*
+         * Pages
+         */
+        ImmutableList.Builder<String> pagePathsBuilder = ImmutableList.builder();
+
+        for (int i = 0; i < pageCount; i++) {
+
+            String path = PAGE_ROOT + "/page" + i;
+            String contentPath = path + "/" + SyntheticRepository.FILE_CONTENT;
+            String paragraphSystemPath = contentPath + "/par";
+
+            repository.addNode(path, PAGE_TYPE);
+            repository.addNode(contentPath, PAGE_CONTENT_TYPE);
+            repository.setProperty(contentPath, SyntheticRepository.RESOURCE_TYPE_PROPERTY, PAGE_COMPONENT);
+            repository.setProperty(contentPath, "jcr:title", "Page " + i);
+            repository.addNode(paragraphSystemPath, SyntheticRepository.UNSTRUCTURED_TYPE);
+            repository.setProperty(paragraphSystemPath, SyntheticRepository.RESOURCE_TYPE_PROPERTY, "foundation/components/parsys");
+
+            for (int j = 0; j < componentsPerPage; j++) {
+                String componentPath = paragraphSystemPath + "/component" + j;
+
+                repository.addNode(componentPath, SyntheticRepository.UNSTRUCTURED_TYPE);
+                repository.setProperty(componentPath, SyntheticRepository.RESOURCE_TYPE_PROPERTY, componentResourceTypes.get(random.nextInt(componentCount)));
+            }
+
+            pagePathsBuilder.add(path);
+
+        }
+
+        return new SyntheticSite(repository, libraryPathsBuilder.build(), componentPathsBuilder.build(), pagePathsBuilder.build(), topLevelCategories, componentDependencies);
+
+    }
+
+    /**
+     * Changes the title of a page and announces the change as saving it would.
+     *
+     * @param pageIndex
+     * @param revision
+     */
+    public void modifyPage(int pageIndex, long revision) {
+
+        String contentPath = pagePaths.get(pageIndex) + "/" + SyntheticRepository.FILE_CONTENT;
+
+        repository.setProperty(contentPath, "jcr:title", "Page " + pageIndex + " revision " + revision);
+        repository.dispatch(Event.PROPERTY_CHANGED, contentPath + "/jcr:title");
+
+    }
+
+    /**
+     * Rewrites the <code>js.txt</code> of a library with a revision comment and announces the change as saving it
+     * would.  The files included by the library stay the same.
+     *
+     * @param libraryIndex
+     * @param revision
+     */
+    public void modifyLibrary(int libraryIndex, long revision) {
+
+        String inclusionFilePath = libraryPaths.get(libraryIndex) + "/" + ClientLibrary.JS_FILE;
+
+        repository.setFileContent(inclusionFilePath, getJsInclusions(libraryIndex, revision));
+        repository.dispatch(Event.PROPERTY_CHANGED, inclusionFilePath + "/" + SyntheticRepository.FILE_CONTENT + "/" + SyntheticRepository.FILE_DATA);
+
+    }
+
+    /**
+     * Replaces the dependencies of a component with libraries picked afresh from the top level and announces the
+     * change as saving it would.
+     *
+     * @param componentIndex
+     * @param random
+     */
+    public void modifyComponent(int componentIndex, Random random) {
+
+        String componentPath = componentPaths.get(componentIndex);
+
+        repository.setProperty(componentPath, Properties.CLIENT_LIBRARY_DEPENDENCIES, toArray(pickCategories(topLevelCategories, componentDependencies, random)));
+        repository.dispatch(Event.PROPERTY_CHANGED, componentPath + "/" + Properties.CLIENT_LIBRARY_DEPENDENCIES);
+
+    }
+
+    /**
+     * Lines starting with a <code>#</code> which do not declare a base are ignored by the Client Librarian
+     */
+    private static String getJsInclusions(int libraryIndex, long revision) {
+        return "#base=js\n# revision " + revision + "\nscript" + libraryIndex + ".js\n";
+    }
+
+    private static List<String> pickCategories(List<String> candidates, int count, Random random) {
+
+        Set<String> picked = Sets.newLinkedHashSet();
+        int pickCount = Math.min(count, candidates.size());
+
+        while (picked.size() < pickCount) {
+            picked.add(candidates.get(random.nextInt(candidates.size())));
+        }
+
+        return Lists.newArrayList(picked);
+
+    }
+
+    private static String[] toArray(List<String> values) {
+        return values.toArray(new String[values.size()]);
+    }
+
+    private static String generateFile(String line, int lines) {
+
+        StringBuilder fileBuilder = new StringBuilder(line.length() * lines);
+
+        for (int i = 0; i < lines; i++) {
+            fileBuilder.append(line);
+        }
+
+        return fileBuilder.toString();
+
+    }
+
+    public SyntheticRepository getRepository() {
+        return repository;
+    }
+
+    public List<String> getLibraryPaths() {
+        return libraryPaths;
+    }
+
+    public List<String> getComponentPaths() {
+        return componentPaths;
+    }
+
+    public List<String> getPagePaths() {
+        return pagePaths;
+    }
+
+}
@@ -17,6 +17,7 @@ package com.citytechinc.cq.clientlibs.core.domain.library;
 
 import com.citytechinc.cq.clientlibs.api.constants.Properties;
 import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary;
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType;
 import com.citytechinc.cq.clientlibs.api.domain.sling.runmode.SlingRunModeGroup;
 import com.citytechinc.cq.clientlibs.core.domain.library.impl.DefaultClientLibrary;
 import com.citytechinc.cq.clientlibs.core.domain.sling.runmode.SlingRunModeGroups;
@@ -57,4 +58,20 @@ public class ClientLibraries {
         return new DefaultClientLibrary(categories, clientLibraryResource, embeddedCategories, dependencies, conditionalDependencies, slingRunModeGroups, brands);
 
     }
+
+    /**
+     *
+     * @param library
+     * @param type
+     * @return Whether the library contributes content to Page Libraries of the provided type
+     */
+    public static boolean hasContent(ClientLibrary library, LibraryType type) {
+
+        if (type == LibraryType.CSS) {
+            return library.hasCss();
+        }
+
+        return library.hasJs();
+
+    }
 }
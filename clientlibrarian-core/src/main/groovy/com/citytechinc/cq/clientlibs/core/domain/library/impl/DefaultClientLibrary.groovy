@@ -51,6 +51,13 @@ class DefaultClientLibrary implements ClientLibrary {
 
     private static final Logger LOG = LoggerFactory.getLogger(DefaultClientLibrary.class)
 
+    /*
+     * Each file merged into the library is preceded by a comment naming it
+     */
+    public static final String JS_HEADER_PREFIX = "//"
+    public static final String CSS_HEADER_PREFIX = "/* "
+    public static final String CSS_HEADER_POSTFIX = " */"
+
     private Set<String> categories
     private Resource clientLibraryResource
     private List<String> embeddedCategories
@@ -232,13 +239,13 @@ class DefaultClientLibrary implements ClientLibrary {
 
     private String mergeCssFiles() {
 
-        return mergeFiles( cssResourcePaths, "/* ", " */" )
+        return mergeFiles( cssResourcePaths, CSS_HEADER_PREFIX, CSS_HEADER_POSTFIX )
 
     }
 
     private String mergeJsFiles() {
 
-        return mergeFiles( jsResourcePaths, "//" )
+        return mergeFiles( jsResourcePaths, JS_HEADER_PREFIX )
 
     }
 
@@ -408,6 +415,11 @@ class DefaultClientLibrary implements ClientLibrary {
 
     }
 
+    @Override
+    Set<String> getBrands() {
+        return brands
+    }
+
     @Override
     Boolean isIncludedForBrand(Optional<String> brand) {
         if (!brands.isEmpty()) {
@@ -0,0 +1,303 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.bulk.impl
+
+import com.citytechinc.cq.clientlibs.api.constants.Brands
+import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.ClientLibraryManager
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.bulk.BulkCompilationResult
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ClientLibraryCacheManager
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ResourceTypeCacheManager
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCachingException
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.ClientLibraryMetrics
+import com.citytechinc.cq.clientlibs.api.services.components.DependentComponentManager
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.chunks.impl.SharedChunkManager
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.compilers.PageLibraryCompiler
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.sourcemap.SourceMapBuilder
+import com.google.common.base.Optional
+import com.google.common.collect.ImmutableSet
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import org.apache.sling.api.resource.Resource
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Future
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.ReentrantReadWriteLock
+
+/**
+ * Compiles and caches the Page Libraries of many pages at once, compiling each distinct library only once.
+ */
+class BulkCompilationManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger( BulkCompilationManager )
+
+    public static final Integer DEFAULT_THREADS = 4
+
+    private final ClientLibraryManager clientLibraryManager
+    private final DependentComponentManager dependentComponentManager
+    private final ResourceTypeCacheManager resourceTypeCacheManager
+    private final ClientLibraryCacheManager clientLibraryCacheManager
+    private final ClientLibraryMetrics clientLibraryMetrics
+    private final SharedChunkManager sharedChunkManager
+    private final PageLibraryCompiler pageLibraryCompiler
+    private final ReentrantReadWriteLock libraryCacheReadWriteLock
+
+    private Integer threads = DEFAULT_THREADS
+    private volatile ExecutorService executor
+
+    public BulkCompilationManager(ClientLibraryManager clientLibraryManager,
+                                  DependentComponentManager dependentComponentManager,
+                                  ResourceTypeCacheManager resourceTypeCacheManager,
+                                  ClientLibraryCacheManager clientLibraryCacheManager,
+                                  ClientLibraryMetrics clientLibraryMetrics,
+                                  SharedChunkManager sharedChunkManager,
+                                  PageLibraryCompiler pageLibraryCompiler,
+                                  ReentrantReadWriteLock libraryCacheReadWriteLock) {
+        this.clientLibraryManager = clientLibraryManager
+        this.dependentComponentManager = dependentComponentManager
+        this.resourceTypeCacheManager = resourceTypeCacheManager
+        this.clientLibraryCacheManager = clientLibraryCacheManager
+        this.clientLibraryMetrics = clientLibraryMetrics
+        this.sharedChunkManager = sharedChunkManager
+        this.pageLibraryCompiler = pageLibraryCompiler
+        this.libraryCacheReadWriteLock = libraryCacheReadWriteLock
+    }
+
+    /**
+     * Bulk compilation jobs share a single pool of threads whose threads time out when no job is running.  The pool
+     * is only replaced when the number of threads changes, jobs already running on the previous pool being left to
+     * finish.
+     *
+     * @param requestedThreads The maximum number of threads compiling distinct libraries
+     */
+    public void configure(Integer requestedThreads) {
+
+        Integer currentThreads = Math.max(1, requestedThreads)
+
+        if (executor != null && currentThreads == threads) {
+            return
+        }
+
+        ExecutorService previousExecutor = executor
+
+        ThreadPoolExecutor currentExecutor = new ThreadPoolExecutor(currentThreads, currentThreads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat("clientlibrarian-bulk-compilation-%d").setDaemon(true).build())
+        currentExecutor.allowCoreThreadTimeOut(true)
+
+        threads = currentThreads
+        executor = currentExecutor
+
+        if (previousExecutor != null) {
+            previousExecutor.shutdown()
+        }
+
+    }
+
+    public void shutdown() {
+
+        if (executor != null) {
+            executor.shutdownNow()
+            executor = null
+        }
+
+    }
+
+    /**
+     * <p>
+     * Compiles the requested Page Libraries in three phases.
+     * </p>
+     *
+     * <ul>
+     *     <li>Resolution - serially resolve the filtered ordered dependencies and the variables of each page, group
+     *         the uncached Page Libraries by type, ordered dependencies, and variables, and load the content of the
+     *         Client Libraries of each group.</li>
+     *     <li>Compilation - compile each group once on the shared pool of bulk compilation threads.  The content of
+     *         every Client Library having been loaded, the threads only merge content already in memory.</li>
+     *     <li>Caching - under the cache write lock, cache the output of each group for every Page Library in it
+     *         unless the Client Library or Dependent Component registries changed while the job was running.  Page
+     *         Libraries whose page content was invalidated while the job was running are not cached.</li>
+     * </ul>
+     */
+    public BulkCompilationResult compileClientLibraries(List<Resource> roots, Set<LibraryType> types, Set<String> brands) {
+
+        long startTime = System.currentTimeMillis()
+
+        Long libraryVersion = clientLibraryManager.version
+        Long componentVersion = dependentComponentManager.version
+        long contentGeneration = resourceTypeCacheManager.generation
+
+        Set<String> requestedBrands = brands.isEmpty() ? ImmutableSet.of(Brands.DEFAULT_BRAND) : brands
+        Map<String, String> failures = [:]
+        Map<String, BulkCompilationGroup> compilationGroups = [:]
+
+        Integer libraryCount = 0
+        Integer cachedLibraryCount = 0
+        Integer compiledLibraryCount = 0
+
+        /*
+         * Phase one - resolution
+         */
+        roots.each { Resource currentRoot ->
+            try {
+                Map<String, String> variables = null
+
+                requestedBrands.each { String currentBrand ->
+                    List<LibraryType> uncachedTypes = []
+
+                    types.each { LibraryType currentType ->
+                        libraryCount++
+
+                        if (clientLibraryCacheManager.getCachedLibrary(currentRoot, currentType, currentBrand).isPresent()) {
+                            cachedLibraryCount++
+                        }
+                        else {
+                            uncachedTypes.add(currentType)
+                        }
+                    }
+
+                    if (!uncachedTypes.isEmpty()) {
+                        List<ClientLibrary> filteredDependencies = pageLibraryCompiler.getFilteredOrderedDependencies(currentRoot, Optional.of(currentBrand))
+
+                        sharedChunkManager.recordUsage(filteredDependencies)
+
+                        if (variables == null) {
+                            variables = pageLibraryCompiler.getVariables(currentRoot)
+                        }
+
+                        uncachedTypes.each { LibraryType currentType ->
+                            String groupKey = BulkCompilationGroup.getKey(currentType, filteredDependencies, variables)
+
+                            if (!compilationGroups.containsKey(groupKey)) {
+                                pageLibraryCompiler.loadLibraryContent(currentType, filteredDependencies)
+                                compilationGroups.put(groupKey, new BulkCompilationGroup(currentType, filteredDependencies, variables))
+                            }
+
+                            compilationGroups.get(groupKey).addPageLibrary(currentRoot, currentBrand)
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                LOG.error("Error encountered resolving the Page Libraries of " + currentRoot.path + " during bulk compilation", e)
+                failures.put(currentRoot.path, e.message ?: e.class.name)
+            }
+        }
+
+        LOG.info("Bulk compilation resolved " + libraryCount + " Page Libraries into " + compilationGroups.size() + " distinct compilations")
+
+        /*
+         * Phase two - compilation
+         */
+        Map<BulkCompilationGroup, String> compiledLibraries = [:]
+
+        if (!compilationGroups.isEmpty()) {
+            ExecutorService compilationExecutor = executor
+            Map<BulkCompilationGroup, Future<String>> compilationFutures = [:]
+
+            try {
+                compilationGroups.values().each { BulkCompilationGroup currentGroup ->
+                    compilationFutures.put(currentGroup, compilationExecutor.submit({ ->
+                        long compilationStart = System.nanoTime()
+                        SourceMapBuilder sourceMapBuilder = pageLibraryCompiler.createSourceMapBuilder(currentGroup.type, currentGroup.dependencies)
+                        String compiledLibrary = pageLibraryCompiler.compile(currentGroup.type, currentGroup.dependencies, currentGroup.variables, sourceMapBuilder)
+
+                        currentGroup.sourceMap = pageLibraryCompiler.buildSourceMap(sourceMapBuilder)
+                        clientLibraryMetrics.recordCompilation(currentGroup.type, System.nanoTime() - compilationStart)
+
+                        return compiledLibrary
+                    } as Callable<String>))
+                }
+
+                compilationFutures.each { BulkCompilationGroup currentGroup, Future<String> currentFuture ->
+                    try {
+                        compiledLibraries.put(currentGroup, currentFuture.get())
+                    } catch (ExecutionException e) {
+                        clientLibraryMetrics.recordCompilationFailure(currentGroup.type)
+                        LOG.error("Error encountered compiling " + currentGroup.type + " library for " + currentGroup.pageLibraryCount + " Page Libraries during bulk compilation", e.cause)
+                        currentGroup.roots.each { failures.put(it.path, e.cause?.message ?: e.cause?.class?.name) }
+                    }
+                }
+            } catch (InterruptedException e) {
+                LOG.error("Bulk compilation interrupted", e)
+                Thread.currentThread().interrupt()
+            } finally {
+                compilationFutures.values().each { it.cancel(true) }
+            }
+        }
+
+        /*
+         * Phase three - caching
+         */
+        if (!compiledLibraries.isEmpty()) {
+            try {
+                libraryCacheReadWriteLock.writeLock().lock()
+
+                /*
+                 * Libraries compiled against registries which have since changed may predate the invalidation of the
+                 * cache which accompanied the change, so are not cached
+                 */
+                if (clientLibraryManager.version != libraryVersion || dependentComponentManager.version != componentVersion) {
+                    LOG.warn("The Client Library or Dependent Component registries changed during bulk compilation, discarding " + compiledLibraries.size() + " compiled libraries")
+
+                    compiledLibraries.keySet().each { BulkCompilationGroup currentGroup ->
+                        currentGroup.roots.each { failures.put(it.path, "The registries changed during compilation") }
+                    }
+
+                    compiledLibraries.clear()
+                }
+
+                compiledLibraries.each { BulkCompilationGroup currentGroup, String currentLibrary ->
+                    for (int i = 0; i < currentGroup.pageLibraryCount; i++) {
+                        /*
+                         * The content of a page invalidated while the job was running may no longer have the
+                         * dependencies it was compiled with and its invalidation may already have been processed
+                         */
+                        if (resourceTypeCacheManager.isInvalidatedSince(currentGroup.roots.get(i).path, contentGeneration)) {
+                            LOG.debug("The content of " + currentGroup.roots.get(i).path + " changed during bulk compilation, not caching its " + currentGroup.type + " library")
+                            failures.put(currentGroup.roots.get(i).path, "The page content changed during compilation")
+                            continue
+                        }
+
+                        try {
+                            String currentPageLibrary = pageLibraryCompiler.attachSourceMap(currentGroup.roots.get(i), currentGroup.type, currentGroup.brands.get(i), currentLibrary, currentGroup.sourceMap)
+                            clientLibraryCacheManager.cacheLibrary(currentGroup.roots.get(i), currentGroup.type, currentGroup.brands.get(i), currentPageLibrary)
+                            compiledLibraryCount++
+                        } catch (ClientLibraryCachingException e) {
+                            LOG.error("Error encountered caching library for " + currentGroup.roots.get(i).path + " during bulk compilation", e)
+                            failures.put(currentGroup.roots.get(i).path, e.message)
+                        }
+                    }
+                }
+            } finally {
+                libraryCacheReadWriteLock.writeLock().unlock()
+            }
+        }
+
+        BulkCompilationResult result = new DefaultBulkCompilationResult(roots.size(), libraryCount, cachedLibraryCount, compilationGroups.size(), compiledLibraryCount, failures, System.currentTimeMillis() - startTime)
+
+        LOG.info(result.toString())
+
+        return result
+
+    }
+
+}
@@ -0,0 +1,357 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.chunks.impl
+
+import com.citytechinc.cq.clientlibs.api.constants.Brands
+import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType
+import com.citytechinc.cq.clientlibs.api.domain.library.exceptions.InvalidClientLibraryCategoryException
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.ClientLibraryManager
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ClientLibraryCacheManager
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ResourceTypeCacheManager
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCachingException
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCompilationException
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.ClientLibraryMetrics
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.InvalidationCause
+import com.citytechinc.cq.clientlibs.api.services.components.DependentComponentManager
+import com.citytechinc.cq.clientlibs.core.domain.library.ClientLibraries
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.chunks.SharedChunkAnalyzer
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.chunks.SharedChunks
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.compilers.PageLibraryCompiler
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.state.manager.impl.ClientLibraryRepositoryStateManager
+import com.google.common.base.Optional
+import com.google.common.base.Predicate
+import com.google.common.collect.ImmutableList
+import com.google.common.collect.ImmutableSet
+import com.google.common.collect.Sets
+import org.apache.sling.api.resource.Resource
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import java.util.concurrent.locks.ReentrantReadWriteLock
+
+/**
+ * Derives shared chunks from the usage of Client Libraries by the Page Libraries compiled on this instance and
+ * partitions Page Libraries into the chunks they include and a page specific remainder.  See
+ * {@link SharedChunkAnalyzer} for how chunks are derived.
+ */
+class SharedChunkManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger( SharedChunkManager )
+
+    public static final List<Double> DEFAULT_THRESHOLDS = [ 0.9d, 0.5d ].asImmutable()
+    public static final Integer DEFAULT_MINIMUM_SAMPLE = 100
+    public static final Integer DEFAULT_PARTITION_CACHE_SIZE = 10000
+
+    private final ClientLibraryManager clientLibraryManager
+    private final DependentComponentManager dependentComponentManager
+    private final ResourceTypeCacheManager resourceTypeCacheManager
+    private final ClientLibraryCacheManager clientLibraryCacheManager
+    private final ClientLibraryMetrics clientLibraryMetrics
+    private final ClientLibraryRepositoryStateManager stateManager
+    private final PageLibraryCompiler pageLibraryCompiler
+    private final ReentrantReadWriteLock libraryCacheReadWriteLock
+
+    private volatile Boolean enabled = false
+    private List<Double> thresholds = DEFAULT_THRESHOLDS
+    private Integer minimumSample = DEFAULT_MINIMUM_SAMPLE
+    private Integer partitionCacheSize = DEFAULT_PARTITION_CACHE_SIZE
+
+    private final SharedChunkAnalyzer sharedChunkAnalyzer = new SharedChunkAnalyzer()
+    private SharedChunks sharedChunks
+
+    /*
+     * The chunk definitions against which cached page remainders may have been built
+     */
+    private List<List<ClientLibrary>> remainderChunks
+
+    public SharedChunkManager(ClientLibraryManager clientLibraryManager,
+                              DependentComponentManager dependentComponentManager,
+                              ResourceTypeCacheManager resourceTypeCacheManager,
+                              ClientLibraryCacheManager clientLibraryCacheManager,
+                              ClientLibraryMetrics clientLibraryMetrics,
+                              ClientLibraryRepositoryStateManager stateManager,
+                              PageLibraryCompiler pageLibraryCompiler,
+                              ReentrantReadWriteLock libraryCacheReadWriteLock) {
+        this.clientLibraryManager = clientLibraryManager
+        this.dependentComponentManager = dependentComponentManager
+        this.resourceTypeCacheManager = resourceTypeCacheManager
+        this.clientLibraryCacheManager = clientLibraryCacheManager
+        this.clientLibraryMetrics = clientLibraryMetrics
+        this.stateManager = stateManager
+        this.pageLibraryCompiler = pageLibraryCompiler
+        this.libraryCacheReadWriteLock = libraryCacheReadWriteLock
+    }
+
+    /**
+     * Applies a new configuration and requests that the shared chunks be derived again.
+     *
+     * @param enabled
+     * @param thresholds Fractions of sampled Page Libraries, in descending order, a library must be used by to be
+     *                   placed in the first, second, etc. shared chunk
+     * @param minimumSample The number of Page Libraries which must be compiled before shared chunks are derived
+     * @param partitionCacheSize The maximum number of pages, types and brands whose partition is kept in memory
+     */
+    public void configure(Boolean enabled, List<Double> thresholds, Integer minimumSample, Integer partitionCacheSize) {
+
+        this.thresholds = ImmutableList.copyOf(thresholds.sort(false) { a, b -> b <=> a })
+        this.minimumSample = minimumSample
+        this.partitionCacheSize = partitionCacheSize
+        this.enabled = enabled
+
+        recompute()
+
+    }
+
+    public Boolean isEnabled() {
+        return enabled
+    }
+
+    /**
+     * Samples the libraries of a compiled Page Library when shared chunks are enabled.
+     *
+     * @param libraries The filtered ordered dependencies of the Page Library
+     */
+    public void recordUsage(List<ClientLibrary> libraries) {
+
+        if (enabled) {
+            sharedChunkAnalyzer.recordUsage(libraries)
+        }
+
+    }
+
+    /**
+     * <p>
+     * A page includes a shared chunk when its filtered ordered dependencies contain every library of the chunk which
+     * is included for the requested brand, and it includes every chunk before it.  Since each chunk is closed over
+     * the libraries which must be ordered ahead of its members, serving the included chunks in order followed by the
+     * remaining libraries in page order maintains the ordering of the whole Page Library.
+     * </p>
+     * <p>
+     * LESS is compiled over the whole of a Page Library's CSS, so CSS Page Libraries which use LESS are never
+     * partitioned.
+     * </p>
+     * <p>
+     * Partitions are cached per page, type and brand alongside the shared chunks they were determined against, so
+     * that rendering a page does not resolve its dependencies through the state manager each time.  A cached
+     * partition is reused until the component registry changes, the page or a page above it is invalidated, or the
+     * Resource Dependency Providers change.
+     * </p>
+     */
+    public DefaultPageLibraryPartition getPartition(Resource root, LibraryType type, Optional<String> brand) throws ClientLibraryCompilationException {
+
+        SharedChunks currentSharedChunks = getSharedChunks()
+
+        if (currentSharedChunks == null) {
+            return DefaultPageLibraryPartition.unpartitioned()
+        }
+
+        String partitionKey = root.path + "|" + type.name() + "|" + brand.or(Brands.DEFAULT_BRAND)
+        Long componentVersion = dependentComponentManager.version
+        long partitionsGeneration = currentSharedChunks.partitionsGeneration
+        long contentGeneration = resourceTypeCacheManager.generation
+
+        SharedChunks.CachedPartition cachedPartition = currentSharedChunks.getCachedPartition(partitionKey)
+
+        if (cachedPartition != null &&
+                cachedPartition.componentVersion == componentVersion &&
+                cachedPartition.partitionsGeneration == partitionsGeneration &&
+                !resourceTypeCacheManager.isInvalidatedSince(root.path, cachedPartition.contentGeneration)) {
+            return cachedPartition.partition
+        }
+
+        DefaultPageLibraryPartition partition = determinePartition(currentSharedChunks, root, type, brand)
+
+        currentSharedChunks.putCachedPartition(partitionKey, new SharedChunks.CachedPartition(partition, componentVersion, partitionsGeneration, contentGeneration))
+
+        return partition
+
+    }
+
+    private DefaultPageLibraryPartition determinePartition(SharedChunks currentSharedChunks, Resource root, LibraryType type, Optional<String> brand) throws ClientLibraryCompilationException {
+
+        try {
+
+            List<ClientLibrary> filteredDependencies = pageLibraryCompiler.getFilteredOrderedDependencies(root, brand)
+
+            if (type == LibraryType.CSS && filteredDependencies.any { it.hasCss() && it.hasLess() }) {
+                return DefaultPageLibraryPartition.unpartitioned()
+            }
+
+            Set<ClientLibrary> pageLibraries = ImmutableSet.copyOf(filteredDependencies)
+            Set<ClientLibrary> chunkedLibraries = Sets.newHashSet()
+            List<Integer> chunkIndices = []
+
+            for (int i = 0; i < currentSharedChunks.chunks.size(); i++) {
+                List<ClientLibrary> filteredChunk = stateManager.requestFilteredLibraries(currentSharedChunks.chunks.get(i), brand)
+
+                if (!pageLibraries.containsAll(filteredChunk)) {
+                    break
+                }
+
+                chunkedLibraries.addAll(filteredChunk)
+
+                if (filteredChunk.any { ClientLibraries.hasContent(it, type) }) {
+                    chunkIndices.add(i)
+                }
+            }
+
+            if (chunkIndices.isEmpty()) {
+                return DefaultPageLibraryPartition.unpartitioned()
+            }
+
+            List<ClientLibrary> remainder = filteredDependencies.findAll { !chunkedLibraries.contains(it) }
+
+            return DefaultPageLibraryPartition.forChunks(currentSharedChunks.generation, chunkIndices, remainder, remainder.any { ClientLibraries.hasContent(it, type) })
+
+        } catch ( InvalidClientLibraryCategoryException e ) {
+            throw new ClientLibraryCompilationException( "Invalid Client Library Exception hit in attempting to partition library", e )
+        }
+
+    }
+
+    /**
+     *
+     * @return The generation of the current shared chunks or absent if shared chunks are disabled or not yet
+     *         available
+     */
+    public Optional<Long> getSharedChunkGeneration() {
+
+        SharedChunks currentSharedChunks = getSharedChunks()
+
+        if (currentSharedChunks == null) {
+            return Optional.absent()
+        }
+
+        return Optional.of(currentSharedChunks.generation)
+
+    }
+
+    /**
+     * Discards the current shared chunks so that they are derived again from the usage sampled so far.
+     */
+    public void recompute() {
+
+        synchronized (sharedChunkAnalyzer) {
+            sharedChunks = null
+        }
+
+    }
+
+    /**
+     * Discards the cached partitions of the current shared chunks, keeping the chunks themselves.
+     */
+    public void invalidatePartitions() {
+
+        synchronized (sharedChunkAnalyzer) {
+            if (sharedChunks != null) {
+                sharedChunks.invalidatePartitions()
+            }
+        }
+
+    }
+
+    /**
+     * Provides the current generation of shared chunks, deriving a new generation when the Client Library registry
+     * has changed or a recomputation was requested and enough Page Libraries have been sampled.  Page remainders are
+     * cached per brand regardless of the generation, so the library cache is cleared whenever a generation is derived
+     * whose chunks differ from those the cached remainders may have been built against.
+     *
+     * @return The current shared chunks or null if shared chunks are disabled or not yet available
+     */
+    public SharedChunks getSharedChunks() {
+
+        if (!enabled) {
+            return null
+        }
+
+        SharedChunks derivedSharedChunks = null
+
+        synchronized (sharedChunkAnalyzer) {
+
+            Long libraryVersion = clientLibraryManager.version
+
+            if (sharedChunks != null && sharedChunks.libraryVersion == libraryVersion) {
+                return sharedChunks
+            }
+
+            sharedChunks = null
+
+            if (sharedChunkAnalyzer.sampleCount < minimumSample) {
+                return null
+            }
+
+            try {
+                List<Set<ClientLibrary>> chunkMembers = sharedChunkAnalyzer.analyze(clientLibraryManager.libraries, clientLibraryManager.librariesByCategory, thresholds, { ClientLibrary library -> pageLibraryCompiler.isVariableFree(library) } as Predicate<ClientLibrary>)
+
+                Set<ClientLibrary> chunkedLibraries = Sets.newHashSet()
+                chunkMembers.each { chunkedLibraries.addAll(it) }
+
+                List<ClientLibrary> orderedChunkedLibraries = stateManager.requestOrderedLibraries(chunkedLibraries)
+
+                List<List<ClientLibrary>> chunks = chunkMembers.collect { Set<ClientLibrary> currentMembers ->
+                    orderedChunkedLibraries.findAll { currentMembers.contains(it) }
+                }
+
+                sharedChunks = new SharedChunks(System.currentTimeMillis(), libraryVersion, chunks, partitionCacheSize)
+                derivedSharedChunks = sharedChunks
+
+                LOG.info("Derived shared chunks generation " + sharedChunks.generation + " from " + sharedChunkAnalyzer.sampleCount + " sampled Page Libraries : " + chunks.collect { it.size() } + " libraries")
+            } catch ( InvalidClientLibraryCategoryException e ) {
+                LOG.error("Invalid Client Library Exception hit in attempting to derive shared chunks", e)
+            }
+
+        }
+
+        if (derivedSharedChunks != null) {
+            clearStaleRemainders(derivedSharedChunks)
+        }
+
+        return derivedSharedChunks
+
+    }
+
+    /**
+     * Clears the library cache under the cache write lock if the chunks of the derived generation differ from those
+     * the cached remainders may have been built against.  Remainders cached by an earlier run of the instance are
+     * unknown, so the first generation derived always clears the cache.  Remainder compilations hold the write lock,
+     * so none of them can cache a remainder built against the replaced chunks once the clear has happened.
+     *
+     * @param derivedSharedChunks
+     */
+    private void clearStaleRemainders(SharedChunks derivedSharedChunks) {
+
+        libraryCacheReadWriteLock.writeLock().lock()
+
+        try {
+            if (remainderChunks == derivedSharedChunks.chunks) {
+                return
+            }
+
+            LOG.info("Shared chunks generation " + derivedSharedChunks.generation + " differs from the chunks cached remainders were built against, clearing compiled libraries")
+
+            clientLibraryCacheManager.clearCache()
+            clientLibraryMetrics.recordInvalidation(InvalidationCause.SHARED_CHUNKS)
+            remainderChunks = derivedSharedChunks.chunks
+        } catch ( ClientLibraryCachingException e ) {
+            LOG.error("Client Library Caching Exception encountered clearing the page remainders of replaced shared chunks", e)
+        } finally {
+            libraryCacheReadWriteLock.writeLock().unlock()
+        }
+
+    }
+
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.granular.impl
+
+import com.citytechinc.cq.clientlibs.api.constants.Brands
+import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType
+import com.citytechinc.cq.clientlibs.api.domain.library.exceptions.InvalidClientLibraryCategoryException
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.ClientLibraryManager
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ResourceTypeCacheManager
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCompilationException
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.granular.GranularLibrary
+import com.citytechinc.cq.clientlibs.api.services.components.DependentComponentManager
+import com.citytechinc.cq.clientlibs.core.domain.library.ClientLibraries
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.compilers.PageLibraryCompiler
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.granular.GranularLibraries
+import com.google.common.base.Optional
+import org.apache.sling.api.resource.Resource
+
+/**
+ * Splits Page Libraries into the Client Libraries served individually, so that they may be cached by browsers across
+ * pages, and a page specific remainder.  Individually served libraries are compiled once per version of the Client
+ * Library registry.
+ */
+class GranularLibraryManager {
+
+    public static final Integer SPLIT_CACHE_SIZE = 10000
+
+    private final ClientLibraryManager clientLibraryManager
+    private final DependentComponentManager dependentComponentManager
+    private final ResourceTypeCacheManager resourceTypeCacheManager
+    private final PageLibraryCompiler pageLibraryCompiler
+
+    private final Object granularLibrariesLock = new Object()
+    private GranularLibraries granularLibraries
+
+    public GranularLibraryManager(ClientLibraryManager clientLibraryManager,
+                                  DependentComponentManager dependentComponentManager,
+                                  ResourceTypeCacheManager resourceTypeCacheManager,
+                                  PageLibraryCompiler pageLibraryCompiler) {
+        this.clientLibraryManager = clientLibraryManager
+        this.dependentComponentManager = dependentComponentManager
+        this.resourceTypeCacheManager = resourceTypeCacheManager
+        this.pageLibraryCompiler = pageLibraryCompiler
+    }
+
+    /**
+     * <p>
+     * Splits the Page Library of the provided root into the longest prefix of its ordered libraries whose content is
+     * the same on every page, each to be served individually, and the remainder.  Serving the individual libraries
+     * in order followed by the remainder maintains the ordering of the whole Page Library.
+     * </p>
+     * <p>
+     * A library containing variable placeholders ends the prefix.  LESS is compiled over the whole of a Page
+     * Library's CSS, so CSS Page Libraries which use LESS are served entirely as the remainder.
+     * </p>
+     * <p>
+     * Splits are cached per page, type and brand alongside the compiled libraries they reference, so that rendering
+     * a page does not resolve its dependencies through the state manager each time.  A cached split is reused until
+     * the Client Library or component registry changes, the page or a page above it is invalidated, or the Resource
+     * Dependency Providers change.
+     * </p>
+     */
+    public DefaultGranularPageLibrary getGranularSplit(Resource root, LibraryType type, Optional<String> brand) throws ClientLibraryCompilationException {
+
+        GranularLibraries currentGranularLibraries = getGranularLibraries()
+
+        String splitKey = root.path + "|" + type.name() + "|" + brand.or(Brands.DEFAULT_BRAND)
+        Long componentVersion = dependentComponentManager.version
+        long splitsGeneration = currentGranularLibraries.splitsGeneration
+        long contentGeneration = resourceTypeCacheManager.generation
+
+        GranularLibraries.CachedSplit cachedSplit = currentGranularLibraries.getCachedSplit(splitKey)
+
+        if (cachedSplit != null &&
+                cachedSplit.componentVersion == componentVersion &&
+                cachedSplit.splitsGeneration == splitsGeneration &&
+                !resourceTypeCacheManager.isInvalidatedSince(root.path, cachedSplit.contentGeneration)) {
+            return cachedSplit.split
+        }
+
+        DefaultGranularPageLibrary split = determineSplit(currentGranularLibraries, root, type, brand)
+
+        currentGranularLibraries.putCachedSplit(splitKey, new GranularLibraries.CachedSplit(split, componentVersion, splitsGeneration, contentGeneration))
+
+        return split
+
+    }
+
+    private DefaultGranularPageLibrary determineSplit(GranularLibraries currentGranularLibraries, Resource root, LibraryType type, Optional<String> brand) throws ClientLibraryCompilationException {
+
+        try {
+
+            List<ClientLibrary> filteredDependencies = pageLibraryCompiler.getFilteredOrderedDependencies(root, brand)
+
+            if (type == LibraryType.CSS && filteredDependencies.any { it.hasCss() && it.hasLess() }) {
+                return new DefaultGranularPageLibrary([], filteredDependencies, filteredDependencies.any { ClientLibraries.hasContent(it, type) })
+            }
+
+            List<GranularLibrary> individualLibraries = []
+            int remainderStart = 0
+
+            for (; remainderStart < filteredDependencies.size(); remainderStart++) {
+                ClientLibrary currentLibrary = filteredDependencies.get(remainderStart)
+
+                if (!ClientLibraries.hasContent(currentLibrary, type)) {
+                    continue
+                }
+
+                if (!pageLibraryCompiler.isVariableFree(currentLibrary)) {
+                    break
+                }
+
+                individualLibraries.add(getCompiledGranularLibrary(currentGranularLibraries, currentLibrary, type))
+            }
+
+            List<ClientLibrary> remainder = filteredDependencies.subList(remainderStart, filteredDependencies.size())
+
+            return new DefaultGranularPageLibrary(individualLibraries, remainder, remainder.any { ClientLibraries.hasContent(it, type) })
+
+        } catch ( InvalidClientLibraryCategoryException e ) {
+            throw new ClientLibraryCompilationException( "Invalid Client Library Exception hit in attempting to split library", e )
+        }
+
+    }
+
+    /**
+     *
+     * @param clientLibraryPath
+     * @param type
+     * @return The compiled library at the provided path or absent if no such library exists or it is not served
+     *         individually
+     * @throws ClientLibraryCompilationException
+     */
+    public Optional<GranularLibrary> getGranularLibrary(String clientLibraryPath, LibraryType type) throws ClientLibraryCompilationException {
+
+        GranularLibraries currentGranularLibraries = getGranularLibraries()
+        Optional<ClientLibrary> library = currentGranularLibraries.getLibrary(clientLibraryPath)
+
+        if (!library.isPresent() || !ClientLibraries.hasContent(library.get(), type) || !pageLibraryCompiler.isVariableFree(library.get())) {
+            return Optional.absent()
+        }
+
+        if (type == LibraryType.CSS && library.get().hasLess()) {
+            return Optional.absent()
+        }
+
+        return Optional.<GranularLibrary>of(getCompiledGranularLibrary(currentGranularLibraries, library.get(), type))
+
+    }
+
+    /**
+     * Discards the compiled libraries and cached splits, as when the way libraries are compiled has changed.
+     */
+    public void clear() {
+
+        synchronized (granularLibrariesLock) {
+            granularLibraries = null
+        }
+
+    }
+
+    /**
+     * Discards the cached splits, keeping the compiled libraries.
+     */
+    public void invalidateSplits() {
+
+        synchronized (granularLibrariesLock) {
+            if (granularLibraries != null) {
+                granularLibraries.invalidateSplits()
+            }
+        }
+
+    }
+
+    protected GranularLibraries getGranularLibraries() {
+
+        synchronized (granularLibrariesLock) {
+
+            Long libraryVersion = clientLibraryManager.version
+
+            if (granularLibraries == null || granularLibraries.libraryVersion != libraryVersion) {
+                granularLibraries = new GranularLibraries(libraryVersion, clientLibraryManager.libraries, SPLIT_CACHE_SIZE)
+            }
+
+            return granularLibraries
+
+        }
+
+    }
+
+    protected DefaultGranularLibrary getCompiledGranularLibrary(GranularLibraries currentGranularLibraries, ClientLibrary library, LibraryType type) throws ClientLibraryCompilationException {
+
+        DefaultGranularLibrary compiledLibrary = currentGranularLibraries.getCompiledLibrary(type, library.clientLibraryPath)
+
+        if (compiledLibrary != null) {
+            return compiledLibrary
+        }
+
+        String content = pageLibraryCompiler.compile(type, [ library ], [:], null)
+
+        return currentGranularLibraries.putCompiledLibrary(type, library.clientLibraryPath, content)
+
+    }
+
+}
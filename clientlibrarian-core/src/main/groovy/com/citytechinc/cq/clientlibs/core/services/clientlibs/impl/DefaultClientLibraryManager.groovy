@@ -18,6 +18,7 @@ package com.citytechinc.cq.clientlibs.core.services.clientlibs.impl
 import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.ClientLibraryManager
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ClientLibraryCacheManager
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.ClientLibraryMetrics
 import com.citytechinc.cq.clientlibs.core.domain.library.ClientLibraries
 import com.citytechinc.cq.clientlibs.core.listeners.library.factory.impl.DefaultClientLibraryEventFactory
 import com.citytechinc.cq.clientlibs.core.listeners.library.impl.ClientLibraryEventListener
@@ -38,6 +39,7 @@ import javax.jcr.Session
 import javax.jcr.observation.ObservationManager
 import javax.jcr.query.Query
 import javax.jcr.query.QueryManager
+import java.util.concurrent.atomic.AtomicLong
 
 @Component(
         label="Default Client Library Manager",
@@ -51,6 +53,7 @@ class DefaultClientLibraryManager implements ClientLibraryManager {
     private Map<String, Set<ClientLibrary>> clientLibrariesByCategoryMap = [:]
 
     private Boolean initialized = false
+    private final AtomicLong version = new AtomicLong()
 
     @org.apache.felix.scr.annotations.Reference
     private ResourceResolverFactory resourceResolverFactory
@@ -62,6 +65,9 @@ class DefaultClientLibraryManager implements ClientLibraryManager {
     @org.apache.felix.scr.annotations.Reference
     private ClientLibraryCacheManager clientLibraryCacheManager
 
+    @org.apache.felix.scr.annotations.Reference
+    private ClientLibraryMetrics clientLibraryMetrics
+
     private Session session
 
     private ClientLibraryEventListener clientLibraryEventListener
@@ -125,6 +131,11 @@ class DefaultClientLibraryManager implements ClientLibraryManager {
 
     }
 
+    @Override
+    Long getVersion() {
+        return version.get()
+    }
+
     void requestRefresh() {
 
         synchronized (this) {
@@ -137,7 +148,7 @@ class DefaultClientLibraryManager implements ClientLibraryManager {
     protected void activate( Map<String, Object> properties ) throws RepositoryException, LoginException {
 
         ObservationManager observationManager = administrativeSession.workspace.observationManager
-        clientLibraryEventListener = new ClientLibraryEventListener(new DefaultClientLibraryEventFactory(), this, clientLibraryCacheManager, session)
+        clientLibraryEventListener = new ClientLibraryEventListener(new DefaultClientLibraryEventFactory(), this, clientLibraryCacheManager, clientLibraryMetrics, session)
         observationManager.addEventListener(clientLibraryEventListener, 31, "/", true, null, null, true)
 
     }
@@ -204,6 +215,7 @@ class DefaultClientLibraryManager implements ClientLibraryManager {
         }
 
         initialized = true
+        version.incrementAndGet()
 
     }
 
@@ -22,12 +22,47 @@ import com.citytechinc.cq.clientlibs.api.domain.library.exceptions.InvalidClient
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.ClientLibraryManager
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.ClientLibraryRepository
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.ResourceDependencyProvider
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.bulk.BulkCompilationResult
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.CachedLibrary
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.chunks.PageLibraryPartition
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ClientLibraryCacheManager
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ResourceTypeCacheManager
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.compilers.less.LessCompiler
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.compilers.minify.MinifiedSource
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.compilers.minify.Minifier
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.compilers.minify.exceptions.MinificationException
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.granular.GranularLibrary
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.granular.GranularPageLibrary
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.CachedClientLibraryLookupException
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCachingException
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCompilationException
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.ClientLibraryMetrics
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.CompilationPhase
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.InvalidationCause
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.transformer.ScopedVariableProvider
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.transformer.VariableProvider
 import com.citytechinc.cq.clientlibs.api.structures.graph.DependencyGraph
+import com.citytechinc.cq.clientlibs.core.domain.library.impl.DefaultClientLibrary
 import com.citytechinc.cq.clientlibs.core.listeners.content.impl.PageContentEventListener
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.bulk.impl.BulkCompilationManager
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.cache.impl.ByteBufferCachedLibrary
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.chunks.SharedChunks
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.chunks.impl.DefaultPageLibraryPartition
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.chunks.impl.SharedChunkManager
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.compilers.PageLibraryCompiler
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.compilers.minify.MinifiedLibraries
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.metrics.CompilationPhaseTimer
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.metrics.impl.DefaultSlowCompilation
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.sourcemap.MappedLibraries
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.sourcemap.MappedLibrary
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.sourcemap.SourceMapBuilder
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.variables.LibraryTemplate
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.variables.LibraryTemplates
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.variables.VariableCache
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.variables.VariableSubstitution
+import com.citytechinc.cq.clientlibs.core.servlets.ComponentClientLibraryServlet
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.granular.impl.DefaultGranularPageLibrary
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.granular.impl.GranularLibraryManager
 import com.citytechinc.cq.clientlibs.core.services.clientlibs.state.manager.impl.ClientLibraryRepositoryStateManager
 import com.citytechinc.cq.clientlibs.api.services.components.DependentComponentManager
 import com.google.common.base.Optional
@@ -36,6 +71,7 @@ import org.apache.commons.lang.StringUtils
 import org.apache.felix.scr.annotations.*
 import org.apache.sling.api.resource.LoginException
 import org.apache.sling.api.resource.Resource
+import org.apache.sling.commons.json.JSONException
 import org.apache.sling.jcr.api.SlingRepository
 import org.apache.sling.settings.SlingSettingsService
 import org.mozilla.javascript.RhinoException
@@ -51,6 +87,7 @@ import javax.jcr.query.InvalidQueryException
 
 import org.apache.sling.commons.osgi.PropertiesUtil
 
+import java.nio.charset.StandardCharsets
 import java.util.concurrent.locks.ReentrantReadWriteLock
 
 /**
@@ -80,16 +117,92 @@ class DefaultClientLibraryRepository implements ClientLibraryRepository {
     @Reference
     private LessCompiler lessCompiler
 
+    @Reference
+    private Minifier minifier
+
     @Reference
     SlingSettingsService slingSettingsService
 
     @Reference
     ClientLibraryCacheManager clientLibraryCacheManager
 
+    @Reference
+    ResourceTypeCacheManager resourceTypeCacheManager
+
+    @Reference
+    ClientLibraryMetrics clientLibraryMetrics
+
     @Property(label = "Strict Javascript", boolValue = false, description = "When set to true rendered JavaScript page libraries will start with a 'strict' directive")
     private static final String STRICT_JAVASCRIPT = "strictJavascript"
     private Boolean strictJavascript
 
+    @Property(label = "Bulk Compilation Threads", intValue = 4, description = "The maximum number of threads used to compile distinct libraries during a bulk compilation job")
+    private static final String BULK_COMPILATION_THREADS = "bulkCompilationThreads"
+
+    @Property(label = "Shared Chunks Enabled", boolValue = false, description = "When set to true Page Libraries are split into shared chunks, derived from library usage across compiled pages, and a page specific remainder")
+    private static final String SHARED_CHUNKS_ENABLED = "sharedChunksEnabled"
+
+    @Property(label = "Shared Chunk Thresholds", value = [ "0.9", "0.5" ], description = "Descending fractions of sampled Page Libraries a library must be used by to be placed in the first, second, etc. shared chunk")
+    private static final String SHARED_CHUNK_THRESHOLDS = "sharedChunkThresholds"
+
+    @Property(label = "Shared Chunk Minimum Sample", intValue = 100, description = "The number of Page Libraries which must be compiled before shared chunks are derived")
+    private static final String SHARED_CHUNK_MINIMUM_SAMPLE = "sharedChunkMinimumSample"
+
+    @Property(label = "Shared Chunk Partition Cache Size", intValue = 10000, description = "The maximum number of pages, types and brands for which the partition of the Page Library into shared chunks is kept in memory")
+    private static final String SHARED_CHUNK_PARTITION_CACHE_SIZE = "sharedChunkPartitionCacheSize"
+
+    /*
+     * Libraries other than whole Page Libraries are cached under their prefix followed by the brand.  Brands are taken
+     * from request selectors and so never contain a dot, which keeps these keys apart from those of real brands.
+     */
+    public static final String REMAINDER_CACHE_KEY_PREFIX = "remainder."
+    public static final String GRANULAR_CACHE_KEY_PREFIX = "granular."
+
+    @Property(label = "Minification Enabled", boolValue = false, description = "When set to true each Client Library is minified before being merged into a library.  LESS libraries are minified after compilation.")
+    private static final String MINIFICATION_ENABLED = "minificationEnabled"
+
+    @Property(label = "Minification Run Modes", value = [], cardinality = Integer.MAX_VALUE, description = "The run modes in which minification is performed when enabled.  Minification is performed in all run modes when none are set.")
+    private static final String MINIFICATION_RUN_MODES = "minificationRunModes"
+
+    private Boolean minify
+    private final Object minifiedLibrariesLock = new Object()
+    private MinifiedLibraries minifiedLibraries
+
+    @Property(label = "Source Maps Enabled", boolValue = false, description = "When set to true a source map is produced and cached for each Page Library, mapping it back to the original files of its Client Libraries.  No source map is produced for CSS Page Libraries using LESS.")
+    private static final String SOURCE_MAPS_ENABLED = "sourceMapsEnabled"
+    private Boolean sourceMapsEnabled = false
+
+    public static final String SOURCE_MAP_CACHE_KEY_PREFIX = "sourcemap."
+
+    private final Object mappedLibrariesLock = new Object()
+    private MappedLibraries mappedLibraries
+
+    private final Object libraryTemplatesLock = new Object()
+    private LibraryTemplates libraryTemplates
+
+    /*
+     * Client Libraries read their files through the administrative resource resolver they were loaded with, which is
+     * not thread safe
+     */
+    private final Object libraryContentLock = new Object()
+
+    @Property(label = "Variable Site Root Depth", intValue = 2, description = "The depth below the repository root of site root pages, /content/mysite having a depth of 2.  The variables of site root scoped Variable Providers are cached per site root page.")
+    private static final String VARIABLE_SITE_ROOT_DEPTH = "variableSiteRootDepth"
+
+    @Property(label = "Variable Cache Size", intValue = 10000, description = "The maximum number of site root pages or pages for which the variables of each Scoped Variable Provider are kept in memory")
+    private static final String VARIABLE_CACHE_SIZE = "variableCacheSize"
+
+    protected final VariableCache variableCache = new VariableCache()
+
+    @Property(label = "Slow Compilation Threshold", intValue = 0, description = "Compilations of a Page Library taking longer than this many milliseconds are logged along with the time spent in each phase of the compilation.  Set to 0 to disable.")
+    private static final String SLOW_COMPILATION_THRESHOLD_MILLIS = "slowCompilationThresholdMillis"
+    private Integer slowCompilationThresholdMillis
+
+    protected CompilationPhaseTimer phaseTimer
+
+    @Property(label = "Ordered Dependencies Cache Size", intValue = 1000, description = "The maximum number of distinct sets of page dependencies for which the ordered list of Client Libraries is kept in memory")
+    private static final String ORDERED_DEPENDENCIES_CACHE_SIZE = "orderedDependenciesCacheSize"
+
     private session
 
     @Reference
@@ -99,6 +212,10 @@ class DefaultClientLibraryRepository implements ClientLibraryRepository {
 
     protected ClientLibraryRepositoryStateManager stateManager
 
+    protected SharedChunkManager sharedChunkManager
+    protected GranularLibraryManager granularLibraryManager
+    protected BulkCompilationManager bulkCompilationManager
+
     protected ReentrantReadWriteLock resourceDependencyProviderListReadWriteLock
     protected ReentrantReadWriteLock variableProviderListReadWriteLock
     protected ReentrantReadWriteLock libraryCacheReadWriteLock
@@ -133,11 +250,21 @@ class DefaultClientLibraryRepository implements ClientLibraryRepository {
 
         LOG.debug( "Activating Service" )
 
-        stateManager = new ClientLibraryRepositoryStateManager( clientLibraryManager, dependentComponentManager )
+        Integer orderedDependenciesCacheSize = PropertiesUtil.toInteger(properties.get(ORDERED_DEPENDENCIES_CACHE_SIZE), ClientLibraryRepositoryStateManager.DEFAULT_ORDERED_DEPENDENCIES_CACHE_SIZE)
 
-        strictJavascript = PropertiesUtil.toBoolean(properties.get(STRICT_JAVASCRIPT), false)
+        phaseTimer = new CompilationPhaseTimer( clientLibraryMetrics )
+        stateManager = new ClientLibraryRepositoryStateManager( clientLibraryManager, dependentComponentManager, slingSettingsService.runModes, orderedDependenciesCacheSize, phaseTimer )
+        initializeManagers()
 
-        pageContentEventListener = new PageContentEventListener(clientLibraryCacheManager)
+        strictJavascript = PropertiesUtil.toBoolean(properties.get(STRICT_JAVASCRIPT), false)
+        slowCompilationThresholdMillis = PropertiesUtil.toInteger(properties.get(SLOW_COMPILATION_THRESHOLD_MILLIS), 0)
+        configureBulkCompilation(properties)
+        configureSharedChunks(properties)
+        configureMinification(properties)
+        variableCache.siteRootDepth = PropertiesUtil.toInteger(properties.get(VARIABLE_SITE_ROOT_DEPTH), VariableCache.DEFAULT_SITE_ROOT_DEPTH)
+        variableCache.maximumSize = PropertiesUtil.toInteger(properties.get(VARIABLE_CACHE_SIZE), VariableCache.DEFAULT_MAXIMUM_SIZE)
+
+        pageContentEventListener = new PageContentEventListener(clientLibraryCacheManager, resourceTypeCacheManager, variableCache, clientLibraryMetrics)
         ObservationManager observationManager = administrativeSession.workspace.observationManager
         observationManager.addEventListener(
                 pageContentEventListener,
@@ -155,6 +282,134 @@ class DefaultClientLibraryRepository implements ClientLibraryRepository {
     protected void modified( Map<String, Object> properties ) {
 
         strictJavascript = PropertiesUtil.toBoolean(properties.get(STRICT_JAVASCRIPT), false)
+        slowCompilationThresholdMillis = PropertiesUtil.toInteger(properties.get(SLOW_COMPILATION_THRESHOLD_MILLIS), 0)
+        configureBulkCompilation(properties)
+        configureSharedChunks(properties)
+        configureMinification(properties)
+        variableCache.siteRootDepth = PropertiesUtil.toInteger(properties.get(VARIABLE_SITE_ROOT_DEPTH), VariableCache.DEFAULT_SITE_ROOT_DEPTH)
+        variableCache.maximumSize = PropertiesUtil.toInteger(properties.get(VARIABLE_CACHE_SIZE), VariableCache.DEFAULT_MAXIMUM_SIZE)
+
+    }
+
+    /**
+     * Creates the managers to which shared chunks, granular libraries and bulk compilation are delegated, once the
+     * services and state manager they work with are available.
+     */
+    protected void initializeManagers() {
+
+        PageLibraryCompiler pageLibraryCompiler = createPageLibraryCompiler()
+
+        sharedChunkManager = new SharedChunkManager(clientLibraryManager, dependentComponentManager, resourceTypeCacheManager,
+                clientLibraryCacheManager, clientLibraryMetrics, stateManager, pageLibraryCompiler, libraryCacheReadWriteLock)
+        granularLibraryManager = new GranularLibraryManager(clientLibraryManager, dependentComponentManager, resourceTypeCacheManager, pageLibraryCompiler)
+        bulkCompilationManager = new BulkCompilationManager(clientLibraryManager, dependentComponentManager, resourceTypeCacheManager,
+                clientLibraryCacheManager, clientLibraryMetrics, sharedChunkManager, pageLibraryCompiler, libraryCacheReadWriteLock)
+
+    }
+
+    /**
+     * Exposes the resolution and compilation performed by the repository to its managers.
+     */
+    protected PageLibraryCompiler createPageLibraryCompiler() {
+
+        return new PageLibraryCompiler() {
+
+            @Override
+            List<ClientLibrary> getFilteredOrderedDependencies(Resource root, Optional<String> brand) throws InvalidClientLibraryCategoryException {
+                return DefaultClientLibraryRepository.this.getFilteredOrderedDependencies(root, brand)
+            }
+
+            @Override
+            Map<String, String> getVariables(Resource root) {
+                return DefaultClientLibraryRepository.this.getVariables(root)
+            }
+
+            @Override
+            boolean isVariableFree(ClientLibrary library) {
+                return DefaultClientLibraryRepository.this.isVariableFree(library)
+            }
+
+            @Override
+            void loadLibraryContent(LibraryType type, List<ClientLibrary> libraries) {
+                DefaultClientLibraryRepository.this.loadLibraryContent(type, libraries)
+            }
+
+            @Override
+            SourceMapBuilder createSourceMapBuilder(LibraryType type, List<ClientLibrary> libraries) {
+                return DefaultClientLibraryRepository.this.createSourceMapBuilder(type, libraries)
+            }
+
+            @Override
+            String compile(LibraryType type, List<ClientLibrary> libraries, Map<String, String> variables, SourceMapBuilder sourceMapBuilder) throws ClientLibraryCompilationException {
+                if (type == LibraryType.CSS) {
+                    return DefaultClientLibraryRepository.this.compileCSSClientLibrary(libraries, variables, sourceMapBuilder)
+                }
+
+                return DefaultClientLibraryRepository.this.compileJSClientLibrary(libraries, variables, sourceMapBuilder)
+            }
+
+            @Override
+            String buildSourceMap(SourceMapBuilder sourceMapBuilder) {
+                return DefaultClientLibraryRepository.buildSourceMap(sourceMapBuilder)
+            }
+
+            @Override
+            String attachSourceMap(Resource root, LibraryType type, String brand, String library, String sourceMap) throws ClientLibraryCachingException {
+                return DefaultClientLibraryRepository.this.attachSourceMap(root, type, brand, library, sourceMap)
+            }
+
+        }
+
+    }
+
+    protected void configureBulkCompilation( Map<String, Object> properties ) {
+
+        bulkCompilationManager.configure(PropertiesUtil.toInteger(properties.get(BULK_COMPILATION_THREADS), BulkCompilationManager.DEFAULT_THREADS))
+
+    }
+
+    protected void configureSharedChunks( Map<String, Object> properties ) {
+
+        sharedChunkManager.configure(
+                PropertiesUtil.toBoolean(properties.get(SHARED_CHUNKS_ENABLED), false),
+                PropertiesUtil.toStringArray(properties.get(SHARED_CHUNK_THRESHOLDS), [ "0.9", "0.5" ] as String[]).collect { Double.valueOf(it) },
+                PropertiesUtil.toInteger(properties.get(SHARED_CHUNK_MINIMUM_SAMPLE), SharedChunkManager.DEFAULT_MINIMUM_SAMPLE),
+                PropertiesUtil.toInteger(properties.get(SHARED_CHUNK_PARTITION_CACHE_SIZE), SharedChunkManager.DEFAULT_PARTITION_CACHE_SIZE))
+
+    }
+
+    protected void configureMinification( Map<String, Object> properties ) {
+
+        Boolean minificationEnabled = PropertiesUtil.toBoolean(properties.get(MINIFICATION_ENABLED), false)
+        List<String> minificationRunModes = PropertiesUtil.toStringArray(properties.get(MINIFICATION_RUN_MODES), [] as String[]).findAll { StringUtils.isNotBlank(it) }
+
+        Boolean previousMinify = minify
+        Boolean previousSourceMapsEnabled = sourceMapsEnabled
+        minify = minificationEnabled && (minificationRunModes.isEmpty() || minificationRunModes.any { slingSettingsService.runModes.contains(it) })
+        sourceMapsEnabled = PropertiesUtil.toBoolean(properties.get(SOURCE_MAPS_ENABLED), false)
+
+        if (previousMinify != null && (previousMinify != minify || previousSourceMapsEnabled != sourceMapsEnabled)) {
+            LOG.info("Minification changed to " + minify + " and source maps to " + sourceMapsEnabled + ", clearing compiled libraries")
+
+            synchronized (minifiedLibrariesLock) {
+                minifiedLibraries = null
+            }
+            synchronized (mappedLibrariesLock) {
+                mappedLibraries = null
+            }
+            synchronized (libraryTemplatesLock) {
+                libraryTemplates = null
+            }
+            granularLibraryManager.clear()
+            recomputeSharedChunks()
+
+            try {
+                clientLibraryCacheManager.clearCache()
+                clientLibraryMetrics.recordInvalidation(InvalidationCause.CONFIGURATION)
+            } catch ( ClientLibraryCachingException e ) {
+                LOG.error("Client Library Caching Exception encountered clearing the cache after a change in minification", e)
+            }
+        }
 
     }
 
@@ -163,6 +418,10 @@ class DefaultClientLibraryRepository implements ClientLibraryRepository {
 
         stateManager = null
 
+        if ( bulkCompilationManager != null ) {
+            bulkCompilationManager.shutdown()
+        }
+
         if ( pageContentEventListener != null ) {
             administrativeSession.workspace.observationManager.removeEventListener(pageContentEventListener)
             pageContentEventListener = null
@@ -200,6 +459,8 @@ class DefaultClientLibraryRepository implements ClientLibraryRepository {
                 this.resourceDependencyProviderListReadWriteLock.writeLock().unlock()
             }
 
+            invalidatePartitions()
+
         }
     }
 
@@ -232,6 +493,8 @@ class DefaultClientLibraryRepository implements ClientLibraryRepository {
                 this.resourceDependencyProviderListReadWriteLock.writeLock().unlock()
             }
 
+            invalidatePartitions()
+
         }
     }
 
@@ -293,6 +556,8 @@ class DefaultClientLibraryRepository implements ClientLibraryRepository {
                 this.variableProviderListReadWriteLock.writeLock().unlock()
             }
         }
+
+        variableCache.invalidate(variableProvider)
     }
 
     @Override
@@ -302,31 +567,117 @@ class DefaultClientLibraryRepository implements ClientLibraryRepository {
 
     @Override
     public void refresh() throws RepositoryException, LoginException {
+        variableCache.clear()
         stateManager.requestRefresh();
     }
 
     @Override
     public String compileClientLibrary(Resource root, LibraryType type, Optional<String> brand) throws ClientLibraryCompilationException {
 
-        try {
+        return compileCachedLibrary(root, type, brand.or(Brands.DEFAULT_BRAND), { ->
+            return requestClientLibraryRendering(root, type, brand)
+        })
 
-            LOG.debug("Looking up whether cached library exists for " + root.getPath())
+    }
 
-            //Check whether a cached version of the library exists
-            def cachedLibraryResult = clientLibraryCacheManager.getCachedLibrary(root, type, brand.or(Brands.DEFAULT_BRAND))
+    @Override
+    public CachedLibrary compileClientLibraryEntry(Resource root, LibraryType type, Optional<String> brand) throws ClientLibraryCompilationException {
 
-            if ( cachedLibraryResult.isPresent() ) {
+        return compileCachedLibraryEntry(root, type, brand.or(Brands.DEFAULT_BRAND), { ->
+            return requestClientLibraryRendering(root, type, brand)
+        })
 
-                LOG.debug("Cached Library was found for " + root.getPath())
-                return cachedLibraryResult.get()
+    }
 
+    /**
+     * Looks up the library cached for the root, type, and cache key as the encoded bytes it is cached as, producing
+     * and caching it as {@link #compileCachedLibrary} does if it is not yet cached.
+     *
+     * @param root
+     * @param type
+     * @param cacheKey The brand under which the library is cached
+     * @param renderer
+     * @return The cached or newly rendered library, which must be closed once read
+     * @throws ClientLibraryCompilationException
+     */
+    protected CachedLibrary compileCachedLibraryEntry(Resource root, LibraryType type, String cacheKey, Closure<String> renderer) throws ClientLibraryCompilationException {
+
+        try {
+            long lookupStart = System.nanoTime()
+            Optional<CachedLibrary> cachedLibrary = clientLibraryCacheManager.getCachedLibraryEntry(root, type, cacheKey)
+            clientLibraryMetrics.recordCacheLookup(type, cachedLibrary.isPresent(), System.nanoTime() - lookupStart)
+
+            if (cachedLibrary.isPresent()) {
+                return cachedLibrary.get()
             }
+        } catch ( CachedClientLibraryLookupException e ) {
+            LOG.error("Cached Client Library Lookup Exception encountered looking up the cached library for " + root.path + ", compiling it", e)
+        }
+
+        /*
+         * The miss is already known so the library is produced without being looked up again outside of the lock, and
+         * having just been compiled it is served as is rather than read back from the cache
+         */
+        return new ByteBufferCachedLibrary(compileUncachedLibrary(root, type, cacheKey, renderer).getBytes(StandardCharsets.UTF_8))
+
+    }
+
+    /**
+     * Looks up the library cached for the root, type, and cache key, producing and caching it via the provided
+     * renderer under the cache write lock if it is not yet cached.
+     *
+     * @param root
+     * @param type
+     * @param cacheKey The brand under which the library is cached
+     * @param renderer
+     * @return The cached or newly rendered library
+     * @throws ClientLibraryCompilationException
+     */
+    protected String compileCachedLibrary(Resource root, LibraryType type, String cacheKey, Closure<String> renderer) throws ClientLibraryCompilationException {
+
+        LOG.debug("Looking up whether cached library exists for " + root.getPath())
+
+        //Check whether a cached version of the library exists
+        long lookupStart = System.nanoTime()
+        def cachedLibraryResult = clientLibraryCacheManager.getCachedLibrary(root, type, cacheKey)
+        clientLibraryMetrics.recordCacheLookup(type, cachedLibraryResult.isPresent(), System.nanoTime() - lookupStart)
+
+        if ( cachedLibraryResult.isPresent() ) {
+
+            LOG.debug("Cached Library was found for " + root.getPath())
+            return cachedLibraryResult.get()
+
+        }
+
+        return compileUncachedLibrary(root, type, cacheKey, renderer)
+
+    }
+
+    /**
+     * Produces and caches the library for the root, type, and cache key via the provided renderer under the cache
+     * write lock, once a lookup has missed.  The library is looked up again once the lock is held in case another
+     * request produced it in the meantime.
+     *
+     * @param root
+     * @param type
+     * @param cacheKey The brand under which the library is cached
+     * @param renderer
+     * @return The cached or newly rendered library
+     * @throws ClientLibraryCompilationException
+     */
+    protected String compileUncachedLibrary(Resource root, LibraryType type, String cacheKey, Closure<String> renderer) throws ClientLibraryCompilationException {
+
+        CompilationPhaseTimer.Timings timings
+        String requestedLibrary
+
+        try {
+
             //if a cached version was not found - grab the cache write lock and produce the version
             libraryCacheReadWriteLock.writeLock().lock()
 
             LOG.debug("Grabbed the Cache Write lock to produce the library for " + root.getPath())
 
-            cachedLibraryResult = clientLibraryCacheManager.getCachedLibrary(root, type, brand.or(Brands.DEFAULT_BRAND))
+            def cachedLibraryResult = clientLibraryCacheManager.getCachedLibrary(root, type, cacheKey)
 
             LOG.debug("Cached library result after write lock obtainment " + cachedLibraryResult.orNull())
 
@@ -340,12 +691,30 @@ class DefaultClientLibraryRepository implements ClientLibraryRepository {
 
             LOG.debug("No cached library found for " + root.getPath() + " requesting")
 
-            def requestedLibrary = requestClientLibraryRendering(root, type, brand)
+            timings = phaseTimer.begin()
+            long compilationStart = System.nanoTime()
 
-            LOG.debug("Caching library " + root.getPath())
-            clientLibraryCacheManager.cacheLibrary(root, type, brand.or(Brands.DEFAULT_BRAND), requestedLibrary)
+            try {
+                try {
+                    requestedLibrary = renderer.call()
+                } catch ( Exception e ) {
+                    clientLibraryMetrics.recordCompilationFailure(type)
+                    throw e
+                }
+
+                clientLibraryMetrics.recordCompilation(type, System.nanoTime() - compilationStart)
+
+                LOG.debug("Caching library " + root.getPath())
+                long cacheWriteStart = phaseTimer.start()
+                clientLibraryCacheManager.cacheLibrary(root, type, cacheKey, requestedLibrary)
+                phaseTimer.stop(CompilationPhase.CACHE_WRITE, cacheWriteStart)
+            } finally {
+                phaseTimer.end(timings)
+            }
 
-            return requestedLibrary
+            if ( slowCompilationThresholdMillis > 0 && timings.totalMillis > slowCompilationThresholdMillis ) {
+                LOG.warn("Slow compilation of the " + type + " library " + cacheKey + " for " + root.getPath() + " took " + timings)
+            }
 
         } catch ( InvalidClientLibraryCategoryException e ) {
             throw new ClientLibraryCompilationException( "Invalid Client Library Exception hit in attempting to build library", e )
@@ -355,41 +724,353 @@ class DefaultClientLibraryRepository implements ClientLibraryRepository {
                 libraryCacheReadWriteLock.writeLock().unlock()
             }
         }
-    }
 
-    private String requestClientLibraryRendering(Resource root, LibraryType type, Optional<String> brand) {
+        /*
+         * The library is encoded to measure it only once the write lock has been released, so that measuring a large
+         * library does not hold up other compilations
+         */
+        if ( clientLibraryMetrics.isSlowCompilation(timings.totalMillis) ) {
+            clientLibraryMetrics.recordSlowCompilation(new DefaultSlowCompilation(System.currentTimeMillis(), root.getPath(), type, cacheKey,
+                    timings.libraryCount, requestedLibrary.getBytes(StandardCharsets.UTF_8).length, timings.totalMillis, timings.phaseMillis))
+        }
 
-        List<ClientLibrary> dependencies = getOrderedDependencies( root )
+        return requestedLibrary
 
-        Set<String> currentRunModes = slingSettingsService.runModes
+    }
 
-        LOG.debug( "Found dependencies for " + root.getPath() + " : " + dependencies )
+    private String requestClientLibraryRendering(Resource root, LibraryType type, Optional<String> brand) {
 
         /*
-         * Filter the included libraries based on run mode
+         * Dependencies are filtered based on run mode and brand
          */
-        List<ClientLibrary> filteredDependencies = dependencies.findAll { ClientLibrary currentDependency ->
+        List<ClientLibrary> filteredDependencies = getFilteredOrderedDependencies( root, brand )
 
-            return currentDependency.isIncludedForRunModes(currentRunModes) &&
-                    currentDependency.isIncludedForBrand(brand)
+        LOG.debug( "Filtered dependencies for " + root.getPath() + " : " + filteredDependencies )
 
-        }
+        sharedChunkManager.recordUsage( filteredDependencies )
 
-        LOG.debug( "Filtered dependencies for " + root.getPath() + " : " + filteredDependencies )
+        SourceMapBuilder sourceMapBuilder = createSourceMapBuilder( type, filteredDependencies )
 
-        if ( type == LibraryType.CSS ) {
-            String compiledCssLibrary = compileCSSClientLibrary( root, filteredDependencies )
+        long variablesStart = phaseTimer.start()
+        Map<String, String> variables = getVariables( root )
+        phaseTimer.stop( CompilationPhase.VARIABLE_TRANSFORM, variablesStart )
 
-            return compiledCssLibrary
+        String compiledLibrary
+
+        if ( type == LibraryType.CSS ) {
+            compiledLibrary = compileCSSClientLibrary( filteredDependencies, variables, sourceMapBuilder )
         }
         else if ( type == LibraryType.JS ) {
-            String compiledJsLibrary = compileJSClientLibrary( root, filteredDependencies )
+            compiledLibrary = compileJSClientLibrary( filteredDependencies, variables, sourceMapBuilder )
+        }
+        else {
+            return null
+        }
+
+        long sourceMapStart = phaseTimer.start()
+        String library = attachSourceMap( root, type, brand.or( Brands.DEFAULT_BRAND ), compiledLibrary, buildSourceMap( sourceMapBuilder ) )
+        phaseTimer.stop( CompilationPhase.SOURCE_MAP, sourceMapStart )
+
+        return library
+
+    }
+
+    @Override
+    public Optional<String> getSourceMap(Resource root, LibraryType type, Optional<String> brand) throws ClientLibraryCompilationException {
+
+        if (!sourceMapsEnabled) {
+            return Optional.absent()
+        }
+
+        String sourceMapCacheKey = SOURCE_MAP_CACHE_KEY_PREFIX + brand.or(Brands.DEFAULT_BRAND)
+
+        try {
+            Optional<String> cachedSourceMap = clientLibraryCacheManager.getCachedLibrary(root, type, sourceMapCacheKey)
+
+            if (cachedSourceMap.isPresent()) {
+                return cachedSourceMap
+            }
+
+            if (createSourceMapBuilder(type, getFilteredOrderedDependencies(root, brand)) == null) {
+                return Optional.absent()
+            }
+
+            /*
+             * The source map is produced and cached along with the Page Library.  A bounded cache may have evicted the
+             * map while keeping the library, so the library is invalidated to have both compiled and cached again.
+             */
+            clientLibraryCacheManager.invalidateCache(root.path, type, brand.or(Brands.DEFAULT_BRAND))
+            compileClientLibrary(root, type, brand)
+
+            return clientLibraryCacheManager.getCachedLibrary(root, type, sourceMapCacheKey)
+        } catch ( ClientLibraryCachingException e ) {
+            throw new ClientLibraryCompilationException( "Client Library Caching Exception hit in attempting to look up source map", e )
+        } catch ( InvalidClientLibraryCategoryException e ) {
+            throw new ClientLibraryCompilationException( "Invalid Client Library Exception hit in attempting to look up source map", e )
+        }
+
+    }
+
+    /**
+     * Source maps are not produced for CSS Page Libraries using LESS as the LESS compiler does not report where its
+     * output came from.
+     *
+     * @return A builder for the source map of a Page Library made up of the provided dependencies or null if no
+     *         source map is to be produced
+     */
+    protected SourceMapBuilder createSourceMapBuilder( LibraryType type, List<ClientLibrary> dependencies ) {
+
+        if (!sourceMapsEnabled) {
+            return null
+        }
+
+        if (type == LibraryType.CSS && dependencies.any { it.hasCss() && it.hasLess() }) {
+            return null
+        }
+
+        return new SourceMapBuilder()
+
+    }
+
+    protected static String buildSourceMap( SourceMapBuilder sourceMapBuilder ) {
+
+        if (sourceMapBuilder == null) {
+            return null
+        }
+
+        try {
+            return sourceMapBuilder.build()
+        } catch ( JSONException e ) {
+            LOG.error("JSON Exception encountered building source map, serving the library without one", e)
+            return null
+        }
+
+    }
+
+    /**
+     * Caches the source map of a Page Library alongside it and references it from the end of the library.
+     *
+     * @return The library with a reference to its source map, or the library as is if no source map was produced
+     */
+    protected String attachSourceMap( Resource root, LibraryType type, String brand, String library, String sourceMap ) throws ClientLibraryCachingException {
+
+        if (sourceMap == null) {
+            return library
+        }
+
+        clientLibraryCacheManager.cacheLibrary(root, type, SOURCE_MAP_CACHE_KEY_PREFIX + brand, sourceMap)
+
+        StringBuilder sourceMapUrlBuilder = new StringBuilder(root.parent.name)
+                .append(".").append(ComponentClientLibraryServlet.SELECTOR)
+                .append(".").append(ComponentClientLibraryServlet.SOURCE_MAP_SELECTOR)
+
+        if (brand != Brands.DEFAULT_BRAND) {
+            sourceMapUrlBuilder.append(".").append(brand)
+        }
+
+        if (type == LibraryType.CSS) {
+            sourceMapUrlBuilder.append(".").append(LibraryType.CSS_EXTENSION)
+
+            return library + "\n/*# sourceMappingURL=" + sourceMapUrlBuilder.toString() + " */\n"
+        }
+
+        sourceMapUrlBuilder.append(".").append(LibraryType.JS_EXTENSION)
+
+        return library + "\n//# sourceMappingURL=" + sourceMapUrlBuilder.toString() + "\n"
+
+    }
+
+    @Override
+    public PageLibraryPartition partitionClientLibrary(Resource root, LibraryType type, Optional<String> brand) throws ClientLibraryCompilationException {
+
+        return sharedChunkManager.getPartition(root, type, brand)
+
+    }
+
+    @Override
+    public Optional<Long> getSharedChunkGeneration() {
+
+        return sharedChunkManager.sharedChunkGeneration
+
+    }
+
+    @Override
+    public Optional<String> compileSharedChunk(Integer index, LibraryType type, Optional<String> brand) throws ClientLibraryCompilationException {
+
+        SharedChunks currentSharedChunks = sharedChunkManager.sharedChunks
+
+        if (currentSharedChunks == null || index < 0 || index >= currentSharedChunks.chunks.size()) {
+            return Optional.absent()
+        }
+
+        String compiledChunkKey = type.name() + "|" + index + "|" + brand.or(Brands.DEFAULT_BRAND)
+        String compiledChunk = currentSharedChunks.getCompiledChunk(compiledChunkKey)
+
+        if (compiledChunk == null) {
+            List<ClientLibrary> filteredChunk = stateManager.requestFilteredLibraries(currentSharedChunks.chunks.get(index), brand)
+
+            if (type == LibraryType.CSS) {
+                if (filteredChunk.any { it.hasCss() && it.hasLess() }) {
+                    return Optional.absent()
+                }
+
+                compiledChunk = compileCSSClientLibrary(filteredChunk, [:])
+            }
+            else {
+                compiledChunk = compileJSClientLibrary(filteredChunk, [:])
+            }
+
+            currentSharedChunks.putCompiledChunk(compiledChunkKey, compiledChunk)
+        }
+
+        return Optional.of(compiledChunk)
+
+    }
+
+    @Override
+    public String compileClientLibraryRemainder(Resource root, LibraryType type, Optional<String> brand) throws ClientLibraryCompilationException {
+
+        DefaultPageLibraryPartition partition = sharedChunkManager.getPartition(root, type, brand)
+
+        if (!partition.partitioned) {
+            return compileClientLibrary(root, type, brand)
+        }
+
+        return compileCachedLibrary(root, type, REMAINDER_CACHE_KEY_PREFIX + brand.or(Brands.DEFAULT_BRAND), getRemainderRenderer(root, type, brand))
+
+    }
+
+    @Override
+    public CachedLibrary compileClientLibraryRemainderEntry(Resource root, LibraryType type, Optional<String> brand) throws ClientLibraryCompilationException {
+
+        DefaultPageLibraryPartition partition = sharedChunkManager.getPartition(root, type, brand)
+
+        if (!partition.partitioned) {
+            return compileClientLibraryEntry(root, type, brand)
+        }
+
+        return compileCachedLibraryEntry(root, type, REMAINDER_CACHE_KEY_PREFIX + brand.or(Brands.DEFAULT_BRAND), getRemainderRenderer(root, type, brand))
+
+    }
+
+    /**
+     * Remainders are cached per brand alone and cleared when the chunk definitions change.  The partition is
+     * determined again under the cache write lock so that a remainder is never cached against chunks which were
+     * replaced while it waited for the lock.
+     */
+    private Closure<String> getRemainderRenderer(Resource root, LibraryType type, Optional<String> brand) {
+
+        return { ->
+            DefaultPageLibraryPartition currentPartition = sharedChunkManager.getPartition(root, type, brand)
+            List<ClientLibrary> remainder = currentPartition.partitioned ? currentPartition.remainder : getFilteredOrderedDependencies(root, brand)
+
+            if (type == LibraryType.CSS) {
+                return compileCSSClientLibrary(root, remainder)
+            }
+
+            return compileJSClientLibrary(root, remainder)
+        }
+
+    }
+
+    @Override
+    public void recomputeSharedChunks() {
+
+        sharedChunkManager.recompute()
+
+    }
+
+    /**
+     * Discards the cached shared chunk partitions and granular splits, both of which depend on the Resource Dependency
+     * Providers.  Providers are bound before the component is activated, when there is nothing cached yet.
+     */
+    protected void invalidatePartitions() {
+
+        if (sharedChunkManager != null) {
+            sharedChunkManager.invalidatePartitions()
+        }
+
+        if (granularLibraryManager != null) {
+            granularLibraryManager.invalidateSplits()
+        }
+
+    }
+
+    @Override
+    public GranularPageLibrary getGranularPageLibrary(Resource root, LibraryType type, Optional<String> brand) throws ClientLibraryCompilationException {
+
+        return granularLibraryManager.getGranularSplit(root, type, brand)
+
+    }
+
+    @Override
+    public Optional<GranularLibrary> compileGranularLibrary(String clientLibraryPath, LibraryType type) throws ClientLibraryCompilationException {
+
+        return granularLibraryManager.getGranularLibrary(clientLibraryPath, type)
+
+    }
+
+    @Override
+    public String compileGranularRemainder(Resource root, LibraryType type, Optional<String> brand) throws ClientLibraryCompilationException {
+
+        DefaultGranularPageLibrary granularPageLibrary = granularLibraryManager.getGranularSplit(root, type, brand)
+
+        if (granularPageLibrary.libraries.isEmpty()) {
+            return compileClientLibrary(root, type, brand)
+        }
+
+        return compileCachedLibrary(root, type, GRANULAR_CACHE_KEY_PREFIX + brand.or(Brands.DEFAULT_BRAND), getGranularRemainderRenderer(root, type, granularPageLibrary))
+
+    }
+
+    @Override
+    public CachedLibrary compileGranularRemainderEntry(Resource root, LibraryType type, Optional<String> brand) throws ClientLibraryCompilationException {
+
+        DefaultGranularPageLibrary granularPageLibrary = granularLibraryManager.getGranularSplit(root, type, brand)
+
+        if (granularPageLibrary.libraries.isEmpty()) {
+            return compileClientLibraryEntry(root, type, brand)
+        }
+
+        return compileCachedLibraryEntry(root, type, GRANULAR_CACHE_KEY_PREFIX + brand.or(Brands.DEFAULT_BRAND), getGranularRemainderRenderer(root, type, granularPageLibrary))
+
+    }
+
+    private Closure<String> getGranularRemainderRenderer(Resource root, LibraryType type, DefaultGranularPageLibrary granularPageLibrary) {
+
+        return { ->
+            if (type == LibraryType.CSS) {
+                return compileCSSClientLibrary(root, granularPageLibrary.remainder)
+            }
+
+            return compileJSClientLibrary(root, granularPageLibrary.remainder)
+        }
+
+    }
+
+    /**
+     * Whether the content of a library is the same on every page, which is to say that neither its JavaScript nor its
+     * CSS contains a variable placeholder.  The check is answered from the library's templates, which are parsed once
+     * per registry version, so the content of the library is not read again on each request.
+     */
+    protected boolean isVariableFree(ClientLibrary library) {
 
-            return compiledJsLibrary
+        if (library.hasJs() && getLibraryTemplate(library, LibraryType.JS).hasPlaceholders()) {
+            return false
+        }
 
+        if (library.hasCss() && getLibraryTemplate(library, LibraryType.CSS).hasPlaceholders()) {
+            return false
         }
 
-        return null
+        return true
+
+    }
+
+    @Override
+    public BulkCompilationResult compileClientLibraries(List<Resource> roots, Set<LibraryType> types, Set<String> brands) {
+
+        return bulkCompilationManager.compileClientLibraries(roots, types, brands)
 
     }
 
@@ -401,16 +1082,28 @@ class DefaultClientLibraryRepository implements ClientLibraryRepository {
 
 
     }
-/**
-     *
-     * TODO: Optimize this implementation so that it doesn't run replace all a billion times
+
+    protected String transformLibrary(Resource root, String library) {
+
+        return transformLibrary(library, getVariables(root))
+
+    }
+
+    /**
+     * Replaces the variable placeholders of the library in a single pass.  See {@link VariableSubstitution}.
      *
      * @param library
+     * @param variables
      * @return
      */
-    protected String transformLibrary(Resource root, String library) {
+    protected static String transformLibrary(String library, Map<String, String> variables) {
+
+        return VariableSubstitution.substitute(library, variables)
+
+    }
+
+    protected Map<String, String> getVariables(Resource root) {
 
-        String retLibrary = library
         List<VariableProvider> variableProviderListCopy = null
 
         try {
@@ -423,14 +1116,15 @@ class DefaultClientLibraryRepository implements ClientLibraryRepository {
         Map<String, String> variables = [:]
 
         variableProviderListCopy.each {
-            variables.putAll(it.getVariables(root))
-        }
-
-        variables.each { k, v ->
-            retLibrary = StringUtils.replace(retLibrary, "<%" + k + "%>", v)
+            if (it instanceof ScopedVariableProvider) {
+                variables.putAll(variableCache.getVariables(it, root))
+            }
+            else {
+                variables.putAll(it.getVariables(root))
+            }
         }
 
-        return retLibrary
+        return variables
 
     }
 
@@ -462,9 +1156,41 @@ class DefaultClientLibraryRepository implements ClientLibraryRepository {
         return stateManager.requestOrderedDependencies( root, resourceDependencyProviderListCopy )
     }
 
+    protected List<ClientLibrary> getFilteredOrderedDependencies( Resource root, Optional<String> brand ) throws InvalidQueryException, RepositoryException, InvalidClientLibraryCategoryException {
+        List<ResourceDependencyProvider> resourceDependencyProviderListCopy = null
+
+        try {
+            this.resourceDependencyProviderListReadWriteLock.readLock().lock()
+            resourceDependencyProviderListCopy = ImmutableList.copyOf(resourceDependencyProviderList)
+        }finally {
+            this.resourceDependencyProviderListReadWriteLock.readLock().unlock()
+        }
+
+        return stateManager.requestFilteredOrderedDependencies( root, resourceDependencyProviderListCopy, brand )
+    }
+
     private String compileJSClientLibrary( Resource root, List<ClientLibrary> dependencies ) {
 
-        StringBuffer mergedClientLibraries = new StringBuffer();
+        return compileJSClientLibrary( dependencies, getVariables( root ) )
+
+    }
+
+    private String compileJSClientLibrary( List<ClientLibrary> dependencies, Map<String, String> variables ) {
+
+        return compileJSClientLibrary( dependencies, variables, null )
+
+    }
+
+    /**
+     * Without a source map each library is rendered from its cached template.  With one the raw content is merged and
+     * transformed as a whole as the source map builder needs the content as it was before transformation.
+     */
+    protected String compileJSClientLibrary( List<ClientLibrary> dependencies, Map<String, String> variables, SourceMapBuilder sourceMapBuilder ) {
+
+        phaseTimer.recordLibraryCount(dependencies.size())
+
+        long mergeStart = phaseTimer.start()
+        StringBuilder mergedClientLibraries = new StringBuilder();
 
         if (strictJavascript) {
             mergedClientLibraries.append("\"use strict\";").append("\n")
@@ -472,26 +1198,66 @@ class DefaultClientLibraryRepository implements ClientLibraryRepository {
 
         for (ClientLibrary curClientLibrary : dependencies) {
             if (curClientLibrary.hasJs()) {
-                mergedClientLibraries.append(curClientLibrary.getJs()).append("\n");
+                if (sourceMapBuilder != null) {
+                    MappedLibrary mappedLibrary = getMappedLibrary(curClientLibrary, LibraryType.JS)
+                    sourceMapBuilder.addLibrary(mergedClientLibraries.length(), mappedLibrary)
+                    mergedClientLibraries.append(mappedLibrary.content).append("\n");
+                }
+                else {
+                    getLibraryTemplate(curClientLibrary, LibraryType.JS).render(mergedClientLibraries, variables)
+                    mergedClientLibraries.append("\n");
+                }
             }
         }
 
-        String transformedJsLibrary = transformLibrary(root, mergedClientLibraries.toString())
+        phaseTimer.stop(CompilationPhase.FRAGMENT_MERGE, mergeStart)
 
-        return transformedJsLibrary;
+        if (sourceMapBuilder != null) {
+            long transformStart = phaseTimer.start()
+            sourceMapBuilder.setMergedContent(mergedClientLibraries.toString(), variables)
+            String transformedJsLibrary = transformLibrary(mergedClientLibraries.toString(), variables)
+            phaseTimer.stop(CompilationPhase.VARIABLE_TRANSFORM, transformStart)
+
+            return transformedJsLibrary
+        }
+
+        return mergedClientLibraries.toString();
 
     }
 
     private String compileCSSClientLibrary( Resource root, List<ClientLibrary> dependencies ) throws ClientLibraryCompilationException {
 
+        return compileCSSClientLibrary( dependencies, getVariables( root ) )
+
+    }
+
+    private String compileCSSClientLibrary( List<ClientLibrary> dependencies, Map<String, String> variables ) throws ClientLibraryCompilationException {
+
+        return compileCSSClientLibrary( dependencies, variables, null )
+
+    }
+
+    protected String compileCSSClientLibrary( List<ClientLibrary> dependencies, Map<String, String> variables, SourceMapBuilder sourceMapBuilder ) throws ClientLibraryCompilationException {
+
         boolean usesLess = false;
         boolean usesSass = false;
 
-        StringBuffer mergedClientLibraries = new StringBuffer();
+        phaseTimer.recordLibraryCount(dependencies.size())
+
+        long mergeStart = phaseTimer.start()
+        StringBuilder mergedClientLibraries = new StringBuilder();
 
         for (ClientLibrary curClientLibrary : dependencies) {
             if (curClientLibrary.hasCss()) {
-                mergedClientLibraries.append(curClientLibrary.getCss()).append("\n");
+                if (sourceMapBuilder != null) {
+                    MappedLibrary mappedLibrary = getMappedLibrary(curClientLibrary, LibraryType.CSS)
+                    sourceMapBuilder.addLibrary(mergedClientLibraries.length(), mappedLibrary)
+                    mergedClientLibraries.append(mappedLibrary.content).append("\n");
+                }
+                else {
+                    getLibraryTemplate(curClientLibrary, LibraryType.CSS).render(mergedClientLibraries, variables)
+                    mergedClientLibraries.append("\n");
+                }
 
                 if (curClientLibrary.hasLess()) {
                     usesLess = true;
@@ -507,11 +1273,31 @@ class DefaultClientLibraryRepository implements ClientLibraryRepository {
             }
         }
 
-        String transformedCssLibrary = transformLibrary(root, mergedClientLibraries.toString())
+        phaseTimer.stop(CompilationPhase.FRAGMENT_MERGE, mergeStart)
+
+        String transformedCssLibrary
+
+        if (sourceMapBuilder != null) {
+            long transformStart = phaseTimer.start()
+            sourceMapBuilder.setMergedContent(mergedClientLibraries.toString(), variables)
+            transformedCssLibrary = transformLibrary(mergedClientLibraries.toString(), variables)
+            phaseTimer.stop(CompilationPhase.VARIABLE_TRANSFORM, transformStart)
+        }
+        else {
+            transformedCssLibrary = mergedClientLibraries.toString()
+        }
 
         if (usesLess) {
+            long lessCompileStart = phaseTimer.start()
+
             try {
-                return lessCompiler.compile(transformedCssLibrary);
+                String compiledCssLibrary = lessCompiler.compile(transformedCssLibrary);
+
+                if (minify) {
+                    return minifyQuietly(LibraryType.CSS, compiledCssLibrary)
+                }
+
+                return compiledCssLibrary;
             } catch (RhinoException e) {
                 StringBuffer errorMessageBuffer = new StringBuffer( "Rhino Exception encountered while compiling CSS Library \n" )
                 errorMessageBuffer.append( e.details() ).append( "\n" )
@@ -524,12 +1310,206 @@ class DefaultClientLibraryRepository implements ClientLibraryRepository {
             } catch (IOException e) {
                 LOG.error( "Error encountered during LESS compilation", e );
                 throw new ClientLibraryCompilationException( "Exception encountered during LESS compilation", e );
+            } finally {
+                phaseTimer.stop(CompilationPhase.LESS_COMPILE, lessCompileStart)
             }
         }
 
         return transformedCssLibrary;
     }
 
+    /**
+     * Loads, serially, the content of each of the provided libraries in the form in which it is merged into a Page
+     * Library of the provided type, so that the library may later be compiled from content already in memory.
+     */
+    protected void loadLibraryContent( LibraryType type, List<ClientLibrary> dependencies ) {
+
+        boolean mapped = createSourceMapBuilder(type, dependencies) != null
+
+        dependencies.each { ClientLibrary currentLibrary ->
+            if (type == LibraryType.CSS ? currentLibrary.hasCss() : currentLibrary.hasJs()) {
+                if (mapped) {
+                    getMappedLibrary(currentLibrary, type)
+                }
+                else {
+                    getLibraryTemplate(currentLibrary, type)
+                }
+            }
+        }
+
+    }
+
+    private String readLibraryContent( ClientLibrary library, LibraryType type ) {
+
+        synchronized (libraryContentLock) {
+            return type == LibraryType.CSS ? library.getCss() : library.getJs()
+        }
+
+    }
+
+    private String getLibraryJs( ClientLibrary library ) {
+
+        if (!minify) {
+            return readLibraryContent(library, LibraryType.JS)
+        }
+
+        return getMinifiedLibrary(library, LibraryType.JS)
+
+    }
+
+    /**
+     * LESS and Sass sources are not CSS and are therefore never minified on their own.  Libraries using LESS are
+     * minified after compilation instead.
+     */
+    private String getLibraryCss( ClientLibrary library ) {
+
+        if (!minify || library.hasLess() || library.hasSass()) {
+            return readLibraryContent(library, LibraryType.CSS)
+        }
+
+        return getMinifiedLibrary(library, LibraryType.CSS)
+
+    }
+
+    /**
+     * Provides the content of a library, as merged into Page Libraries, parsed into a template.  Templates are parsed
+     * once per registry version and reused for every set of variables.
+     */
+    private LibraryTemplate getLibraryTemplate( ClientLibrary library, LibraryType type ) {
+
+        LibraryTemplates currentLibraryTemplates = getLibraryTemplates()
+        LibraryTemplate libraryTemplate = currentLibraryTemplates.getLibraryTemplate(type, library.clientLibraryPath)
+
+        if (libraryTemplate == null) {
+            libraryTemplate = LibraryTemplate.parse(type == LibraryType.CSS ? getLibraryCss(library) : getLibraryJs(library))
+            currentLibraryTemplates.putLibraryTemplate(type, library.clientLibraryPath, libraryTemplate)
+        }
+
+        return libraryTemplate
+
+    }
+
+    protected LibraryTemplates getLibraryTemplates() {
+
+        synchronized (libraryTemplatesLock) {
+
+            Long libraryVersion = clientLibraryManager.version
+
+            if (libraryTemplates == null || libraryTemplates.libraryVersion != libraryVersion) {
+                libraryTemplates = new LibraryTemplates(libraryVersion)
+            }
+
+            return libraryTemplates
+
+        }
+
+    }
+
+    private String getMinifiedLibrary( ClientLibrary library, LibraryType type ) {
+
+        MinifiedLibraries currentMinifiedLibraries = getMinifiedLibraries()
+        String minifiedLibrary = currentMinifiedLibraries.getMinifiedLibrary(type, library.clientLibraryPath)
+
+        if (minifiedLibrary == null) {
+            minifiedLibrary = minifyQuietly(type, readLibraryContent(library, type))
+            currentMinifiedLibraries.putMinifiedLibrary(type, library.clientLibraryPath, minifiedLibrary)
+        }
+
+        return minifiedLibrary
+
+    }
+
+    /**
+     * Provides the content of a library along with the positions in its original files from which the content was
+     * taken.  The content is the same as that merged when no source map is requested.
+     */
+    private MappedLibrary getMappedLibrary( ClientLibrary library, LibraryType type ) {
+
+        MappedLibraries currentMappedLibraries = getMappedLibraries()
+        MappedLibrary mappedLibrary = currentMappedLibraries.getMappedLibrary(type, library.clientLibraryPath)
+
+        if (mappedLibrary != null) {
+            return mappedLibrary
+        }
+
+        String mergedLibrary = readLibraryContent(library, type)
+        Set<String> resourcePaths
+        String headerPrefix
+        String headerPostfix
+        Optional<MinifiedSource> minifiedLibrary = Optional.absent()
+
+        if (type == LibraryType.CSS) {
+            resourcePaths = library.cssResourcePaths
+            headerPrefix = DefaultClientLibrary.CSS_HEADER_PREFIX
+            headerPostfix = DefaultClientLibrary.CSS_HEADER_POSTFIX
+        }
+        else {
+            resourcePaths = library.jsResourcePaths
+            headerPrefix = DefaultClientLibrary.JS_HEADER_PREFIX
+            headerPostfix = ""
+        }
+
+        if (minify && !(type == LibraryType.CSS && (library.hasLess() || library.hasSass()))) {
+            try {
+                minifiedLibrary = Optional.of(type == LibraryType.CSS ? minifier.minifyCssMapped(mergedLibrary) : minifier.minifyJsMapped(mergedLibrary))
+            } catch ( MinificationException e ) {
+                LOG.warn("Unable to minify " + type + " library " + library.clientLibraryPath + ", serving it unminified : " + e.getMessage())
+            }
+        }
+
+        mappedLibrary = MappedLibrary.forLibrary(mergedLibrary, resourcePaths, headerPrefix, headerPostfix, minifiedLibrary)
+        currentMappedLibraries.putMappedLibrary(type, library.clientLibraryPath, mappedLibrary)
+
+        return mappedLibrary
+
+    }
+
+    protected MappedLibraries getMappedLibraries() {
+
+        synchronized (mappedLibrariesLock) {
+
+            Long libraryVersion = clientLibraryManager.version
+
+            if (mappedLibraries == null || mappedLibraries.libraryVersion != libraryVersion) {
+                mappedLibraries = new MappedLibraries(libraryVersion)
+            }
+
+            return mappedLibraries
+
+        }
+
+    }
+
+    protected MinifiedLibraries getMinifiedLibraries() {
+
+        synchronized (minifiedLibrariesLock) {
+
+            Long libraryVersion = clientLibraryManager.version
+
+            if (minifiedLibraries == null || minifiedLibraries.libraryVersion != libraryVersion) {
+                minifiedLibraries = new MinifiedLibraries(libraryVersion)
+            }
+
+            return minifiedLibraries
+
+        }
+
+    }
+
+    /**
+     * Minifies the provided source, falling back to the source as is should it not be minifiable.
+     */
+    private String minifyQuietly( LibraryType type, String source ) {
+
+        try {
+            return type == LibraryType.CSS ? minifier.minifyCss(source) : minifier.minifyJs(source)
+        } catch ( MinificationException e ) {
+            LOG.warn("Unable to minify " + type + " library, serving it unminified : " + e.getMessage())
+            return source
+        }
+
+    }
+
     /**
      * Get an administrative JCR session.
      *
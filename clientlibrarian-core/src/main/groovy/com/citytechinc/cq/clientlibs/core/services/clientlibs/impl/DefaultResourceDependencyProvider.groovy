@@ -21,17 +21,25 @@ import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.ClientLibraryManager
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.ResourceDependencyProvider
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.ResourceProviderHelper
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ResourceTypeCacheManager
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCompilationException
 import com.citytechinc.cq.clientlibs.api.services.components.DependentComponentManager
 import com.citytechinc.cq.clientlibs.api.util.ComponentUtils
+import com.citytechinc.cq.clientlibs.api.util.ResourceTreeFlatteningStrategy
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.state.index.ComponentLibraryClosureIndex
+import com.google.common.base.Optional
 import com.google.common.collect.Queues
 import com.google.common.collect.Sets
+import org.apache.felix.scr.annotations.Activate
 import org.apache.felix.scr.annotations.Component
+import org.apache.felix.scr.annotations.Modified
+import org.apache.felix.scr.annotations.Property
 import org.apache.felix.scr.annotations.ReferenceCardinality
 import org.apache.felix.scr.annotations.ReferencePolicy
 import org.apache.felix.scr.annotations.Service
 import org.apache.sling.api.resource.Resource
 import org.apache.sling.api.resource.SyntheticResource
+import org.apache.sling.commons.osgi.PropertiesUtil
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 
@@ -49,18 +57,89 @@ class DefaultResourceDependencyProvider implements ResourceDependencyProvider {
     @org.apache.felix.scr.annotations.Reference
     private DependentComponentManager dependentComponentManager
 
+    @org.apache.felix.scr.annotations.Reference
+    private ResourceTypeCacheManager resourceTypeCacheManager
+    private Long resourceTypeCacheComponentVersion
+
+    private volatile ComponentLibraryClosureIndex closureIndex
+
     @org.apache.felix.scr.annotations.Reference( cardinality = ReferenceCardinality.OPTIONAL_MULTIPLE, policy = ReferencePolicy.DYNAMIC, bind = "bindResourceProviderHelper", unbind = "unbindResourceProviderHelper", referenceInterface = ResourceProviderHelper )
     private final Map<String, Set<ResourceProviderHelper>> resourceProviderHelperByResourceTypeMap = [:]
 
+    @Property(label = "Resource Tree Flattening Strategy", value = "traversal", description = "How the typed resources under a page are collected.  'traversal' walks the page content directly, falling back to a query for trees larger than the traversal limit.  'query' always issues a JCR-SQL2 descendant query.")
+    private static final String FLATTENING_STRATEGY = "flatteningStrategy"
+    private ResourceTreeFlatteningStrategy flatteningStrategy = ResourceTreeFlatteningStrategy.TRAVERSAL
+
+    @Property(label = "Traversal Limit", intValue = 5000, description = "The maximum number of resources visited when walking page content before falling back to a query")
+    private static final String TRAVERSAL_LIMIT = "traversalLimit"
+    private Integer traversalLimit = ComponentUtils.DEFAULT_TRAVERSAL_LIMIT
+
+    @Activate
+    @Modified
+    protected void activate(Map<String, Object> properties) {
+
+        flatteningStrategy = ResourceTreeFlatteningStrategy.fromString(PropertiesUtil.toString(properties.get(FLATTENING_STRATEGY), null), ResourceTreeFlatteningStrategy.TRAVERSAL)
+        traversalLimit = PropertiesUtil.toInteger(properties.get(TRAVERSAL_LIMIT), ComponentUtils.DEFAULT_TRAVERSAL_LIMIT)
+
+    }
+
     @Override
     Set<ClientLibrary> getDependenciesForResource(Resource r) throws ClientLibraryCompilationException {
 
-        Map<String, Set<ClientLibrary>> clientLibrariesByCategoryMap = clientLibraryManager.librariesByCategory
-        Map<String, DependentComponent> dependentComponentsByComponentPathMap = dependentComponentManager.componentsByPath
-        String[] searchPaths = r.resourceResolver.searchPath
+        ComponentLibraryClosureIndex closureIndex = getClosureIndex()
 
-        Set<Resource> flattenedResourceTree = ComponentUtils.flattenResourceTree(r, true)
         Set<ClientLibrary> dependencies = Sets.newHashSet()
+
+        getResourceTypesForResource(r).each { String currentResourceType ->
+            dependencies.addAll(closureIndex.getLibraryClosure(currentResourceType))
+        }
+
+        return dependencies
+
+    }
+
+    /**
+     * Determines the set of resource types represented under the provided resource including those of resources
+     * contributed by Resource Provider Helpers such as inherited paragraphs.  Embedded components are only included
+     * where they must be expanded for such a helper, their libraries otherwise being covered by the library closure
+     * of the embedding component.  The result is cached per resource until the content of the page, or of a page
+     * above it, changes.  The cache generation is read before resolution so that a result read from content which is
+     * invalidated in the meantime is not cached.  Since embedded components are resolved against the known Dependent
+     * Components, cached sets are discarded whenever the component registry version changes.
+     *
+     * @param r
+     * @return The set of resource types represented under the resource
+     */
+    protected Set<String> getResourceTypesForResource(Resource r) {
+
+        Long componentVersion = dependentComponentManager.version
+
+        if (componentVersion != resourceTypeCacheComponentVersion) {
+            LOG.debug("Component registry version change detected, clearing the resource type cache")
+            resourceTypeCacheManager.clearCache()
+            resourceTypeCacheComponentVersion = componentVersion
+        }
+
+        long cacheGeneration = resourceTypeCacheManager.generation
+        Optional<Set<String>> cachedResourceTypes = resourceTypeCacheManager.getCachedResourceTypes(r.path)
+
+        if (cachedResourceTypes.isPresent()) {
+            LOG.debug("Resource types found in cache for " + r.path)
+            return cachedResourceTypes.get()
+        }
+
+        Set<String> resourceTypes = resolveResourceTypesForResource(r)
+
+        resourceTypeCacheManager.cacheResourceTypes(r.path, resourceTypes, cacheGeneration)
+
+        return resourceTypes
+
+    }
+
+    protected Set<String> resolveResourceTypesForResource(Resource r) {
+
+        ComponentLibraryClosureIndex closureIndex = getClosureIndex()
+        Set<Resource> flattenedResourceTree = ComponentUtils.flattenResourceTree(r, true, flatteningStrategy, traversalLimit)
         Set<String> visitedResourceTypes = Sets.newHashSet()
 
         Map<String, Resource> flattenedResourcesByPath = [:]
@@ -72,28 +151,22 @@ class DefaultResourceDependencyProvider implements ResourceDependencyProvider {
             Resource currentResourceUnderProcessing = resourceProcessingQueue.remove()
 
             if (visitedResourceTypes.add(currentResourceUnderProcessing.resourceType)) {
-                String fullComponentPath = getFullPathToComponentForResourceType(currentResourceUnderProcessing.resourceType, searchPaths, dependentComponentsByComponentPathMap.keySet())
+                Optional<DependentComponent> dependentComponentOptional = dependentComponentManager.getDependentComponentForResourceType(currentResourceUnderProcessing.resourceType)
 
-                if (fullComponentPath == null) {
-                    LOG.debug("No full component path was found for component type " + currentResourceUnderProcessing.resourceType)
+                if (!dependentComponentOptional.isPresent()) {
+                    LOG.debug("No Dependent Component was found for component type " + currentResourceUnderProcessing.resourceType)
                 }
                 else {
-                    DependentComponent currentDependentComponent = dependentComponentsByComponentPathMap.get(fullComponentPath)
-
-                    currentDependentComponent.dependencies.each { String currentDependency ->
-                        if (!clientLibrariesByCategoryMap.containsKey(currentDependency)) {
-                            throw new ClientLibraryCompilationException("Component " + currentResourceUnderProcessing.resourceType + " indicates it is dependent on client library " + currentDependency + " however no Client Libraries answer to that name")
-                        }
-
-                        dependencies.addAll(clientLibrariesByCategoryMap.get(currentDependency))
-                    }
+                    DependentComponent currentDependentComponent = dependentComponentOptional.get()
 
                     /*
-                     * For every component indicated as an embedded component - if we are not already going to deal with the component in
-                     * the context of the calculated content tree then add the resource to the queue for processing
+                     * The libraries of embedded components are part of the library closure of the embedding component.  An embedded
+                     * component only needs to be processed as a resource when a Resource Provider Helper may contribute further
+                     * resources through it - in that case, if we are not already going to deal with the component in the context of
+                     * the calculated content tree, add the resource to the queue for processing
                      */
                     currentDependentComponent.embeddedComponents.each { EmbeddedComponent currentEmbeddedComponent ->
-                        if (!flattenedResourcesByPath.containsKey(currentResourceUnderProcessing.path + "/" + currentEmbeddedComponent.relativePath)) {
+                        if (requiresResourceExpansion(currentEmbeddedComponent.resourceType, closureIndex) && !flattenedResourcesByPath.containsKey(currentResourceUnderProcessing.path + "/" + currentEmbeddedComponent.relativePath)) {
                             Resource embeddedResource = currentResourceUnderProcessing.getChild(currentEmbeddedComponent.relativePath)
 
                             if (embeddedResource == null) {
@@ -122,22 +195,38 @@ class DefaultResourceDependencyProvider implements ResourceDependencyProvider {
             }
         }
 
-        return dependencies
+        return visitedResourceTypes
 
     }
 
-    protected static String getFullPathToComponentForResourceType(String resourceType, String[] searchPaths, Set<String> componentPaths) {
-
-        String searchPath = searchPaths.find {
-            LOG.debug("Checking search path " + it + " to determine whether the full path to resource type " + resourceType + " starts with it")
-            return componentPaths.contains(it + resourceType)
+    /**
+     * Determines whether a Resource Provider Helper serves the embedded resource type or any type it in turn embeds
+     *
+     * @param embeddedResourceType
+     * @param closureIndex
+     * @return true if the embedded component must be processed as a resource
+     */
+    protected Boolean requiresResourceExpansion(String embeddedResourceType, ComponentLibraryClosureIndex closureIndex) {
+
+        if (resourceProviderHelperByResourceTypeMap.containsKey(embeddedResourceType)) {
+            return true
         }
 
-        if (searchPath) {
-            return searchPath + resourceType
+        return closureIndex.getEmbeddedTypeClosure(embeddedResourceType).any { resourceProviderHelperByResourceTypeMap.containsKey(it) }
+
+    }
+
+    protected ComponentLibraryClosureIndex getClosureIndex() {
+
+        ComponentLibraryClosureIndex currentClosureIndex = closureIndex
+
+        if (currentClosureIndex == null || !currentClosureIndex.isCurrent(clientLibraryManager.version, dependentComponentManager.version)) {
+            LOG.debug("Building a new component library closure index")
+            currentClosureIndex = ComponentLibraryClosureIndex.forRegistries(clientLibraryManager, dependentComponentManager)
+            closureIndex = currentClosureIndex
         }
 
-        return null
+        return currentClosureIndex
 
     }
 
@@ -157,6 +246,8 @@ class DefaultResourceDependencyProvider implements ResourceDependencyProvider {
 
         }
 
+        clearResourceTypeCache()
+
     }
 
     protected void unbindResourceProviderHelper(ResourceProviderHelper resourceProviderHelper) {
@@ -175,6 +266,19 @@ class DefaultResourceDependencyProvider implements ResourceDependencyProvider {
 
         }
 
+        clearResourceTypeCache()
+
+    }
+
+    /**
+     * Cached resource types reflect the Resource Provider Helpers known at the time they were resolved
+     */
+    protected void clearResourceTypeCache() {
+
+        if (resourceTypeCacheManager != null) {
+            resourceTypeCacheManager.clearCache()
+        }
+
     }
 
 }
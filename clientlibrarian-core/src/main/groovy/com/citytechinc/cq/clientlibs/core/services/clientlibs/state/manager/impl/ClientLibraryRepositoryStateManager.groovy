@@ -19,11 +19,20 @@ import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary
 import com.citytechinc.cq.clientlibs.api.domain.library.exceptions.InvalidClientLibraryCategoryException
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.ClientLibraryManager
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.ResourceDependencyProvider
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.CompilationPhase
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.state.ClientLibraryStateStatistics
 import com.citytechinc.cq.clientlibs.api.structures.graph.DependencyGraph
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.metrics.CompilationPhaseTimer
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.metrics.impl.DefaultClientLibraryMetrics
 import com.citytechinc.cq.clientlibs.core.services.clientlibs.state.builder.ClientLibraryStateStatisticsBuilder
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.state.index.ClientLibraryInclusionIndex
 import com.citytechinc.cq.clientlibs.api.services.components.DependentComponentManager
 import com.citytechinc.cq.clientlibs.core.structures.graph.dag.DirectedAcyclicGraph
+import com.google.common.base.Optional
+import com.google.common.cache.Cache
+import com.google.common.cache.CacheBuilder
+import com.google.common.collect.ImmutableList
+import com.google.common.collect.ImmutableSet
 import com.google.common.collect.Lists
 import com.google.common.collect.Sets
 import org.apache.commons.lang.StringUtils
@@ -35,12 +44,39 @@ class ClientLibraryRepositoryStateManager {
 
     private static final Logger LOG = LoggerFactory.getLogger( ClientLibraryRepositoryStateManager )
 
+    public static final Integer DEFAULT_ORDERED_DEPENDENCIES_CACHE_SIZE = 1000
+
     private DependentComponentManager dependentComponentManager
     private ClientLibraryManager clientLibraryManager
 
+    /*
+     * Ordered dependency lists keyed by the set of starting point libraries which produced them.  Entries are only
+     * valid for the library and component registry versions recorded alongside the cache.
+     */
+    private final Cache<String, List<ClientLibrary>> orderedDependenciesCache
+    private Long orderedDependenciesCacheLibraryVersion
+    private Long orderedDependenciesCacheComponentVersion
+
+    /*
+     * Run modes are fixed for the life of the JVM so run mode and brand inclusion is precomputed per library
+     * version of the library registry.
+     */
+    private final Set<String> runModes
+    private ClientLibraryInclusionIndex inclusionIndex
+    private Long inclusionIndexLibraryVersion
+
+    private final CompilationPhaseTimer phaseTimer
+
     public ClientLibraryRepositoryStateManager(ClientLibraryManager clientLibraryManager, DependentComponentManager dependentComponentManager) {
+        this(clientLibraryManager, dependentComponentManager, ImmutableSet.<String>of(), DEFAULT_ORDERED_DEPENDENCIES_CACHE_SIZE, new CompilationPhaseTimer(new DefaultClientLibraryMetrics()))
+    }
+
+    public ClientLibraryRepositoryStateManager(ClientLibraryManager clientLibraryManager, DependentComponentManager dependentComponentManager, Set<String> runModes, Integer orderedDependenciesCacheSize, CompilationPhaseTimer phaseTimer) {
         this.dependentComponentManager = dependentComponentManager
         this.clientLibraryManager = clientLibraryManager
+        this.runModes = ImmutableSet.copyOf(runModes)
+        this.orderedDependenciesCache = CacheBuilder.newBuilder().maximumSize(orderedDependenciesCacheSize).build()
+        this.phaseTimer = phaseTimer
     }
 
     void requestRefresh() {
@@ -49,6 +85,8 @@ class ClientLibraryRepositoryStateManager {
         synchronized (this) {
             dependentComponentManager.requestRefresh()
             clientLibraryManager.requestRefresh()
+            orderedDependenciesCache.invalidateAll()
+            inclusionIndex = null
         }
     }
 
@@ -74,6 +112,65 @@ class ClientLibraryRepositoryStateManager {
         }
     }
 
+    /**
+     * Requests the ordered dependencies of the provided resource filtered down to those libraries which are to be
+     * included for the run modes of this instance and the requested brand.
+     *
+     * @param r
+     * @param resourceDependencyProviderList
+     * @param brand
+     * @return The ordered and filtered list of Client Libraries
+     */
+    public List<ClientLibrary> requestFilteredOrderedDependencies(Resource r, List<ResourceDependencyProvider> resourceDependencyProviderList, Optional<String> brand) {
+        LOG.debug("Received Filtered Ordered Dependencies Request")
+
+        synchronized (this) {
+
+            List<ClientLibrary> orderedDependencies = getOrderedDependencies(r, resourceDependencyProviderList)
+
+            long filteringStart = phaseTimer.start()
+            List<ClientLibrary> filteredDependencies = getInclusionIndex().filter(orderedDependencies, brand)
+            phaseTimer.stop(CompilationPhase.FILTERING, filteringStart)
+
+            return filteredDependencies
+
+        }
+    }
+
+    /**
+     * Orders the provided libraries along with anything they pull into a dependency graph.
+     *
+     * @param libraries
+     * @return The ordered list of Client Libraries
+     */
+    public List<ClientLibrary> requestOrderedLibraries(Set<ClientLibrary> libraries) {
+        LOG.debug("Received Ordered Libraries Request")
+
+        synchronized (this) {
+
+            return buildDependencyGraph(libraries).order( true )
+
+        }
+    }
+
+    /**
+     * Filters an ordered list of libraries down to those which are to be included for the run modes of this
+     * instance and the requested brand.
+     *
+     * @param orderedLibraries
+     * @param brand
+     * @return The filtered list of Client Libraries
+     */
+    public List<ClientLibrary> requestFilteredLibraries(List<ClientLibrary> orderedLibraries, Optional<String> brand) {
+        LOG.debug("Received Filtered Libraries Request")
+
+        synchronized (this) {
+
+            return getInclusionIndex().filter(orderedLibraries, brand)
+
+        }
+    }
+
     public ClientLibraryStateStatistics requestStateStatistics() {
         LOG.debug("Received State Statistics Request")
 
@@ -112,6 +209,12 @@ class ClientLibraryRepositoryStateManager {
      */
     protected DirectedAcyclicGraph<ClientLibrary> getDependencyGraph(Resource root, List<ResourceDependencyProvider> resourceDependencyProviderList) throws InvalidClientLibraryCategoryException {
 
+        return buildDependencyGraph(getStartingPoints(root, resourceDependencyProviderList))
+
+    }
+
+    protected Set<ClientLibrary> getStartingPoints(Resource root, List<ResourceDependencyProvider> resourceDependencyProviderList) {
+
         Set<ClientLibrary> startingPoints = Sets.newHashSet()
 
         //Iterate through all known dependency provider services adding the dependencies provided by each for the Resource in question
@@ -119,6 +222,19 @@ class ClientLibraryRepositoryStateManager {
             startingPoints.addAll(currentResourceDependencyProvider.getDependenciesForResource(root))
         }
 
+        return startingPoints
+
+    }
+
+    /**
+     * Builds a dependency graph starting from the provided set of Client Libraries.  Embedded libraries are added as
+     * though the embedded library is dependent on the embedding library.
+     *
+     * @param startingPoints The libraries from which the graph search begins
+     * @return A dependency graph of Client Libraries reachable from the starting points
+     */
+    protected DirectedAcyclicGraph<ClientLibrary> buildDependencyGraph(Set<ClientLibrary> startingPoints) throws InvalidClientLibraryCategoryException {
+
         DirectedAcyclicGraph<ClientLibrary> dependencyGraph = new DirectedAcyclicGraph<ClientLibrary>()
 
         Map<String, Set<ClientLibrary>> clientLibrariesByCategoryMap = clientLibraryManager.getLibrariesByCategory()
@@ -250,7 +366,9 @@ class ClientLibraryRepositoryStateManager {
      * </ul>
      *
      * <p>
-     * The results of the ordering are returned.
+     * The results of the ordering are returned.  Since many pages resolve to the same set of starting point libraries,
+     * orderings are memoized by that set so the graph is only built and ordered once per distinct set for a given
+     * version of the library and component registries.
      * </p>
      *
      * @param root
@@ -258,7 +376,64 @@ class ClientLibraryRepositoryStateManager {
      */
     protected List<ClientLibrary> getOrderedDependencies(Resource root, List<ResourceDependencyProvider> resourceDependencyProviderList) throws InvalidClientLibraryCategoryException {
 
-        return getDependencyGraph(root, resourceDependencyProviderList).order( true );
+        Long libraryVersion = clientLibraryManager.version
+        Long componentVersion = dependentComponentManager.version
+
+        long providersStart = phaseTimer.start()
+        Set<ClientLibrary> startingPoints = getStartingPoints(root, resourceDependencyProviderList)
+        phaseTimer.stop(CompilationPhase.DEPENDENCY_PROVIDERS, providersStart)
+
+        if (libraryVersion != orderedDependenciesCacheLibraryVersion || componentVersion != orderedDependenciesCacheComponentVersion) {
+            LOG.debug("Registry version change detected, invalidating the ordered dependencies cache")
+            orderedDependenciesCache.invalidateAll()
+            orderedDependenciesCacheLibraryVersion = libraryVersion
+            orderedDependenciesCacheComponentVersion = componentVersion
+        }
+
+        String startingPointsKey = getStartingPointsKey(startingPoints)
+
+        List<ClientLibrary> orderedDependencies = orderedDependenciesCache.getIfPresent(startingPointsKey)
+
+        if (orderedDependencies == null) {
+            long graphBuildStart = phaseTimer.start()
+            DirectedAcyclicGraph<ClientLibrary> dependencyGraph = buildDependencyGraph(startingPoints)
+            phaseTimer.stop(CompilationPhase.GRAPH_BUILD, graphBuildStart)
+
+            long orderingStart = phaseTimer.start()
+            orderedDependencies = ImmutableList.copyOf(dependencyGraph.order( true ))
+            phaseTimer.stop(CompilationPhase.ORDERING, orderingStart)
+
+            orderedDependenciesCache.put(startingPointsKey, orderedDependencies)
+        }
+        else {
+            LOG.debug("Ordered dependencies found in cache for " + root.path)
+        }
+
+        return orderedDependencies
+
+    }
+
+    protected ClientLibraryInclusionIndex getInclusionIndex() {
+
+        Long libraryVersion = clientLibraryManager.version
+
+        if (inclusionIndex == null || libraryVersion != inclusionIndexLibraryVersion) {
+            LOG.debug("Building the Client Library inclusion index for run modes " + runModes)
+            inclusionIndex = ClientLibraryInclusionIndex.forLibraries(clientLibraryManager.libraries, runModes)
+            inclusionIndexLibraryVersion = libraryVersion
+        }
+
+        return inclusionIndex
+
+    }
+
+    /**
+     * @param startingPoints
+     * @return A canonical key for the set of starting point libraries made up of the sorted paths of the libraries
+     */
+    protected static String getStartingPointsKey(Set<ClientLibrary> startingPoints) {
+
+        return startingPoints.collect { it.clientLibraryPath }.sort().join("|")
 
     }
 
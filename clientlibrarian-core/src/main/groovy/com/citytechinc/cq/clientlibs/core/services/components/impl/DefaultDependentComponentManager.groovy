@@ -17,6 +17,7 @@ package com.citytechinc.cq.clientlibs.core.services.components.impl
 
 import com.citytechinc.cq.clientlibs.api.events.components.factory.DependentComponentEventFactory
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ClientLibraryCacheManager
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.ClientLibraryMetrics
 import com.citytechinc.cq.clientlibs.core.domain.component.Components
 import com.citytechinc.cq.clientlibs.api.domain.component.DependentComponent
 import com.citytechinc.cq.clientlibs.api.services.components.DependentComponentManager
@@ -43,6 +44,8 @@ import javax.jcr.Session
 import javax.jcr.observation.ObservationManager
 import javax.jcr.query.Query
 import javax.jcr.query.QueryManager
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
 
 @Component(
         label="Default Dependent Component Manager",
@@ -58,7 +61,14 @@ class DefaultDependentComponentManager implements DependentComponentManager {
     private Map<String, DependentComponent> dependentComponentsByComponentPath = [:]
     private Map<String, Set<DependentComponent>> dependentComponentsByClientLibraryCategory = [:]
 
+    /*
+     * Resolution of resource types to Dependent Components, including negative results, for the current version of
+     * the component set.  Replaced wholesale whenever the set is invalidated.
+     */
+    private volatile Map<String, Optional<DependentComponent>> dependentComponentsByResourceType = new ConcurrentHashMap<String, Optional<DependentComponent>>()
+
     private Boolean initialized = false
+    private final AtomicLong version = new AtomicLong()
 
     @org.apache.felix.scr.annotations.Reference
     private ResourceResolverFactory resourceResolverFactory
@@ -70,6 +80,9 @@ class DefaultDependentComponentManager implements DependentComponentManager {
     @org.apache.felix.scr.annotations.Reference
     private ClientLibraryCacheManager clientLibraryCacheManager
 
+    @org.apache.felix.scr.annotations.Reference
+    private ClientLibraryMetrics clientLibraryMetrics
+
     private Session session
 
     private DependentComponentEventListener clientLibraryComponentListener
@@ -82,10 +95,20 @@ class DefaultDependentComponentManager implements DependentComponentManager {
     @Override
     Optional<DependentComponent> getDependentComponentForResourceType(String resourceType) {
 
+        Optional<DependentComponent> resolvedDependentComponent = dependentComponentsByResourceType.get(resourceType)
+
+        if (resolvedDependentComponent != null) {
+            return resolvedDependentComponent
+        }
+
         synchronized (this) {
 
             refreshIfNotInitialized()
-            return lookupDependentComponentForResourceType(resourceType)
+
+            resolvedDependentComponent = lookupDependentComponentForResourceType(resourceType)
+            dependentComponentsByResourceType.put(resourceType, resolvedDependentComponent)
+
+            return resolvedDependentComponent
 
         }
 
@@ -127,6 +150,11 @@ class DefaultDependentComponentManager implements DependentComponentManager {
 
     }
 
+    @Override
+    Long getVersion() {
+        return version.get()
+    }
+
     @Override
     void requestRefresh() {
 
@@ -140,7 +168,7 @@ class DefaultDependentComponentManager implements DependentComponentManager {
     protected void activate( Map<String, Object> properties ) throws RepositoryException, LoginException {
 
         ObservationManager observationManager = administrativeSession.workspace.observationManager
-        clientLibraryComponentListener = new DependentComponentEventListener(new DefaultDependentComponentEventFactory(), this, clientLibraryCacheManager, session)
+        clientLibraryComponentListener = new DependentComponentEventListener(new DefaultDependentComponentEventFactory(), this, clientLibraryCacheManager, clientLibraryMetrics, session)
         observationManager.addEventListener(clientLibraryComponentListener, 31, "/", true, null, null, true)
 
     }
@@ -170,9 +198,17 @@ class DefaultDependentComponentManager implements DependentComponentManager {
         dependentComponentSet.clear()
         dependentComponentsByComponentPath.clear()
         dependentComponentsByClientLibraryCategory.clear()
+        dependentComponentsByResourceType = new ConcurrentHashMap<String, Optional<DependentComponent>>()
 
     }
 
+    /**
+     * Resolves a resource type against the search paths without consulting or populating the resolution map.  Used
+     * directly while the component set is being rebuilt, during which any result would be partial.
+     *
+     * @param resourceType
+     * @return The Dependent Component for the resource type if one is known
+     */
     protected Optional<DependentComponent> lookupDependentComponentForResourceType(String resourceType) {
 
         for (String currentSearchPath : administrativeResourceResolver.searchPath) {
@@ -264,6 +300,7 @@ class DefaultDependentComponentManager implements DependentComponentManager {
         }
 
         initialized = true
+        version.incrementAndGet()
 
     }
 
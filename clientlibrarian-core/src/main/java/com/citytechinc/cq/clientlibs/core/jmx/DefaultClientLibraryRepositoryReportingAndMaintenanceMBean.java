@@ -16,16 +16,45 @@
 package com.citytechinc.cq.clientlibs.core.jmx;
 
 import javax.jcr.RepositoryException;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType;
 import com.citytechinc.cq.clientlibs.api.jmx.ClientLibraryRepositoryReportingAndMaintenanceMBean;
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.ClientLibraryRepository;
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ClientLibraryCacheManager;
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCachingException;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.export.ClientLibraryExporter;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.ClientLibraryMetrics;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.CompilationPhase;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.InvalidationCause;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.LatencyStatistics;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.LibraryTypeStatistics;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.SlowCompilation;
+import com.citytechinc.cq.clientlibs.core.util.PageContentUtil;
+import com.google.common.collect.Sets;
+import org.apache.commons.lang.StringUtils;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.Service;
 import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,12 +67,46 @@ public class DefaultClientLibraryRepositoryReportingAndMaintenanceMBean implemen
 
     private static final Logger LOG = LoggerFactory.getLogger(DefaultClientLibraryRepositoryReportingAndMaintenanceMBean.class);
 
+    private static final String[] LIBRARY_TYPE_METRIC_NAMES = {
+            "type", "cacheLookups", "cacheHits", "cacheMisses", "cacheHitRatio", "compilations", "compilationFailures", "bytesServed",
+            "lookupMeanMillis", "lookupP50Millis", "lookupP95Millis", "lookupP99Millis", "lookupMaxMillis",
+            "compilationMeanMillis", "compilationP50Millis", "compilationP95Millis", "compilationP99Millis", "compilationMaxMillis" };
+
+    private static final OpenType<?>[] LIBRARY_TYPE_METRIC_TYPES = {
+            SimpleType.STRING, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.DOUBLE, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG,
+            SimpleType.DOUBLE, SimpleType.DOUBLE, SimpleType.DOUBLE, SimpleType.DOUBLE, SimpleType.DOUBLE,
+            SimpleType.DOUBLE, SimpleType.DOUBLE, SimpleType.DOUBLE, SimpleType.DOUBLE, SimpleType.DOUBLE };
+
+    private static final String[] INVALIDATION_METRIC_NAMES = { "cause", "invalidations" };
+
+    private static final OpenType<?>[] INVALIDATION_METRIC_TYPES = { SimpleType.STRING, SimpleType.LONG };
+
+    private static final String[] PHASE_METRIC_NAMES = { "phase", "count", "totalMillis", "meanMillis", "p50Millis", "p95Millis", "p99Millis", "maxMillis" };
+
+    private static final OpenType<?>[] PHASE_METRIC_TYPES = {
+            SimpleType.STRING, SimpleType.LONG, SimpleType.DOUBLE, SimpleType.DOUBLE, SimpleType.DOUBLE, SimpleType.DOUBLE, SimpleType.DOUBLE, SimpleType.DOUBLE };
+
+    private static final String[] SLOW_COMPILATION_NAMES = {
+            "rank", "timestamp", "path", "type", "brand", "libraryCount", "bytes", "durationMillis", "lessCompileMillis", "phaseMillis" };
+
+    private static final OpenType<?>[] SLOW_COMPILATION_TYPES = {
+            SimpleType.INTEGER, SimpleType.DATE, SimpleType.STRING, SimpleType.STRING, SimpleType.STRING, SimpleType.INTEGER, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.STRING };
+
     @Reference
     ClientLibraryRepository repository;
 
     @Reference
     ClientLibraryCacheManager clientLibraryCacheManager;
 
+    @Reference
+    ResourceResolverFactory resourceResolverFactory;
+
+    @Reference
+    ClientLibraryExporter clientLibraryExporter;
+
+    @Reference
+    ClientLibraryMetrics clientLibraryMetrics;
+
     @Override
     public void refresh() {
         try {
@@ -59,6 +122,7 @@ public class DefaultClientLibraryRepositoryReportingAndMaintenanceMBean implemen
     public void clearCache() {
         try {
             clientLibraryCacheManager.clearCache();
+            clientLibraryMetrics.recordInvalidation(InvalidationCause.MANUAL);
         } catch (ClientLibraryCachingException e) {
             LOG.error("Client Library Caching Exception encountered while attempting to clear the cache via JMX", e);
         }
@@ -69,4 +133,232 @@ public class DefaultClientLibraryRepositoryReportingAndMaintenanceMBean implemen
         return repository.getClientLibraryCount();
     }
 
+    @Override
+    public String compilePageLibraries(String rootPath, String types, String brands) {
+
+        ResourceResolver resourceResolver = null;
+
+        try {
+            resourceResolver = resourceResolverFactory.getAdministrativeResourceResolver(null);
+
+            List<Resource> roots = PageContentUtil.getPageContentResources(resourceResolver, Collections.singletonList(rootPath), true);
+
+            return repository.compileClientLibraries(roots, parseLibraryTypes(types), parseBrands(brands)).toString();
+        } catch (LoginException e) {
+            LOG.error("Login Exception encountered while attempting to compile Page Libraries via JMX", e);
+            return "Unable to obtain a resource resolver : " + e.getMessage();
+        } finally {
+            if (resourceResolver != null) {
+                resourceResolver.close();
+            }
+        }
+
+    }
+
+    @Override
+    public String exportPageLibraries(String rootPath) {
+
+        ResourceResolver resourceResolver = null;
+
+        try {
+            resourceResolver = resourceResolverFactory.getAdministrativeResourceResolver(null);
+
+            return clientLibraryExporter.export(resourceResolver, rootPath).toString();
+        } catch (LoginException e) {
+            LOG.error("Login Exception encountered while attempting to export Page Libraries via JMX", e);
+            return "Unable to obtain a resource resolver : " + e.getMessage();
+        } finally {
+            if (resourceResolver != null) {
+                resourceResolver.close();
+            }
+        }
+
+    }
+
+    @Override
+    public void recomputeSharedChunks() {
+        repository.recomputeSharedChunks();
+    }
+
+    @Override
+    public Double getCacheHitRatio() {
+
+        long lookups = 0;
+        long hits = 0;
+
+        for (LibraryType currentType : LibraryType.values()) {
+            LibraryTypeStatistics currentStatistics = clientLibraryMetrics.getStatistics(currentType);
+
+            lookups += currentStatistics.getCacheLookupCount();
+            hits += currentStatistics.getCacheHitCount();
+        }
+
+        return lookups == 0 ? 0 : (double) hits / lookups;
+
+    }
+
+    @Override
+    public TabularData getLibraryTypeMetrics() {
+
+        try {
+            CompositeType rowType = new CompositeType("libraryTypeMetrics", "Metrics of a library type", LIBRARY_TYPE_METRIC_NAMES, LIBRARY_TYPE_METRIC_NAMES, LIBRARY_TYPE_METRIC_TYPES);
+            TabularDataSupport tabularData = new TabularDataSupport(new TabularType("libraryTypeMetrics", "Metrics per library type", rowType, new String[] { "type" }));
+
+            for (LibraryType currentType : LibraryType.values()) {
+                LibraryTypeStatistics currentStatistics = clientLibraryMetrics.getStatistics(currentType);
+                LatencyStatistics lookupLatency = currentStatistics.getCacheLookupLatency();
+                LatencyStatistics compilationLatency = currentStatistics.getCompilationLatency();
+
+                tabularData.put(new CompositeDataSupport(rowType, LIBRARY_TYPE_METRIC_NAMES, new Object[] {
+                        currentType.name(),
+                        currentStatistics.getCacheLookupCount(),
+                        currentStatistics.getCacheHitCount(),
+                        currentStatistics.getCacheMissCount(),
+                        currentStatistics.getCacheHitRatio(),
+                        currentStatistics.getCompilationCount(),
+                        currentStatistics.getCompilationFailureCount(),
+                        currentStatistics.getBytesServed(),
+                        toMillis(lookupLatency.getMean()),
+                        toMillis(lookupLatency.getPercentile(50)),
+                        toMillis(lookupLatency.getPercentile(95)),
+                        toMillis(lookupLatency.getPercentile(99)),
+                        toMillis(lookupLatency.getMax()),
+                        toMillis(compilationLatency.getMean()),
+                        toMillis(compilationLatency.getPercentile(50)),
+                        toMillis(compilationLatency.getPercentile(95)),
+                        toMillis(compilationLatency.getPercentile(99)),
+                        toMillis(compilationLatency.getMax()) }));
+            }
+
+            return tabularData;
+        } catch (OpenDataException e) {
+            LOG.error("Open Data Exception encountered while building the library type metrics", e);
+            return null;
+        }
+
+    }
+
+    @Override
+    public TabularData getInvalidationMetrics() {
+
+        try {
+            CompositeType rowType = new CompositeType("invalidationMetrics", "Invalidations of a cause", INVALIDATION_METRIC_NAMES, INVALIDATION_METRIC_NAMES, INVALIDATION_METRIC_TYPES);
+            TabularDataSupport tabularData = new TabularDataSupport(new TabularType("invalidationMetrics", "Invalidations per cause", rowType, new String[] { "cause" }));
+
+            for (Map.Entry<InvalidationCause, Long> currentEntry : clientLibraryMetrics.getInvalidationCounts().entrySet()) {
+                tabularData.put(new CompositeDataSupport(rowType, INVALIDATION_METRIC_NAMES, new Object[] { currentEntry.getKey().name(), currentEntry.getValue() }));
+            }
+
+            return tabularData;
+        } catch (OpenDataException e) {
+            LOG.error("Open Data Exception encountered while building the invalidation metrics", e);
+            return null;
+        }
+
+    }
+
+    @Override
+    public TabularData getPhaseMetrics() {
+
+        try {
+            CompositeType rowType = new CompositeType("phaseMetrics", "Latencies of a compilation phase", PHASE_METRIC_NAMES, PHASE_METRIC_NAMES, PHASE_METRIC_TYPES);
+            TabularDataSupport tabularData = new TabularDataSupport(new TabularType("phaseMetrics", "Latencies per compilation phase", rowType, new String[] { "phase" }));
+
+            for (CompilationPhase currentPhase : CompilationPhase.values()) {
+                LatencyStatistics currentStatistics = clientLibraryMetrics.getPhaseStatistics(currentPhase);
+
+                tabularData.put(new CompositeDataSupport(rowType, PHASE_METRIC_NAMES, new Object[] {
+                        currentPhase.name(),
+                        currentStatistics.getCount(),
+                        toMillis(currentStatistics.getTotal()),
+                        toMillis(currentStatistics.getMean()),
+                        toMillis(currentStatistics.getPercentile(50)),
+                        toMillis(currentStatistics.getPercentile(95)),
+                        toMillis(currentStatistics.getPercentile(99)),
+                        toMillis(currentStatistics.getMax()) }));
+            }
+
+            return tabularData;
+        } catch (OpenDataException e) {
+            LOG.error("Open Data Exception encountered while building the phase metrics", e);
+            return null;
+        }
+
+    }
+
+    @Override
+    public TabularData getSlowCompilations() {
+
+        try {
+            CompositeType rowType = new CompositeType("slowCompilation", "A slow Page Library compilation", SLOW_COMPILATION_NAMES, SLOW_COMPILATION_NAMES, SLOW_COMPILATION_TYPES);
+            TabularDataSupport tabularData = new TabularDataSupport(new TabularType("slowCompilations", "The slowest Page Library compilations", rowType, new String[] { "rank" }));
+
+            int rank = 1;
+
+            for (SlowCompilation currentCompilation : clientLibraryMetrics.getSlowCompilations()) {
+                tabularData.put(new CompositeDataSupport(rowType, SLOW_COMPILATION_NAMES, new Object[] {
+                        rank++,
+                        new Date(currentCompilation.getTimestamp()),
+                        currentCompilation.getPath(),
+                        currentCompilation.getType().name(),
+                        currentCompilation.getBrand(),
+                        currentCompilation.getLibraryCount(),
+                        currentCompilation.getBytes(),
+                        currentCompilation.getDurationMillis(),
+                        currentCompilation.getLessCompileMillis(),
+                        currentCompilation.getPhaseMillis().toString() }));
+            }
+
+            return tabularData;
+        } catch (OpenDataException e) {
+            LOG.error("Open Data Exception encountered while building the slow compilations", e);
+            return null;
+        }
+
+    }
+
+    @Override
+    public void resetMetrics() {
+        clientLibraryMetrics.reset();
+    }
+
+    private static Double toMillis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static Set<LibraryType> parseLibraryTypes(String types) {
+
+        Set<LibraryType> libraryTypes = EnumSet.noneOf(LibraryType.class);
+
+        for (String currentType : StringUtils.split(StringUtils.defaultString(types), ',')) {
+            if (LibraryType.JS_EXTENSION.equalsIgnoreCase(currentType.trim())) {
+                libraryTypes.add(LibraryType.JS);
+            }
+            else if (LibraryType.CSS_EXTENSION.equalsIgnoreCase(currentType.trim())) {
+                libraryTypes.add(LibraryType.CSS);
+            }
+        }
+
+        if (libraryTypes.isEmpty()) {
+            return EnumSet.allOf(LibraryType.class);
+        }
+
+        return libraryTypes;
+
+    }
+
+    private static Set<String> parseBrands(String brands) {
+
+        Set<String> parsedBrands = Sets.newLinkedHashSet();
+
+        for (String currentBrand : StringUtils.split(StringUtils.defaultString(brands), ',')) {
+            if (StringUtils.isNotBlank(currentBrand)) {
+                parsedBrands.add(currentBrand.trim());
+            }
+        }
+
+        return parsedBrands;
+
+    }
+
 }
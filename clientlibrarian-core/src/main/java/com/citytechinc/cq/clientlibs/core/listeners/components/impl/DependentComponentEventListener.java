@@ -20,6 +20,8 @@ import com.citytechinc.cq.clientlibs.api.events.components.DependentComponentEve
 import com.citytechinc.cq.clientlibs.api.events.components.factory.DependentComponentEventFactory;
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ClientLibraryCacheManager;
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCachingException;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.ClientLibraryMetrics;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.InvalidationCause;
 import com.citytechinc.cq.clientlibs.api.services.components.DependentComponentManager;
 import com.google.common.base.Optional;
 import com.google.common.base.Stopwatch;
@@ -44,12 +46,14 @@ public class DependentComponentEventListener implements EventListener {
     private final DependentComponentEventFactory dependentComponentEventFactory;
     private final DependentComponentManager dependentComponentManager;
     private final ClientLibraryCacheManager clientLibraryCacheManager;
+    private final ClientLibraryMetrics clientLibraryMetrics;
     private final Session session;
 
-    public DependentComponentEventListener(DependentComponentEventFactory dependentComponentEventFactory, DependentComponentManager dependentComponentManager, ClientLibraryCacheManager clientLibraryCacheManager, Session session) {
+    public DependentComponentEventListener(DependentComponentEventFactory dependentComponentEventFactory, DependentComponentManager dependentComponentManager, ClientLibraryCacheManager clientLibraryCacheManager, ClientLibraryMetrics clientLibraryMetrics, Session session) {
         this.dependentComponentEventFactory = dependentComponentEventFactory;
         this.dependentComponentManager = dependentComponentManager;
         this.clientLibraryCacheManager = clientLibraryCacheManager;
+        this.clientLibraryMetrics = clientLibraryMetrics;
         this.session = session;
     }
 
@@ -82,6 +86,7 @@ public class DependentComponentEventListener implements EventListener {
         if (dependentComponentEventList.size() > 0) {
             try {
                 clientLibraryCacheManager.clearCache();
+                clientLibraryMetrics.recordInvalidation(InvalidationCause.COMPONENT);
             } catch (ClientLibraryCachingException e) {
                 LOG.error("Exception encountered attempting to clear the cache", e);
             }
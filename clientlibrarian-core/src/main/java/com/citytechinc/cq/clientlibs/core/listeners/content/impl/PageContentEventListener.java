@@ -16,7 +16,11 @@
 package com.citytechinc.cq.clientlibs.core.listeners.content.impl;
 
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ClientLibraryCacheManager;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ResourceTypeCacheManager;
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCachingException;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.ClientLibraryMetrics;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.InvalidationCause;
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.variables.VariableCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,17 +30,23 @@ import javax.jcr.observation.EventIterator;
 import javax.jcr.observation.EventListener;
 
 /**
- * The default PageContentEventListener manages invalidation of the cached client libraries for a page
- * every time the page content changes.
+ * The default PageContentEventListener manages invalidation of the cached client libraries, cached resource
+ * types and cached variables for a page every time the page content changes.
  */
 public class PageContentEventListener implements EventListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(PageContentEventListener.class);
 
     private final ClientLibraryCacheManager clientLibraryCacheManager;
+    private final ResourceTypeCacheManager resourceTypeCacheManager;
+    private final VariableCache variableCache;
+    private final ClientLibraryMetrics clientLibraryMetrics;
 
-    public PageContentEventListener(ClientLibraryCacheManager clientLibraryCacheManager) {
+    public PageContentEventListener(ClientLibraryCacheManager clientLibraryCacheManager, ResourceTypeCacheManager resourceTypeCacheManager, VariableCache variableCache, ClientLibraryMetrics clientLibraryMetrics) {
         this.clientLibraryCacheManager = clientLibraryCacheManager;
+        this.resourceTypeCacheManager = resourceTypeCacheManager;
+        this.variableCache = variableCache;
+        this.clientLibraryMetrics = clientLibraryMetrics;
     }
 
     @Override
@@ -46,17 +56,26 @@ public class PageContentEventListener implements EventListener {
                 Event currentEvent = eventIterator.nextEvent();
 
                 if (currentEvent.getType() == Event.PROPERTY_ADDED || currentEvent.getType() == Event.PROPERTY_CHANGED || currentEvent.getType() == Event.PROPERTY_REMOVED) {
-                    clientLibraryCacheManager.invalidateCache(currentEvent.getPath().substring(0, currentEvent.getPath().lastIndexOf("/")));
+                    invalidate(currentEvent.getPath().substring(0, currentEvent.getPath().lastIndexOf("/")));
                 }
                 else if (currentEvent.getType() == Event.NODE_REMOVED) {
-                    clientLibraryCacheManager.invalidateCache(currentEvent.getPath());
+                    invalidate(currentEvent.getPath());
                 }
                 else if (currentEvent.getType() == Event.NODE_MOVED) {
                     if(currentEvent.getInfo().containsKey("srcAbsPath")) {
-                        clientLibraryCacheManager.invalidateCache((String) currentEvent.getInfo().get("srcAbsPath"));
+                        invalidate((String) currentEvent.getInfo().get("srcAbsPath"));
                     }
-                    clientLibraryCacheManager.invalidateCache(currentEvent.getPath());
+                    invalidate(currentEvent.getPath());
                 }
+                else {
+                    continue;
+                }
+
+                /*
+                 * Recorded once per event rather than once per invalidated path so that a move, which invalidates
+                 * both its source and its destination, is counted as a single invalidation
+                 */
+                clientLibraryMetrics.recordInvalidation(InvalidationCause.PAGE_CONTENT);
             } catch (RepositoryException e) {
                 LOG.error("Repository Exception", e);
             } catch (ClientLibraryCachingException e) {
@@ -65,4 +84,10 @@ public class PageContentEventListener implements EventListener {
         }
     }
 
+    private void invalidate(String path) throws ClientLibraryCachingException {
+        resourceTypeCacheManager.invalidateCache(path);
+        variableCache.invalidate(path);
+        clientLibraryCacheManager.invalidateCache(path);
+    }
+
 }
@@ -21,6 +21,8 @@ import com.citytechinc.cq.clientlibs.api.events.library.factory.ClientLibraryEve
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.ClientLibraryManager;
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ClientLibraryCacheManager;
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCachingException;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.ClientLibraryMetrics;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.InvalidationCause;
 import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -44,12 +46,14 @@ public class ClientLibraryEventListener implements EventListener {
     private final ClientLibraryEventFactory clientLibraryEventFactory;
     private final ClientLibraryManager clientLibraryManager;
     private final ClientLibraryCacheManager clientLibraryCacheManager;
+    private final ClientLibraryMetrics clientLibraryMetrics;
     private final Session session;
 
-    public ClientLibraryEventListener(ClientLibraryEventFactory clientLibraryEventFactory, ClientLibraryManager clientLibraryManager, ClientLibraryCacheManager clientLibraryCacheManager, Session session) {
+    public ClientLibraryEventListener(ClientLibraryEventFactory clientLibraryEventFactory, ClientLibraryManager clientLibraryManager, ClientLibraryCacheManager clientLibraryCacheManager, ClientLibraryMetrics clientLibraryMetrics, Session session) {
         this.clientLibraryEventFactory = clientLibraryEventFactory;
         this.clientLibraryManager = clientLibraryManager;
         this.clientLibraryCacheManager = clientLibraryCacheManager;
+        this.clientLibraryMetrics = clientLibraryMetrics;
         this.session = session;
     }
 
@@ -90,6 +94,7 @@ public class ClientLibraryEventListener implements EventListener {
         if (clientLibraryEventList.size() > 0) {
             try {
                 clientLibraryCacheManager.clearCache();
+                clientLibraryMetrics.recordInvalidation(InvalidationCause.CLIENT_LIBRARY);
             } catch (ClientLibraryCachingException e) {
                 LOG.error("Exception encountered clearing client library cache", e);
             }
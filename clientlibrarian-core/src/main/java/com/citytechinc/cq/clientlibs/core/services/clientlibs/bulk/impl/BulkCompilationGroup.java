@@ -0,0 +1,112 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.bulk.impl;
+
+import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary;
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.apache.sling.api.resource.Resource;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A set of Page Libraries which, sharing a library type, an ordered list of Client Libraries, and a set of
+ * variables, compile to identical output during a bulk compilation job.
+ */
+public class BulkCompilationGroup {
+
+    private final LibraryType type;
+    private final List<ClientLibrary> dependencies;
+    private final Map<String, String> variables;
+
+    private final List<Resource> roots = Lists.newArrayList();
+    private final List<String> brands = Lists.newArrayList();
+
+    private volatile String sourceMap;
+
+    public BulkCompilationGroup(LibraryType type, List<ClientLibrary> dependencies, Map<String, String> variables) {
+        this.type = type;
+        this.dependencies = ImmutableList.copyOf(dependencies);
+        this.variables = Collections.unmodifiableMap(new HashMap<String, String>(variables));
+    }
+
+    public static String getKey(LibraryType type, List<ClientLibrary> dependencies, Map<String, String> variables) {
+
+        StringBuilder keyBuilder = new StringBuilder(type.name());
+
+        for (ClientLibrary currentDependency : dependencies) {
+            keyBuilder.append('|').append(currentDependency.getClientLibraryPath());
+        }
+
+        for (Map.Entry<String, String> currentVariable : new TreeMap<String, String>(variables).entrySet()) {
+            keyBuilder.append('\n').append(currentVariable.getKey()).append('=').append(currentVariable.getValue());
+        }
+
+        return keyBuilder.toString();
+
+    }
+
+    public void addPageLibrary(Resource root, String brand) {
+        roots.add(root);
+        brands.add(brand);
+    }
+
+    public LibraryType getType() {
+        return type;
+    }
+
+    public List<ClientLibrary> getDependencies() {
+        return dependencies;
+    }
+
+    public Map<String, String> getVariables() {
+        return variables;
+    }
+
+    /**
+     *
+     * @return The page content resources of the Page Libraries in this group, positionally matched with the brands
+     */
+    public List<Resource> getRoots() {
+        return roots;
+    }
+
+    public List<String> getBrands() {
+        return brands;
+    }
+
+    public Integer getPageLibraryCount() {
+        return roots.size();
+    }
+
+    /**
+     *
+     * @return The source map produced when the group was compiled, or null if none was produced
+     */
+    public String getSourceMap() {
+        return sourceMap;
+    }
+
+    public void setSourceMap(String sourceMap) {
+        this.sourceMap = sourceMap;
+    }
+
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.bulk.impl;
+
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.bulk.BulkCompilationResult;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+
+public class DefaultBulkCompilationResult implements BulkCompilationResult {
+
+    private final Integer pageCount;
+    private final Integer libraryCount;
+    private final Integer cachedLibraryCount;
+    private final Integer distinctCompilationCount;
+    private final Integer compiledLibraryCount;
+    private final Map<String, String> failures;
+    private final Long durationMillis;
+
+    public DefaultBulkCompilationResult(Integer pageCount, Integer libraryCount, Integer cachedLibraryCount, Integer distinctCompilationCount, Integer compiledLibraryCount, Map<String, String> failures, Long durationMillis) {
+        this.pageCount = pageCount;
+        this.libraryCount = libraryCount;
+        this.cachedLibraryCount = cachedLibraryCount;
+        this.distinctCompilationCount = distinctCompilationCount;
+        this.compiledLibraryCount = compiledLibraryCount;
+        this.failures = ImmutableMap.copyOf(failures);
+        this.durationMillis = durationMillis;
+    }
+
+    @Override
+    public Integer getPageCount() {
+        return pageCount;
+    }
+
+    @Override
+    public Integer getLibraryCount() {
+        return libraryCount;
+    }
+
+    @Override
+    public Integer getCachedLibraryCount() {
+        return cachedLibraryCount;
+    }
+
+    @Override
+    public Integer getDistinctCompilationCount() {
+        return distinctCompilationCount;
+    }
+
+    @Override
+    public Integer getCompiledLibraryCount() {
+        return compiledLibraryCount;
+    }
+
+    @Override
+    public Map<String, String> getFailures() {
+        return failures;
+    }
+
+    @Override
+    public Long getDurationMillis() {
+        return durationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "Compiled " + compiledLibraryCount + " of " + libraryCount + " Page Libraries across " + pageCount +
+                " pages using " + distinctCompilationCount + " distinct compilations in " + durationMillis + "ms. " +
+                cachedLibraryCount + " were already cached and " + failures.size() + " pages failed.";
+    }
+
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.cache.impl;
+
+import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.CachedLibrary;
+import org.apache.commons.io.IOUtils;
+
+import javax.jcr.Binary;
+import javax.jcr.RepositoryException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A UTF-8 encoded library held in a repository binary, streamed from the repository when written.
+ */
+public class BinaryCachedLibrary implements CachedLibrary {
+
+    private final Binary binary;
+    private final long length;
+
+    public BinaryCachedLibrary(Binary binary) throws RepositoryException {
+        this.binary = binary;
+        this.length = binary.getSize();
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    @Override
+    public String getEncoding() {
+        return ClientLibrary.UTF_8_ENCODING;
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+
+        InputStream inputStream = null;
+
+        try {
+            inputStream = binary.getStream();
+            IOUtils.copy(inputStream, outputStream);
+        } catch (RepositoryException e) {
+            throw new IOException("Repository Exception encountered reading cached library", e);
+        } finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+
+    }
+
+    @Override
+    public void close() {
+        binary.dispose();
+    }
+
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.cache.impl;
+
+import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.CachedLibrary;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A UTF-8 encoded library held in a byte buffer, either on the heap or mapped from a file.
+ */
+public class ByteBufferCachedLibrary implements CachedLibrary {
+
+    private final ByteBuffer content;
+
+    /**
+     *
+     * @param content The library, from the buffer's position to its limit.  The buffer is not modified.
+     */
+    public ByteBufferCachedLibrary(ByteBuffer content) {
+        this.content = content.duplicate();
+    }
+
+    public ByteBufferCachedLibrary(byte[] content) {
+        this(ByteBuffer.wrap(content));
+    }
+
+    @Override
+    public long getLength() {
+        return content.remaining();
+    }
+
+    @Override
+    public String getEncoding() {
+        return ClientLibrary.UTF_8_ENCODING;
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+
+        if (content.hasArray()) {
+            outputStream.write(content.array(), content.arrayOffset() + content.position(), content.remaining());
+            return;
+        }
+
+        ByteBuffer readableContent = content.duplicate();
+        WritableByteChannel channel = Channels.newChannel(outputStream);
+
+        while (readableContent.hasRemaining()) {
+            channel.write(readableContent);
+        }
+
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
@@ -18,6 +18,7 @@ package com.citytechinc.cq.clientlibs.core.services.clientlibs.cache.impl;
 import com.citytechinc.cq.clientlibs.api.constants.Brands;
 import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary;
 import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.CachedLibrary;
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ClientLibraryCacheManager;
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.CachedClientLibraryLookupException;
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCachingException;
@@ -40,10 +41,13 @@ import java.nio.charset.StandardCharsets;
 
 @Component
 @Service
+@org.apache.felix.scr.annotations.Property(name = TieredClientLibraryCacheManager.TIER_NAME, value = DefaultClientLibraryCacheManager.TIER, propertyPrivate = true)
 public class DefaultClientLibraryCacheManager implements ClientLibraryCacheManager {
 
     private static final Logger LOG = LoggerFactory.getLogger(DefaultClientLibraryCacheManager.class);
 
+    public static final String TIER = "jcr";
+
     private ResourceResolver resourceResolver;
 
     @Reference
@@ -96,6 +100,31 @@ public class DefaultClientLibraryCacheManager implements ClientLibraryCacheManag
 
     }
 
+    @Override
+    public Optional<CachedLibrary> getCachedLibraryEntry(Resource root, LibraryType type, String brand) throws CachedClientLibraryLookupException, LoginException {
+
+        Resource cachedResource = getAdministrativeResourceResolver().getResource(getPathToLibraryFile(root.getPath(), type, brand));
+
+        if (cachedResource != null) {
+
+            Node node = cachedResource.adaptTo(Node.class);
+
+            try {
+
+                Property dataProperty = node.getProperty( "jcr:content/jcr:data" );
+
+                return Optional.<CachedLibrary>of(new BinaryCachedLibrary(dataProperty.getBinary()));
+
+            } catch (RepositoryException e) {
+                LOG.error("Repository Exception encountered looking up cached library for " + cachedResource.getPath(), e);
+                throw new CachedClientLibraryLookupException("Repository Exception encountered looking up cached library for " + cachedResource.getPath(), e);
+            }
+        }
+
+        return Optional.absent();
+
+    }
+
     @Override
     public void cacheLibrary(Resource root, LibraryType type, String libraryContent) throws ClientLibraryCachingException {
         cacheLibrary(root, type, Brands.DEFAULT_BRAND, libraryContent);
@@ -0,0 +1,247 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.cache.impl;
+
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ResourceTypeCacheManager;
+import com.day.cq.commons.jcr.JcrConstants;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component(label = "Default Resource Type Cache Manager", description = "An in memory cache of the resource types resolved for each page")
+@Service
+public class DefaultResourceTypeCacheManager implements ResourceTypeCacheManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultResourceTypeCacheManager.class);
+
+    private static final String JCR_CONTENT_SEGMENT = "/" + JcrConstants.JCR_CONTENT;
+
+    @Property(label = "Cache Size", intValue = 10000, description = "The maximum number of pages for which resolved resource types are kept in memory")
+    private static final String CACHE_SIZE = "cacheSize";
+    private static final Integer DEFAULT_CACHE_SIZE = 10000;
+
+    private final AtomicLong generation = new AtomicLong();
+
+    /*
+     * Entries stamped below the floor predate the last clear, or an invalidation whose record has since been evicted
+     */
+    private final AtomicLong floorGeneration = new AtomicLong();
+
+    private Cache<String, GenerationStampedEntry<Set<String>>> resourceTypesByRootPath = CacheBuilder.newBuilder().maximumSize(DEFAULT_CACHE_SIZE).build();
+    private Cache<String, GenerationStampedEntry<Map<String, String>>> inheritedResourceTypesByIParsysPath = CacheBuilder.newBuilder().maximumSize(DEFAULT_CACHE_SIZE).build();
+    private Cache<String, Long> invalidationGenerationByPagePath = buildInvalidationRecordCache(DEFAULT_CACHE_SIZE);
+
+    @Activate
+    protected void activate(Map<String, Object> properties) {
+
+        Integer cacheSize = PropertiesUtil.toInteger(properties.get(CACHE_SIZE), DEFAULT_CACHE_SIZE);
+
+        resourceTypesByRootPath = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .build();
+        inheritedResourceTypesByIParsysPath = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .build();
+        invalidationGenerationByPagePath = buildInvalidationRecordCache(cacheSize);
+
+    }
+
+    @Override
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    @Override
+    public Optional<Set<String>> getCachedResourceTypes(String rootPath) {
+        return getCurrentValue(resourceTypesByRootPath, rootPath);
+    }
+
+    @Override
+    public void cacheResourceTypes(String rootPath, Set<String> resourceTypes, long generation) {
+        putIfCurrent(resourceTypesByRootPath, rootPath, ImmutableSet.copyOf(resourceTypes), generation);
+    }
+
+    @Override
+    public Optional<Map<String, String>> getCachedInheritedResourceTypes(String iParsysPath) {
+        return getCurrentValue(inheritedResourceTypesByIParsysPath, iParsysPath);
+    }
+
+    @Override
+    public void cacheInheritedResourceTypes(String iParsysPath, Map<String, String> resourceTypesByPath, long generation) {
+        putIfCurrent(inheritedResourceTypesByIParsysPath, iParsysPath, ImmutableMap.copyOf(resourceTypesByPath), generation);
+    }
+
+    /**
+     * Rather than scanning every cached key for those at or below the page, the invalidation is recorded against the
+     * page path alone.  Reads check the recorded generations of the page of an entry and of each page above it, so the
+     * cost of an event is constant and the cost of a read is bounded by the depth of the page.
+     *
+     * @param path
+     */
+    @Override
+    public void invalidateCache(String path) {
+
+        String pagePath = getPagePath(path);
+
+        LOG.debug("Invalidating cached resource types for " + pagePath + " and the pages below it");
+
+        invalidationGenerationByPagePath.put(pagePath, generation.incrementAndGet());
+
+        resourceTypesByRootPath.invalidate(pagePath);
+        resourceTypesByRootPath.invalidate(pagePath + JCR_CONTENT_SEGMENT);
+
+    }
+
+    @Override
+    public void clearCache() {
+
+        floorGeneration.set(generation.incrementAndGet());
+
+        resourceTypesByRootPath.invalidateAll();
+        inheritedResourceTypesByIParsysPath.invalidateAll();
+        invalidationGenerationByPagePath.invalidateAll();
+
+    }
+
+    private <T> Optional<T> getCurrentValue(Cache<String, GenerationStampedEntry<T>> cache, String path) {
+
+        GenerationStampedEntry<T> cachedEntry = cache.getIfPresent(path);
+
+        if (cachedEntry == null) {
+            return Optional.absent();
+        }
+
+        if (isInvalidatedSince(path, cachedEntry.generation)) {
+            cache.invalidate(path);
+            return Optional.absent();
+        }
+
+        return Optional.of(cachedEntry.value);
+
+    }
+
+    /**
+     * Values resolved from content read before an invalidation of their page, or of a page above it, are dropped
+     * rather than cached
+     */
+    private <T> void putIfCurrent(Cache<String, GenerationStampedEntry<T>> cache, String path, T value, long resolvedAtGeneration) {
+
+        if (isInvalidatedSince(path, resolvedAtGeneration)) {
+            LOG.debug("Discarding resource types resolved for " + path + " as the content has since been invalidated");
+            return;
+        }
+
+        cache.put(path, new GenerationStampedEntry<T>(value, resolvedAtGeneration));
+
+    }
+
+    @Override
+    public boolean isInvalidatedSince(String path, long resolvedAtGeneration) {
+
+        if (resolvedAtGeneration < floorGeneration.get()) {
+            return true;
+        }
+
+        String currentPagePath = getPagePath(path);
+
+        while (!currentPagePath.isEmpty()) {
+            Long invalidationGeneration = invalidationGenerationByPagePath.getIfPresent(currentPagePath);
+
+            if (invalidationGeneration != null && invalidationGeneration > resolvedAtGeneration) {
+                return true;
+            }
+
+            currentPagePath = currentPagePath.substring(0, Math.max(currentPagePath.lastIndexOf('/'), 0));
+        }
+
+        return false;
+
+    }
+
+    private Cache<String, Long> buildInvalidationRecordCache(Integer cacheSize) {
+
+        return CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .removalListener(new RemovalListener<String, Long>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<String, Long> notification) {
+                        if (notification.wasEvicted()) {
+                            raiseFloorGeneration(notification.getValue());
+                        }
+                    }
+                })
+                .build();
+
+    }
+
+    /*
+     * Once the record of an invalidation is evicted, entries resolved before it can no longer be told apart from those
+     * it covered, so all of them are treated as stale
+     */
+    private void raiseFloorGeneration(long evictedGeneration) {
+
+        long currentFloor = floorGeneration.get();
+
+        while (evictedGeneration > currentFloor && !floorGeneration.compareAndSet(currentFloor, evictedGeneration)) {
+            currentFloor = floorGeneration.get();
+        }
+
+    }
+
+    protected static String getPagePath(String path) {
+
+        int contentIndex = path.indexOf(JCR_CONTENT_SEGMENT + "/");
+
+        if (contentIndex == -1 && path.endsWith(JCR_CONTENT_SEGMENT)) {
+            contentIndex = path.length() - JCR_CONTENT_SEGMENT.length();
+        }
+
+        if (contentIndex != -1) {
+            return path.substring(0, contentIndex);
+        }
+
+        return path;
+
+    }
+
+    private static final class GenerationStampedEntry<T> {
+
+        private final T value;
+        private final long generation;
+
+        private GenerationStampedEntry(T value, long generation) {
+            this.value = value;
+            this.generation = generation;
+        }
+
+    }
+
+}
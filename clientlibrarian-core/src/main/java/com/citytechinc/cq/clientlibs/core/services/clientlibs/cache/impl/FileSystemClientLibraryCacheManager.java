@@ -0,0 +1,628 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.cache.impl;
+
+import com.citytechinc.cq.clientlibs.api.constants.Brands;
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.CachedLibrary;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ClientLibraryCacheManager;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.CachedClientLibraryLookupException;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCachingException;
+import com.google.common.base.Optional;
+import com.google.common.hash.Hashing;
+import org.apache.commons.lang.StringUtils;
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.ConfigurationPolicy;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Properties;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * Caches compiled libraries as files in a directory on the local filesystem, keeping the repository out of the
+ * library request path entirely.  Each library is written to a temporary file which is atomically moved into place,
+ * then mapped into memory and served from the mapping until it is invalidated.
+ * </p>
+ * <p>
+ * Every file starts with the length and UTF-8 bytes of the key it was cached under - the root path, type and brand
+ * of the library - followed by the length and CRC-32 checksum of the library and then the library itself.  Files are
+ * forced to the disk before they are moved into place and their length and checksum are verified each time they are
+ * mapped, so a file left incomplete by a crash is discarded rather than served.  The in-memory index of cached
+ * libraries is rebuilt from these headers on activation so that libraries cached before a restart continue to be
+ * served.
+ * </p>
+ * <p>
+ * A mapped file is held by the index until invalidated and by each reader between looking it up and closing the
+ * entry; it is unmapped once it is held by neither rather than waiting for the garbage collector to reclaim it.
+ * </p>
+ * <p>
+ * The component is only activated once configured and is ranked above the default, repository backed, cache
+ * manager.
+ * </p>
+ */
+@Component(label = "File System Client Library Cache Manager", description = "Caches compiled libraries as memory mapped files in a directory on the local filesystem", policy = ConfigurationPolicy.REQUIRE)
+@Service
+@Properties({
+        @Property(name = "service.ranking", intValue = 100),
+        @Property(name = TieredClientLibraryCacheManager.TIER_NAME, value = FileSystemClientLibraryCacheManager.TIER, propertyPrivate = true)
+})
+public class FileSystemClientLibraryCacheManager implements ClientLibraryCacheManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileSystemClientLibraryCacheManager.class);
+
+    public static final String TIER = "disk";
+
+    private static final String LIBRARY_FILE_EXTENSION = ".lib";
+    private static final String TEMPORARY_FILE_EXTENSION = ".tmp";
+
+    @Property(label = "Cache Directory", value = "", description = "The directory in which compiled libraries are cached")
+    private static final String CACHE_DIRECTORY = "cacheDirectory";
+    private File cacheDirectory;
+
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    /*
+     * Ordered by key so that the libraries of a root and of the roots below it may be found as ranges of keys rather
+     * than by scanning every key
+     */
+    private final ConcurrentNavigableMap<String, CachedLibraryFile> index = new ConcurrentSkipListMap<String, CachedLibraryFile>();
+
+    private final Object writeLock = new Object();
+
+    @Activate
+    protected void activate(Map<String, Object> properties) throws IOException {
+
+        String cacheDirectoryPath = PropertiesUtil.toString(properties.get(CACHE_DIRECTORY), "");
+
+        if (StringUtils.isBlank(cacheDirectoryPath)) {
+            throw new IOException("No cache directory is configured");
+        }
+
+        cacheDirectory = new File(cacheDirectoryPath);
+
+        if (!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs()) {
+            throw new IOException("Unable to create cache directory " + cacheDirectory.getAbsolutePath());
+        }
+
+        rebuildIndex();
+
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        synchronized (writeLock) {
+            releaseAll(index);
+        }
+    }
+
+    @Override
+    public Optional<String> getCachedLibrary(Resource root, LibraryType type) throws CachedClientLibraryLookupException {
+        return getCachedLibrary(root, type, Brands.DEFAULT_BRAND);
+    }
+
+    @Override
+    public Optional<String> getCachedLibrary(Resource root, LibraryType type, String brand) throws CachedClientLibraryLookupException {
+
+        Optional<CachedLibraryFile> cachedLibraryFile = retainCachedLibraryFile(getKey(root.getPath(), type, brand));
+
+        if (!cachedLibraryFile.isPresent()) {
+            return Optional.absent();
+        }
+
+        try {
+            return Optional.of(StandardCharsets.UTF_8.decode(cachedLibraryFile.get().getContent()).toString());
+        } finally {
+            cachedLibraryFile.get().release();
+        }
+
+    }
+
+    @Override
+    public Optional<CachedLibrary> getCachedLibraryEntry(Resource root, LibraryType type, String brand) throws CachedClientLibraryLookupException {
+
+        Optional<CachedLibraryFile> cachedLibraryFile = retainCachedLibraryFile(getKey(root.getPath(), type, brand));
+
+        if (!cachedLibraryFile.isPresent()) {
+            return Optional.absent();
+        }
+
+        return Optional.<CachedLibrary>of(new MappedCachedLibrary(cachedLibraryFile.get()));
+
+    }
+
+    @Override
+    public void cacheLibrary(Resource root, LibraryType type, String libraryContent) throws ClientLibraryCachingException {
+        cacheLibrary(root, type, Brands.DEFAULT_BRAND, libraryContent);
+    }
+
+    @Override
+    public void cacheLibrary(Resource root, LibraryType type, String brand, String libraryContent) throws ClientLibraryCachingException {
+
+        String key = getKey(root.getPath(), type, brand);
+        File libraryFile = new File(cacheDirectory, getFileName(key));
+
+        synchronized (writeLock) {
+
+            File temporaryFile = null;
+
+            try {
+                temporaryFile = File.createTempFile("library", TEMPORARY_FILE_EXTENSION, cacheDirectory);
+
+                writeLibraryFile(temporaryFile, key, libraryContent);
+                Files.move(temporaryFile.toPath(), libraryFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+                release(index.put(key, mapLibraryFile(libraryFile, root.getPath())));
+            } catch (IOException e) {
+                LOG.error("IO Exception encountered attempting to Cache Library " + root.getPath(), e);
+                throw new ClientLibraryCachingException("IO Exception encountered attempting to Cache Library " + root.getPath(), e);
+            } finally {
+                if (temporaryFile != null && temporaryFile.exists() && !temporaryFile.delete()) {
+                    LOG.warn("Unable to remove temporary file " + temporaryFile.getAbsolutePath());
+                }
+            }
+
+        }
+
+    }
+
+    /**
+     * Invalidates the libraries cached for the provided root path and for every root below it.
+     *
+     * @param rootPath
+     * @throws ClientLibraryCachingException
+     */
+    @Override
+    public void invalidateCache(String rootPath) throws ClientLibraryCachingException {
+
+        LOG.debug("Invalidating Cache Set for " + rootPath);
+
+        synchronized (writeLock) {
+
+            /*
+             * Keys begin with the root path followed by a line break, so the keys of the root itself and those of the
+             * roots below it each form a contiguous range
+             */
+            invalidateRange(rootPath + "\n");
+            invalidateRange(rootPath + "/");
+
+        }
+
+    }
+
+    @Override
+    public void invalidateCache(String rootPath, LibraryType type) throws ClientLibraryCachingException {
+        invalidateCache(rootPath, type, Brands.DEFAULT_BRAND);
+    }
+
+    @Override
+    public void invalidateCache(String rootPath, LibraryType type, String brand) throws ClientLibraryCachingException {
+
+        String key = getKey(rootPath, type, brand);
+
+        synchronized (writeLock) {
+            CachedLibraryFile removedLibraryFile = index.remove(key);
+
+            if (removedLibraryFile != null) {
+                removedLibraryFile.release();
+                deleteLibraryFile(key);
+            }
+        }
+
+    }
+
+    @Override
+    public void clearCache() throws ClientLibraryCachingException {
+
+        synchronized (writeLock) {
+
+            releaseAll(index);
+
+            File[] cachedFiles = cacheDirectory.listFiles();
+
+            if (cachedFiles != null) {
+                for (File currentFile : cachedFiles) {
+                    if (currentFile.getName().endsWith(LIBRARY_FILE_EXTENSION) && !currentFile.delete()) {
+                        LOG.warn("Unable to remove cached library file " + currentFile.getAbsolutePath());
+                    }
+                }
+            }
+
+        }
+
+    }
+
+    /**
+     * Indexes each library file found in the cache directory, removing temporary files left behind by writes
+     * interrupted before their move and files which can not be read.
+     */
+    private void rebuildIndex() {
+
+        releaseAll(index);
+
+        File[] cachedFiles = cacheDirectory.listFiles();
+
+        if (cachedFiles == null) {
+            return;
+        }
+
+        for (File currentFile : cachedFiles) {
+
+            if (currentFile.getName().endsWith(TEMPORARY_FILE_EXTENSION)) {
+                if (!currentFile.delete()) {
+                    LOG.warn("Unable to remove temporary file " + currentFile.getAbsolutePath());
+                }
+                continue;
+            }
+
+            if (!currentFile.getName().endsWith(LIBRARY_FILE_EXTENSION)) {
+                continue;
+            }
+
+            try {
+                CachedLibraryFile cachedLibraryFile = mapLibraryFile(currentFile, null);
+                release(index.put(cachedLibraryFile.getKey(), cachedLibraryFile));
+            } catch (IOException e) {
+                LOG.warn("Unable to read cached library file " + currentFile.getAbsolutePath() + ", removing it", e);
+
+                if (!currentFile.delete()) {
+                    LOG.warn("Unable to remove cached library file " + currentFile.getAbsolutePath());
+                }
+            }
+
+        }
+
+        LOG.info("Indexed " + index.size() + " cached libraries in " + cacheDirectory.getAbsolutePath());
+
+    }
+
+    /**
+     * Writes the library and forces it to the disk, so that once the file has been moved into place it can not be
+     * found with only part of its content after a crash.
+     */
+    private static void writeLibraryFile(File file, String key, String libraryContent) throws IOException {
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] contentBytes = libraryContent.getBytes(StandardCharsets.UTF_8);
+
+        CRC32 checksum = new CRC32();
+        checksum.update(contentBytes);
+
+        FileOutputStream fileOutputStream = new FileOutputStream(file);
+        DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(fileOutputStream));
+
+        try {
+            outputStream.writeInt(keyBytes.length);
+            outputStream.write(keyBytes);
+            outputStream.writeInt(contentBytes.length);
+            outputStream.writeLong(checksum.getValue());
+            outputStream.write(contentBytes);
+            outputStream.flush();
+            fileOutputStream.getChannel().force(true);
+        } finally {
+            outputStream.close();
+        }
+
+    }
+
+    /**
+     *
+     * @param file
+     * @param rootPath The root path the file was cached for, or null to read it from the key in the file's header
+     * @return The file mapped into memory
+     * @throws IOException If the file can not be read or its content does not match the length and checksum recorded
+     *                     in its header
+     */
+    private static CachedLibraryFile mapLibraryFile(File file, String rootPath) throws IOException {
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            MappedByteBuffer mappedFile = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            try {
+                int keyLength = mappedFile.getInt();
+
+                if (keyLength < 0 || keyLength > mappedFile.remaining()) {
+                    throw new IOException("Invalid header in cached library file " + file.getAbsolutePath());
+                }
+
+                byte[] keyBytes = new byte[keyLength];
+                mappedFile.get(keyBytes);
+                String key = new String(keyBytes, StandardCharsets.UTF_8);
+
+                int contentLength = mappedFile.getInt();
+                long expectedChecksum = mappedFile.getLong();
+                ByteBuffer content = mappedFile.slice();
+
+                if (content.remaining() != contentLength) {
+                    throw new IOException("Cached library file " + file.getAbsolutePath() + " holds " + content.remaining() + " bytes of an expected " + contentLength);
+                }
+
+                if (getChecksum(content) != expectedChecksum) {
+                    throw new IOException("Checksum mismatch in cached library file " + file.getAbsolutePath());
+                }
+
+                return new CachedLibraryFile(key, rootPath != null ? rootPath : getRootPath(key), mappedFile, content);
+            } catch (BufferUnderflowException e) {
+                unmap(mappedFile);
+                throw new IOException("Truncated cached library file " + file.getAbsolutePath(), e);
+            } catch (IOException e) {
+                unmap(mappedFile);
+                throw e;
+            }
+        } finally {
+            /*
+             * A mapping remains valid after its channel is closed
+             */
+            randomAccessFile.close();
+        }
+
+    }
+
+    private static long getChecksum(ByteBuffer content) {
+
+        CRC32 checksum = new CRC32();
+        ByteBuffer readableContent = content.duplicate();
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+
+        while (readableContent.hasRemaining()) {
+            int length = Math.min(buffer.length, readableContent.remaining());
+            readableContent.get(buffer, 0, length);
+            checksum.update(buffer, 0, length);
+        }
+
+        return checksum.getValue();
+
+    }
+
+    /**
+     * Looks up a cached library file, holding it for the caller.  The returned file must be released by the caller
+     * once read.
+     *
+     * @param key
+     * @return The cached library file, or absent if none is indexed under the key
+     */
+    private Optional<CachedLibraryFile> retainCachedLibraryFile(String key) {
+
+        CachedLibraryFile cachedLibraryFile = index.get(key);
+
+        /*
+         * A file invalidated and unmapped between the lookup and the retain is treated as a miss
+         */
+        if (cachedLibraryFile == null || !cachedLibraryFile.retain()) {
+            return Optional.absent();
+        }
+
+        return Optional.of(cachedLibraryFile);
+
+    }
+
+    private void invalidateRange(String keyPrefix) {
+
+        ConcurrentNavigableMap<String, CachedLibraryFile> range = index.subMap(keyPrefix, true, getPrefixBound(keyPrefix), false);
+        List<String> keys = new ArrayList<String>(range.keySet());
+
+        for (String currentKey : keys) {
+            CachedLibraryFile removedLibraryFile = index.remove(currentKey);
+
+            if (removedLibraryFile != null) {
+                removedLibraryFile.release();
+                deleteLibraryFile(currentKey);
+            }
+        }
+
+    }
+
+    /**
+     *
+     * @param keyPrefix
+     * @return The least key greater than every key starting with the prefix
+     */
+    private static String getPrefixBound(String keyPrefix) {
+        int lastIndex = keyPrefix.length() - 1;
+        return keyPrefix.substring(0, lastIndex) + (char) (keyPrefix.charAt(lastIndex) + 1);
+    }
+
+    private static void releaseAll(Map<String, CachedLibraryFile> index) {
+
+        for (CachedLibraryFile currentLibraryFile : index.values()) {
+            currentLibraryFile.release();
+        }
+
+        index.clear();
+
+    }
+
+    private static void release(CachedLibraryFile cachedLibraryFile) {
+        if (cachedLibraryFile != null) {
+            cachedLibraryFile.release();
+        }
+    }
+
+    /**
+     * Releases a mapping without waiting for the garbage collector.  The JDK offers no supported means of doing so,
+     * so the buffer's cleaner is invoked reflectively, through Unsafe where available and through the buffer itself on
+     * older runtimes.  Should neither be accessible the mapping is left to the garbage collector.
+     *
+     * @param mappedFile
+     */
+    private static void unmap(MappedByteBuffer mappedFile) {
+
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+
+            try {
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+                unsafeField.setAccessible(true);
+                invokeCleaner.invoke(unsafeField.get(null), mappedFile);
+                return;
+            } catch (NoSuchMethodException e) {
+                LOG.trace("Unsafe can not invoke cleaners on this runtime, invoking the buffer's cleaner directly");
+            }
+
+            Method cleanerMethod = mappedFile.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(mappedFile);
+
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Exception e) {
+            LOG.debug("Unable to unmap cached library file, leaving it to the garbage collector", e);
+        }
+
+    }
+
+    private void deleteLibraryFile(String key) {
+
+        File libraryFile = new File(cacheDirectory, getFileName(key));
+
+        if (libraryFile.exists() && !libraryFile.delete()) {
+            LOG.warn("Unable to remove cached library file " + libraryFile.getAbsolutePath());
+        }
+
+    }
+
+    private static String getKey(String rootPath, LibraryType type, String brand) {
+        return rootPath + "\n" + type.name() + "\n" + brand;
+    }
+
+    private static String getRootPath(String key) {
+        return key.substring(0, key.indexOf('\n'));
+    }
+
+    private static String getFileName(String key) {
+        return Hashing.sha1().hashString(key, StandardCharsets.UTF_8).toString() + LIBRARY_FILE_EXTENSION;
+    }
+
+    /**
+     * A mapped library file held by the index until invalidated and by each reader between looking it up and
+     * releasing it.  The file is unmapped once it is held by neither.
+     */
+    private static final class CachedLibraryFile {
+
+        private final String key;
+        private final String rootPath;
+        private final MappedByteBuffer mappedFile;
+        private final ByteBuffer content;
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private CachedLibraryFile(String key, String rootPath, MappedByteBuffer mappedFile, ByteBuffer content) {
+            this.key = key;
+            this.rootPath = rootPath;
+            this.mappedFile = mappedFile;
+            this.content = content;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getRootPath() {
+            return rootPath;
+        }
+
+        /**
+         *
+         * @return A view of the mapped library safe for use by a single reader
+         */
+        public ByteBuffer getContent() {
+            return content.duplicate();
+        }
+
+        /**
+         *
+         * @return Whether the file was retained, false if it has already been released by every holder and unmapped
+         */
+        public boolean retain() {
+
+            int currentReferences = references.get();
+
+            while (currentReferences > 0) {
+                if (references.compareAndSet(currentReferences, currentReferences + 1)) {
+                    return true;
+                }
+
+                currentReferences = references.get();
+            }
+
+            return false;
+
+        }
+
+        public void release() {
+            if (references.decrementAndGet() == 0) {
+                unmap(mappedFile);
+            }
+        }
+
+    }
+
+    /**
+     * A library served from a mapped file, releasing the file once the entry is closed.
+     */
+    private static final class MappedCachedLibrary extends ByteBufferCachedLibrary {
+
+        private final CachedLibraryFile cachedLibraryFile;
+        private boolean closed = false;
+
+        private MappedCachedLibrary(CachedLibraryFile cachedLibraryFile) {
+            super(cachedLibraryFile.getContent());
+            this.cachedLibraryFile = cachedLibraryFile;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                cachedLibraryFile.release();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.cache.impl;
+
+import com.citytechinc.cq.clientlibs.api.constants.Brands;
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.CachedLibrary;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ClientLibraryCacheManager;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.CachedClientLibraryLookupException;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCachingException;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.ClientLibraryMetrics;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.InvalidationCause;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.ConfigurationPolicy;
+import org.apache.felix.scr.annotations.Properties;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * <p>
+ * Caches compiled libraries as UTF-8 bytes on the Java heap, evicting the least recently used libraries once the
+ * configured capacity is reached.  Intended as the fastest tier of a {@link TieredClientLibraryCacheManager} holding a
+ * small number of popular libraries.  The cache does not survive a restart.
+ * </p>
+ * <p>
+ * The component is only activated once configured and is ranked above the default, repository backed, cache
+ * manager.
+ * </p>
+ */
+@Component(label = "Heap Client Library Cache Manager", description = "Caches compiled libraries on the Java heap with least recently used eviction", policy = ConfigurationPolicy.REQUIRE)
+@Service
+@Properties({
+        @Property(name = "service.ranking", intValue = 50),
+        @Property(name = TieredClientLibraryCacheManager.TIER_NAME, value = HeapClientLibraryCacheManager.TIER, propertyPrivate = true)
+})
+public class HeapClientLibraryCacheManager implements ClientLibraryCacheManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HeapClientLibraryCacheManager.class);
+
+    public static final String TIER = "heap";
+
+    private static final int MEGABYTE = 1024 * 1024;
+
+    @Property(label = "Capacity", intValue = 32, description = "The maximum amount of heap, in megabytes, used to hold cached libraries")
+    private static final String CAPACITY_MEGABYTES = "capacityMegabytes";
+    private static final Integer DEFAULT_CAPACITY_MEGABYTES = 32;
+
+    @Reference
+    ClientLibraryMetrics clientLibraryMetrics;
+
+    private Cache<String, byte[]> libraries;
+
+    @Activate
+    protected void activate(Map<String, Object> properties) {
+
+        long capacity = (long) Math.max(1, PropertiesUtil.toInteger(properties.get(CAPACITY_MEGABYTES), DEFAULT_CAPACITY_MEGABYTES)) * MEGABYTE;
+
+        libraries = CacheBuilder.newBuilder()
+                .maximumWeight(capacity)
+                .weigher(new Weigher<String, byte[]>() {
+                    @Override
+                    public int weigh(String key, byte[] library) {
+                        return library.length;
+                    }
+                })
+                .removalListener(new RemovalListener<String, byte[]>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<String, byte[]> notification) {
+                        if (notification.wasEvicted()) {
+                            clientLibraryMetrics.recordInvalidation(InvalidationCause.EVICTION);
+                        }
+                    }
+                })
+                .build();
+
+        LOG.info("Caching libraries in up to " + capacity + " bytes of heap");
+
+    }
+
+    @Override
+    public Optional<String> getCachedLibrary(Resource root, LibraryType type) throws CachedClientLibraryLookupException {
+        return getCachedLibrary(root, type, Brands.DEFAULT_BRAND);
+    }
+
+    @Override
+    public Optional<String> getCachedLibrary(Resource root, LibraryType type, String brand) throws CachedClientLibraryLookupException {
+
+        byte[] library = libraries.getIfPresent(getKey(root.getPath(), type, brand));
+
+        if (library == null) {
+            return Optional.absent();
+        }
+
+        return Optional.of(new String(library, StandardCharsets.UTF_8));
+
+    }
+
+    @Override
+    public Optional<CachedLibrary> getCachedLibraryEntry(Resource root, LibraryType type, String brand) throws CachedClientLibraryLookupException {
+
+        byte[] library = libraries.getIfPresent(getKey(root.getPath(), type, brand));
+
+        if (library == null) {
+            return Optional.absent();
+        }
+
+        return Optional.<CachedLibrary>of(new ByteBufferCachedLibrary(library));
+
+    }
+
+    @Override
+    public void cacheLibrary(Resource root, LibraryType type, String libraryContent) throws ClientLibraryCachingException {
+        cacheLibrary(root, type, Brands.DEFAULT_BRAND, libraryContent);
+    }
+
+    @Override
+    public void cacheLibrary(Resource root, LibraryType type, String brand, String libraryContent) throws ClientLibraryCachingException {
+        libraries.put(getKey(root.getPath(), type, brand), libraryContent.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Invalidates the libraries cached for the provided root path and for every root below it.
+     *
+     * @param rootPath
+     * @throws ClientLibraryCachingException
+     */
+    @Override
+    public void invalidateCache(String rootPath) throws ClientLibraryCachingException {
+
+        LOG.debug("Invalidating Cache Set for " + rootPath);
+
+        for (String currentKey : libraries.asMap().keySet()) {
+            String currentRootPath = currentKey.substring(0, currentKey.indexOf('\n'));
+
+            if (currentRootPath.equals(rootPath) || currentRootPath.startsWith(rootPath + "/")) {
+                libraries.invalidate(currentKey);
+            }
+        }
+
+    }
+
+    @Override
+    public void invalidateCache(String rootPath, LibraryType type) throws ClientLibraryCachingException {
+        invalidateCache(rootPath, type, Brands.DEFAULT_BRAND);
+    }
+
+    @Override
+    public void invalidateCache(String rootPath, LibraryType type, String brand) throws ClientLibraryCachingException {
+        libraries.invalidate(getKey(rootPath, type, brand));
+    }
+
+    @Override
+    public void clearCache() throws ClientLibraryCachingException {
+        libraries.invalidateAll();
+    }
+
+    private static String getKey(String rootPath, LibraryType type, String brand) {
+        return rootPath + "\n" + type.name() + "\n" + brand;
+    }
+
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.cache.impl;
+
+import com.citytechinc.cq.clientlibs.api.constants.Brands;
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.CachedLibrary;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ClientLibraryCacheManager;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.CachedClientLibraryLookupException;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCachingException;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.ClientLibraryMetrics;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.InvalidationCause;
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.cache.offheap.SlabLibraryStore;
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.cache.offheap.StoredLibrary;
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.ConfigurationPolicy;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Properties;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * <p>
+ * Caches compiled libraries in memory outside of the Java heap using a {@link SlabLibraryStore}, evicting the least
+ * recently used libraries once the configured capacity is reached.  The cache does not survive a restart.
+ * </p>
+ * <p>
+ * The component is only activated once configured and is ranked above both the default, repository backed, cache
+ * manager and the file system cache manager.  The JVM must be allowed enough direct memory, via
+ * -XX:MaxDirectMemorySize, for the configured capacity.
+ * </p>
+ */
+@Component(label = "Off Heap Client Library Cache Manager", description = "Caches compiled libraries in direct memory outside of the Java heap with least recently used eviction", policy = ConfigurationPolicy.REQUIRE)
+@Service
+@Properties({
+        @Property(name = "service.ranking", intValue = 150),
+        @Property(name = TieredClientLibraryCacheManager.TIER_NAME, value = OffHeapClientLibraryCacheManager.TIER, propertyPrivate = true)
+})
+public class OffHeapClientLibraryCacheManager implements ClientLibraryCacheManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OffHeapClientLibraryCacheManager.class);
+
+    public static final String TIER = "offheap";
+
+    private static final int MEGABYTE = 1024 * 1024;
+    private static final int KILOBYTE = 1024;
+
+    @Property(label = "Capacity", intValue = 256, description = "The maximum amount of direct memory, in megabytes, used to hold cached libraries")
+    private static final String CAPACITY_MEGABYTES = "capacityMegabytes";
+    private static final Integer DEFAULT_CAPACITY_MEGABYTES = 256;
+
+    @Property(label = "Slab Size", intValue = 4, description = "The amount of direct memory, in megabytes, allocated at a time")
+    private static final String SLAB_SIZE_MEGABYTES = "slabSizeMegabytes";
+    private static final Integer DEFAULT_SLAB_SIZE_MEGABYTES = 4;
+
+    @Property(label = "Page Size", intValue = 16, description = "The size, in kilobytes, of the pages into which slabs are divided.  Each library occupies a whole number of pages.")
+    private static final String PAGE_SIZE_KILOBYTES = "pageSizeKilobytes";
+    private static final Integer DEFAULT_PAGE_SIZE_KILOBYTES = 16;
+
+    @Reference
+    ClientLibraryMetrics clientLibraryMetrics;
+
+    private SlabLibraryStore store;
+
+    @Activate
+    protected void activate(Map<String, Object> properties) {
+
+        long capacity = (long) Math.max(1, PropertiesUtil.toInteger(properties.get(CAPACITY_MEGABYTES), DEFAULT_CAPACITY_MEGABYTES)) * MEGABYTE;
+        int slabSize = Math.max(1, PropertiesUtil.toInteger(properties.get(SLAB_SIZE_MEGABYTES), DEFAULT_SLAB_SIZE_MEGABYTES)) * MEGABYTE;
+        int pageSize = Math.max(1, PropertiesUtil.toInteger(properties.get(PAGE_SIZE_KILOBYTES), DEFAULT_PAGE_SIZE_KILOBYTES)) * KILOBYTE;
+
+        store = new SlabLibraryStore(capacity, Math.max(slabSize, pageSize), pageSize, Optional.<SlabLibraryStore.EvictionListener>of(new SlabLibraryStore.EvictionListener() {
+            @Override
+            public void onEviction(String key) {
+                clientLibraryMetrics.recordInvalidation(InvalidationCause.EVICTION);
+            }
+        }));
+
+        LOG.info("Caching libraries in up to " + capacity + " bytes of direct memory");
+
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        store.clear();
+    }
+
+    @Override
+    public Optional<String> getCachedLibrary(Resource root, LibraryType type) throws CachedClientLibraryLookupException {
+        return getCachedLibrary(root, type, Brands.DEFAULT_BRAND);
+    }
+
+    @Override
+    public Optional<String> getCachedLibrary(Resource root, LibraryType type, String brand) throws CachedClientLibraryLookupException {
+
+        Optional<StoredLibrary> storedLibrary = store.get(getKey(root.getPath(), type, brand));
+
+        if (!storedLibrary.isPresent()) {
+            return Optional.absent();
+        }
+
+        try {
+            return Optional.of(new String(storedLibrary.get().getBytes(), StandardCharsets.UTF_8));
+        } finally {
+            storedLibrary.get().release();
+        }
+
+    }
+
+    @Override
+    public Optional<CachedLibrary> getCachedLibraryEntry(Resource root, LibraryType type, String brand) throws CachedClientLibraryLookupException {
+
+        Optional<StoredLibrary> storedLibrary = store.get(getKey(root.getPath(), type, brand));
+
+        if (!storedLibrary.isPresent()) {
+            return Optional.absent();
+        }
+
+        return Optional.<CachedLibrary>of(new StoredCachedLibrary(storedLibrary.get()));
+
+    }
+
+    @Override
+    public void cacheLibrary(Resource root, LibraryType type, String libraryContent) throws ClientLibraryCachingException {
+        cacheLibrary(root, type, Brands.DEFAULT_BRAND, libraryContent);
+    }
+
+    @Override
+    public void cacheLibrary(Resource root, LibraryType type, String brand, String libraryContent) throws ClientLibraryCachingException {
+
+        if (!store.put(getKey(root.getPath(), type, brand), libraryContent.getBytes(StandardCharsets.UTF_8))) {
+            LOG.warn("No room to cache " + type + " library for " + root.getPath() + " in direct memory");
+        }
+
+    }
+
+    /**
+     * Invalidates the libraries cached for the provided root path and for every root below it.
+     *
+     * @param rootPath
+     * @throws ClientLibraryCachingException
+     */
+    @Override
+    public void invalidateCache(final String rootPath) throws ClientLibraryCachingException {
+
+        LOG.debug("Invalidating Cache Set for " + rootPath);
+
+        store.removeAll(new Predicate<String>() {
+            @Override
+            public boolean apply(String key) {
+                String currentRootPath = key.substring(0, key.indexOf('\n'));
+                return currentRootPath.equals(rootPath) || currentRootPath.startsWith(rootPath + "/");
+            }
+        });
+
+    }
+
+    @Override
+    public void invalidateCache(String rootPath, LibraryType type) throws ClientLibraryCachingException {
+        invalidateCache(rootPath, type, Brands.DEFAULT_BRAND);
+    }
+
+    @Override
+    public void invalidateCache(String rootPath, LibraryType type, String brand) throws ClientLibraryCachingException {
+        store.remove(getKey(rootPath, type, brand));
+    }
+
+    @Override
+    public void clearCache() throws ClientLibraryCachingException {
+        store.clear();
+    }
+
+    private static String getKey(String rootPath, LibraryType type, String brand) {
+        return rootPath + "\n" + type.name() + "\n" + brand;
+    }
+
+}
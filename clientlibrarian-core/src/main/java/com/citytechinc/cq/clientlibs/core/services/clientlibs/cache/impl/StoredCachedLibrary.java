@@ -0,0 +1,62 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.cache.impl;
+
+import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.CachedLibrary;
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.cache.offheap.StoredLibrary;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+
+/**
+ * A UTF-8 encoded library held off heap in a slab store, written to the output straight from the store's pages.
+ * Closing the entry releases the library back to the store.
+ */
+public class StoredCachedLibrary implements CachedLibrary {
+
+    private final StoredLibrary storedLibrary;
+    private boolean closed = false;
+
+    public StoredCachedLibrary(StoredLibrary storedLibrary) {
+        this.storedLibrary = storedLibrary;
+    }
+
+    @Override
+    public long getLength() {
+        return storedLibrary.getLength();
+    }
+
+    @Override
+    public String getEncoding() {
+        return ClientLibrary.UTF_8_ENCODING;
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        storedLibrary.writeTo(Channels.newChannel(outputStream));
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            storedLibrary.release();
+        }
+    }
+
+}
@@ -0,0 +1,491 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.cache.impl;
+
+import com.citytechinc.cq.clientlibs.api.constants.Brands;
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.CachedLibrary;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ClientLibraryCacheManager;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.CachedClientLibraryLookupException;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCachingException;
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.ConfigurationPolicy;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.ReferenceCardinality;
+import org.apache.felix.scr.annotations.ReferencePolicy;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Chains other cache managers into tiers, ordered from fastest to slowest.  Each cache manager which may act as a
+ * tier registers a {@link #TIER_NAME} service property, and the tiers in use along with their order are configured by
+ * name.  Configured tiers whose cache manager is not active are skipped.
+ * </p>
+ * <p>
+ * A library is looked up in each tier in turn.  When promotion is enabled a library found in a slower tier is cached
+ * in every faster tier which admits it.  Libraries are cached in every tier which admits them and invalidation is
+ * passed on to every tier.  A library found before, or while, the cache is invalidated is not promoted, so that a
+ * stale copy read from a slower tier is never cached again in a faster tier which has already been invalidated.
+ * </p>
+ * <p>
+ * Each tier is configured as its name optionally followed by the largest library, in kilobytes, it admits - for
+ * example <code>heap:256</code>.
+ * </p>
+ */
+@Component(label = "Tiered Client Library Cache Manager", description = "Chains cache managers into tiers, from fastest to slowest", policy = ConfigurationPolicy.REQUIRE)
+@Service
+@Property(name = "service.ranking", intValue = 200)
+@Reference(name = "tier", referenceInterface = ClientLibraryCacheManager.class, target = "(" + TieredClientLibraryCacheManager.TIER_NAME + "=*)", cardinality = ReferenceCardinality.OPTIONAL_MULTIPLE, policy = ReferencePolicy.DYNAMIC, bind = "bindTier", unbind = "unbindTier")
+public class TieredClientLibraryCacheManager implements ClientLibraryCacheManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TieredClientLibraryCacheManager.class);
+
+    public static final String TIER_NAME = "clientlibrarian.cache.tier";
+
+    private static final int KILOBYTE = 1024;
+
+    @Property(label = "Tiers", value = { HeapClientLibraryCacheManager.TIER + ":256", OffHeapClientLibraryCacheManager.TIER, FileSystemClientLibraryCacheManager.TIER, DefaultClientLibraryCacheManager.TIER }, cardinality = Integer.MAX_VALUE, description = "The tiers, fastest first, each named by its tier name and optionally followed by a colon and the size, in kilobytes, of the largest library it admits")
+    private static final String TIERS = "tiers";
+
+    @Property(label = "Promote on Hit", boolValue = true, description = "When set to true a library found in a slower tier is cached in each faster tier which admits it")
+    private static final String PROMOTE_ON_HIT = "promoteOnHit";
+
+    private volatile List<TierConfiguration> tierConfigurations = Collections.emptyList();
+    private volatile boolean promoteOnHit = true;
+
+    private final Map<String, ClientLibraryCacheManager> cacheManagersByTier = new ConcurrentHashMap<String, ClientLibraryCacheManager>();
+
+    /*
+     * Bumped as each invalidation begins and again as it ends
+     */
+    private final AtomicLong invalidationGeneration = new AtomicLong();
+    private final AtomicInteger invalidationsInProgress = new AtomicInteger();
+
+    @Activate
+    @Modified
+    protected void activate(Map<String, Object> properties) {
+
+        List<TierConfiguration> configuredTiers = Lists.newArrayList();
+
+        for (String currentTier : PropertiesUtil.toStringArray(properties.get(TIERS), new String[0])) {
+            if (StringUtils.isNotBlank(currentTier)) {
+                configuredTiers.add(TierConfiguration.parse(currentTier.trim()));
+            }
+        }
+
+        tierConfigurations = Collections.unmodifiableList(configuredTiers);
+        promoteOnHit = PropertiesUtil.toBoolean(properties.get(PROMOTE_ON_HIT), true);
+
+    }
+
+    protected void bindTier(ClientLibraryCacheManager cacheManager, Map<String, Object> properties) {
+
+        String tierName = PropertiesUtil.toString(properties.get(TIER_NAME), null);
+
+        if (tierName != null) {
+            LOG.debug("Binding cache tier " + tierName);
+            cacheManagersByTier.put(tierName, cacheManager);
+        }
+
+    }
+
+    protected void unbindTier(ClientLibraryCacheManager cacheManager, Map<String, Object> properties) {
+
+        String tierName = PropertiesUtil.toString(properties.get(TIER_NAME), null);
+
+        if (tierName != null) {
+            LOG.debug("Unbinding cache tier " + tierName);
+            cacheManagersByTier.remove(tierName);
+        }
+
+    }
+
+    @Override
+    public Optional<String> getCachedLibrary(Resource root, LibraryType type) throws CachedClientLibraryLookupException, LoginException {
+        return getCachedLibrary(root, type, Brands.DEFAULT_BRAND);
+    }
+
+    @Override
+    public Optional<String> getCachedLibrary(Resource root, LibraryType type, String brand) throws CachedClientLibraryLookupException, LoginException {
+
+        List<Tier> tiers = getTiers();
+        long generation = invalidationGeneration.get();
+
+        for (int i = 0; i < tiers.size(); i++) {
+            Optional<String> cachedLibrary = tiers.get(i).cacheManager.getCachedLibrary(root, type, brand);
+
+            if (cachedLibrary.isPresent()) {
+                promote(tiers, i, root, type, brand, cachedLibrary.get(), -1, generation);
+                return cachedLibrary;
+            }
+        }
+
+        return Optional.absent();
+
+    }
+
+    @Override
+    public Optional<CachedLibrary> getCachedLibraryEntry(Resource root, LibraryType type, String brand) throws CachedClientLibraryLookupException, LoginException {
+
+        List<Tier> tiers = getTiers();
+        long generation = invalidationGeneration.get();
+
+        for (int i = 0; i < tiers.size(); i++) {
+            Optional<CachedLibrary> cachedLibrary = tiers.get(i).cacheManager.getCachedLibraryEntry(root, type, brand);
+
+            if (!cachedLibrary.isPresent()) {
+                continue;
+            }
+
+            if (i == 0 || !promoteOnHit || isInvalidatedSince(generation) || !anyAdmits(tiers, i, cachedLibrary.get().getLength())) {
+                return cachedLibrary;
+            }
+
+            /*
+             * Promotion needs the content of the library, so it is read once here and served from the copy
+             */
+            byte[] library = readFully(cachedLibrary.get());
+            promote(tiers, i, root, type, brand, new String(library, StandardCharsets.UTF_8), library.length, generation);
+
+            return Optional.<CachedLibrary>of(new ByteBufferCachedLibrary(library));
+        }
+
+        return Optional.absent();
+
+    }
+
+    @Override
+    public void cacheLibrary(Resource root, LibraryType type, String libraryContent) throws ClientLibraryCachingException {
+        cacheLibrary(root, type, Brands.DEFAULT_BRAND, libraryContent);
+    }
+
+    @Override
+    public void cacheLibrary(Resource root, LibraryType type, String brand, String libraryContent) throws ClientLibraryCachingException {
+
+        List<Tier> tiers = getTiers();
+        long length = getLength(tiers, tiers.size(), libraryContent);
+        ClientLibraryCachingException firstException = null;
+
+        for (Tier currentTier : tiers) {
+            if (currentTier.configuration.admits(length)) {
+                try {
+                    currentTier.cacheManager.cacheLibrary(root, type, brand, libraryContent);
+                } catch (ClientLibraryCachingException e) {
+                    LOG.error("Client Library Caching Exception encountered caching library for " + root.getPath() + " in the " + currentTier.configuration.name + " tier", e);
+                    firstException = firstException == null ? e : firstException;
+                }
+            }
+        }
+
+        if (firstException != null) {
+            throw firstException;
+        }
+
+    }
+
+    @Override
+    public void invalidateCache(String rootPath) throws ClientLibraryCachingException {
+
+        ClientLibraryCachingException firstException = null;
+        beginInvalidation();
+
+        try {
+            for (Tier currentTier : getTiers()) {
+                try {
+                    currentTier.cacheManager.invalidateCache(rootPath);
+                } catch (ClientLibraryCachingException e) {
+                    LOG.error("Client Library Caching Exception encountered invalidating " + rootPath + " in the " + currentTier.configuration.name + " tier", e);
+                    firstException = firstException == null ? e : firstException;
+                }
+            }
+        } finally {
+            endInvalidation();
+        }
+
+        if (firstException != null) {
+            throw firstException;
+        }
+
+    }
+
+    @Override
+    public void invalidateCache(String rootPath, LibraryType type) throws ClientLibraryCachingException {
+        invalidateCache(rootPath, type, Brands.DEFAULT_BRAND);
+    }
+
+    @Override
+    public void invalidateCache(String rootPath, LibraryType type, String brand) throws ClientLibraryCachingException {
+
+        ClientLibraryCachingException firstException = null;
+        beginInvalidation();
+
+        try {
+            for (Tier currentTier : getTiers()) {
+                try {
+                    currentTier.cacheManager.invalidateCache(rootPath, type, brand);
+                } catch (ClientLibraryCachingException e) {
+                    LOG.error("Client Library Caching Exception encountered invalidating " + rootPath + " in the " + currentTier.configuration.name + " tier", e);
+                    firstException = firstException == null ? e : firstException;
+                }
+            }
+        } finally {
+            endInvalidation();
+        }
+
+        if (firstException != null) {
+            throw firstException;
+        }
+
+    }
+
+    @Override
+    public void clearCache() throws ClientLibraryCachingException {
+
+        ClientLibraryCachingException firstException = null;
+        beginInvalidation();
+
+        try {
+            for (Tier currentTier : getTiers()) {
+                try {
+                    currentTier.cacheManager.clearCache();
+                } catch (ClientLibraryCachingException e) {
+                    LOG.error("Client Library Caching Exception encountered clearing the " + currentTier.configuration.name + " tier", e);
+                    firstException = firstException == null ? e : firstException;
+                }
+            }
+        } finally {
+            endInvalidation();
+        }
+
+        if (firstException != null) {
+            throw firstException;
+        }
+
+    }
+
+    /**
+     *
+     * @return The configured tiers whose cache manager is currently bound, fastest first
+     */
+    private List<Tier> getTiers() {
+
+        List<TierConfiguration> currentConfigurations = tierConfigurations;
+        List<Tier> tiers = Lists.newArrayListWithCapacity(currentConfigurations.size());
+
+        for (TierConfiguration currentConfiguration : currentConfigurations) {
+            ClientLibraryCacheManager currentCacheManager = cacheManagersByTier.get(currentConfiguration.name);
+
+            if (currentCacheManager != null && currentCacheManager != this) {
+                tiers.add(new Tier(currentConfiguration, currentCacheManager));
+            }
+        }
+
+        return tiers;
+
+    }
+
+    /**
+     * Caches a library found in the tier at the provided index in each faster tier admitting it.  Failing to promote
+     * a library does not fail the lookup.
+     *
+     * @param length The length of the library in bytes, or -1 if not yet known
+     * @param generation The invalidation generation read before the library was looked up.  The library is not
+     *                   promoted if the cache has been invalidated since, and is invalidated again in the faster tiers
+     *                   should an invalidation begin while it is being promoted.
+     */
+    private void promote(List<Tier> tiers, int foundIndex, Resource root, LibraryType type, String brand, String library, long length, long generation) {
+
+        if (!promoteOnHit || foundIndex == 0) {
+            return;
+        }
+
+        if (isInvalidatedSince(generation)) {
+            LOG.debug("Not promoting library for " + root.getPath() + " as the cache has been invalidated since it was looked up");
+            return;
+        }
+
+        long libraryLength = length >= 0 ? length : getLength(tiers, foundIndex, library);
+
+        for (int i = 0; i < foundIndex; i++) {
+            Tier currentTier = tiers.get(i);
+
+            if (currentTier.configuration.admits(libraryLength)) {
+                try {
+                    currentTier.cacheManager.cacheLibrary(root, type, brand, library);
+                } catch (ClientLibraryCachingException e) {
+                    LOG.warn("Unable to promote library for " + root.getPath() + " to the " + currentTier.configuration.name + " tier", e);
+                }
+            }
+        }
+
+        if (isInvalidatedSince(generation)) {
+            demote(tiers, foundIndex, root, type, brand);
+        }
+
+    }
+
+    /**
+     * Removes a library promoted while the cache was being invalidated from the faster tiers it was promoted to.
+     */
+    private void demote(List<Tier> tiers, int foundIndex, Resource root, LibraryType type, String brand) {
+
+        LOG.debug("Removing library promoted for " + root.getPath() + " as the cache was invalidated while it was promoted");
+
+        for (int i = 0; i < foundIndex; i++) {
+            Tier currentTier = tiers.get(i);
+
+            try {
+                currentTier.cacheManager.invalidateCache(root.getPath(), type, brand);
+            } catch (ClientLibraryCachingException e) {
+                LOG.warn("Unable to remove library promoted for " + root.getPath() + " from the " + currentTier.configuration.name + " tier", e);
+            }
+        }
+
+    }
+
+    private void beginInvalidation() {
+        invalidationsInProgress.incrementAndGet();
+        invalidationGeneration.incrementAndGet();
+    }
+
+    private void endInvalidation() {
+        invalidationGeneration.incrementAndGet();
+        invalidationsInProgress.decrementAndGet();
+    }
+
+    /**
+     * A library looked up while an invalidation is in progress may have been read from a tier not yet invalidated,
+     * as may a library looked up before an invalidation began or ended.
+     */
+    private boolean isInvalidatedSince(long generation) {
+        return invalidationsInProgress.get() > 0 || invalidationGeneration.get() != generation;
+    }
+
+    private static boolean anyAdmits(List<Tier> tiers, int tierCount, long length) {
+
+        for (int i = 0; i < tierCount; i++) {
+            if (tiers.get(i).configuration.admits(length)) {
+                return true;
+            }
+        }
+
+        return false;
+
+    }
+
+    /**
+     * The library is only encoded to find its length when one of the tiers limits the size of the libraries it admits.
+     */
+    private static long getLength(List<Tier> tiers, int tierCount, String library) {
+
+        for (int i = 0; i < tierCount; i++) {
+            if (tiers.get(i).configuration.maximumLength >= 0) {
+                return library.getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+
+        return 0;
+
+    }
+
+    private static byte[] readFully(CachedLibrary cachedLibrary) throws CachedClientLibraryLookupException {
+
+        try {
+            ByteArrayOutputStream libraryBytes = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE, cachedLibrary.getLength()));
+            cachedLibrary.writeTo(libraryBytes);
+            return libraryBytes.toByteArray();
+        } catch (IOException e) {
+            throw new CachedClientLibraryLookupException("IO Exception encountered reading cached library for promotion", e);
+        } finally {
+            try {
+                cachedLibrary.close();
+            } catch (IOException e) {
+                LOG.warn("Unable to close cached library", e);
+            }
+        }
+
+    }
+
+    private static final class TierConfiguration {
+
+        private final String name;
+        private final long maximumLength;
+
+        private TierConfiguration(String name, long maximumLength) {
+            this.name = name;
+            this.maximumLength = maximumLength;
+        }
+
+        /**
+         *
+         * @param tier The name of the tier, optionally followed by a colon and the largest library, in kilobytes,
+         *             the tier admits
+         * @return The parsed configuration
+         */
+        private static TierConfiguration parse(String tier) {
+
+            String name = StringUtils.substringBefore(tier, ":").trim();
+            String maximumKilobytes = StringUtils.substringAfter(tier, ":").trim();
+
+            if (NumberUtils.isDigits(maximumKilobytes)) {
+                return new TierConfiguration(name, Long.parseLong(maximumKilobytes) * KILOBYTE);
+            }
+
+            return new TierConfiguration(name, -1);
+
+        }
+
+        private boolean admits(long length) {
+            return maximumLength < 0 || length <= maximumLength;
+        }
+
+    }
+
+    private static final class Tier {
+
+        private final TierConfiguration configuration;
+        private final ClientLibraryCacheManager cacheManager;
+
+        private Tier(TierConfiguration configuration, ClientLibraryCacheManager cacheManager) {
+            this.configuration = configuration;
+            this.cacheManager = cacheManager;
+        }
+
+    }
+
+}
@@ -0,0 +1,297 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.cache.offheap;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Stores compiled libraries as bytes in direct buffers outside of the Java heap, evicting the least recently used
+ * libraries once the configured capacity is reached.
+ * </p>
+ * <p>
+ * Direct memory is allocated in slabs as it is needed, up to the capacity of the store, and each slab is divided into
+ * fixed size pages.  A library occupies as many pages as its length requires, wherever they are free, so space freed
+ * by eviction is reused without compaction.  Pages of an evicted library are only reused once every reader which
+ * looked the library up before its eviction has released it.
+ * </p>
+ */
+public class SlabLibraryStore {
+
+    private final int slabSize;
+    private final int pageSize;
+    private final int pagesPerSlab;
+    private final int maximumPages;
+
+    private final List<ByteBuffer> slabs = Lists.newArrayList();
+    private int[] freePages;
+    private int freePageCount = 0;
+    private int allocatedPageCount = 0;
+    private long storedBytes = 0;
+
+    private final LinkedHashMap<String, StoredLibrary> libraries = new LinkedHashMap<String, StoredLibrary>(16, 0.75f, true);
+
+    private final Optional<EvictionListener> evictionListener;
+
+    /**
+     *
+     * @param capacity The maximum number of bytes of direct memory allocated by the store
+     * @param slabSize The number of bytes allocated at a time
+     * @param pageSize The number of bytes in each page, which should divide the slab size
+     */
+    public SlabLibraryStore(long capacity, int slabSize, int pageSize) {
+        this(capacity, slabSize, pageSize, Optional.<EvictionListener>absent());
+    }
+
+    /**
+     *
+     * @param capacity The maximum number of bytes of direct memory allocated by the store
+     * @param slabSize The number of bytes allocated at a time
+     * @param pageSize The number of bytes in each page, which should divide the slab size
+     * @param evictionListener Notified, while the store is locked, of every library evicted to make room for another
+     */
+    public SlabLibraryStore(long capacity, int slabSize, int pageSize, Optional<EvictionListener> evictionListener) {
+
+        if (pageSize <= 0 || slabSize < pageSize) {
+            throw new IllegalArgumentException("The slab size must be at least the page size and the page size must be positive");
+        }
+
+        this.slabSize = slabSize;
+        this.pageSize = pageSize;
+        this.pagesPerSlab = slabSize / pageSize;
+        this.maximumPages = (int) Math.min(Integer.MAX_VALUE, (capacity / slabSize) * pagesPerSlab);
+        this.freePages = new int[Math.min(maximumPages, pagesPerSlab)];
+        this.evictionListener = evictionListener;
+
+    }
+
+    /**
+     * Stores a library, replacing any library stored under the same key and evicting the least recently used
+     * libraries until there is room for it.
+     *
+     * @param key
+     * @param content
+     * @return False if there was no room for the library, either because it is larger than the capacity of the store
+     *         or because the pages it would need are still being read
+     */
+    public synchronized boolean put(String key, byte[] content) {
+
+        int requiredPages = Math.max(1, (content.length + pageSize - 1) / pageSize);
+
+        remove(key);
+
+        if (requiredPages > maximumPages) {
+            return false;
+        }
+
+        while (getAvailablePageCount() < requiredPages) {
+            if (libraries.isEmpty()) {
+                /*
+                 * The remaining pages are held by readers of libraries which have already been evicted
+                 */
+                return false;
+            }
+
+            Iterator<Map.Entry<String, StoredLibrary>> eldest = libraries.entrySet().iterator();
+            Map.Entry<String, StoredLibrary> evictedEntry = eldest.next();
+            StoredLibrary evictedLibrary = evictedEntry.getValue();
+            eldest.remove();
+            storedBytes -= evictedLibrary.getLength();
+            evictedLibrary.release();
+
+            if (evictionListener.isPresent()) {
+                evictionListener.get().onEviction(evictedEntry.getKey());
+            }
+        }
+
+        int[] pages = new int[requiredPages];
+
+        for (int i = 0; i < requiredPages; i++) {
+            pages[i] = allocatePage();
+
+            int offset = i * pageSize;
+            ByteBuffer page = getPage(pages[i]);
+            page.put(content, offset, Math.min(pageSize, content.length - offset));
+        }
+
+        libraries.put(key, new StoredLibrary(this, pages, content.length));
+        storedBytes += content.length;
+
+        return true;
+
+    }
+
+    /**
+     * Looks up a stored library, marking it as recently used.  The returned library must be released by the caller
+     * once read.
+     *
+     * @param key
+     * @return The stored library, or absent if no library is stored under the key
+     */
+    public synchronized Optional<StoredLibrary> get(String key) {
+
+        StoredLibrary storedLibrary = libraries.get(key);
+
+        if (storedLibrary == null) {
+            return Optional.absent();
+        }
+
+        storedLibrary.retain();
+
+        return Optional.of(storedLibrary);
+
+    }
+
+    public synchronized void remove(String key) {
+
+        StoredLibrary removedLibrary = libraries.remove(key);
+
+        if (removedLibrary != null) {
+            storedBytes -= removedLibrary.getLength();
+            removedLibrary.release();
+        }
+
+    }
+
+    /**
+     * Removes every library whose key matches the provided predicate.
+     *
+     * @param keyPredicate
+     */
+    public synchronized void removeAll(Predicate<String> keyPredicate) {
+
+        Iterator<Map.Entry<String, StoredLibrary>> libraryIterator = libraries.entrySet().iterator();
+
+        while (libraryIterator.hasNext()) {
+            Map.Entry<String, StoredLibrary> currentEntry = libraryIterator.next();
+
+            if (keyPredicate.apply(currentEntry.getKey())) {
+                libraryIterator.remove();
+                storedBytes -= currentEntry.getValue().getLength();
+                currentEntry.getValue().release();
+            }
+        }
+
+    }
+
+    public synchronized void clear() {
+
+        for (StoredLibrary currentLibrary : libraries.values()) {
+            currentLibrary.release();
+        }
+
+        libraries.clear();
+        storedBytes = 0;
+
+    }
+
+    public synchronized int getLibraryCount() {
+        return libraries.size();
+    }
+
+    /**
+     *
+     * @return The number of bytes of library content held by the store
+     */
+    public synchronized long getStoredBytes() {
+        return storedBytes;
+    }
+
+    /**
+     *
+     * @return The number of bytes of direct memory allocated by the store
+     */
+    public synchronized long getAllocatedBytes() {
+        return (long) slabs.size() * slabSize;
+    }
+
+    /**
+     *
+     * @param pageIndex
+     * @return A view of the page independent of any other view
+     */
+    ByteBuffer getPage(int pageIndex) {
+
+        ByteBuffer slab;
+
+        synchronized (this) {
+            slab = slabs.get(pageIndex / pagesPerSlab);
+        }
+
+        ByteBuffer page = slab.duplicate();
+        int offset = (pageIndex % pagesPerSlab) * pageSize;
+        page.limit(offset + pageSize);
+        page.position(offset);
+
+        return page.slice();
+
+    }
+
+    int getPageSize() {
+        return pageSize;
+    }
+
+    synchronized void freePages(int[] pages) {
+
+        for (int currentPage : pages) {
+            if (freePageCount == freePages.length) {
+                int[] grownFreePages = new int[Math.min(maximumPages, freePages.length * 2)];
+                System.arraycopy(freePages, 0, grownFreePages, 0, freePageCount);
+                freePages = grownFreePages;
+            }
+
+            freePages[freePageCount++] = currentPage;
+        }
+
+    }
+
+    /**
+     * Pages still held by released readers of evicted libraries are not available even though they are no longer
+     * counted against any stored library.
+     */
+    private int getAvailablePageCount() {
+        return freePageCount + (maximumPages - allocatedPageCount);
+    }
+
+    private int allocatePage() {
+
+        if (freePageCount > 0) {
+            return freePages[--freePageCount];
+        }
+
+        if (allocatedPageCount % pagesPerSlab == 0) {
+            slabs.add(ByteBuffer.allocateDirect(slabSize));
+        }
+
+        return allocatedPageCount++;
+
+    }
+
+    public interface EvictionListener {
+
+        public void onEviction(String key);
+
+    }
+
+}
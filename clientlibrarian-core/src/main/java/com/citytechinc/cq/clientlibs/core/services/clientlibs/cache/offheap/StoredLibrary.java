@@ -0,0 +1,100 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.cache.offheap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A library held in the pages of a {@link SlabLibraryStore}.  A library is held by the store until evicted and by
+ * each reader between looking it up and releasing it; its pages return to the store once it is held by neither.
+ */
+public class StoredLibrary {
+
+    private final SlabLibraryStore store;
+    private final int[] pages;
+    private final int length;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    StoredLibrary(SlabLibraryStore store, int[] pages, int length) {
+        this.store = store;
+        this.pages = pages;
+        this.length = length;
+    }
+
+    /**
+     *
+     * @return The length of the library in bytes
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Writes the library to the provided channel directly from the pages holding it.
+     *
+     * @param channel
+     * @throws IOException
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+
+        int remaining = length;
+
+        for (int currentPage : pages) {
+            ByteBuffer page = store.getPage(currentPage);
+            page.limit(Math.min(remaining, store.getPageSize()));
+            remaining -= page.limit();
+
+            while (page.hasRemaining()) {
+                channel.write(page);
+            }
+        }
+
+    }
+
+    /**
+     *
+     * @return A copy of the library on the heap
+     */
+    public byte[] getBytes() {
+
+        byte[] bytes = new byte[length];
+        int offset = 0;
+
+        for (int currentPage : pages) {
+            ByteBuffer page = store.getPage(currentPage);
+            int pageLength = Math.min(length - offset, store.getPageSize());
+            page.get(bytes, offset, pageLength);
+            offset += pageLength;
+        }
+
+        return bytes;
+
+    }
+
+    void retain() {
+        references.incrementAndGet();
+    }
+
+    public void release() {
+        if (references.decrementAndGet() == 0) {
+            store.freePages(pages);
+        }
+    }
+
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.chunks;
+
+import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Records which Client Libraries are used by the Page Libraries compiled on this instance and derives from that
+ * usage a small number of shared chunks.
+ * </p>
+ * <p>
+ * Usage thresholds are given in descending order.  A library used by at least the first threshold's fraction of the
+ * sampled Page Libraries belongs to the first chunk, failing that one used by at least the second threshold's
+ * fraction belongs to the second chunk, and so on.  Libraries within a band necessarily co-occur on a large share
+ * of pages.
+ * </p>
+ * <p>
+ * Chunks are served ahead of the page specific remainder, so every library which may have to be ordered ahead of a
+ * chunked library - its dependencies, its conditional dependencies, and the libraries which embed it - must itself
+ * be in the same or an earlier chunk.  A library is pushed down to the chunk of its latest predecessor, or out of the
+ * chunks entirely if any predecessor is not chunked.  Libraries containing variable placeholders are never chunked
+ * since chunks are shared across pages with differing variables.
+ * </p>
+ */
+public class SharedChunkAnalyzer {
+
+    private static final int NOT_CHUNKED = -1;
+
+    private final ConcurrentMap<String, AtomicLong> usageByLibraryPath = new ConcurrentHashMap<String, AtomicLong>();
+    private final AtomicLong sampleCount = new AtomicLong();
+
+    public void recordUsage(Collection<ClientLibrary> libraries) {
+
+        for (ClientLibrary currentLibrary : libraries) {
+            AtomicLong usage = usageByLibraryPath.get(currentLibrary.getClientLibraryPath());
+
+            if (usage == null) {
+                AtomicLong newUsage = new AtomicLong();
+                usage = usageByLibraryPath.putIfAbsent(currentLibrary.getClientLibraryPath(), newUsage);
+
+                if (usage == null) {
+                    usage = newUsage;
+                }
+            }
+
+            usage.incrementAndGet();
+        }
+
+        sampleCount.incrementAndGet();
+
+    }
+
+    public Long getSampleCount() {
+        return sampleCount.get();
+    }
+
+    public void reset() {
+        usageByLibraryPath.clear();
+        sampleCount.set(0);
+    }
+
+    /**
+     *
+     * @param libraries All known Client Libraries
+     * @param librariesByCategory All known Client Libraries keyed by the categories they answer to
+     * @param thresholds Usage thresholds, as fractions of the sample, in descending order
+     * @param variableFree Whether a library's content is the same for every page, which is to say it contains no
+     *                     variable placeholders.  Only consulted for libraries which were used by a sampled page.
+     * @return The members of each non empty chunk, in chunk order
+     */
+    public List<Set<ClientLibrary>> analyze(Collection<ClientLibrary> libraries, Map<String, Set<ClientLibrary>> librariesByCategory, List<Double> thresholds, Predicate<ClientLibrary> variableFree) {
+
+        long samples = sampleCount.get();
+
+        if (samples == 0 || thresholds.isEmpty()) {
+            return Lists.newArrayList();
+        }
+
+        Map<ClientLibrary, Set<ClientLibrary>> predecessorsByLibrary = getPredecessors(libraries, librariesByCategory);
+        Map<ClientLibrary, Integer> chunkByLibrary = Maps.newHashMap();
+
+        for (ClientLibrary currentLibrary : libraries) {
+            chunkByLibrary.put(currentLibrary, getUsageBand(currentLibrary, samples, thresholds, variableFree));
+        }
+
+        /*
+         * Chunk assignments only ever move later or out of the chunks so this reaches a fixed point
+         */
+        boolean changed = true;
+
+        while (changed) {
+            changed = false;
+
+            for (ClientLibrary currentLibrary : libraries) {
+                int currentChunk = chunkByLibrary.get(currentLibrary);
+
+                if (currentChunk == NOT_CHUNKED) {
+                    continue;
+                }
+
+                int requiredChunk = currentChunk;
+
+                for (ClientLibrary currentPredecessor : predecessorsByLibrary.get(currentLibrary)) {
+                    Integer predecessorChunk = chunkByLibrary.get(currentPredecessor);
+
+                    if (predecessorChunk == null || predecessorChunk == NOT_CHUNKED) {
+                        requiredChunk = NOT_CHUNKED;
+                        break;
+                    }
+
+                    requiredChunk = Math.max(requiredChunk, predecessorChunk);
+                }
+
+                if (requiredChunk != currentChunk) {
+                    chunkByLibrary.put(currentLibrary, requiredChunk);
+                    changed = true;
+                }
+            }
+        }
+
+        List<Set<ClientLibrary>> chunks = Lists.newArrayList();
+
+        for (int i = 0; i < thresholds.size(); i++) {
+            Set<ClientLibrary> currentChunk = Sets.newHashSet();
+
+            for (Map.Entry<ClientLibrary, Integer> currentAssignment : chunkByLibrary.entrySet()) {
+                if (currentAssignment.getValue() == i) {
+                    currentChunk.add(currentAssignment.getKey());
+                }
+            }
+
+            if (!currentChunk.isEmpty()) {
+                chunks.add(currentChunk);
+            }
+        }
+
+        return chunks;
+
+    }
+
+    private int getUsageBand(ClientLibrary library, long samples, List<Double> thresholds, Predicate<ClientLibrary> variableFree) {
+
+        AtomicLong usage = usageByLibraryPath.get(library.getClientLibraryPath());
+
+        if (usage == null || !variableFree.apply(library)) {
+            return NOT_CHUNKED;
+        }
+
+        double usageFraction = (double) usage.get() / samples;
+
+        for (int i = 0; i < thresholds.size(); i++) {
+            if (usageFraction >= thresholds.get(i)) {
+                return i;
+            }
+        }
+
+        return NOT_CHUNKED;
+
+    }
+
+    private static Map<ClientLibrary, Set<ClientLibrary>> getPredecessors(Collection<ClientLibrary> libraries, Map<String, Set<ClientLibrary>> librariesByCategory) {
+
+        Map<ClientLibrary, Set<ClientLibrary>> predecessorsByLibrary = Maps.newHashMap();
+
+        for (ClientLibrary currentLibrary : libraries) {
+            predecessorsByLibrary.put(currentLibrary, Sets.<ClientLibrary>newHashSet());
+        }
+
+        for (ClientLibrary currentLibrary : libraries) {
+            Set<ClientLibrary> currentPredecessors = predecessorsByLibrary.get(currentLibrary);
+
+            for (String currentCategory : currentLibrary.getDependencies()) {
+                addLibrariesForCategory(currentCategory, librariesByCategory, currentPredecessors);
+            }
+
+            for (String currentCategory : currentLibrary.getConditionalDependencies()) {
+                addLibrariesForCategory(currentCategory, librariesByCategory, currentPredecessors);
+            }
+
+            /*
+             * Embedded libraries are ordered after the library embedding them
+             */
+            for (String currentCategory : currentLibrary.getEmbeddedCategories()) {
+                Set<ClientLibrary> embeddedLibraries = librariesByCategory.get(currentCategory);
+
+                if (embeddedLibraries != null) {
+                    for (ClientLibrary currentEmbeddedLibrary : embeddedLibraries) {
+                        if (predecessorsByLibrary.containsKey(currentEmbeddedLibrary)) {
+                            predecessorsByLibrary.get(currentEmbeddedLibrary).add(currentLibrary);
+                        }
+                    }
+                }
+            }
+        }
+
+        return predecessorsByLibrary;
+
+    }
+
+    private static void addLibrariesForCategory(String category, Map<String, Set<ClientLibrary>> librariesByCategory, Set<ClientLibrary> libraries) {
+
+        Set<ClientLibrary> librariesForCategory = librariesByCategory.get(category);
+
+        if (librariesForCategory != null) {
+            libraries.addAll(librariesForCategory);
+        }
+
+    }
+
+}
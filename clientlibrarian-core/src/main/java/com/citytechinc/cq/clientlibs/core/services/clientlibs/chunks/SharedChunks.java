@@ -0,0 +1,147 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.chunks;
+
+import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary;
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.chunks.impl.DefaultPageLibraryPartition;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A generation of shared chunk definitions.  Each chunk is an ordered list of Client Libraries.  Compiled chunk
+ * content and the partitions of Page Libraries into the chunks are held alongside the definitions and discarded with
+ * them.
+ */
+public class SharedChunks {
+
+    private final Long generation;
+    private final Long libraryVersion;
+    private final List<List<ClientLibrary>> chunks;
+
+    private final ConcurrentMap<String, String> compiledChunks = new ConcurrentHashMap<String, String>();
+
+    private final Cache<String, CachedPartition> partitions;
+    private final AtomicLong partitionsGeneration = new AtomicLong();
+
+    public SharedChunks(Long generation, Long libraryVersion, List<List<ClientLibrary>> chunks, Integer partitionCacheSize) {
+        this.generation = generation;
+        this.libraryVersion = libraryVersion;
+        this.partitions = CacheBuilder.newBuilder().maximumSize(partitionCacheSize).build();
+
+        ImmutableList.Builder<List<ClientLibrary>> chunksBuilder = ImmutableList.builder();
+
+        for (List<ClientLibrary> currentChunk : chunks) {
+            chunksBuilder.add(ImmutableList.copyOf(currentChunk));
+        }
+
+        this.chunks = chunksBuilder.build();
+    }
+
+    public Long getGeneration() {
+        return generation;
+    }
+
+    /**
+     *
+     * @return The version of the Client Library registry from which the chunks were derived
+     */
+    public Long getLibraryVersion() {
+        return libraryVersion;
+    }
+
+    public List<List<ClientLibrary>> getChunks() {
+        return chunks;
+    }
+
+    public String getCompiledChunk(String key) {
+        return compiledChunks.get(key);
+    }
+
+    public void putCompiledChunk(String key, String compiledChunk) {
+        compiledChunks.put(key, compiledChunk);
+    }
+
+    public CachedPartition getCachedPartition(String key) {
+        return partitions.getIfPresent(key);
+    }
+
+    public void putCachedPartition(String key, CachedPartition cachedPartition) {
+        partitions.put(key, cachedPartition);
+    }
+
+    /**
+     *
+     * @return The generation of the cached partitions, read before a partition is determined and recorded with it
+     */
+    public long getPartitionsGeneration() {
+        return partitionsGeneration.get();
+    }
+
+    /**
+     * Discards every cached partition, including those being determined at the time of the call
+     */
+    public void invalidatePartitions() {
+        partitionsGeneration.incrementAndGet();
+        partitions.invalidateAll();
+    }
+
+    /**
+     * The partition of a Page Library along with the versions of the state it was determined from.  The partition is
+     * only reused while the component registry, the partitions generation and the content of the page are unchanged.
+     */
+    public static final class CachedPartition {
+
+        private final DefaultPageLibraryPartition partition;
+        private final Long componentVersion;
+        private final long partitionsGeneration;
+        private final long contentGeneration;
+
+        public CachedPartition(DefaultPageLibraryPartition partition, Long componentVersion, long partitionsGeneration, long contentGeneration) {
+            this.partition = partition;
+            this.componentVersion = componentVersion;
+            this.partitionsGeneration = partitionsGeneration;
+            this.contentGeneration = contentGeneration;
+        }
+
+        public DefaultPageLibraryPartition getPartition() {
+            return partition;
+        }
+
+        public Long getComponentVersion() {
+            return componentVersion;
+        }
+
+        public long getPartitionsGeneration() {
+            return partitionsGeneration;
+        }
+
+        /**
+         *
+         * @return The generation of the resource type cache read before the page content was inspected
+         */
+        public long getContentGeneration() {
+            return contentGeneration;
+        }
+
+    }
+
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.chunks.impl;
+
+import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.chunks.PageLibraryPartition;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+public class DefaultPageLibraryPartition implements PageLibraryPartition {
+
+    private static final DefaultPageLibraryPartition UNPARTITIONED = new DefaultPageLibraryPartition(false, null, ImmutableList.<Integer>of(), ImmutableList.<ClientLibrary>of(), false);
+
+    private final boolean partitioned;
+    private final Long generation;
+    private final List<Integer> chunkIndices;
+    private final List<ClientLibrary> remainder;
+    private final boolean remainderHasContent;
+
+    private DefaultPageLibraryPartition(boolean partitioned, Long generation, List<Integer> chunkIndices, List<ClientLibrary> remainder, boolean remainderHasContent) {
+        this.partitioned = partitioned;
+        this.generation = generation;
+        this.chunkIndices = ImmutableList.copyOf(chunkIndices);
+        this.remainder = ImmutableList.copyOf(remainder);
+        this.remainderHasContent = remainderHasContent;
+    }
+
+    public static DefaultPageLibraryPartition unpartitioned() {
+        return UNPARTITIONED;
+    }
+
+    public static DefaultPageLibraryPartition forChunks(Long generation, List<Integer> chunkIndices, List<ClientLibrary> remainder, boolean remainderHasContent) {
+        return new DefaultPageLibraryPartition(true, generation, chunkIndices, remainder, remainderHasContent);
+    }
+
+    @Override
+    public boolean isPartitioned() {
+        return partitioned;
+    }
+
+    @Override
+    public Long getGeneration() {
+        return generation;
+    }
+
+    @Override
+    public List<Integer> getChunkIndices() {
+        return chunkIndices;
+    }
+
+    @Override
+    public boolean hasRemainder() {
+        return remainderHasContent;
+    }
+
+    /**
+     *
+     * @return The ordered Client Libraries of the page which are not served as part of a shared chunk
+     */
+    public List<ClientLibrary> getRemainder() {
+        return remainder;
+    }
+
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.compilers;
+
+import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary;
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType;
+import com.citytechinc.cq.clientlibs.api.domain.library.exceptions.InvalidClientLibraryCategoryException;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCachingException;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCompilationException;
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.sourcemap.SourceMapBuilder;
+import com.google.common.base.Optional;
+import org.apache.sling.api.resource.Resource;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The resolution and compilation of Page Libraries as performed by the Client Library Repository, made available to
+ * the managers the repository delegates shared chunks, granular libraries and bulk compilation to.
+ */
+public interface PageLibraryCompiler {
+
+    /**
+     *
+     * @param root
+     * @param brand
+     * @return The Client Libraries of the Page Library of the root in the order they are merged, filtered down to
+     *         those included for the run modes of this instance and the requested brand
+     * @throws InvalidClientLibraryCategoryException
+     */
+    public List<ClientLibrary> getFilteredOrderedDependencies(Resource root, Optional<String> brand) throws InvalidClientLibraryCategoryException;
+
+    public Map<String, String> getVariables(Resource root);
+
+    /**
+     *
+     * @param library
+     * @return Whether the content of the library is the same on every page, which is to say that neither its
+     *         JavaScript nor its CSS contains a variable placeholder
+     */
+    public boolean isVariableFree(ClientLibrary library);
+
+    /**
+     * Loads the content of each of the provided libraries in the form in which it is merged into a Page Library of
+     * the provided type, so that the libraries may later be compiled from content already in memory.
+     *
+     * @param type
+     * @param libraries
+     */
+    public void loadLibraryContent(LibraryType type, List<ClientLibrary> libraries);
+
+    /**
+     *
+     * @param type
+     * @param libraries
+     * @return A builder for the source map of a library made up of the provided libraries or null if no source map
+     *         is to be produced
+     */
+    public SourceMapBuilder createSourceMapBuilder(LibraryType type, List<ClientLibrary> libraries);
+
+    /**
+     * Merges the provided libraries, in order, into a library of the provided type with the provided variables
+     * substituted.
+     *
+     * @param type
+     * @param libraries
+     * @param variables
+     * @param sourceMapBuilder The builder to record the source map of the library with or null if none is produced
+     * @return The compiled library
+     * @throws ClientLibraryCompilationException
+     */
+    public String compile(LibraryType type, List<ClientLibrary> libraries, Map<String, String> variables, SourceMapBuilder sourceMapBuilder) throws ClientLibraryCompilationException;
+
+    /**
+     *
+     * @param sourceMapBuilder
+     * @return The source map recorded by the builder or null if the builder is null or the map could not be built
+     */
+    public String buildSourceMap(SourceMapBuilder sourceMapBuilder);
+
+    /**
+     * Caches the source map of a Page Library alongside it and references it from the end of the library.
+     *
+     * @param root
+     * @param type
+     * @param brand
+     * @param library
+     * @param sourceMap
+     * @return The library with a reference to its source map, or the library as is if no source map was produced
+     * @throws ClientLibraryCachingException
+     */
+    public String attachSourceMap(Resource root, LibraryType type, String brand, String library, String sourceMap) throws ClientLibraryCachingException;
+
+}
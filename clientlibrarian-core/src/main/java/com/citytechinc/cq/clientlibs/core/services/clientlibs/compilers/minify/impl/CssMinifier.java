@@ -0,0 +1,138 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.compilers.minify.impl;
+
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.compilers.minify.exceptions.MinificationException;
+
+/**
+ * A conservative CSS minifier.  Comments are removed, excepting those beginning with <code>/*!</code>, and runs of
+ * whitespace and comments are reduced to a single space, which is dropped entirely next to braces, semicolons, and commas and
+ * after colons.  The final semicolon of a declaration block is dropped.  Strings and escaped characters are copied as is.  Whitespace
+ * next to other characters is kept as it may be significant, such as the descendant combinator before a pseudo
+ * class or the operators of a calc expression.
+ */
+final class CssMinifier {
+
+    private CssMinifier() {
+    }
+
+    public static DefaultMinifiedSource minify(String source) throws MinificationException {
+
+        TrackedOutput output = new TrackedOutput(source.length());
+        boolean pendingSpace = false;
+        int index = 0;
+
+        while (index < source.length()) {
+            char c = source.charAt(index);
+
+            if (c == '/' && index + 1 < source.length() && source.charAt(index + 1) == '*') {
+                int commentEnd = source.indexOf("*/", index + 2);
+
+                if (commentEnd < 0) {
+                    throw new MinificationException("Unterminated comment");
+                }
+
+                if (index + 2 < source.length() && source.charAt(index + 2) == '!') {
+                    pendingSpace = appendPendingSpace(output, pendingSpace, c, index);
+                    output.append(source, index, commentEnd + 2);
+                }
+                else {
+                    /*
+                     * A comment separates the tokens on either side of it as whitespace would, so a comment between
+                     * two values must not run them together
+                     */
+                    pendingSpace = true;
+                }
+
+                index = commentEnd + 2;
+                continue;
+            }
+
+            if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+                index++;
+                continue;
+            }
+
+            pendingSpace = appendPendingSpace(output, pendingSpace, c, index);
+
+            if (c == '"' || c == '\'') {
+                index = appendString(source, index, output);
+                continue;
+            }
+
+            if (c == '\\' && index + 1 < source.length()) {
+                output.append(source, index, index + 2);
+                index += 2;
+                continue;
+            }
+
+            if (c == '}' && output.length() > 0 && output.charAt(output.length() - 1) == ';') {
+                output.setLength(output.length() - 1);
+            }
+
+            output.append(c, index);
+            index++;
+        }
+
+        return output.toMinifiedSource(false);
+
+    }
+
+    private static boolean appendPendingSpace(TrackedOutput output, boolean pendingSpace, char next, int nextOffset) {
+
+        if (pendingSpace && output.length() > 0 && !absorbsSpace(output.charAt(output.length() - 1)) && output.charAt(output.length() - 1) != ':' && !absorbsSpace(next)) {
+            output.append(' ', nextOffset - 1);
+        }
+
+        return false;
+
+    }
+
+    private static int appendString(String source, int start, TrackedOutput output) throws MinificationException {
+
+        char quote = source.charAt(start);
+        int index = start + 1;
+
+        while (index < source.length()) {
+            char c = source.charAt(index);
+
+            if (c == '\\') {
+                index += 2;
+                continue;
+            }
+
+            if (c == quote) {
+                output.append(source, start, index + 1);
+                return index + 1;
+            }
+
+            if (c == '\n') {
+                break;
+            }
+
+            index++;
+        }
+
+        throw new MinificationException("Unterminated string");
+
+    }
+
+    private static boolean absorbsSpace(char c) {
+        return c == '{' || c == '}' || c == ';' || c == ',';
+    }
+
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.compilers.minify.impl;
+
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.compilers.minify.MinifiedSource;
+
+public class DefaultMinifiedSource implements MinifiedSource {
+
+    private final String content;
+    private final int[] sourceOffsets;
+
+    public DefaultMinifiedSource(String content, int[] sourceOffsets) {
+        this.content = content;
+        this.sourceOffsets = sourceOffsets;
+    }
+
+    @Override
+    public String getContent() {
+        return content;
+    }
+
+    @Override
+    public int getSourceOffset(int contentOffset) {
+        return sourceOffsets[contentOffset];
+    }
+
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.compilers.minify.impl;
+
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.compilers.minify.MinifiedSource;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.compilers.minify.Minifier;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.compilers.minify.exceptions.MinificationException;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Properties;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Service;
+
+@Component(label="Client Librarian Minifier", description="A pure Java JavaScript and CSS minifier removing comments and insignificant whitespace")
+@Service
+@Properties( {
+    @Property(name = org.osgi.framework.Constants.SERVICE_VENDOR, value = "CITYTECH, Inc.") } )
+public class DefaultMinifier implements Minifier {
+
+    @Override
+    public String minifyJs(String source) throws MinificationException {
+        return JavaScriptMinifier.minify(source).getContent();
+    }
+
+    @Override
+    public String minifyCss(String source) throws MinificationException {
+        return CssMinifier.minify(source).getContent();
+    }
+
+    @Override
+    public MinifiedSource minifyJsMapped(String source) throws MinificationException {
+        return JavaScriptMinifier.minify(source);
+    }
+
+    @Override
+    public MinifiedSource minifyCssMapped(String source) throws MinificationException {
+        return CssMinifier.minify(source);
+    }
+
+}
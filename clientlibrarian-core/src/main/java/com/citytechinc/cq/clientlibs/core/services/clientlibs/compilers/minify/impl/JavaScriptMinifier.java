@@ -0,0 +1,512 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.compilers.minify.impl;
+
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.compilers.minify.exceptions.MinificationException;
+
+/**
+ * <p>
+ * A JavaScript minifier following the JSMin algorithm.  Comments are removed and runs of whitespace are reduced to the
+ * single space or line feed required to keep tokens apart and to keep automatic semicolon insertion behaving as it
+ * did in the source.  Identifiers, literals and statements are never rewritten.
+ * </p>
+ * <p>
+ * A slash is taken to begin a Regular Expression literal when it follows an operator, an opening bracket, or the
+ * keywords return and typeof; otherwise it is taken to be division.
+ * </p>
+ * <p>
+ * String and template literals are copied exactly as they appear in the source.  The substitutions of a template
+ * literal are copied as is along with it, including any template literals nested within them.
+ * </p>
+ */
+final class JavaScriptMinifier {
+
+    private static final int EOF = -1;
+
+    private final String source;
+    private final TrackedOutput output;
+
+    private int index = 0;
+    private int theA;
+    private int theB;
+    private int theLookahead = EOF;
+    private int theX = EOF;
+    private int theY = EOF;
+
+    /*
+     * Source offsets of the characters held in the fields above
+     */
+    private int aOffset;
+    private int bOffset;
+    private int lookaheadOffset;
+    private int xOffset;
+    private int yOffset;
+    private int gotOffset;
+    private int nextOffset;
+
+    private JavaScriptMinifier(String source) {
+        this.source = source;
+        this.output = new TrackedOutput(source.length());
+    }
+
+    public static DefaultMinifiedSource minify(String source) throws MinificationException {
+        return new JavaScriptMinifier(source).minify();
+    }
+
+    private DefaultMinifiedSource minify() throws MinificationException {
+
+        if (peek() == '\uFEFF') {
+            get();
+        }
+
+        theA = '\n';
+        aOffset = 0;
+        action(3);
+
+        while (theA != EOF) {
+            switch (theA) {
+                case ' ':
+                    action(isAlphanum(theB) ? 1 : 2);
+                    break;
+                case '\n':
+                    switch (theB) {
+                        case '{':
+                        case '[':
+                        case '(':
+                        case '+':
+                        case '-':
+                        case '!':
+                        case '~':
+                            action(1);
+                            break;
+                        case ' ':
+                            action(3);
+                            break;
+                        default:
+                            action(isAlphanum(theB) ? 1 : 2);
+                    }
+                    break;
+                default:
+                    switch (theB) {
+                        case ' ':
+                            action(isAlphanum(theA) ? 1 : 3);
+                            break;
+                        case '\n':
+                            switch (theA) {
+                                case '}':
+                                case ']':
+                                case ')':
+                                case '+':
+                                case '-':
+                                case '"':
+                                case '\'':
+                                case '`':
+                                    action(1);
+                                    break;
+                                default:
+                                    action(isAlphanum(theA) ? 1 : 3);
+                            }
+                            break;
+                        default:
+                            action(1);
+                    }
+            }
+        }
+
+        return output.toMinifiedSource(true);
+
+    }
+
+    /**
+     * Performs one of three actions, each including those numbered after it
+     * <ol>
+     *     <li>Output A, then copy B to A and get the next B</li>
+     *     <li>Copy B to A, copying through string literals, and get the next B</li>
+     *     <li>Get the next B, copying through a Regular Expression literal if B begins one</li>
+     * </ol>
+     */
+    private void action(int determined) throws MinificationException {
+
+        switch (determined) {
+            case 1:
+                put(theA, aOffset);
+
+                if ((theY == '\n' || theY == ' ') && isArithmetic(theA) && isArithmetic(theB)) {
+                    put(theY, yOffset);
+                }
+                // fall through
+            case 2:
+                theA = theB;
+                aOffset = bOffset;
+
+                if (theA == '\'' || theA == '"') {
+                    unread();
+                    put(theA, aOffset);
+                    aOffset = copyString(theA);
+                }
+                else if (theA == '`') {
+                    unread();
+                    put(theA, aOffset);
+                    aOffset = copyTemplate();
+                }
+                // fall through
+            case 3:
+                theB = next();
+                bOffset = nextOffset;
+
+                if (theB == '/' && isRegexPrefix()) {
+                    put(theA, aOffset);
+
+                    if (theA == '/' || theA == '*') {
+                        put(' ', aOffset);
+                    }
+
+                    put(theB, bOffset);
+
+                    for (;;) {
+                        theA = get();
+                        aOffset = gotOffset;
+
+                        if (theA == '[') {
+                            for (;;) {
+                                put(theA, aOffset);
+                                theA = get();
+                                aOffset = gotOffset;
+
+                                if (theA == ']') {
+                                    break;
+                                }
+
+                                if (theA == '\\') {
+                                    put(theA, aOffset);
+                                    theA = get();
+                                    aOffset = gotOffset;
+                                }
+
+                                if (theA == EOF) {
+                                    throw new MinificationException("Unterminated set in Regular Expression literal");
+                                }
+                            }
+                        }
+                        else if (theA == '/') {
+                            int following = peek();
+
+                            if (following == '/' || following == '*') {
+                                throw new MinificationException("Unterminated set in Regular Expression literal");
+                            }
+
+                            break;
+                        }
+                        else if (theA == '\\') {
+                            put(theA, aOffset);
+                            theA = get();
+                            aOffset = gotOffset;
+                        }
+
+                        if (theA == EOF) {
+                            throw new MinificationException("Unterminated Regular Expression literal");
+                        }
+
+                        put(theA, aOffset);
+                    }
+
+                    theB = next();
+                    bOffset = nextOffset;
+                }
+        }
+
+    }
+
+    private boolean isRegexPrefix() {
+
+        switch (theA) {
+            case '(':
+            case ',':
+            case '=':
+            case ':':
+            case '[':
+            case '!':
+            case '&':
+            case '|':
+            case '?':
+            case '+':
+            case '-':
+            case '~':
+            case '*':
+            case '/':
+            case '{':
+            case '}':
+            case ';':
+                return true;
+            case 'n':
+                return outputEndsWithKeyword("retur");
+            case 'f':
+                return outputEndsWithKeyword("typeo");
+            default:
+                return false;
+        }
+
+    }
+
+    /**
+     * A is held back from the output, so a keyword ending in A is found by checking the output for the rest of the
+     * keyword preceded by a character which can not be part of an identifier.
+     */
+    private boolean outputEndsWithKeyword(String keywordWithoutLastCharacter) {
+
+        if (!output.endsWith(keywordWithoutLastCharacter)) {
+            return false;
+        }
+
+        int keywordStart = output.length() - keywordWithoutLastCharacter.length();
+
+        return keywordStart == 0 || !isAlphanum(output.charAt(keywordStart - 1));
+
+    }
+
+    /**
+     * Gets the next character, removing comments.  A comment is returned as a single space, or a line feed in the
+     * case of a line comment.
+     */
+    private int next() throws MinificationException {
+
+        int c = get();
+        int cOffset = gotOffset;
+
+        if (c == '/') {
+            switch (peek()) {
+                case '/':
+                    for (;;) {
+                        c = get();
+
+                        if (c <= '\n') {
+                            break;
+                        }
+                    }
+                    break;
+                case '*':
+                    get();
+
+                    while (c != ' ') {
+                        switch (get()) {
+                            case '*':
+                                if (peek() == '/') {
+                                    get();
+                                    c = ' ';
+                                }
+                                break;
+                            case EOF:
+                                throw new MinificationException("Unterminated comment");
+                        }
+                    }
+                    break;
+            }
+        }
+
+        theY = theX;
+        yOffset = xOffset;
+        theX = c;
+        xOffset = cOffset;
+        nextOffset = cOffset;
+
+        return c;
+
+    }
+
+    /**
+     * Copies the body of a string literal, whose opening quote has been output, up to its closing quote.  The closing
+     * quote is left to be output as A.
+     *
+     * @return The source offset of the closing quote
+     */
+    private int copyString(int quote) throws MinificationException {
+
+        while (index < source.length()) {
+            char c = source.charAt(index);
+
+            if (c == quote) {
+                return index++;
+            }
+
+            if (c == '\\' && index + 1 < source.length()) {
+                put(c, index++);
+                c = source.charAt(index);
+            }
+
+            put(c, index++);
+        }
+
+        throw new MinificationException("Unterminated string literal");
+
+    }
+
+    /**
+     * Copies the body of a template literal, whose opening backtick has been output, up to its closing backtick,
+     * copying substitutions and the template literals nested within them as is.  The closing backtick is left to be
+     * output as A.
+     *
+     * @return The source offset of the closing backtick
+     */
+    private int copyTemplate() throws MinificationException {
+
+        while (index < source.length()) {
+            char c = source.charAt(index);
+
+            if (c == '`') {
+                return index++;
+            }
+
+            if (c == '\\' && index + 1 < source.length()) {
+                put(c, index++);
+                c = source.charAt(index);
+            }
+            else if (c == '$' && index + 1 < source.length() && source.charAt(index + 1) == '{') {
+                put(c, index++);
+                put('{', index++);
+                copySubstitution();
+                continue;
+            }
+
+            put(c, index++);
+        }
+
+        throw new MinificationException("Unterminated template literal");
+
+    }
+
+    /**
+     * Copies the expression of a template literal substitution, whose opening brace has been output, through its
+     * closing brace.  Braces within strings, comments and nested template literals are not counted.
+     */
+    private void copySubstitution() throws MinificationException {
+
+        int depth = 1;
+
+        while (index < source.length()) {
+            char c = source.charAt(index);
+
+            if (c == '\'' || c == '"') {
+                put(c, index++);
+                put(c, copyString(c));
+                continue;
+            }
+
+            if (c == '`') {
+                put(c, index++);
+                put(c, copyTemplate());
+                continue;
+            }
+
+            if (c == '/' && index + 1 < source.length() && source.charAt(index + 1) == '/') {
+                int lineEnd = source.indexOf('\n', index);
+                copyThrough(lineEnd < 0 ? source.length() : lineEnd);
+                continue;
+            }
+
+            if (c == '/' && index + 1 < source.length() && source.charAt(index + 1) == '*') {
+                int commentEnd = source.indexOf("*/", index + 2);
+
+                if (commentEnd < 0) {
+                    throw new MinificationException("Unterminated comment");
+                }
+
+                copyThrough(commentEnd + 2);
+                continue;
+            }
+
+            if (c == '{') {
+                depth++;
+            }
+            else if (c == '}' && --depth == 0) {
+                put(c, index++);
+                return;
+            }
+
+            put(c, index++);
+        }
+
+        throw new MinificationException("Unterminated template literal substitution");
+
+    }
+
+    private void copyThrough(int end) {
+
+        while (index < end) {
+            put(source.charAt(index), index++);
+        }
+
+    }
+
+    /**
+     * Returns a character read ahead through {@link #peek()} to the source so that literals may be copied from the
+     * source directly.
+     */
+    private void unread() {
+
+        if (theLookahead != EOF) {
+            index = lookaheadOffset;
+            theLookahead = EOF;
+        }
+
+    }
+
+    /**
+     * Gets the next character, translating carriage returns to line feeds and other control characters to spaces.
+     */
+    private int get() {
+
+        int c = theLookahead;
+        int cOffset = lookaheadOffset;
+        theLookahead = EOF;
+
+        if (c == EOF && index < source.length()) {
+            cOffset = index;
+            c = source.charAt(index++);
+        }
+
+        gotOffset = cOffset;
+
+        if (c >= ' ' || c == '\n' || c == EOF) {
+            return c;
+        }
+
+        if (c == '\r') {
+            return '\n';
+        }
+
+        return ' ';
+
+    }
+
+    private int peek() {
+        theLookahead = get();
+        lookaheadOffset = gotOffset;
+        return theLookahead;
+    }
+
+    private void put(int c, int sourceOffset) {
+        output.append((char) c, sourceOffset);
+    }
+
+    private static boolean isArithmetic(int c) {
+        return c == '+' || c == '-' || c == '*' || c == '/';
+    }
+
+    private static boolean isAlphanum(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || (c >= 'A' && c <= 'Z') || c == '_' || c == '$' || c == '\\' || c > 126;
+    }
+
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.compilers.minify.impl;
+
+import java.util.Arrays;
+
+/**
+ * Minifier output recording, for each character written, the offset of the source character it was taken from.
+ */
+final class TrackedOutput {
+
+    private final StringBuilder content;
+    private int[] sourceOffsets;
+
+    TrackedOutput(int capacity) {
+        this.content = new StringBuilder(capacity);
+        this.sourceOffsets = new int[Math.max(16, capacity)];
+    }
+
+    void append(char c, int sourceOffset) {
+
+        if (content.length() == sourceOffsets.length) {
+            sourceOffsets = Arrays.copyOf(sourceOffsets, sourceOffsets.length * 2);
+        }
+
+        sourceOffsets[content.length()] = sourceOffset;
+        content.append(c);
+
+    }
+
+    void append(String source, int start, int end) {
+
+        for (int i = start; i < end; i++) {
+            append(source.charAt(i), i);
+        }
+
+    }
+
+    int length() {
+        return content.length();
+    }
+
+    char charAt(int index) {
+        return content.charAt(index);
+    }
+
+    void setLength(int length) {
+        content.setLength(length);
+    }
+
+    boolean endsWith(String suffix) {
+
+        int suffixStart = content.length() - suffix.length();
+
+        return suffixStart >= 0 && content.indexOf(suffix, suffixStart) == suffixStart;
+
+    }
+
+    /**
+     *
+     * @param trim Whether leading and trailing whitespace is to be dropped
+     * @return The output as a minified source
+     */
+    DefaultMinifiedSource toMinifiedSource(boolean trim) {
+
+        int start = 0;
+        int end = content.length();
+
+        if (trim) {
+            while (start < end && Character.isWhitespace(content.charAt(start))) {
+                start++;
+            }
+
+            while (end > start && Character.isWhitespace(content.charAt(end - 1))) {
+                end--;
+            }
+        }
+
+        return new DefaultMinifiedSource(content.substring(start, end), Arrays.copyOfRange(sourceOffsets, start, end));
+
+    }
+
+}
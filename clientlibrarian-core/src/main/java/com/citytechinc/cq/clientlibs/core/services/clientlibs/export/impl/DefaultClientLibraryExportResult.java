@@ -0,0 +1,78 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.export.impl;
+
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.export.ClientLibraryExportResult;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+
+public class DefaultClientLibraryExportResult implements ClientLibraryExportResult {
+
+    private final Integer pageCount;
+    private final Integer writtenFileCount;
+    private final Integer unchangedFileCount;
+    private final Integer removedFileCount;
+    private final Map<String, String> failures;
+    private final Long durationMillis;
+
+    public DefaultClientLibraryExportResult(Integer pageCount, Integer writtenFileCount, Integer unchangedFileCount, Integer removedFileCount, Map<String, String> failures, Long durationMillis) {
+        this.pageCount = pageCount;
+        this.writtenFileCount = writtenFileCount;
+        this.unchangedFileCount = unchangedFileCount;
+        this.removedFileCount = removedFileCount;
+        this.failures = ImmutableMap.copyOf(failures);
+        this.durationMillis = durationMillis;
+    }
+
+    @Override
+    public Integer getPageCount() {
+        return pageCount;
+    }
+
+    @Override
+    public Integer getWrittenFileCount() {
+        return writtenFileCount;
+    }
+
+    @Override
+    public Integer getUnchangedFileCount() {
+        return unchangedFileCount;
+    }
+
+    @Override
+    public Integer getRemovedFileCount() {
+        return removedFileCount;
+    }
+
+    @Override
+    public Map<String, String> getFailures() {
+        return failures;
+    }
+
+    @Override
+    public Long getDurationMillis() {
+        return durationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "Exported Page Libraries of " + pageCount + " pages in " + durationMillis + "ms. " + writtenFileCount +
+                " files were written, " + unchangedFileCount + " were unchanged, " + removedFileCount + " were removed and " +
+                failures.size() + " failed.";
+    }
+
+}
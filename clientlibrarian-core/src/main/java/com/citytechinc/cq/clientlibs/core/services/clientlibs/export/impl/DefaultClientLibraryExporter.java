@@ -0,0 +1,435 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.export.impl;
+
+import com.citytechinc.cq.clientlibs.api.constants.Brands;
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.ClientLibraryRepository;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCompilationException;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.export.ClientLibraryExportResult;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.export.ClientLibraryExporter;
+import com.citytechinc.cq.clientlibs.core.servlets.ComponentClientLibraryServlet;
+import com.citytechinc.cq.clientlibs.core.util.PageContentUtil;
+import com.google.common.base.Optional;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Exports Page Libraries to a docroot such that the Page Library of a page is found at the same path, relative to
+ * the docroot, as its URL.  For example the CSS Page Library of /content/site/en for the brand "taco" is written to
+ * content/site/en.pagelib.taco.css under the docroot while the default brand is written without a brand selector.
+ * Page paths are mapped through the resource resolver of the export, as they are when the Page Library tag renders
+ * the URL, so a page mapped to /en is written to en.pagelib.css.
+ * </p>
+ * <p>
+ * Libraries are compiled through the Client Library Repository, warmed by a single bulk compilation, and retrieved
+ * serially as the resource resolver of the export is not safe for concurrent use.  Fingerprinting and writing are
+ * handed to a bounded pool of threads.  A manifest of the fingerprint of each exported file is kept in the docroot
+ * and files whose fingerprint is unchanged since the previous export are not written again.  Files of the previous
+ * export at or below the exported root which were not exported again, their page having been deleted or moved or
+ * their library no longer compiling, are deleted and dropped from the manifest.  Files, including the manifest, are written to a temporary file and moved
+ * into place so the web tier never serves a partial file.
+ * </p>
+ * <p>
+ * Only whole Page Libraries are exported.  Shared chunks and the page specific remainders which reference them are
+ * not, so shared chunks should be disabled on instances whose Page Libraries are served from an export.
+ * </p>
+ */
+@Component(label = "Default Client Library Exporter", description = "Exports compiled Page Libraries to a directory on the local filesystem which mirrors the Page Library URL space")
+@Service
+public class DefaultClientLibraryExporter implements ClientLibraryExporter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultClientLibraryExporter.class);
+
+    public static final String MANIFEST_FILE_NAME = "pagelib-manifest.properties";
+
+    @Property(label = "Docroot", value = "", description = "The directory to which Page Libraries are exported")
+    private static final String DOCROOT = "docroot";
+    private String docroot;
+
+    @Property(label = "Brands", value = {}, cardinality = Integer.MAX_VALUE, description = "The brands, in addition to the default brand, for which Page Libraries are exported")
+    private static final String BRANDS = "brands";
+    private Set<String> brands;
+
+    @Property(label = "Writer Threads", intValue = 4, description = "The maximum number of threads writing exported files")
+    private static final String WRITER_THREADS = "writerThreads";
+    private static final Integer DEFAULT_WRITER_THREADS = 4;
+    private Integer writerThreads;
+
+    @Reference
+    private ClientLibraryRepository clientLibraryRepository;
+
+    @Activate
+    @Modified
+    protected void activate(Map<String, Object> properties) {
+
+        docroot = PropertiesUtil.toString(properties.get(DOCROOT), "");
+        writerThreads = Math.max(1, PropertiesUtil.toInteger(properties.get(WRITER_THREADS), DEFAULT_WRITER_THREADS));
+
+        brands = new LinkedHashSet<String>();
+        brands.add(Brands.DEFAULT_BRAND);
+
+        for (String currentBrand : PropertiesUtil.toStringArray(properties.get(BRANDS), new String[0])) {
+            if (StringUtils.isNotBlank(currentBrand)) {
+                brands.add(currentBrand.trim());
+            }
+        }
+
+    }
+
+    @Override
+    public ClientLibraryExportResult export(ResourceResolver resourceResolver, String rootPath) {
+
+        long startTime = System.currentTimeMillis();
+
+        final Map<String, String> failures = new ConcurrentHashMap<String, String>();
+
+        if (StringUtils.isBlank(docroot)) {
+            LOG.error("Page Library export requested for " + rootPath + " however no docroot is configured");
+            failures.put(rootPath, "No docroot is configured");
+            return new DefaultClientLibraryExportResult(0, 0, 0, 0, failures, System.currentTimeMillis() - startTime);
+        }
+
+        final File docrootDirectory = new File(docroot);
+        List<Resource> roots = PageContentUtil.getPageContentResources(resourceResolver, Collections.singletonList(rootPath), true);
+        Set<LibraryType> types = EnumSet.allOf(LibraryType.class);
+
+        clientLibraryRepository.compileClientLibraries(roots, types, brands);
+
+        final java.util.Properties previousManifest = readManifest(docrootDirectory);
+        final Map<String, String> manifest = new ConcurrentHashMap<String, String>();
+
+        for (String currentPath : previousManifest.stringPropertyNames()) {
+            manifest.put(currentPath, previousManifest.getProperty(currentPath));
+        }
+
+        final AtomicInteger writtenFileCount = new AtomicInteger();
+        final AtomicInteger unchangedFileCount = new AtomicInteger();
+        Set<String> exportedPaths = new HashSet<String>();
+
+        /*
+         * Once the queue is full the exporting thread writes files itself, bounding the number of compiled libraries
+         * held in memory
+         */
+        ThreadPoolExecutor writerExecutor = new ThreadPoolExecutor(
+                writerThreads, writerThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(writerThreads * 4),
+                new ThreadFactoryBuilder().setNameFormat("clientlibrarian-export-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+
+        try {
+            for (Resource currentRoot : roots) {
+                String pagePath = getMappedPath(resourceResolver, currentRoot.getParent().getPath());
+
+                for (String currentBrand : brands) {
+                    Optional<String> requestedBrand = Brands.DEFAULT_BRAND.equals(currentBrand) ? Optional.<String>absent() : Optional.of(currentBrand);
+
+                    for (LibraryType currentType : types) {
+                        final String relativePath = getRelativePath(pagePath, currentBrand, currentType);
+
+                        try {
+                            final byte[] library = clientLibraryRepository.compileClientLibrary(currentRoot, currentType, requestedBrand).getBytes(StandardCharsets.UTF_8);
+
+                            /*
+                             * Only recorded once compiled so the file of a previous export for a library which no
+                             * longer compiles is removed as stale rather than served
+                             */
+                            exportedPaths.add(relativePath);
+
+                            writerExecutor.execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    try {
+                                        String fingerprint = Hashing.sha256().hashBytes(library).toString();
+                                        File targetFile = new File(docrootDirectory, relativePath);
+
+                                        if (fingerprint.equals(previousManifest.getProperty(relativePath)) && targetFile.isFile()) {
+                                            unchangedFileCount.incrementAndGet();
+                                        }
+                                        else {
+                                            writeFile(targetFile, library);
+                                            writtenFileCount.incrementAndGet();
+                                        }
+
+                                        manifest.put(relativePath, fingerprint);
+                                    } catch (IOException e) {
+                                        LOG.error("IO Exception encountered writing exported Page Library " + relativePath, e);
+                                        failures.put(relativePath, e.getMessage());
+                                        removeFailedFile(docrootDirectory, manifest, relativePath);
+                                    }
+                                }
+                            });
+                        } catch (ClientLibraryCompilationException e) {
+                            LOG.error("Error encountered compiling Page Library " + relativePath + " for export", e);
+                            failures.put(relativePath, e.getMessage());
+                        }
+                    }
+                }
+            }
+        } finally {
+            writerExecutor.shutdown();
+        }
+
+        int removedFileCount = 0;
+
+        try {
+            if (!writerExecutor.awaitTermination(1, TimeUnit.HOURS)) {
+                LOG.error("Timed out waiting for exported Page Libraries to be written");
+            }
+
+            removedFileCount = removeStaleFiles(docrootDirectory, manifest, exportedPaths, StringUtils.removeStart(getMappedPath(resourceResolver, rootPath), "/"), failures);
+
+            writeManifest(docrootDirectory, manifest);
+        } catch (InterruptedException e) {
+            LOG.error("Interrupted while waiting for exported Page Libraries to be written", e);
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LOG.error("IO Exception encountered writing the Page Library export manifest", e);
+            failures.put(MANIFEST_FILE_NAME, e.getMessage());
+        }
+
+        ClientLibraryExportResult result = new DefaultClientLibraryExportResult(roots.size(), writtenFileCount.get(), unchangedFileCount.get(), removedFileCount, failures, System.currentTimeMillis() - startTime);
+
+        LOG.info(result.toString());
+
+        return result;
+
+    }
+
+    /**
+     *
+     * @param pagePath The path of the page as mapped by the resource resolver
+     * @param brand
+     * @param type
+     * @return The path, relative to the docroot, mirroring the URL of the Page Library
+     */
+    protected static String getRelativePath(String pagePath, String brand, LibraryType type) {
+
+        StringBuilder relativePathBuilder = new StringBuilder(StringUtils.removeStart(pagePath, "/"));
+
+        relativePathBuilder.append('.').append(ComponentClientLibraryServlet.SELECTOR);
+
+        if (!Brands.DEFAULT_BRAND.equals(brand)) {
+            relativePathBuilder.append('.').append(brand);
+        }
+
+        return relativePathBuilder.append(type.extension).toString();
+
+    }
+
+    /**
+     *
+     * @param resourceResolver
+     * @param path
+     * @return The path portion of the URL to which the resource resolver maps the provided path
+     */
+    protected static String getMappedPath(ResourceResolver resourceResolver, String path) {
+
+        String mappedPath = resourceResolver.map(path);
+
+        try {
+            String mappedUriPath = new URI(mappedPath).getPath();
+
+            return StringUtils.isEmpty(mappedUriPath) ? "/" : mappedUriPath;
+        } catch (URISyntaxException e) {
+            LOG.debug("Mapped path " + mappedPath + " is not a URI, using it as is");
+            return mappedPath;
+        }
+
+    }
+
+    /**
+     * Deletes the files recorded in the manifest for the exported root, or pages below it, which were not exported
+     * again and removes them from the manifest.
+     *
+     * @param docrootDirectory
+     * @param manifest
+     * @param exportedPaths The paths, relative to the docroot, of the files of the current export
+     * @param rootRelativePath The mapped path of the exported root relative to the docroot
+     * @param failures
+     * @return The number of files removed
+     */
+    private static int removeStaleFiles(File docrootDirectory, Map<String, String> manifest, Set<String> exportedPaths, String rootRelativePath, Map<String, String> failures) {
+
+        int removedFileCount = 0;
+
+        for (String currentPath : new ArrayList<String>(manifest.keySet())) {
+            boolean belowRoot = rootRelativePath.isEmpty() || currentPath.startsWith(rootRelativePath + ".") || currentPath.startsWith(rootRelativePath + "/");
+
+            if (belowRoot && !exportedPaths.contains(currentPath)) {
+                File staleFile = new File(docrootDirectory, currentPath);
+
+                if (staleFile.exists() && !staleFile.delete()) {
+                    LOG.error("Unable to delete stale exported Page Library " + currentPath);
+                    failures.put(currentPath, "Unable to delete the file of a page which is no longer exported");
+                    continue;
+                }
+
+                manifest.remove(currentPath);
+                removedFileCount++;
+            }
+        }
+
+        return removedFileCount;
+
+    }
+
+    /**
+     * Deletes the file of a previous export which could not be replaced and removes it from the manifest so the web
+     * tier does not keep serving a library the current export failed to write.
+     *
+     * @param docrootDirectory
+     * @param manifest
+     * @param relativePath
+     */
+    private static void removeFailedFile(File docrootDirectory, Map<String, String> manifest, String relativePath) {
+
+        File failedFile = new File(docrootDirectory, relativePath);
+
+        if (failedFile.exists() && !failedFile.delete()) {
+            LOG.error("Unable to delete the previously exported Page Library " + relativePath + " after failing to replace it");
+            return;
+        }
+
+        manifest.remove(relativePath);
+
+    }
+
+    private static java.util.Properties readManifest(File docrootDirectory) {
+
+        java.util.Properties manifest = new java.util.Properties();
+        File manifestFile = new File(docrootDirectory, MANIFEST_FILE_NAME);
+
+        if (manifestFile.isFile()) {
+            InputStream manifestStream = null;
+
+            try {
+                manifestStream = new FileInputStream(manifestFile);
+                manifest.load(manifestStream);
+            } catch (IOException e) {
+                LOG.warn("Unable to read the Page Library export manifest, all files will be written", e);
+                manifest.clear();
+            } finally {
+                IOUtils.closeQuietly(manifestStream);
+            }
+        }
+
+        return manifest;
+
+    }
+
+    private static void writeManifest(File docrootDirectory, Map<String, String> manifestEntries) throws IOException {
+
+        java.util.Properties manifest = new java.util.Properties();
+        manifest.putAll(manifestEntries);
+
+        File manifestFile = new File(docrootDirectory, MANIFEST_FILE_NAME);
+        File temporaryFile = createTemporaryFile(manifestFile);
+        OutputStream manifestStream = null;
+
+        try {
+            manifestStream = new FileOutputStream(temporaryFile);
+            manifest.store(manifestStream, "Client Librarian Page Library fingerprints");
+        } finally {
+            IOUtils.closeQuietly(manifestStream);
+        }
+
+        moveIntoPlace(temporaryFile, manifestFile);
+
+    }
+
+    private static void writeFile(File targetFile, byte[] content) throws IOException {
+
+        File temporaryFile = createTemporaryFile(targetFile);
+        OutputStream fileStream = null;
+
+        try {
+            fileStream = new FileOutputStream(temporaryFile);
+            fileStream.write(content);
+        } finally {
+            IOUtils.closeQuietly(fileStream);
+        }
+
+        moveIntoPlace(temporaryFile, targetFile);
+
+    }
+
+    private static File createTemporaryFile(File targetFile) throws IOException {
+
+        File parentDirectory = targetFile.getParentFile();
+
+        if (!parentDirectory.isDirectory() && !parentDirectory.mkdirs() && !parentDirectory.isDirectory()) {
+            throw new IOException("Unable to create directory " + parentDirectory.getPath());
+        }
+
+        return File.createTempFile("." + targetFile.getName(), ".tmp", parentDirectory);
+
+    }
+
+    private static void moveIntoPlace(File temporaryFile, File targetFile) throws IOException {
+
+        try {
+            Files.move(temporaryFile.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            if (!temporaryFile.delete()) {
+                LOG.warn("Unable to remove temporary file " + temporaryFile.getPath());
+            }
+
+            throw e;
+        }
+
+    }
+
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.granular;
+
+import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary;
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType;
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.granular.impl.DefaultGranularLibrary;
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.granular.impl.DefaultGranularPageLibrary;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The individually compiled Client Libraries of a single version of the Client Library registry.  Libraries are
+ * compiled on first request and held until the registry changes, at which point the whole instance is discarded
+ * along with the splits of Page Libraries into those libraries.
+ */
+public class GranularLibraries {
+
+    private final Long libraryVersion;
+    private final Map<String, ClientLibrary> librariesByPath;
+
+    private final ConcurrentMap<String, DefaultGranularLibrary> compiledLibraries = new ConcurrentHashMap<String, DefaultGranularLibrary>();
+
+    private final Cache<String, CachedSplit> splits;
+    private final AtomicLong splitsGeneration = new AtomicLong();
+
+    public GranularLibraries(Long libraryVersion, Collection<ClientLibrary> libraries, Integer splitCacheSize) {
+        this.libraryVersion = libraryVersion;
+        this.splits = CacheBuilder.newBuilder().maximumSize(splitCacheSize).build();
+
+        ImmutableMap.Builder<String, ClientLibrary> librariesByPathBuilder = ImmutableMap.builder();
+
+        for (ClientLibrary currentLibrary : libraries) {
+            librariesByPathBuilder.put(currentLibrary.getClientLibraryPath(), currentLibrary);
+        }
+
+        this.librariesByPath = librariesByPathBuilder.build();
+    }
+
+    /**
+     *
+     * @return The version of the Client Library registry the libraries were taken from
+     */
+    public Long getLibraryVersion() {
+        return libraryVersion;
+    }
+
+    public Optional<ClientLibrary> getLibrary(String clientLibraryPath) {
+        return Optional.fromNullable(librariesByPath.get(clientLibraryPath));
+    }
+
+    public DefaultGranularLibrary getCompiledLibrary(LibraryType type, String clientLibraryPath) {
+        return compiledLibraries.get(getKey(type, clientLibraryPath));
+    }
+
+    /**
+     * Holds the compiled content of a library.  Should another thread have compiled the same library first, its
+     * result is kept and returned so that a library's fingerprint never changes within a registry version.
+     *
+     * @param type
+     * @param clientLibraryPath
+     * @param content
+     * @return The compiled library held for the type and path
+     */
+    public DefaultGranularLibrary putCompiledLibrary(LibraryType type, String clientLibraryPath, String content) {
+
+        DefaultGranularLibrary compiledLibrary = new DefaultGranularLibrary(clientLibraryPath, content);
+        DefaultGranularLibrary existingLibrary = compiledLibraries.putIfAbsent(getKey(type, clientLibraryPath), compiledLibrary);
+
+        return existingLibrary != null ? existingLibrary : compiledLibrary;
+
+    }
+
+    public CachedSplit getCachedSplit(String key) {
+        return splits.getIfPresent(key);
+    }
+
+    public void putCachedSplit(String key, CachedSplit cachedSplit) {
+        splits.put(key, cachedSplit);
+    }
+
+    /**
+     *
+     * @return The generation of the cached splits, read before a split is determined and recorded with it
+     */
+    public long getSplitsGeneration() {
+        return splitsGeneration.get();
+    }
+
+    /**
+     * Discards every cached split, including those being determined at the time of the call
+     */
+    public void invalidateSplits() {
+        splitsGeneration.incrementAndGet();
+        splits.invalidateAll();
+    }
+
+    private static String getKey(LibraryType type, String clientLibraryPath) {
+        return type.name() + "|" + clientLibraryPath;
+    }
+
+    /**
+     * The split of a Page Library along with the versions of the state it was determined from.  The split is only
+     * reused while the component registry, the splits generation and the content of the page are unchanged.
+     */
+    public static final class CachedSplit {
+
+        private final DefaultGranularPageLibrary split;
+        private final Long componentVersion;
+        private final long splitsGeneration;
+        private final long contentGeneration;
+
+        public CachedSplit(DefaultGranularPageLibrary split, Long componentVersion, long splitsGeneration, long contentGeneration) {
+            this.split = split;
+            this.componentVersion = componentVersion;
+            this.splitsGeneration = splitsGeneration;
+            this.contentGeneration = contentGeneration;
+        }
+
+        public DefaultGranularPageLibrary getSplit() {
+            return split;
+        }
+
+        public Long getComponentVersion() {
+            return componentVersion;
+        }
+
+        public long getSplitsGeneration() {
+            return splitsGeneration;
+        }
+
+        /**
+         *
+         * @return The generation of the resource type cache read before the page content was inspected
+         */
+        public long getContentGeneration() {
+            return contentGeneration;
+        }
+
+    }
+
+}
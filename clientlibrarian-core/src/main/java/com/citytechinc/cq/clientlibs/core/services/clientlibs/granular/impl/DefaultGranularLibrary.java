@@ -0,0 +1,51 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.granular.impl;
+
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.granular.GranularLibrary;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+public class DefaultGranularLibrary implements GranularLibrary {
+
+    private static final int FINGERPRINT_LENGTH = 16;
+
+    private final String clientLibraryPath;
+    private final String fingerprint;
+    private final String content;
+
+    public DefaultGranularLibrary(String clientLibraryPath, String content) {
+        this.clientLibraryPath = clientLibraryPath;
+        this.content = content;
+        this.fingerprint = Hashing.md5().hashString(content, Charsets.UTF_8).toString().substring(0, FINGERPRINT_LENGTH);
+    }
+
+    @Override
+    public String getClientLibraryPath() {
+        return clientLibraryPath;
+    }
+
+    @Override
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    @Override
+    public String getContent() {
+        return content;
+    }
+
+}
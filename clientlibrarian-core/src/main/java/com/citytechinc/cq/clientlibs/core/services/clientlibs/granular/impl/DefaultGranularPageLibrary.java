@@ -0,0 +1,55 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.granular.impl;
+
+import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.granular.GranularLibrary;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.granular.GranularPageLibrary;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+public class DefaultGranularPageLibrary implements GranularPageLibrary {
+
+    private final List<GranularLibrary> libraries;
+    private final List<ClientLibrary> remainder;
+    private final boolean remainderHasContent;
+
+    public DefaultGranularPageLibrary(List<GranularLibrary> libraries, List<ClientLibrary> remainder, boolean remainderHasContent) {
+        this.libraries = ImmutableList.copyOf(libraries);
+        this.remainder = ImmutableList.copyOf(remainder);
+        this.remainderHasContent = remainderHasContent;
+    }
+
+    @Override
+    public List<GranularLibrary> getLibraries() {
+        return libraries;
+    }
+
+    @Override
+    public boolean hasRemainder() {
+        return remainderHasContent;
+    }
+
+    /**
+     *
+     * @return The ordered Client Libraries of the page which are not served individually
+     */
+    public List<ClientLibrary> getRemainder() {
+        return remainder;
+    }
+
+}
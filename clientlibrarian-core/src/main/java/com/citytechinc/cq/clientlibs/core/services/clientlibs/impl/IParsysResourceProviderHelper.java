@@ -18,16 +18,28 @@ package com.citytechinc.cq.clientlibs.core.services.clientlibs.impl;
 
 import com.citytechinc.cq.clientlibs.api.constants.Types;
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.ResourceProviderHelper;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ResourceTypeCacheManager;
 import com.citytechinc.cq.clientlibs.api.util.ComponentUtils;
+import com.citytechinc.cq.clientlibs.api.util.ResourceTreeFlatteningStrategy;
 import com.day.cq.wcm.api.Page;
 import com.day.cq.wcm.api.PageManager;
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.Service;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.SyntheticResource;
 import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.commons.osgi.PropertiesUtil;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -62,6 +74,26 @@ public class IParsysResourceProviderHelper implements ResourceProviderHelper {
 
     private static final Set<String> RESOURCE_TYPES_SERVED = Sets.newHashSet(Types.IPARSYS);
 
+    @Reference
+    private ResourceTypeCacheManager resourceTypeCacheManager;
+
+    @Property(label = "Resource Tree Flattening Strategy", value = "traversal", description = "How the paragraphs of inheriting paragraph systems on ancestor pages are collected.  'traversal' walks the paragraph system directly, falling back to a query for trees larger than the traversal limit.  'query' always issues a JCR-SQL2 descendant query.")
+    private static final String FLATTENING_STRATEGY = "flatteningStrategy";
+    private ResourceTreeFlatteningStrategy flatteningStrategy = ResourceTreeFlatteningStrategy.TRAVERSAL;
+
+    @Property(label = "Traversal Limit", intValue = 5000, description = "The maximum number of resources visited when walking an inheriting paragraph system before falling back to a query")
+    private static final String TRAVERSAL_LIMIT = "traversalLimit";
+    private int traversalLimit = ComponentUtils.DEFAULT_TRAVERSAL_LIMIT;
+
+    @Activate
+    @Modified
+    protected void activate(Map<String, Object> properties) {
+
+        flatteningStrategy = ResourceTreeFlatteningStrategy.fromString(PropertiesUtil.toString(properties.get(FLATTENING_STRATEGY), null), ResourceTreeFlatteningStrategy.TRAVERSAL);
+        traversalLimit = PropertiesUtil.toInteger(properties.get(TRAVERSAL_LIMIT), ComponentUtils.DEFAULT_TRAVERSAL_LIMIT);
+
+    }
+
     protected boolean isInheritanceDisabledForIParsys(Resource iParsysResource) {
 
         Resource fakePar = iParsysResource.getChild(IPARSYS_FAKE_PAR_RESOURCE_NAME);
@@ -112,27 +144,60 @@ public class IParsysResourceProviderHelper implements ResourceProviderHelper {
 
         if (currentPage != null) {
             String iparsysRelativePath = resource.getPath().substring(currentPage.getPath().length() + 1);
-            Page parentPage = currentPage.getParent();
 
-            while (parentPage != null) {
-                Resource currentIParsysResource = resourceResolver.getResource(parentPage.getPath() + "/" + iparsysRelativePath);
+            for (Map.Entry<String, String> currentInheritedResourceType : getInheritedResourceTypes(currentPage.getParent(), iparsysRelativePath, resourceResolver, flatteningStrategy, traversalLimit).entrySet()) {
+                containedResources.add(new SyntheticResource(resourceResolver, currentInheritedResourceType.getKey(), currentInheritedResourceType.getValue()));
+            }
+        }
 
-                if (currentIParsysResource != null) {
+        return containedResources;
+    }
+
+    /**
+     * Determines the typed resources which the inheriting paragraph system at the relative path passes down from
+     * the ancestor page to the pages below it.  Results are cached per ancestor so that sibling pages, and pages
+     * further down the tree, share the resolution of every ancestor above them.
+     *
+     * @param ancestorPage
+     * @param iparsysRelativePath
+     * @param resourceResolver
+     * @param flatteningStrategy
+     * @param traversalLimit
+     * @return The inherited resource types keyed by resource path
+     */
+    protected Map<String, String> getInheritedResourceTypes(Page ancestorPage, String iparsysRelativePath, ResourceResolver resourceResolver, ResourceTreeFlatteningStrategy flatteningStrategy, int traversalLimit) {
+
+        if (ancestorPage == null) {
+            return Collections.emptyMap();
+        }
 
-                    if (isInheritanceCancelledOrDisabledForIParsys(currentIParsysResource)) {
-                        return containedResources;
-                    }
+        String iparsysPath = ancestorPage.getPath() + "/" + iparsysRelativePath;
 
-                    containedResources.addAll(ComponentUtils.flattenResourceTree(currentIParsysResource, false));
+        long cacheGeneration = resourceTypeCacheManager.getGeneration();
+        Optional<Map<String, String>> cachedResourceTypes = resourceTypeCacheManager.getCachedInheritedResourceTypes(iparsysPath);
+
+        if (cachedResourceTypes.isPresent()) {
+            return cachedResourceTypes.get();
+        }
 
-                }
+        Map<String, String> inheritedResourceTypes = Maps.newHashMap();
+        Resource currentIParsysResource = resourceResolver.getResource(iparsysPath);
 
-                parentPage = parentPage.getParent();
+        if (currentIParsysResource == null) {
+            inheritedResourceTypes.putAll(getInheritedResourceTypes(ancestorPage.getParent(), iparsysRelativePath, resourceResolver, flatteningStrategy, traversalLimit));
+        }
+        else if (!isInheritanceCancelledOrDisabledForIParsys(currentIParsysResource)) {
+            for (Resource currentResource : ComponentUtils.flattenResourceTree(currentIParsysResource, false, flatteningStrategy, traversalLimit)) {
+                inheritedResourceTypes.put(currentResource.getPath(), currentResource.getResourceType());
             }
 
+            inheritedResourceTypes.putAll(getInheritedResourceTypes(ancestorPage.getParent(), iparsysRelativePath, resourceResolver, flatteningStrategy, traversalLimit));
         }
 
-        return containedResources;
+        resourceTypeCacheManager.cacheInheritedResourceTypes(iparsysPath, inheritedResourceTypes, cacheGeneration);
+
+        return inheritedResourceTypes;
+
     }
 
     @Override
@@ -0,0 +1,158 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.metrics;
+
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.ClientLibraryMetrics;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.CompilationPhase;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Times the phases of Page Library compilation, recording each into the per phase histograms of a
+ * {@link ClientLibraryMetrics}.
+ * </p>
+ * <p>
+ * A compilation may additionally be tracked as a whole by wrapping it in {@link #begin()} and {@link #end(Timings)}.
+ * Phases timed on the compiling thread in between are then also accumulated into the returned {@link Timings}, so that
+ * a slow compilation can be reported with the breakdown of where its time went.  Phases are tracked per thread so the
+ * timer may be shared freely.
+ * </p>
+ */
+public class CompilationPhaseTimer {
+
+    private final ClientLibraryMetrics metrics;
+    private final ThreadLocal<Timings> currentTimings = new ThreadLocal<Timings>();
+
+    public CompilationPhaseTimer(ClientLibraryMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     *
+     * @return The start time of a phase, to be passed to {@link #stop(CompilationPhase, long)} once the phase is over
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    public void stop(CompilationPhase phase, long startNanos) {
+
+        long duration = System.nanoTime() - startNanos;
+
+        metrics.recordPhase(phase, duration);
+
+        Timings timings = currentTimings.get();
+
+        if (timings != null) {
+            timings.add(phase, duration);
+        }
+
+    }
+
+    /**
+     * Notes the number of Client Libraries merged by the compilation being tracked on the current thread, if any.
+     *
+     * @param libraryCount
+     */
+    public void recordLibraryCount(int libraryCount) {
+
+        Timings timings = currentTimings.get();
+
+        if (timings != null) {
+            timings.libraryCount = libraryCount;
+        }
+
+    }
+
+    /**
+     * Starts tracking the phases of a compilation on the current thread.  Compilations may nest, in which case the
+     * phases of the inner compilation are only accumulated into its own timings.
+     *
+     * @return The timings of the compilation, to be passed to {@link #end(Timings)} once the compilation is over
+     */
+    public Timings begin() {
+
+        Timings timings = new Timings(currentTimings.get());
+        currentTimings.set(timings);
+
+        return timings;
+
+    }
+
+    public void end(Timings timings) {
+
+        timings.endNanos = System.nanoTime();
+
+        if (timings.parent == null) {
+            currentTimings.remove();
+        }
+        else {
+            currentTimings.set(timings.parent);
+        }
+
+    }
+
+    public static final class Timings {
+
+        private final Timings parent;
+        private final long startNanos = System.nanoTime();
+        private long endNanos;
+        private int libraryCount;
+        private final Map<CompilationPhase, Long> durationByPhase = new EnumMap<CompilationPhase, Long>(CompilationPhase.class);
+
+        private Timings(Timings parent) {
+            this.parent = parent;
+        }
+
+        private void add(CompilationPhase phase, long duration) {
+
+            Long currentDuration = durationByPhase.get(phase);
+
+            durationByPhase.put(phase, currentDuration == null ? duration : currentDuration + duration);
+
+        }
+
+        public int getLibraryCount() {
+            return libraryCount;
+        }
+
+        public long getTotalMillis() {
+            return TimeUnit.NANOSECONDS.toMillis((endNanos == 0 ? System.nanoTime() : endNanos) - startNanos);
+        }
+
+        public Map<CompilationPhase, Long> getPhaseMillis() {
+
+            Map<CompilationPhase, Long> phaseMillis = new EnumMap<CompilationPhase, Long>(CompilationPhase.class);
+
+            for (Map.Entry<CompilationPhase, Long> currentEntry : durationByPhase.entrySet()) {
+                phaseMillis.put(currentEntry.getKey(), TimeUnit.NANOSECONDS.toMillis(currentEntry.getValue()));
+            }
+
+            return phaseMillis;
+
+        }
+
+        @Override
+        public String toString() {
+            return getTotalMillis() + "ms " + getPhaseMillis();
+        }
+
+    }
+
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.metrics;
+
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.LatencyStatistics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A lock free histogram of latencies in nanoseconds.
+ * </p>
+ * <p>
+ * Latencies are counted into log-linear buckets - every power of two range is split into eight equally sized
+ * buckets - so that the histogram has a fixed size of a few hundred counters regardless of the range of latencies
+ * recorded while percentiles remain accurate to within an eighth of the reported value.  Recording is a handful of
+ * atomic increments and never blocks.
+ * </p>
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long durationNanos) {
+
+        long duration = Math.max(0, durationNanos);
+
+        buckets.incrementAndGet(getBucketIndex(duration));
+        total.addAndGet(duration);
+
+        long currentMax = max.get();
+
+        while (duration > currentMax && !max.compareAndSet(currentMax, duration)) {
+            currentMax = max.get();
+        }
+
+    }
+
+    /**
+     * Produces a point in time view of the histogram.  Latencies recorded concurrently with the snapshot may or may
+     * not be reflected in it.
+     *
+     * @return A snapshot of the histogram
+     */
+    public LatencyStatistics snapshot() {
+
+        long[] bucketCounts = new long[BUCKET_COUNT];
+        long count = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            bucketCounts[i] = buckets.get(i);
+            count += bucketCounts[i];
+        }
+
+        return new Snapshot(bucketCounts, count, total.get(), max.get());
+
+    }
+
+    public void reset() {
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+
+        total.set(0);
+        max.set(0);
+
+    }
+
+    protected static int getBucketIndex(long value) {
+
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+
+    }
+
+    /**
+     *
+     * @param index
+     * @return The largest value counted into the bucket at the provided index
+     */
+    protected static long getBucketUpperBound(int index) {
+
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long upperBound = ((long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT + 1) << shift) - 1;
+
+        return upperBound < 0 ? Long.MAX_VALUE : upperBound;
+
+    }
+
+    private static final class Snapshot implements LatencyStatistics {
+
+        private final long[] bucketCounts;
+        private final long count;
+        private final long total;
+        private final long max;
+
+        private Snapshot(long[] bucketCounts, long count, long total, long max) {
+            this.bucketCounts = bucketCounts;
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        @Override
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public long getTotal() {
+            return total;
+        }
+
+        @Override
+        public long getMean() {
+            return count == 0 ? 0 : total / count;
+        }
+
+        @Override
+        public long getMax() {
+            return max;
+        }
+
+        @Override
+        public long getPercentile(double percentile) {
+
+            if (count == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+            long seen = 0;
+
+            for (int i = 0; i < bucketCounts.length; i++) {
+                seen += bucketCounts[i];
+
+                if (seen >= rank) {
+                    return Math.min(getBucketUpperBound(i), max);
+                }
+            }
+
+            return max;
+
+        }
+
+    }
+
+}
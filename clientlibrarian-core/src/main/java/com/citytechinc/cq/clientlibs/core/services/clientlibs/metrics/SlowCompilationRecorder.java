@@ -0,0 +1,146 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.metrics;
+
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.SlowCompilation;
+import com.google.common.collect.Lists;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>
+ * Keeps the slowest compilations completed within a sliding window of time in a fixed number of slots.
+ * </p>
+ * <p>
+ * The recorder is lock free.  An offered compilation replaces an empty slot, a slot whose compilation has aged out of
+ * the window, or otherwise the fastest compilation held if it is slower than that compilation.  The replacement is a
+ * compare and set of the slot, retried a bounded number of times when another thread replaces the same slot first.  A
+ * compilation offered under heavy contention may therefore be dropped, which is acceptable for a diagnostic record.
+ * </p>
+ */
+public class SlowCompilationRecorder {
+
+    private static final int MAXIMUM_ATTEMPTS = 4;
+
+    private final AtomicReferenceArray<SlowCompilation> slots;
+    private final long windowMillis;
+
+    /**
+     *
+     * @param capacity The number of compilations kept
+     * @param windowMillis The length of time for which a compilation is kept after it completed
+     */
+    public SlowCompilationRecorder(int capacity, long windowMillis) {
+        this.slots = new AtomicReferenceArray<SlowCompilation>(Math.max(1, capacity));
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     *
+     * @param durationMillis
+     * @return Whether a compilation of the provided duration would currently be kept
+     */
+    public boolean isSlow(long durationMillis) {
+
+        long windowStart = System.currentTimeMillis() - windowMillis;
+
+        for (int i = 0; i < slots.length(); i++) {
+            SlowCompilation currentCompilation = slots.get(i);
+
+            if (currentCompilation == null || currentCompilation.getTimestamp() < windowStart || currentCompilation.getDurationMillis() < durationMillis) {
+                return true;
+            }
+        }
+
+        return false;
+
+    }
+
+    public void offer(SlowCompilation compilation) {
+
+        for (int attempt = 0; attempt < MAXIMUM_ATTEMPTS; attempt++) {
+
+            long windowStart = System.currentTimeMillis() - windowMillis;
+            int replacedIndex = -1;
+            SlowCompilation replacedCompilation = null;
+
+            for (int i = 0; i < slots.length(); i++) {
+                SlowCompilation currentCompilation = slots.get(i);
+
+                if (currentCompilation == null || currentCompilation.getTimestamp() < windowStart) {
+                    replacedIndex = i;
+                    replacedCompilation = currentCompilation;
+                    break;
+                }
+
+                if (replacedIndex == -1 || currentCompilation.getDurationMillis() < replacedCompilation.getDurationMillis()) {
+                    replacedIndex = i;
+                    replacedCompilation = currentCompilation;
+                }
+            }
+
+            if (replacedCompilation != null && replacedCompilation.getTimestamp() >= windowStart && replacedCompilation.getDurationMillis() >= compilation.getDurationMillis()) {
+                return;
+            }
+
+            if (slots.compareAndSet(replacedIndex, replacedCompilation, compilation)) {
+                return;
+            }
+
+        }
+
+    }
+
+    /**
+     *
+     * @return The compilations held which completed within the window, slowest first
+     */
+    public List<SlowCompilation> getSlowest() {
+
+        long windowStart = System.currentTimeMillis() - windowMillis;
+        List<SlowCompilation> slowest = Lists.newArrayListWithCapacity(slots.length());
+
+        for (int i = 0; i < slots.length(); i++) {
+            SlowCompilation currentCompilation = slots.get(i);
+
+            if (currentCompilation != null && currentCompilation.getTimestamp() >= windowStart) {
+                slowest.add(currentCompilation);
+            }
+        }
+
+        Collections.sort(slowest, new Comparator<SlowCompilation>() {
+            @Override
+            public int compare(SlowCompilation first, SlowCompilation second) {
+                return first.getDurationMillis() < second.getDurationMillis() ? 1 : first.getDurationMillis() > second.getDurationMillis() ? -1 : 0;
+            }
+        });
+
+        return slowest;
+
+    }
+
+    public void clear() {
+
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, null);
+        }
+
+    }
+
+}
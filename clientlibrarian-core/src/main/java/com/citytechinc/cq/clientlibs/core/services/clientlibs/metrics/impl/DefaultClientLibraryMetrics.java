@@ -0,0 +1,240 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.metrics.impl;
+
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.ClientLibraryMetrics;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.CompilationPhase;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.InvalidationCause;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.LatencyStatistics;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.LibraryTypeStatistics;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.SlowCompilation;
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.metrics.LatencyHistogram;
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.metrics.SlowCompilationRecorder;
+import com.google.common.collect.Maps;
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the metrics of the Client Librarian in memory using atomic counters and {@link LatencyHistogram}s, one set
+ * per {@link LibraryType} along with one histogram per {@link CompilationPhase}.  The slowest compilations are kept by
+ * a {@link SlowCompilationRecorder}, which is replaced, discarding its records, whenever the configuration changes.
+ * Metrics are not persisted and start from zero on every activation.
+ */
+@Component(label = "AEM Client Librarian Metrics", description = "Collects cache, compilation and serving metrics for Page Libraries")
+@Service
+public class DefaultClientLibraryMetrics implements ClientLibraryMetrics {
+
+    private final Map<LibraryType, LibraryTypeMetrics> metricsByType;
+    private final Map<InvalidationCause, AtomicLong> invalidationsByCause;
+    private final Map<CompilationPhase, LatencyHistogram> latencyByPhase;
+
+    @Property(label = "Slow Compilation Count", intValue = 20, description = "The number of slowest Page Library compilations kept for inspection")
+    private static final String SLOW_COMPILATION_COUNT = "slowCompilationCount";
+    private static final Integer DEFAULT_SLOW_COMPILATION_COUNT = 20;
+
+    @Property(label = "Slow Compilation Window", intValue = 60, description = "The number of minutes for which a slow compilation is kept")
+    private static final String SLOW_COMPILATION_WINDOW_MINUTES = "slowCompilationWindowMinutes";
+    private static final Integer DEFAULT_SLOW_COMPILATION_WINDOW_MINUTES = 60;
+
+    private volatile SlowCompilationRecorder slowCompilationRecorder = new SlowCompilationRecorder(DEFAULT_SLOW_COMPILATION_COUNT, TimeUnit.MINUTES.toMillis(DEFAULT_SLOW_COMPILATION_WINDOW_MINUTES));
+
+    public DefaultClientLibraryMetrics() {
+
+        Map<LibraryType, LibraryTypeMetrics> metricsByType = new EnumMap<LibraryType, LibraryTypeMetrics>(LibraryType.class);
+
+        for (LibraryType currentType : LibraryType.values()) {
+            metricsByType.put(currentType, new LibraryTypeMetrics());
+        }
+
+        Map<InvalidationCause, AtomicLong> invalidationsByCause = new EnumMap<InvalidationCause, AtomicLong>(InvalidationCause.class);
+
+        for (InvalidationCause currentCause : InvalidationCause.values()) {
+            invalidationsByCause.put(currentCause, new AtomicLong());
+        }
+
+        Map<CompilationPhase, LatencyHistogram> latencyByPhase = new EnumMap<CompilationPhase, LatencyHistogram>(CompilationPhase.class);
+
+        for (CompilationPhase currentPhase : CompilationPhase.values()) {
+            latencyByPhase.put(currentPhase, new LatencyHistogram());
+        }
+
+        this.metricsByType = Collections.unmodifiableMap(metricsByType);
+        this.invalidationsByCause = Collections.unmodifiableMap(invalidationsByCause);
+        this.latencyByPhase = Collections.unmodifiableMap(latencyByPhase);
+
+    }
+
+    @Activate
+    @Modified
+    protected void configure(Map<String, Object> properties) {
+
+        int slowCompilationCount = Math.max(1, PropertiesUtil.toInteger(properties.get(SLOW_COMPILATION_COUNT), DEFAULT_SLOW_COMPILATION_COUNT));
+        long slowCompilationWindow = TimeUnit.MINUTES.toMillis(Math.max(1, PropertiesUtil.toInteger(properties.get(SLOW_COMPILATION_WINDOW_MINUTES), DEFAULT_SLOW_COMPILATION_WINDOW_MINUTES)));
+
+        slowCompilationRecorder = new SlowCompilationRecorder(slowCompilationCount, slowCompilationWindow);
+
+    }
+
+    @Override
+    public void recordCacheLookup(LibraryType type, boolean hit, long durationNanos) {
+
+        LibraryTypeMetrics typeMetrics = metricsByType.get(type);
+
+        if (hit) {
+            typeMetrics.cacheHits.incrementAndGet();
+        }
+        else {
+            typeMetrics.cacheMisses.incrementAndGet();
+        }
+
+        typeMetrics.cacheLookupLatency.record(durationNanos);
+
+    }
+
+    @Override
+    public void recordCompilation(LibraryType type, long durationNanos) {
+
+        LibraryTypeMetrics typeMetrics = metricsByType.get(type);
+
+        typeMetrics.compilations.incrementAndGet();
+        typeMetrics.compilationLatency.record(durationNanos);
+
+    }
+
+    @Override
+    public void recordCompilationFailure(LibraryType type) {
+        metricsByType.get(type).compilationFailures.incrementAndGet();
+    }
+
+    @Override
+    public void recordPhase(CompilationPhase phase, long durationNanos) {
+        latencyByPhase.get(phase).record(durationNanos);
+    }
+
+    @Override
+    public void recordBytesServed(LibraryType type, long bytes) {
+        metricsByType.get(type).bytesServed.addAndGet(bytes);
+    }
+
+    @Override
+    public void recordInvalidation(InvalidationCause cause) {
+        invalidationsByCause.get(cause).incrementAndGet();
+    }
+
+    @Override
+    public boolean isSlowCompilation(long durationMillis) {
+        return slowCompilationRecorder.isSlow(durationMillis);
+    }
+
+    @Override
+    public void recordSlowCompilation(SlowCompilation compilation) {
+        slowCompilationRecorder.offer(compilation);
+    }
+
+    @Override
+    public LibraryTypeStatistics getStatistics(LibraryType type) {
+
+        LibraryTypeMetrics typeMetrics = metricsByType.get(type);
+
+        return new DefaultLibraryTypeStatistics(
+                type,
+                typeMetrics.cacheHits.get(),
+                typeMetrics.cacheMisses.get(),
+                typeMetrics.compilations.get(),
+                typeMetrics.compilationFailures.get(),
+                typeMetrics.bytesServed.get(),
+                typeMetrics.cacheLookupLatency.snapshot(),
+                typeMetrics.compilationLatency.snapshot());
+
+    }
+
+    @Override
+    public Map<InvalidationCause, Long> getInvalidationCounts() {
+
+        Map<InvalidationCause, Long> invalidationCounts = Maps.newEnumMap(InvalidationCause.class);
+
+        for (Map.Entry<InvalidationCause, AtomicLong> currentEntry : invalidationsByCause.entrySet()) {
+            invalidationCounts.put(currentEntry.getKey(), currentEntry.getValue().get());
+        }
+
+        return invalidationCounts;
+
+    }
+
+    @Override
+    public LatencyStatistics getPhaseStatistics(CompilationPhase phase) {
+        return latencyByPhase.get(phase).snapshot();
+    }
+
+    @Override
+    public List<SlowCompilation> getSlowCompilations() {
+        return slowCompilationRecorder.getSlowest();
+    }
+
+    @Override
+    public void reset() {
+
+        for (LibraryTypeMetrics currentMetrics : metricsByType.values()) {
+            currentMetrics.reset();
+        }
+
+        for (AtomicLong currentCount : invalidationsByCause.values()) {
+            currentCount.set(0);
+        }
+
+        for (LatencyHistogram currentHistogram : latencyByPhase.values()) {
+            currentHistogram.reset();
+        }
+
+        slowCompilationRecorder.clear();
+
+    }
+
+    private static final class LibraryTypeMetrics {
+
+        private final AtomicLong cacheHits = new AtomicLong();
+        private final AtomicLong cacheMisses = new AtomicLong();
+        private final AtomicLong compilations = new AtomicLong();
+        private final AtomicLong compilationFailures = new AtomicLong();
+        private final AtomicLong bytesServed = new AtomicLong();
+        private final LatencyHistogram cacheLookupLatency = new LatencyHistogram();
+        private final LatencyHistogram compilationLatency = new LatencyHistogram();
+
+        private void reset() {
+            cacheHits.set(0);
+            cacheMisses.set(0);
+            compilations.set(0);
+            compilationFailures.set(0);
+            bytesServed.set(0);
+            cacheLookupLatency.reset();
+            compilationLatency.reset();
+        }
+
+    }
+
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.metrics.impl;
+
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.LatencyStatistics;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.LibraryTypeStatistics;
+
+public class DefaultLibraryTypeStatistics implements LibraryTypeStatistics {
+
+    private final LibraryType type;
+    private final long cacheHitCount;
+    private final long cacheMissCount;
+    private final long compilationCount;
+    private final long compilationFailureCount;
+    private final long bytesServed;
+    private final LatencyStatistics cacheLookupLatency;
+    private final LatencyStatistics compilationLatency;
+
+    public DefaultLibraryTypeStatistics(LibraryType type, long cacheHitCount, long cacheMissCount, long compilationCount, long compilationFailureCount, long bytesServed, LatencyStatistics cacheLookupLatency, LatencyStatistics compilationLatency) {
+        this.type = type;
+        this.cacheHitCount = cacheHitCount;
+        this.cacheMissCount = cacheMissCount;
+        this.compilationCount = compilationCount;
+        this.compilationFailureCount = compilationFailureCount;
+        this.bytesServed = bytesServed;
+        this.cacheLookupLatency = cacheLookupLatency;
+        this.compilationLatency = compilationLatency;
+    }
+
+    @Override
+    public LibraryType getType() {
+        return type;
+    }
+
+    @Override
+    public long getCacheLookupCount() {
+        return cacheHitCount + cacheMissCount;
+    }
+
+    @Override
+    public long getCacheHitCount() {
+        return cacheHitCount;
+    }
+
+    @Override
+    public long getCacheMissCount() {
+        return cacheMissCount;
+    }
+
+    @Override
+    public double getCacheHitRatio() {
+        return getCacheLookupCount() == 0 ? 0 : (double) cacheHitCount / getCacheLookupCount();
+    }
+
+    @Override
+    public long getCompilationCount() {
+        return compilationCount;
+    }
+
+    @Override
+    public long getCompilationFailureCount() {
+        return compilationFailureCount;
+    }
+
+    @Override
+    public long getBytesServed() {
+        return bytesServed;
+    }
+
+    @Override
+    public LatencyStatistics getCacheLookupLatency() {
+        return cacheLookupLatency;
+    }
+
+    @Override
+    public LatencyStatistics getCompilationLatency() {
+        return compilationLatency;
+    }
+
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.metrics.impl;
+
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.CompilationPhase;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.SlowCompilation;
+
+import java.util.Collections;
+import java.util.Map;
+
+public class DefaultSlowCompilation implements SlowCompilation {
+
+    private final long timestamp;
+    private final String path;
+    private final LibraryType type;
+    private final String brand;
+    private final int libraryCount;
+    private final long bytes;
+    private final long durationMillis;
+    private final Map<CompilationPhase, Long> phaseMillis;
+
+    public DefaultSlowCompilation(long timestamp, String path, LibraryType type, String brand, int libraryCount, long bytes, long durationMillis, Map<CompilationPhase, Long> phaseMillis) {
+        this.timestamp = timestamp;
+        this.path = path;
+        this.type = type;
+        this.brand = brand;
+        this.libraryCount = libraryCount;
+        this.bytes = bytes;
+        this.durationMillis = durationMillis;
+        this.phaseMillis = Collections.unmodifiableMap(phaseMillis);
+    }
+
+    @Override
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public LibraryType getType() {
+        return type;
+    }
+
+    @Override
+    public String getBrand() {
+        return brand;
+    }
+
+    @Override
+    public int getLibraryCount() {
+        return libraryCount;
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    @Override
+    public long getLessCompileMillis() {
+        return phaseMillis.containsKey(CompilationPhase.LESS_COMPILE) ? phaseMillis.get(CompilationPhase.LESS_COMPILE) : 0;
+    }
+
+    @Override
+    public Map<CompilationPhase, Long> getPhaseMillis() {
+        return phaseMillis;
+    }
+
+    @Override
+    public String toString() {
+        return type + " library " + brand + " for " + path + " took " + durationMillis + "ms merging " + libraryCount + " libraries into " + bytes + " bytes " + phaseMillis;
+    }
+
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.sourcemap;
+
+/**
+ * Encodes integers as the Base64 Variable Length Quantities used in the mappings of a version 3 source map.
+ */
+public final class Base64VLQ {
+
+    private static final String BASE64_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    private static final int VLQ_BASE_SHIFT = 5;
+    private static final int VLQ_BASE_MASK = (1 << VLQ_BASE_SHIFT) - 1;
+    private static final int VLQ_CONTINUATION_BIT = 1 << VLQ_BASE_SHIFT;
+
+    private Base64VLQ() {
+    }
+
+    /**
+     * Appends the encoding of the provided value to the provided builder.  The sign is carried in the least
+     * significant bit of the first digit.
+     *
+     * @param builder
+     * @param value
+     */
+    public static void encode(StringBuilder builder, int value) {
+
+        int remaining = value < 0 ? ((-value) << 1) + 1 : value << 1;
+
+        do {
+            int digit = remaining & VLQ_BASE_MASK;
+            remaining >>>= VLQ_BASE_SHIFT;
+
+            if (remaining > 0) {
+                digit |= VLQ_CONTINUATION_BIT;
+            }
+
+            builder.append(BASE64_DIGITS.charAt(digit));
+        } while (remaining > 0);
+
+    }
+
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.sourcemap;
+
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The mapped content of individual Client Libraries for a single version of the Client Library registry.  The whole
+ * instance is discarded when the registry changes.
+ */
+public class MappedLibraries {
+
+    private final Long libraryVersion;
+
+    private final ConcurrentMap<String, MappedLibrary> mappedLibraries = new ConcurrentHashMap<String, MappedLibrary>();
+
+    public MappedLibraries(Long libraryVersion) {
+        this.libraryVersion = libraryVersion;
+    }
+
+    /**
+     *
+     * @return The version of the Client Library registry the mapped content was produced from
+     */
+    public Long getLibraryVersion() {
+        return libraryVersion;
+    }
+
+    public MappedLibrary getMappedLibrary(LibraryType type, String clientLibraryPath) {
+        return mappedLibraries.get(getKey(type, clientLibraryPath));
+    }
+
+    public void putMappedLibrary(LibraryType type, String clientLibraryPath, MappedLibrary mappedLibrary) {
+        mappedLibraries.put(getKey(type, clientLibraryPath), mappedLibrary);
+    }
+
+    private static String getKey(LibraryType type, String clientLibraryPath) {
+        return type.name() + "|" + clientLibraryPath;
+    }
+
+}
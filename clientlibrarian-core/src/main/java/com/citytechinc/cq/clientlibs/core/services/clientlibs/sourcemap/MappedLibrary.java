@@ -0,0 +1,203 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.sourcemap;
+
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.compilers.minify.MinifiedSource;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <p>
+ * The content of a single Client Library, as merged into a library, along with the positions in the library's
+ * original files from which its content was taken.
+ * </p>
+ * <p>
+ * A library's merged content consists of each of its files preceded by a header comment naming the file.  The files
+ * are located by these headers, after which every line of a file's content maps to the same line of the original
+ * file.  When the library is minified, each run of minified content taken from a contiguous run of the merged content
+ * maps to the original position of the start of that run.
+ * </p>
+ */
+public class MappedLibrary {
+
+    /**
+     * Source index of a mapping for content which was not taken from any of the library's files
+     */
+    public static final int UNMAPPED = -1;
+
+    private final String content;
+    private final List<String> sourcePaths;
+    private final List<String> sourceContents;
+    private final List<int[]> mappings;
+
+    private MappedLibrary(String content, List<String> sourcePaths, List<String> sourceContents, List<int[]> mappings) {
+        this.content = content;
+        this.sourcePaths = ImmutableList.copyOf(sourcePaths);
+        this.sourceContents = ImmutableList.copyOf(sourceContents);
+        this.mappings = ImmutableList.copyOf(mappings);
+    }
+
+    /**
+     *
+     * @param mergedLibrary The merged content of the library
+     * @param resourcePaths The ordered paths of the library's files
+     * @param headerPrefix The text preceding the path of a file in its header comment
+     * @param headerPostfix The text following the path of a file in its header comment
+     * @param minifiedLibrary The minified merged content, if the library is to be served minified
+     * @return The mapped library
+     */
+    public static MappedLibrary forLibrary(String mergedLibrary, Collection<String> resourcePaths, String headerPrefix, String headerPostfix, Optional<MinifiedSource> minifiedLibrary) {
+
+        List<String> sourcePaths = Lists.newArrayList();
+        List<String> sourceContents = Lists.newArrayList();
+        List<Integer> headerStarts = Lists.newArrayList();
+        List<Integer> contentStarts = Lists.newArrayList();
+
+        int position = 0;
+
+        for (String currentPath : resourcePaths) {
+            String header = headerPrefix + currentPath + headerPostfix + "\n\n";
+            int headerStart = mergedLibrary.indexOf(header, position);
+
+            if (headerStart < 0) {
+                break;
+            }
+
+            sourcePaths.add(currentPath);
+            headerStarts.add(headerStart);
+            contentStarts.add(headerStart + header.length());
+            position = headerStart + header.length();
+        }
+
+        /*
+         * Each file's content is followed by a line feed separating it from the next header
+         */
+        int[] contentEnds = new int[contentStarts.size()];
+
+        for (int i = 0; i < contentStarts.size(); i++) {
+            int nextStart = i + 1 < contentStarts.size() ? headerStarts.get(i + 1) : mergedLibrary.length();
+            contentEnds[i] = Math.max(contentStarts.get(i), nextStart - 1);
+            sourceContents.add(mergedLibrary.substring(contentStarts.get(i), contentEnds[i]));
+        }
+
+        int[] lineStarts = getLineStarts(mergedLibrary);
+        List<int[]> mappings = Lists.newArrayList();
+
+        if (!minifiedLibrary.isPresent()) {
+            for (int i = 0; i < contentStarts.size(); i++) {
+                int contentStartLine = Arrays.binarySearch(lineStarts, contentStarts.get(i));
+
+                for (int line = contentStartLine; line < lineStarts.length && lineStarts[line] < contentEnds[i]; line++) {
+                    mappings.add(new int[] { lineStarts[line], i, line - contentStartLine, 0 });
+                }
+            }
+
+            return new MappedLibrary(mergedLibrary, sourcePaths, sourceContents, mappings);
+        }
+
+        String minifiedContent = minifiedLibrary.get().getContent();
+        int previousSourceOffset = -2;
+
+        for (int i = 0; i < minifiedContent.length(); i++) {
+            int sourceOffset = minifiedLibrary.get().getSourceOffset(i);
+
+            if (i == 0 || sourceOffset != previousSourceOffset + 1 || minifiedContent.charAt(i - 1) == '\n') {
+                mappings.add(getOrigin(i, sourceOffset, lineStarts, contentStarts, contentEnds));
+            }
+
+            previousSourceOffset = sourceOffset;
+        }
+
+        return new MappedLibrary(minifiedContent, sourcePaths, sourceContents, mappings);
+
+    }
+
+    private static int[] getOrigin(int contentOffset, int sourceOffset, int[] lineStarts, List<Integer> contentStarts, int[] contentEnds) {
+
+        int source = contentStarts.size() - 1;
+
+        while (source >= 0 && contentStarts.get(source) > sourceOffset) {
+            source--;
+        }
+
+        if (source < 0 || sourceOffset >= contentEnds[source]) {
+            return new int[] { contentOffset, UNMAPPED, 0, 0 };
+        }
+
+        int line = getLine(lineStarts, sourceOffset);
+        int contentStartLine = getLine(lineStarts, contentStarts.get(source));
+
+        return new int[] { contentOffset, source, line - contentStartLine, sourceOffset - lineStarts[line] };
+
+    }
+
+    private static int getLine(int[] lineStarts, int offset) {
+
+        int line = Arrays.binarySearch(lineStarts, offset);
+
+        return line >= 0 ? line : -line - 2;
+
+    }
+
+    private static int[] getLineStarts(String content) {
+
+        List<Integer> lineStarts = Lists.newArrayList(0);
+
+        for (int i = content.indexOf('\n'); i >= 0; i = content.indexOf('\n', i + 1)) {
+            lineStarts.add(i + 1);
+        }
+
+        int[] lineStartArray = new int[lineStarts.size()];
+
+        for (int i = 0; i < lineStarts.size(); i++) {
+            lineStartArray[i] = lineStarts.get(i);
+        }
+
+        return lineStartArray;
+
+    }
+
+    /**
+     *
+     * @return The content of the library as it is to be merged into a library
+     */
+    public String getContent() {
+        return content;
+    }
+
+    public List<String> getSourcePaths() {
+        return sourcePaths;
+    }
+
+    public List<String> getSourceContents() {
+        return sourceContents;
+    }
+
+    /**
+     *
+     * @return Mappings ordered by content offset, each consisting of the content offset, the index of the source
+     *         path or {@link #UNMAPPED}, the zero based line in the source, and the zero based column in the source
+     */
+    public List<int[]> getMappings() {
+        return mappings;
+    }
+
+}
@@ -0,0 +1,207 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.sourcemap;
+
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.variables.VariableSubstitution;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.sling.commons.json.JSONArray;
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.JSONObject;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Builds a version 3 source map for a library merged from a number of {@link MappedLibrary} instances.
+ * </p>
+ * <p>
+ * Mappings are collected against the merged content before variable placeholders are replaced.  When the map is
+ * built the merged content is walked with each placeholder expanded to its value, so that generated lines and
+ * columns are those of the library as it is served.  Placeholders are matched as {@link VariableSubstitution} matches
+ * them.
+ * </p>
+ */
+public class SourceMapBuilder {
+
+    private final List<String> sources = Lists.newArrayList();
+    private final List<String> sourcesContent = Lists.newArrayList();
+    private final Map<String, Integer> sourceIndices = Maps.newHashMap();
+    private final List<int[]> mappings = Lists.newArrayList();
+
+    private String mergedContent = "";
+    private Map<String, String> variables = Maps.newHashMap();
+
+    /**
+     * Records the mappings of a library merged at the provided offset of the merged content.  Libraries must be
+     * added in the order in which they are merged.
+     *
+     * @param offset
+     * @param library
+     */
+    public void addLibrary(int offset, MappedLibrary library) {
+
+        int[] librarySourceIndices = new int[library.getSourcePaths().size()];
+
+        for (int i = 0; i < librarySourceIndices.length; i++) {
+            String currentPath = library.getSourcePaths().get(i);
+
+            if (!sourceIndices.containsKey(currentPath)) {
+                sourceIndices.put(currentPath, sources.size());
+                sources.add(currentPath);
+                sourcesContent.add(library.getSourceContents().get(i));
+            }
+
+            librarySourceIndices[i] = sourceIndices.get(currentPath);
+        }
+
+        for (int[] currentMapping : library.getMappings()) {
+            int source = currentMapping[1] == MappedLibrary.UNMAPPED ? MappedLibrary.UNMAPPED : librarySourceIndices[currentMapping[1]];
+
+            mappings.add(new int[] { offset + currentMapping[0], source, currentMapping[2], currentMapping[3] });
+        }
+
+    }
+
+    /**
+     *
+     * @param mergedContent The merged content, prior to the replacement of variable placeholders
+     * @param variables The variables with which placeholders are replaced
+     */
+    public void setMergedContent(String mergedContent, Map<String, String> variables) {
+        this.mergedContent = mergedContent;
+        this.variables = variables;
+    }
+
+    /**
+     * Builds the source map.  The optional file property is omitted as the same map may be shared by the Page
+     * Libraries of many pages.
+     *
+     * @return The source map as JSON
+     * @throws JSONException
+     */
+    public String build() throws JSONException {
+
+        JSONObject sourceMap = new JSONObject();
+
+        sourceMap.put("version", 3);
+        sourceMap.put("sources", new JSONArray(sources));
+        sourceMap.put("sourcesContent", new JSONArray(sourcesContent));
+        sourceMap.put("names", new JSONArray());
+        sourceMap.put("mappings", buildMappings());
+
+        return sourceMap.toString();
+
+    }
+
+    private String buildMappings() {
+
+        StringBuilder encodedMappings = new StringBuilder();
+
+        int generatedLine = 0;
+        int generatedColumn = 0;
+        int encodedLine = 0;
+        int previousGeneratedColumn = 0;
+        int previousSource = 0;
+        int previousSourceLine = 0;
+        int previousSourceColumn = 0;
+        boolean firstOnLine = true;
+        boolean previousUnmapped = true;
+
+        int mappingIndex = 0;
+        int position = 0;
+
+        while (mappingIndex < mappings.size()) {
+
+            /*
+             * Emit every mapping at or before the current position - those before it fell within a placeholder
+             */
+            while (mappingIndex < mappings.size() && mappings.get(mappingIndex)[0] <= position) {
+                int[] currentMapping = mappings.get(mappingIndex++);
+                boolean unmapped = currentMapping[1] == MappedLibrary.UNMAPPED;
+
+                if (unmapped && previousUnmapped) {
+                    continue;
+                }
+
+                while (encodedLine < generatedLine) {
+                    encodedMappings.append(';');
+                    encodedLine++;
+                    previousGeneratedColumn = 0;
+                    firstOnLine = true;
+                }
+
+                if (!firstOnLine) {
+                    encodedMappings.append(',');
+                }
+
+                Base64VLQ.encode(encodedMappings, generatedColumn - previousGeneratedColumn);
+                previousGeneratedColumn = generatedColumn;
+
+                if (!unmapped) {
+                    Base64VLQ.encode(encodedMappings, currentMapping[1] - previousSource);
+                    Base64VLQ.encode(encodedMappings, currentMapping[2] - previousSourceLine);
+                    Base64VLQ.encode(encodedMappings, currentMapping[3] - previousSourceColumn);
+                    previousSource = currentMapping[1];
+                    previousSourceLine = currentMapping[2];
+                    previousSourceColumn = currentMapping[3];
+                }
+
+                firstOnLine = false;
+                previousUnmapped = unmapped;
+            }
+
+            if (position >= mergedContent.length()) {
+                break;
+            }
+
+            String replacement = null;
+            int replacedLength = 1;
+
+            if (mergedContent.startsWith(VariableSubstitution.PLACEHOLDER_START, position)) {
+                int placeholderEnd = mergedContent.indexOf(VariableSubstitution.PLACEHOLDER_END, position + VariableSubstitution.PLACEHOLDER_START.length());
+
+                if (placeholderEnd > 0) {
+                    replacement = variables.get(mergedContent.substring(position + VariableSubstitution.PLACEHOLDER_START.length(), placeholderEnd));
+                    replacedLength = placeholderEnd + VariableSubstitution.PLACEHOLDER_END.length() - position;
+                }
+            }
+
+            if (replacement == null) {
+                replacement = mergedContent.substring(position, position + 1);
+                replacedLength = 1;
+            }
+
+            for (int i = 0; i < replacement.length(); i++) {
+                if (replacement.charAt(i) == '\n') {
+                    generatedLine++;
+                    generatedColumn = 0;
+                    previousUnmapped = true;
+                }
+                else {
+                    generatedColumn++;
+                }
+            }
+
+            position += replacedLength;
+        }
+
+        return encodedMappings.toString();
+
+    }
+
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.state.index;
+
+import com.citytechinc.cq.clientlibs.api.constants.Brands;
+import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary;
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * A precomputed view over a set of Client Libraries answering the run mode and brand inclusion questions asked
+ * during every Page Library compilation.
+ * </p>
+ * <p>
+ * Each library is assigned a bit index.  Since run modes are fixed for the life of the JVM, run mode inclusion is
+ * evaluated once per library into a single mask.  Brand inclusion is evaluated once per known brand into a mask
+ * containing all Unbranded Libraries along with the Branded Libraries belonging to that brand.  Filtering an ordered
+ * list of libraries is then a bitwise AND of the list's own bit set against these masks.
+ * </p>
+ */
+public class ClientLibraryInclusionIndex {
+
+    private final Map<ClientLibrary, Integer> indexByLibrary;
+    private final Set<String> runModes;
+    private final BitSet runModeMask;
+    private final BitSet unbrandedMask;
+    private final Map<String, BitSet> brandMasks;
+
+    private ClientLibraryInclusionIndex(Map<ClientLibrary, Integer> indexByLibrary, Set<String> runModes, BitSet runModeMask, BitSet unbrandedMask, Map<String, BitSet> brandMasks) {
+        this.indexByLibrary = indexByLibrary;
+        this.runModes = runModes;
+        this.runModeMask = runModeMask;
+        this.unbrandedMask = unbrandedMask;
+        this.brandMasks = brandMasks;
+    }
+
+    public static ClientLibraryInclusionIndex forLibraries(Set<ClientLibrary> libraries, Set<String> runModes) {
+
+        Map<ClientLibrary, Integer> indexByLibrary = Maps.newHashMap();
+        BitSet runModeMask = new BitSet(libraries.size());
+        BitSet unbrandedMask = new BitSet(libraries.size());
+        Map<String, BitSet> brandedMasks = Maps.newHashMap();
+
+        int currentIndex = 0;
+
+        for (ClientLibrary currentLibrary : libraries) {
+            indexByLibrary.put(currentLibrary, currentIndex);
+
+            if (currentLibrary.isIncludedForRunModes(runModes)) {
+                runModeMask.set(currentIndex);
+            }
+
+            if (currentLibrary.getBrands().isEmpty()) {
+                unbrandedMask.set(currentIndex);
+            }
+            else {
+                for (String currentBrand : currentLibrary.getBrands()) {
+                    if (!brandedMasks.containsKey(currentBrand)) {
+                        brandedMasks.put(currentBrand, new BitSet(libraries.size()));
+                    }
+
+                    brandedMasks.get(currentBrand).set(currentIndex);
+                }
+            }
+
+            currentIndex++;
+        }
+
+        /*
+         * Every brand mask includes the Unbranded Libraries so that a single AND answers the brand question
+         */
+        for (BitSet currentBrandMask : brandedMasks.values()) {
+            currentBrandMask.or(unbrandedMask);
+        }
+
+        return new ClientLibraryInclusionIndex(indexByLibrary, runModes, runModeMask, unbrandedMask, brandedMasks);
+
+    }
+
+    /**
+     * Filters an ordered list of libraries down to those which should be included for the run modes of this index
+     * and the requested brand, maintaining the order of the provided list.
+     *
+     * @param orderedLibraries
+     * @param brand The requested brand.  An absent brand is treated as a request for the default brand.
+     * @return The filtered list of libraries
+     */
+    public List<ClientLibrary> filter(List<ClientLibrary> orderedLibraries, Optional<String> brand) {
+
+        BitSet includedLibraries = new BitSet(indexByLibrary.size());
+
+        for (ClientLibrary currentLibrary : orderedLibraries) {
+            Integer currentIndex = indexByLibrary.get(currentLibrary);
+
+            if (currentIndex != null) {
+                includedLibraries.set(currentIndex);
+            }
+        }
+
+        includedLibraries.and(runModeMask);
+        includedLibraries.and(getBrandMask(brand.or(Brands.DEFAULT_BRAND)));
+
+        List<ClientLibrary> filteredLibraries = Lists.newArrayListWithCapacity(includedLibraries.cardinality());
+
+        for (ClientLibrary currentLibrary : orderedLibraries) {
+            Integer currentIndex = indexByLibrary.get(currentLibrary);
+
+            if (currentIndex != null) {
+                if (includedLibraries.get(currentIndex)) {
+                    filteredLibraries.add(currentLibrary);
+                }
+            }
+            else if (currentLibrary.isIncludedForRunModes(runModes) && currentLibrary.isIncludedForBrand(brand)) {
+                /*
+                 * A library unknown to the index can only come from a registry refresh which happened after the
+                 * index was built - fall back to asking the library directly
+                 */
+                filteredLibraries.add(currentLibrary);
+            }
+        }
+
+        return filteredLibraries;
+
+    }
+
+    private BitSet getBrandMask(String brand) {
+
+        if (brandMasks.containsKey(brand)) {
+            return brandMasks.get(brand);
+        }
+
+        return unbrandedMask;
+
+    }
+
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.state.index;
+
+import com.citytechinc.cq.clientlibs.api.domain.component.DependentComponent;
+import com.citytechinc.cq.clientlibs.api.domain.component.EmbeddedComponent;
+import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.ClientLibraryManager;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCompilationException;
+import com.citytechinc.cq.clientlibs.api.services.components.DependentComponentManager;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>
+ * Per resource type closures over the Dependent Component registry, computed lazily and held for a single version
+ * of both the Client Library and Dependent Component registries.
+ * </p>
+ * <p>
+ * The library closure of a resource type is the set of Client Libraries required by its Dependent Component along
+ * with those required, transitively, by the components it declares as embedded.  The embedded type closure is the
+ * set of resource types reachable through those embedded component declarations.
+ * </p>
+ */
+public class ComponentLibraryClosureIndex {
+
+    private final Long libraryVersion;
+    private final Long componentVersion;
+    private final Map<String, Set<ClientLibrary>> librariesByCategory;
+    private final DependentComponentManager dependentComponentManager;
+
+    private final ConcurrentMap<String, Set<ClientLibrary>> libraryClosuresByResourceType = new ConcurrentHashMap<String, Set<ClientLibrary>>();
+    private final ConcurrentMap<String, Set<String>> embeddedTypeClosuresByResourceType = new ConcurrentHashMap<String, Set<String>>();
+
+    private ComponentLibraryClosureIndex(Long libraryVersion, Long componentVersion, Map<String, Set<ClientLibrary>> librariesByCategory, DependentComponentManager dependentComponentManager) {
+        this.libraryVersion = libraryVersion;
+        this.componentVersion = componentVersion;
+        this.librariesByCategory = librariesByCategory;
+        this.dependentComponentManager = dependentComponentManager;
+    }
+
+    public static ComponentLibraryClosureIndex forRegistries(ClientLibraryManager clientLibraryManager, DependentComponentManager dependentComponentManager) {
+
+        /*
+         * Versions are read ahead of the state they describe so that a refresh in between results in an index which
+         * is considered stale rather than one which is wrongly considered current
+         */
+        Long libraryVersion = clientLibraryManager.getVersion();
+        Long componentVersion = dependentComponentManager.getVersion();
+
+        return new ComponentLibraryClosureIndex(libraryVersion, componentVersion, clientLibraryManager.getLibrariesByCategory(), dependentComponentManager);
+
+    }
+
+    public boolean isCurrent(Long currentLibraryVersion, Long currentComponentVersion) {
+        return libraryVersion.equals(currentLibraryVersion) && componentVersion.equals(currentComponentVersion);
+    }
+
+    /**
+     *
+     * @param resourceType
+     * @return The Client Libraries required by the resource type and the components it embeds
+     * @throws ClientLibraryCompilationException when a component in the closure is dependent on a category which
+     *         no Client Library answers to
+     */
+    public Set<ClientLibrary> getLibraryClosure(String resourceType) throws ClientLibraryCompilationException {
+
+        Set<ClientLibrary> libraryClosure = libraryClosuresByResourceType.get(resourceType);
+
+        if (libraryClosure == null) {
+            Set<ClientLibrary> libraries = Sets.newHashSet();
+
+            addLibrariesForResourceType(resourceType, libraries);
+
+            for (String currentEmbeddedType : getEmbeddedTypeClosure(resourceType)) {
+                addLibrariesForResourceType(currentEmbeddedType, libraries);
+            }
+
+            libraryClosure = ImmutableSet.copyOf(libraries);
+            libraryClosuresByResourceType.put(resourceType, libraryClosure);
+        }
+
+        return libraryClosure;
+
+    }
+
+    /**
+     *
+     * @param resourceType
+     * @return The resource types reachable from the resource type through embedded component declarations, not
+     *         including the resource type itself unless it embeds itself
+     */
+    public Set<String> getEmbeddedTypeClosure(String resourceType) {
+
+        Set<String> embeddedTypeClosure = embeddedTypeClosuresByResourceType.get(resourceType);
+
+        if (embeddedTypeClosure == null) {
+            Set<String> embeddedTypes = Sets.newHashSet();
+
+            addEmbeddedTypesForResourceType(resourceType, embeddedTypes);
+
+            embeddedTypeClosure = ImmutableSet.copyOf(embeddedTypes);
+            embeddedTypeClosuresByResourceType.put(resourceType, embeddedTypeClosure);
+        }
+
+        return embeddedTypeClosure;
+
+    }
+
+    private void addEmbeddedTypesForResourceType(String resourceType, Set<String> embeddedTypes) {
+
+        Optional<DependentComponent> dependentComponentOptional = dependentComponentManager.getDependentComponentForResourceType(resourceType);
+
+        if (!dependentComponentOptional.isPresent()) {
+            return;
+        }
+
+        for (EmbeddedComponent currentEmbeddedComponent : dependentComponentOptional.get().getEmbeddedComponents()) {
+            if (embeddedTypes.add(currentEmbeddedComponent.getResourceType())) {
+                addEmbeddedTypesForResourceType(currentEmbeddedComponent.getResourceType(), embeddedTypes);
+            }
+        }
+
+    }
+
+    private void addLibrariesForResourceType(String resourceType, Set<ClientLibrary> libraries) throws ClientLibraryCompilationException {
+
+        Optional<DependentComponent> dependentComponentOptional = dependentComponentManager.getDependentComponentForResourceType(resourceType);
+
+        if (!dependentComponentOptional.isPresent()) {
+            return;
+        }
+
+        for (String currentDependency : dependentComponentOptional.get().getDependencies()) {
+            if (!librariesByCategory.containsKey(currentDependency)) {
+                throw new ClientLibraryCompilationException("Component " + resourceType + " indicates it is dependent on client library " + currentDependency + " however no Client Libraries answer to that name");
+            }
+
+            libraries.addAll(librariesByCategory.get(currentDependency));
+        }
+
+    }
+
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.variables;
+
+import java.util.Map;
+
+/**
+ * <p>
+ * The content of a single library fragment along with the positions of every variable placeholder within it, found
+ * once when the fragment is first compiled.  Rendering the template for a set of variables splices their values in
+ * between the literal runs of the fragment without scanning the content again.
+ * </p>
+ * <p>
+ * Which placeholders are replaced depends on which variables are known at render time, so every candidate
+ * placeholder is recorded.  Rendering produces the same output as {@link VariableSubstitution#substitute(String, Map)}
+ * over the same content.
+ * </p>
+ */
+public class LibraryTemplate {
+
+    private static final int[] NO_POSITIONS = new int[0];
+    private static final String[] NO_NAMES = new String[0];
+
+    private final String content;
+    private final int[] placeholderStarts;
+    private final int[] placeholderEnds;
+    private final String[] placeholderNames;
+
+    private LibraryTemplate(String content, int[] placeholderStarts, int[] placeholderEnds, String[] placeholderNames) {
+        this.content = content;
+        this.placeholderStarts = placeholderStarts;
+        this.placeholderEnds = placeholderEnds;
+        this.placeholderNames = placeholderNames;
+    }
+
+    public static LibraryTemplate parse(String content) {
+
+        int placeholderCount = 0;
+        int placeholderStart = content.indexOf(VariableSubstitution.PLACEHOLDER_START);
+        int placeholderEnd = -1;
+
+        int[] placeholderStarts = NO_POSITIONS;
+        int[] placeholderEnds = NO_POSITIONS;
+        String[] placeholderNames = NO_NAMES;
+
+        while (placeholderStart >= 0) {
+
+            if (placeholderEnd < placeholderStart + VariableSubstitution.PLACEHOLDER_START.length()) {
+                placeholderEnd = content.indexOf(VariableSubstitution.PLACEHOLDER_END, placeholderStart + VariableSubstitution.PLACEHOLDER_START.length());
+
+                if (placeholderEnd < 0) {
+                    break;
+                }
+            }
+
+            if (placeholderCount == placeholderStarts.length) {
+                int capacity = Math.max(8, placeholderCount * 2);
+                placeholderStarts = copyOf(placeholderStarts, capacity);
+                placeholderEnds = copyOf(placeholderEnds, capacity);
+                String[] grownNames = new String[capacity];
+                System.arraycopy(placeholderNames, 0, grownNames, 0, placeholderCount);
+                placeholderNames = grownNames;
+            }
+
+            placeholderStarts[placeholderCount] = placeholderStart;
+            placeholderEnds[placeholderCount] = placeholderEnd + VariableSubstitution.PLACEHOLDER_END.length();
+            placeholderNames[placeholderCount] = content.substring(placeholderStart + VariableSubstitution.PLACEHOLDER_START.length(), placeholderEnd);
+            placeholderCount++;
+
+            placeholderStart = content.indexOf(VariableSubstitution.PLACEHOLDER_START, placeholderStart + 1);
+
+        }
+
+        if (placeholderCount == 0) {
+            return new LibraryTemplate(content, NO_POSITIONS, NO_POSITIONS, NO_NAMES);
+        }
+
+        String[] trimmedNames = new String[placeholderCount];
+        System.arraycopy(placeholderNames, 0, trimmedNames, 0, placeholderCount);
+
+        return new LibraryTemplate(content, copyOf(placeholderStarts, placeholderCount), copyOf(placeholderEnds, placeholderCount), trimmedNames);
+
+    }
+
+    /**
+     *
+     * @return The content of the fragment with its placeholders in place
+     */
+    public String getContent() {
+        return content;
+    }
+
+    public boolean hasPlaceholders() {
+        return placeholderStarts.length > 0;
+    }
+
+    /**
+     * Appends the fragment to the provided builder with each placeholder naming a known variable replaced by the
+     * variable's value.
+     *
+     * @param output
+     * @param variables
+     */
+    public void render(StringBuilder output, Map<String, String> variables) {
+
+        if (placeholderStarts.length == 0 || variables.isEmpty()) {
+            output.append(content);
+            return;
+        }
+
+        int position = 0;
+
+        for (int i = 0; i < placeholderStarts.length; i++) {
+
+            /*
+             * Placeholders starting within a replaced placeholder were consumed by it
+             */
+            if (placeholderStarts[i] < position) {
+                continue;
+            }
+
+            String value = variables.get(placeholderNames[i]);
+
+            if (value != null) {
+                output.append(content, position, placeholderStarts[i]).append(value);
+                position = placeholderEnds[i];
+            }
+
+        }
+
+        output.append(content, position, content.length());
+
+    }
+
+    private static int[] copyOf(int[] positions, int length) {
+        int[] copy = new int[length];
+        System.arraycopy(positions, 0, copy, 0, Math.min(positions.length, length));
+        return copy;
+    }
+
+}
@@ -0,0 +1,267 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.variables;
+
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.transformer.ScopedVariableProvider;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.transformer.VariableProvider;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.transformer.VariableScope;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import org.apache.sling.api.resource.Resource;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Caches the variables produced by {@link ScopedVariableProvider}s.  Variables are held per provider under a scope
+ * key - the empty string for global providers, the path of the site root page for site root providers and the path
+ * of the page for page providers.
+ * </p>
+ * <p>
+ * The site root page of a page is its ancestor, or itself, at the configured depth below the repository root.  Pages
+ * above that depth are their own site root.
+ * </p>
+ * <p>
+ * The variables of each provider are held for at most the configured number of scopes, and for no longer than the
+ * provider's time to live.  Invalidations are recorded by generation, as they are for cached resource types, so that
+ * variables produced from content read before an invalidation of their page are not cached once produced.
+ * </p>
+ */
+public class VariableCache {
+
+    public static final int DEFAULT_SITE_ROOT_DEPTH = 2;
+    public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+    private static final String GLOBAL_SCOPE_KEY = "";
+    private static final String PAGE_CONTENT = "/jcr:content";
+
+    private final ConcurrentMap<VariableProvider, Cache<String, Map<String, String>>> variablesByProvider = new ConcurrentHashMap<VariableProvider, Cache<String, Map<String, String>>>();
+
+    private volatile int siteRootDepth = DEFAULT_SITE_ROOT_DEPTH;
+    private volatile int maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+    private final AtomicLong generation = new AtomicLong();
+
+    /*
+     * Variables produced below the floor predate the last clear, or an invalidation whose record has since been evicted
+     */
+    private final AtomicLong floorGeneration = new AtomicLong();
+
+    private volatile Cache<String, Long> invalidationGenerationByPagePath = buildInvalidationRecordCache(DEFAULT_MAXIMUM_SIZE);
+
+    /**
+     *
+     * @param siteRootDepth The depth below the repository root of site root pages, /content/mysite having a depth of 2
+     */
+    public void setSiteRootDepth(int siteRootDepth) {
+        if (this.siteRootDepth != siteRootDepth) {
+            this.siteRootDepth = siteRootDepth;
+            clear();
+        }
+    }
+
+    /**
+     *
+     * @param maximumSize The maximum number of scopes for which the variables of a single provider are held
+     */
+    public void setMaximumSize(int maximumSize) {
+        if (this.maximumSize != maximumSize) {
+            this.maximumSize = maximumSize;
+            invalidationGenerationByPagePath = buildInvalidationRecordCache(maximumSize);
+            clear();
+        }
+    }
+
+    /**
+     *
+     * @param provider
+     * @param root The content resource of the page for which variables are requested
+     * @return The cached variables of the provider for the scope of the page, producing them if none are cached or
+     *         the cached variables have expired
+     */
+    public Map<String, String> getVariables(ScopedVariableProvider provider, Resource root) {
+
+        String scopeKey = getScopeKey(provider.getScope(), root);
+        Cache<String, Map<String, String>> providerVariables = getProviderVariables(provider);
+
+        Map<String, String> cachedVariables = providerVariables.getIfPresent(scopeKey);
+
+        if (cachedVariables != null) {
+            return cachedVariables;
+        }
+
+        long producedAtGeneration = generation.get();
+        Map<String, String> variables = Collections.unmodifiableMap(new HashMap<String, String>(provider.getVariables(root)));
+
+        if (!isInvalidatedSince(scopeKey, producedAtGeneration)) {
+            providerVariables.put(scopeKey, variables);
+        }
+
+        return variables;
+
+    }
+
+    /**
+     * Discards the cached variables produced for the page containing the provided path, along with those produced
+     * for it as a site root page.
+     *
+     * @param path
+     */
+    public void invalidate(String path) {
+
+        String pagePath = getPagePath(path);
+
+        invalidationGenerationByPagePath.put(pagePath, generation.incrementAndGet());
+
+        for (Cache<String, Map<String, String>> currentProviderVariables : variablesByProvider.values()) {
+            currentProviderVariables.invalidate(pagePath);
+        }
+
+    }
+
+    public void invalidate(VariableProvider provider) {
+        variablesByProvider.remove(provider);
+    }
+
+    public void clear() {
+        floorGeneration.set(generation.incrementAndGet());
+        variablesByProvider.clear();
+        invalidationGenerationByPagePath.invalidateAll();
+    }
+
+    private boolean isInvalidatedSince(String scopeKey, long producedAtGeneration) {
+
+        if (producedAtGeneration < floorGeneration.get()) {
+            return true;
+        }
+
+        if (GLOBAL_SCOPE_KEY.equals(scopeKey)) {
+            return false;
+        }
+
+        Long invalidationGeneration = invalidationGenerationByPagePath.getIfPresent(scopeKey);
+
+        return invalidationGeneration != null && invalidationGeneration > producedAtGeneration;
+
+    }
+
+    private Cache<String, Map<String, String>> getProviderVariables(ScopedVariableProvider provider) {
+
+        Cache<String, Map<String, String>> providerVariables = variablesByProvider.get(provider);
+
+        if (providerVariables == null) {
+            CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder().maximumSize(maximumSize);
+            long timeToLive = provider.getTimeToLive();
+
+            if (timeToLive > 0) {
+                cacheBuilder.expireAfterWrite(timeToLive, TimeUnit.MILLISECONDS);
+            }
+
+            Cache<String, Map<String, String>> newProviderVariables = cacheBuilder.build();
+            providerVariables = variablesByProvider.putIfAbsent(provider, newProviderVariables);
+
+            if (providerVariables == null) {
+                providerVariables = newProviderVariables;
+            }
+        }
+
+        return providerVariables;
+
+    }
+
+    private String getScopeKey(VariableScope scope, Resource root) {
+
+        if (scope == VariableScope.GLOBAL) {
+            return GLOBAL_SCOPE_KEY;
+        }
+
+        String pagePath = root.getParent() != null ? root.getParent().getPath() : root.getPath();
+
+        if (scope == VariableScope.SITE_ROOT) {
+            return getSiteRootPath(pagePath, siteRootDepth);
+        }
+
+        return pagePath;
+
+    }
+
+    protected static String getSiteRootPath(String pagePath, int siteRootDepth) {
+
+        int currentIndex = 0;
+
+        for (int depth = 0; depth < siteRootDepth; depth++) {
+            currentIndex = pagePath.indexOf('/', currentIndex + 1);
+
+            if (currentIndex < 0) {
+                return pagePath;
+            }
+        }
+
+        return pagePath.substring(0, currentIndex);
+
+    }
+
+    private static String getPagePath(String path) {
+
+        int contentIndex = path.indexOf(PAGE_CONTENT + "/");
+
+        if (contentIndex == -1 && path.endsWith(PAGE_CONTENT)) {
+            contentIndex = path.length() - PAGE_CONTENT.length();
+        }
+
+        return contentIndex != -1 ? path.substring(0, contentIndex) : path;
+
+    }
+
+    private Cache<String, Long> buildInvalidationRecordCache(int cacheSize) {
+
+        return CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .removalListener(new RemovalListener<String, Long>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<String, Long> notification) {
+                        if (notification.wasEvicted()) {
+                            raiseFloorGeneration(notification.getValue());
+                        }
+                    }
+                })
+                .build();
+
+    }
+
+    /*
+     * Once the record of an invalidation is evicted, variables produced before it can no longer be told apart from
+     * those it covered, so all of them are treated as stale
+     */
+    private void raiseFloorGeneration(long evictedGeneration) {
+
+        long currentFloor = floorGeneration.get();
+
+        while (evictedGeneration > currentFloor && !floorGeneration.compareAndSet(currentFloor, evictedGeneration)) {
+            currentFloor = floorGeneration.get();
+        }
+
+    }
+
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.variables;
+
+import java.util.Map;
+
+/**
+ * <p>
+ * Replaces the <code>&lt;%name%&gt;</code> placeholders of a library with the values of the named variables in a single
+ * pass over the library.
+ * </p>
+ * <p>
+ * A placeholder runs from its opening <code>&lt;%</code> to the next <code>%&gt;</code>.  Placeholders naming an
+ * unknown variable are left as they are and scanning resumes just after their opening <code>&lt;%</code>.  Values are
+ * written as is - a placeholder within a value is not itself replaced.
+ * </p>
+ */
+public final class VariableSubstitution {
+
+    public static final String PLACEHOLDER_START = "<%";
+    public static final String PLACEHOLDER_END = "%>";
+
+    private VariableSubstitution() {
+    }
+
+    /**
+     *
+     * @param library
+     * @param variables
+     * @return The library with each placeholder naming a known variable replaced by the variable's value
+     */
+    public static String substitute(String library, Map<String, String> variables) {
+
+        if (variables.isEmpty()) {
+            return library;
+        }
+
+        int placeholderStart = library.indexOf(PLACEHOLDER_START);
+
+        if (placeholderStart < 0) {
+            return library;
+        }
+
+        StringBuilder substitutedLibrary = new StringBuilder(library.length());
+
+        int position = 0;
+        int placeholderEnd = -1;
+
+        while (placeholderStart >= 0) {
+
+            /*
+             * The end found for an earlier placeholder start is reused while it lies ahead so that a run of unmatched
+             * starts does not rescan the library
+             */
+            if (placeholderEnd < placeholderStart + PLACEHOLDER_START.length()) {
+                placeholderEnd = library.indexOf(PLACEHOLDER_END, placeholderStart + PLACEHOLDER_START.length());
+
+                if (placeholderEnd < 0) {
+                    break;
+                }
+            }
+
+            String value = variables.get(library.substring(placeholderStart + PLACEHOLDER_START.length(), placeholderEnd));
+
+            if (value != null) {
+                substitutedLibrary.append(library, position, placeholderStart).append(value);
+                position = placeholderEnd + PLACEHOLDER_END.length();
+                placeholderStart = library.indexOf(PLACEHOLDER_START, position);
+            }
+            else {
+                placeholderStart = library.indexOf(PLACEHOLDER_START, placeholderStart + 1);
+            }
+
+        }
+
+        if (position == 0) {
+            return library;
+        }
+
+        return substitutedLibrary.append(library, position, library.length()).toString();
+
+    }
+
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.servlets;
+
+import com.citytechinc.cq.clientlibs.api.constants.ServletConstants;
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.ClientLibraryRepository;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.bulk.BulkCompilationResult;
+import com.citytechinc.cq.clientlibs.core.util.DomainToJSONUtil;
+import com.citytechinc.cq.clientlibs.core.util.PageContentUtil;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.net.MediaType;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.sling.SlingServlet;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.servlets.SlingAllMethodsServlet;
+import org.apache.sling.commons.json.JSONArray;
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+@SlingServlet(
+        name = "Client Librarian - Bulk Compilation Servlet",
+        description = "Compiles and caches the Page Libraries of a set of pages in a single job.",
+        paths = "/bin/clientlibrarian/compile",
+        extensions = "json",
+        methods = "POST"
+)
+public class BulkCompilationServlet extends SlingAllMethodsServlet {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkCompilationServlet.class);
+
+    private static final String REQ_PARAM_PATH = "path";
+    private static final String REQ_PARAM_TYPE = "type";
+    private static final String REQ_PARAM_BRAND = "brand";
+    private static final String REQ_PARAM_DEEP = "deep";
+
+    private static final String RESP_KEY_RESULT = "result";
+
+    @Reference
+    private ClientLibraryRepository clientLibraryRepository;
+
+    @Override
+    protected void doPost(SlingHttpServletRequest request, SlingHttpServletResponse response) throws ServletException, IOException {
+
+        // get request parameters
+        List<String> paramPaths = getParameterValues(request, REQ_PARAM_PATH);
+        String paramDeep = request.getParameter(REQ_PARAM_DEEP);
+        boolean deep = StringUtils.isBlank(paramDeep) || Boolean.parseBoolean(paramDeep);
+
+        // set up response stuff
+        JSONObject jsonResponse = new JSONObject();
+        JSONArray jsonStatusMessages = new JSONArray();
+        int statusCode = 400;
+
+        try {
+
+            if (!paramPaths.isEmpty()) {
+
+                List<Resource> roots = PageContentUtil.getPageContentResources(request.getResourceResolver(), paramPaths, deep);
+
+                BulkCompilationResult result = clientLibraryRepository.compileClientLibraries(
+                        roots, getLibraryTypes(request), Sets.newLinkedHashSet(getParameterValues(request, REQ_PARAM_BRAND)));
+
+                jsonResponse.put(RESP_KEY_RESULT, DomainToJSONUtil.buildJsonBulkCompilationResult(result));
+                statusCode = 200;
+
+            } else {
+
+                LOGGER.error("Bulk compilation requested without any page paths. Returning 400.");
+                jsonStatusMessages.put("At least one '" + REQ_PARAM_PATH + "' parameter is required.");
+
+            }
+
+            jsonResponse.put(ServletConstants.RESP_KEY_STATUS, jsonStatusMessages.length() > 0 ? jsonStatusMessages : ServletConstants.STATUS_SUCCESS);
+
+        } catch (JSONException e) {
+
+            // could not write out JSON for some reason, error out with a 500
+            LOGGER.error("An error occurred.", e);
+            statusCode = 500;
+
+        }
+
+        // write response
+        response.setStatus(statusCode);
+        response.setContentType(MediaType.JSON_UTF_8.toString());
+        response.getWriter().write(jsonResponse.toString());
+
+    }
+
+    private static Set<LibraryType> getLibraryTypes(SlingHttpServletRequest request) {
+
+        Set<LibraryType> libraryTypes = EnumSet.noneOf(LibraryType.class);
+
+        for (String currentType : getParameterValues(request, REQ_PARAM_TYPE)) {
+            if (LibraryType.JS_EXTENSION.equalsIgnoreCase(currentType)) {
+                libraryTypes.add(LibraryType.JS);
+            }
+            else if (LibraryType.CSS_EXTENSION.equalsIgnoreCase(currentType)) {
+                libraryTypes.add(LibraryType.CSS);
+            }
+        }
+
+        if (libraryTypes.isEmpty()) {
+            return EnumSet.allOf(LibraryType.class);
+        }
+
+        return libraryTypes;
+
+    }
+
+    private static List<String> getParameterValues(SlingHttpServletRequest request, String name) {
+
+        List<String> values = Lists.newArrayList();
+        String[] parameterValues = request.getParameterValues(name);
+
+        if (parameterValues != null) {
+            for (String currentValue : parameterValues) {
+                if (StringUtils.isNotBlank(currentValue)) {
+                    values.add(currentValue.trim());
+                }
+            }
+        }
+
+        return values;
+
+    }
+
+}
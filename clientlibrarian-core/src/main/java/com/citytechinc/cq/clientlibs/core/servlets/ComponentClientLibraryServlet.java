@@ -22,7 +22,9 @@ import javax.servlet.http.HttpServletResponse;
 
 import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType;
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.ClientLibraryRepository;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.CachedLibrary;
 import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCompilationException;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.ClientLibraryMetrics;
 import com.day.cq.commons.jcr.JcrConstants;
 import com.google.common.base.Optional;
 import org.apache.commons.lang.math.NumberUtils;
@@ -49,10 +51,17 @@ public class ComponentClientLibraryServlet extends SlingSafeMethodsServlet {
     private static final Logger LOG = LoggerFactory.getLogger(ComponentClientLibraryServlet.class);
 
     public static final String SELECTOR = "pagelib";
+    public static final String REMAINDER_SELECTOR = "remainder";
+    public static final String GRANULAR_SELECTOR = "granular";
+    public static final String SOURCE_MAP_SELECTOR = "sourcemap";
+    public static final String SOURCE_MAP_CONTENT_TYPE = "application/json";
 
     @Reference
     ClientLibraryRepository clientLibraryRepository;
 
+    @Reference
+    ClientLibraryMetrics clientLibraryMetrics;
+
     @Override
     public void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws ServletException, IOException {
         Optional<LibraryType> requestedLibraryType = Optional.fromNullable(LibraryType.fromRequest(request));
@@ -68,9 +77,47 @@ public class ComponentClientLibraryServlet extends SlingSafeMethodsServlet {
         try {
             final Resource jcrContent = request.getResource().getChild(JcrConstants.JCR_CONTENT);
 
-            String compiledLibrary = clientLibraryRepository.compileClientLibrary(jcrContent, requestedLibraryType.get(), brand);
-            response.setContentType(requestedLibraryType.get().contentType);
-            response.getWriter().write(compiledLibrary);
+            if (hasSelector(request, SOURCE_MAP_SELECTOR)) {
+                Optional<String> sourceMap = clientLibraryRepository.getSourceMap(jcrContent, requestedLibraryType.get(), brand);
+
+                if (!sourceMap.isPresent()) {
+                    response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                    return;
+                }
+
+                response.setContentType(SOURCE_MAP_CONTENT_TYPE);
+                response.getWriter().write(sourceMap.get());
+                return;
+            }
+
+            CachedLibrary compiledLibrary;
+
+            if (hasSelector(request, REMAINDER_SELECTOR)) {
+                compiledLibrary = clientLibraryRepository.compileClientLibraryRemainderEntry(jcrContent, requestedLibraryType.get(), brand);
+            }
+            else if (hasSelector(request, GRANULAR_SELECTOR)) {
+                compiledLibrary = clientLibraryRepository.compileGranularRemainderEntry(jcrContent, requestedLibraryType.get(), brand);
+            }
+            else {
+                compiledLibrary = clientLibraryRepository.compileClientLibraryEntry(jcrContent, requestedLibraryType.get(), brand);
+            }
+
+            /*
+             * The library is written as the bytes it was cached as rather than being decoded and encoded again
+             */
+            try {
+                response.setContentType(requestedLibraryType.get().contentType);
+                response.setCharacterEncoding(compiledLibrary.getEncoding());
+
+                if (compiledLibrary.getLength() <= Integer.MAX_VALUE) {
+                    response.setContentLength((int) compiledLibrary.getLength());
+                }
+
+                compiledLibrary.writeTo(response.getOutputStream());
+                clientLibraryMetrics.recordBytesServed(requestedLibraryType.get(), compiledLibrary.getLength());
+            } finally {
+                compiledLibrary.close();
+            }
         } catch (ClientLibraryCompilationException e) {
             LOG.error("Error encountered requesting page library for " + request.getResource().getPath(), e);
             response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
@@ -82,7 +129,7 @@ public class ComponentClientLibraryServlet extends SlingSafeMethodsServlet {
         String[] selectors = request.getRequestPathInfo().getSelectors();
 
         for (String currentSelector : selectors) {
-            if (!NumberUtils.isNumber(currentSelector) && !SELECTOR.equals(currentSelector)) {
+            if (!NumberUtils.isNumber(currentSelector) && !SELECTOR.equals(currentSelector) && !REMAINDER_SELECTOR.equals(currentSelector) && !GRANULAR_SELECTOR.equals(currentSelector) && !SOURCE_MAP_SELECTOR.equals(currentSelector)) {
                 return Optional.of(currentSelector);
             }
         }
@@ -90,4 +137,16 @@ public class ComponentClientLibraryServlet extends SlingSafeMethodsServlet {
         return Optional.absent();
 
     }
+
+    private static boolean hasSelector(SlingHttpServletRequest request, String selector) {
+
+        for (String currentSelector : request.getRequestPathInfo().getSelectors()) {
+            if (selector.equals(currentSelector)) {
+                return true;
+            }
+        }
+
+        return false;
+
+    }
 }
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.servlets;
+
+import com.citytechinc.cq.clientlibs.api.constants.Types;
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.ClientLibraryRepository;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCompilationException;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.granular.GranularLibrary;
+import com.google.common.base.Optional;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.sling.SlingServlet;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Serves a single Client Library compiled on its own.  Requests take the form
+ * <code>&lt;client library folder&gt;.librarian.&lt;fingerprint&gt;.&lt;js|css&gt;</code>.  Responses whose
+ * fingerprint matches the current compiled content are marked as cacheable for a long period.
+ */
+@SlingServlet(
+        resourceTypes = { Types.CQ_CLIENT_LIBRARY_FOLDER },
+        selectors = { GranularLibraryServlet.SELECTOR },
+        extensions = { LibraryType.JS_EXTENSION, LibraryType.CSS_EXTENSION },
+        methods = { "GET" })
+public class GranularLibraryServlet extends SlingSafeMethodsServlet {
+
+    private static final long serialVersionUID = 2270338610562712842L;
+
+    private static final Logger LOG = LoggerFactory.getLogger(GranularLibraryServlet.class);
+
+    public static final String SELECTOR = "librarian";
+
+    private static final String CACHE_CONTROL_HEADER = "Cache-Control";
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000";
+
+    @Reference
+    ClientLibraryRepository clientLibraryRepository;
+
+    @Override
+    public void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws ServletException, IOException {
+
+        LibraryType requestedLibraryType = LibraryType.fromRequest(request);
+
+        if (requestedLibraryType == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        String[] selectors = request.getRequestPathInfo().getSelectors();
+        String clientLibraryPath = request.getResource().getPath();
+
+        try {
+            Optional<GranularLibrary> compiledLibrary = clientLibraryRepository.compileGranularLibrary(clientLibraryPath, requestedLibraryType);
+
+            if (!compiledLibrary.isPresent()) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+
+            /*
+             * A request carrying an outdated fingerprint is answered with the current content so that pages rendered
+             * before the library changed still function, but the response must not be cached under that fingerprint
+             */
+            if (selectors.length > 1 && compiledLibrary.get().getFingerprint().equals(selectors[1])) {
+                response.setHeader(CACHE_CONTROL_HEADER, IMMUTABLE_CACHE_CONTROL);
+            }
+
+            response.setContentType(requestedLibraryType.contentType);
+            response.getWriter().write(compiledLibrary.get().getContent());
+        } catch (ClientLibraryCompilationException e) {
+            LOG.error("Error encountered requesting client library " + clientLibraryPath, e);
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+
+    }
+
+}
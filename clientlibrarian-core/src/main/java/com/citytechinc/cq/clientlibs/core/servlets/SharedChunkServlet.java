@@ -0,0 +1,106 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.servlets;
+
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.ClientLibraryRepository;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCompilationException;
+import com.google.common.base.Optional;
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.sling.SlingServlet;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Serves the shared chunks of Page Libraries.  Requests take the form
+ * <code>/bin/clientlibrarian/chunk.&lt;generation&gt;.&lt;index&gt;[.&lt;brand&gt;].&lt;js|css&gt;</code>.  Since the
+ * content of a chunk never changes within a generation, responses for the current generation are marked as cacheable
+ * for a long period.
+ */
+@SlingServlet(
+        paths = SharedChunkServlet.PATH,
+        extensions = { LibraryType.JS_EXTENSION, LibraryType.CSS_EXTENSION },
+        methods = { "GET" })
+public class SharedChunkServlet extends SlingSafeMethodsServlet {
+
+    private static final long serialVersionUID = -3127707214981436502L;
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedChunkServlet.class);
+
+    public static final String PATH = "/bin/clientlibrarian/chunk";
+
+    private static final String CACHE_CONTROL_HEADER = "Cache-Control";
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000";
+
+    @Reference
+    ClientLibraryRepository clientLibraryRepository;
+
+    @Override
+    public void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws ServletException, IOException {
+
+        LibraryType requestedLibraryType = LibraryType.fromRequest(request);
+        String[] selectors = request.getRequestPathInfo().getSelectors();
+
+        if (requestedLibraryType == null || selectors.length < 2 || !NumberUtils.isDigits(selectors[0]) || !NumberUtils.isDigits(selectors[1])) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        Long requestedGeneration = NumberUtils.toLong(selectors[0]);
+        Integer requestedIndex = NumberUtils.toInt(selectors[1]);
+        Optional<String> brand = selectors.length > 2 ? Optional.of(selectors[2]) : Optional.<String>absent();
+
+        Optional<Long> currentGeneration = clientLibraryRepository.getSharedChunkGeneration();
+
+        if (!currentGeneration.isPresent()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        try {
+            Optional<String> compiledChunk = clientLibraryRepository.compileSharedChunk(requestedIndex, requestedLibraryType, brand);
+
+            if (!compiledChunk.isPresent()) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+
+            /*
+             * A request for a previous generation is answered with the current chunk so that pages rendered before
+             * a new generation was derived still function, but the response must not be cached as that generation
+             */
+            if (currentGeneration.get().equals(requestedGeneration)) {
+                response.setHeader(CACHE_CONTROL_HEADER, IMMUTABLE_CACHE_CONTROL);
+            }
+
+            response.setContentType(requestedLibraryType.contentType);
+            response.getWriter().write(compiledChunk.get());
+        } catch (ClientLibraryCompilationException e) {
+            LOG.error("Error encountered requesting shared chunk " + requestedIndex + " of generation " + requestedGeneration, e);
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+
+    }
+
+}
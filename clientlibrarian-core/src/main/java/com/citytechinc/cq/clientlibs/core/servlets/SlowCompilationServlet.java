@@ -0,0 +1,85 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.servlets;
+
+import com.citytechinc.cq.clientlibs.api.constants.ServletConstants;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.ClientLibraryMetrics;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.SlowCompilation;
+import com.citytechinc.cq.clientlibs.core.util.DomainToJSONUtil;
+import com.google.common.net.MediaType;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.sling.SlingServlet;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.commons.json.JSONArray;
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+
+@SlingServlet(
+        name = "Client Librarian - Slow Compilation Servlet",
+        description = "Lists the slowest Page Library compilations along with the time spent in each phase.",
+        paths = "/bin/clientlibrarian/slowcompilations",
+        extensions = "json",
+        methods = "GET"
+)
+public class SlowCompilationServlet extends SlingSafeMethodsServlet {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SlowCompilationServlet.class);
+
+    private static final String RESP_KEY_COMPILATIONS = "compilations";
+
+    @Reference
+    private ClientLibraryMetrics clientLibraryMetrics;
+
+    @Override
+    protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws ServletException, IOException {
+
+        JSONObject jsonResponse = new JSONObject();
+        int statusCode = 200;
+
+        try {
+
+            JSONArray jsonCompilations = new JSONArray();
+
+            for (SlowCompilation currentCompilation : clientLibraryMetrics.getSlowCompilations()) {
+                jsonCompilations.put(DomainToJSONUtil.buildJsonSlowCompilation(currentCompilation));
+            }
+
+            jsonResponse.put(RESP_KEY_COMPILATIONS, jsonCompilations);
+            jsonResponse.put(ServletConstants.RESP_KEY_STATUS, ServletConstants.STATUS_SUCCESS);
+
+        } catch (JSONException e) {
+
+            // could not write out JSON for some reason, error out with a 500
+            LOGGER.error("An error occurred.", e);
+            statusCode = 500;
+
+        }
+
+        // write response
+        response.setStatus(statusCode);
+        response.setContentType(MediaType.JSON_UTF_8.toString());
+        response.getWriter().write(jsonResponse.toString());
+
+    }
+
+}
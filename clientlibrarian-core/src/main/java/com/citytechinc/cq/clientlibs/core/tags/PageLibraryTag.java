@@ -15,29 +15,45 @@
  */
 package com.citytechinc.cq.clientlibs.core.tags;
 
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.ClientLibraryRepository;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.chunks.PageLibraryPartition;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCompilationException;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.granular.GranularLibrary;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.granular.GranularPageLibrary;
 import com.citytechinc.cq.clientlibs.core.servlets.ComponentClientLibraryServlet;
+import com.citytechinc.cq.clientlibs.core.servlets.GranularLibraryServlet;
+import com.citytechinc.cq.clientlibs.core.servlets.SharedChunkServlet;
 import com.day.cq.commons.jcr.JcrConstants;
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.scripting.SlingBindings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.servlet.jsp.JspTagException;
 import javax.servlet.jsp.tagext.TagSupport;
 import java.io.IOException;
+import java.util.List;
 
 public class PageLibraryTag extends TagSupport {
 
     public static final String ATTR_SLING_REQUEST = "slingRequest";
 
+    public static final String MODE_GRANULAR = "granular";
+
     private static final Logger LOG = LoggerFactory.getLogger(PageLibraryTag.class);
 
     private String type;
 
     private String brand;
 
+    private String mode;
+
     @Override
     public int doEndTag() throws JspTagException {
 
@@ -68,18 +84,12 @@ public class PageLibraryTag extends TagSupport {
 
         StringBuilder jsOutputBuilder = new StringBuilder();
 
-        jsOutputBuilder.append("<script type=\"text/javascript\" src=\"");
-        jsOutputBuilder.append(getIncludeFilePath(request));
-        jsOutputBuilder.append(".");
-        jsOutputBuilder.append(ComponentClientLibraryServlet.SELECTOR);
-
-        if (StringUtils.isNotBlank(brand)) {
-            jsOutputBuilder.append(".");
-            jsOutputBuilder.append(brand);
+        for (String currentSource : getLibrarySources(request, LibraryType.JS)) {
+            jsOutputBuilder.append("<script type=\"text/javascript\" src=\"");
+            jsOutputBuilder.append(currentSource);
+            jsOutputBuilder.append(".js\"></script>\n");
         }
 
-        jsOutputBuilder.append(".js\"></script>\n");
-
         return jsOutputBuilder.toString();
 
     }
@@ -88,26 +98,202 @@ public class PageLibraryTag extends TagSupport {
 
         StringBuilder cssOutputBuilder = new StringBuilder();
 
-        cssOutputBuilder.append("<link ");
-        cssOutputBuilder.append("href=\"");
-        cssOutputBuilder.append(getIncludeFilePath(request));
-        cssOutputBuilder.append(".");
-        cssOutputBuilder.append(ComponentClientLibraryServlet.SELECTOR);
+        for (String currentSource : getLibrarySources(request, LibraryType.CSS)) {
+            cssOutputBuilder.append("<link ");
+            cssOutputBuilder.append("href=\"");
+            cssOutputBuilder.append(currentSource);
+            cssOutputBuilder.append(".css\" ");
+            cssOutputBuilder.append("rel=\"stylesheet\" ");
+            cssOutputBuilder.append("type=\"text/css\"");
+            cssOutputBuilder.append("/>\n");
+        }
+
+        return cssOutputBuilder.toString();
+
+    }
+
+    /**
+     * Builds the extensionless sources from which the Page Library of the requested type is served.  When the Page
+     * Library is partitioned these are the shared chunks the page uses followed by the page's remainder, otherwise
+     * the single Page Library.
+     *
+     * @param request
+     * @param libraryType
+     * @return The ordered list of library sources
+     */
+    private List<String> getLibrarySources(SlingHttpServletRequest request, LibraryType libraryType) {
+
+        List<String> sources = Lists.newArrayList();
+
+        if (MODE_GRANULAR.equals(mode)) {
+            Optional<GranularPageLibrary> granularPageLibrary = getGranularPageLibrary(request, libraryType);
+
+            if (granularPageLibrary.isPresent()) {
+                for (GranularLibrary currentLibrary : granularPageLibrary.get().getLibraries()) {
+                    StringBuilder librarySourceBuilder = new StringBuilder();
+
+                    librarySourceBuilder.append(request.getResourceResolver().map(request, currentLibrary.getClientLibraryPath()));
+                    librarySourceBuilder.append(".");
+                    librarySourceBuilder.append(GranularLibraryServlet.SELECTOR);
+                    librarySourceBuilder.append(".");
+                    librarySourceBuilder.append(currentLibrary.getFingerprint());
+
+                    sources.add(librarySourceBuilder.toString());
+                }
+
+                if (granularPageLibrary.get().hasRemainder()) {
+                    StringBuilder remainderSourceBuilder = new StringBuilder();
+
+                    remainderSourceBuilder.append(getIncludeFilePath(request));
+                    remainderSourceBuilder.append(".");
+                    remainderSourceBuilder.append(ComponentClientLibraryServlet.SELECTOR);
+                    remainderSourceBuilder.append(".");
+                    remainderSourceBuilder.append(ComponentClientLibraryServlet.GRANULAR_SELECTOR);
+                    appendBrand(remainderSourceBuilder);
+
+                    sources.add(remainderSourceBuilder.toString());
+                }
+
+                return sources;
+            }
+        }
+
+        Optional<PageLibraryPartition> partition = getPartition(request, libraryType);
+
+        if (partition.isPresent() && partition.get().isPartitioned()) {
+            for (Integer currentChunkIndex : partition.get().getChunkIndices()) {
+                StringBuilder chunkSourceBuilder = new StringBuilder();
+
+                chunkSourceBuilder.append(request.getResourceResolver().map(request, SharedChunkServlet.PATH));
+                chunkSourceBuilder.append(".");
+                chunkSourceBuilder.append(partition.get().getGeneration());
+                chunkSourceBuilder.append(".");
+                chunkSourceBuilder.append(currentChunkIndex);
+                appendBrand(chunkSourceBuilder);
+
+                sources.add(chunkSourceBuilder.toString());
+            }
+
+            if (partition.get().hasRemainder()) {
+                StringBuilder remainderSourceBuilder = new StringBuilder();
+
+                remainderSourceBuilder.append(getIncludeFilePath(request));
+                remainderSourceBuilder.append(".");
+                remainderSourceBuilder.append(ComponentClientLibraryServlet.SELECTOR);
+                remainderSourceBuilder.append(".");
+                remainderSourceBuilder.append(ComponentClientLibraryServlet.REMAINDER_SELECTOR);
+                remainderSourceBuilder.append(".");
+                remainderSourceBuilder.append(partition.get().getGeneration());
+                appendBrand(remainderSourceBuilder);
+
+                sources.add(remainderSourceBuilder.toString());
+            }
+
+            return sources;
+        }
+
+        StringBuilder sourceBuilder = new StringBuilder();
+
+        sourceBuilder.append(getIncludeFilePath(request));
+        sourceBuilder.append(".");
+        sourceBuilder.append(ComponentClientLibraryServlet.SELECTOR);
+        appendBrand(sourceBuilder);
+
+        sources.add(sourceBuilder.toString());
+
+        return sources;
+
+    }
+
+    private void appendBrand(StringBuilder sourceBuilder) {
 
         if (StringUtils.isNotBlank(brand)) {
-            cssOutputBuilder.append(".");
-            cssOutputBuilder.append(brand);
+            sourceBuilder.append(".");
+            sourceBuilder.append(brand);
         }
 
-        cssOutputBuilder.append(".css\" ");
-        cssOutputBuilder.append("rel=\"stylesheet\" ");
-        cssOutputBuilder.append("type=\"text/css\"");
-        cssOutputBuilder.append("/>\n");
+    }
 
-        return cssOutputBuilder.toString();
+    /**
+     * Looks up the shared chunk partition of the current page's library.  Any failure in doing so results in the
+     * whole Page Library being included.
+     *
+     * @param request
+     * @param libraryType
+     * @return The partition or absent if it could not be determined
+     */
+    private Optional<PageLibraryPartition> getPartition(SlingHttpServletRequest request, LibraryType libraryType) {
+
+        Optional<ClientLibraryRepository> clientLibraryRepository = getClientLibraryRepository(request);
+        Optional<Resource> pageContentResource = getPageContentResource(request);
+
+        if (!clientLibraryRepository.isPresent() || !pageContentResource.isPresent()) {
+            return Optional.absent();
+        }
+
+        try {
+            return Optional.of(clientLibraryRepository.get().partitionClientLibrary(pageContentResource.get(), libraryType, getBrandOptional()));
+        } catch (ClientLibraryCompilationException e) {
+            LOG.error("Error encountered partitioning the page library for " + request.getResource().getPath() + ", including the whole page library", e);
+            return Optional.absent();
+        }
 
     }
 
+    /**
+     * Looks up the split of the current page's library into individually served Client Libraries and a remainder.
+     * Any failure in doing so results in the whole Page Library being included.
+     *
+     * @param request
+     * @param libraryType
+     * @return The split Page Library or absent if it could not be determined
+     */
+    private Optional<GranularPageLibrary> getGranularPageLibrary(SlingHttpServletRequest request, LibraryType libraryType) {
+
+        Optional<ClientLibraryRepository> clientLibraryRepository = getClientLibraryRepository(request);
+        Optional<Resource> pageContentResource = getPageContentResource(request);
+
+        if (!clientLibraryRepository.isPresent() || !pageContentResource.isPresent()) {
+            return Optional.absent();
+        }
+
+        try {
+            return Optional.of(clientLibraryRepository.get().getGranularPageLibrary(pageContentResource.get(), libraryType, getBrandOptional()));
+        } catch (ClientLibraryCompilationException e) {
+            LOG.error("Error encountered splitting the page library for " + request.getResource().getPath() + ", including the whole page library", e);
+            return Optional.absent();
+        }
+
+    }
+
+    private static Optional<ClientLibraryRepository> getClientLibraryRepository(SlingHttpServletRequest request) {
+
+        SlingBindings bindings = (SlingBindings) request.getAttribute(SlingBindings.class.getName());
+
+        if (bindings == null || bindings.getSling() == null) {
+            return Optional.absent();
+        }
+
+        return Optional.fromNullable(bindings.getSling().getService(ClientLibraryRepository.class));
+
+    }
+
+    private static Optional<Resource> getPageContentResource(SlingHttpServletRequest request) {
+
+        Resource resource = request.getResource();
+
+        if (resource.getName().equals(JcrConstants.JCR_CONTENT)) {
+            return Optional.of(resource);
+        }
+
+        return Optional.fromNullable(resource.getChild(JcrConstants.JCR_CONTENT));
+
+    }
+
+    private Optional<String> getBrandOptional() {
+        return StringUtils.isNotBlank(brand) ? Optional.of(brand) : Optional.<String>absent();
+    }
+
     /**
      * Get the path to the resource that has client libraries.
      *
@@ -162,4 +348,12 @@ public class PageLibraryTag extends TagSupport {
     public void setBrand(String brand) {
         this.brand = brand;
     }
+
+    public String getMode() {
+        return this.mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
 }
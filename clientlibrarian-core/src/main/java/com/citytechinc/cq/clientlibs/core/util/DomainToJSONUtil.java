@@ -18,11 +18,16 @@ package com.citytechinc.cq.clientlibs.core.util;
 import com.citytechinc.cq.clientlibs.api.domain.component.DependentComponent;
 import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary;
 import com.citytechinc.cq.clientlibs.api.domain.sling.runmode.SlingRunModeGroup;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.bulk.BulkCompilationResult;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.CompilationPhase;
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.SlowCompilation;
 import com.citytechinc.cq.clientlibs.core.structures.graph.dag.EdgeType;
 import org.apache.sling.commons.json.JSONArray;
 import org.apache.sling.commons.json.JSONException;
 import org.apache.sling.commons.json.JSONObject;
 
+import java.util.Map;
+
 public class DomainToJSONUtil {
 
     private static final String KEY_NODE_ID = "id";
@@ -53,6 +58,24 @@ public class DomainToJSONUtil {
     private static final String KEY_EDGE_TO = "to";
     private static final String KEY_EDGE_TYPE = "type";
 
+    private static final String KEY_BULK_PAGE_COUNT = "pageCount";
+    private static final String KEY_BULK_LIBRARY_COUNT = "libraryCount";
+    private static final String KEY_BULK_CACHED_LIBRARY_COUNT = "cachedLibraryCount";
+    private static final String KEY_BULK_DISTINCT_COMPILATION_COUNT = "distinctCompilationCount";
+    private static final String KEY_BULK_COMPILED_LIBRARY_COUNT = "compiledLibraryCount";
+    private static final String KEY_BULK_FAILURES = "failures";
+    private static final String KEY_BULK_DURATION = "durationMillis";
+
+    private static final String KEY_SLOW_TIMESTAMP = "timestamp";
+    private static final String KEY_SLOW_PATH = "path";
+    private static final String KEY_SLOW_TYPE = "type";
+    private static final String KEY_SLOW_BRAND = "brand";
+    private static final String KEY_SLOW_LIBRARY_COUNT = "libraryCount";
+    private static final String KEY_SLOW_BYTES = "bytes";
+    private static final String KEY_SLOW_DURATION = "durationMillis";
+    private static final String KEY_SLOW_LESS_COMPILE = "lessCompileMillis";
+    private static final String KEY_SLOW_PHASES = "phaseMillis";
+
     /**
      * Create a {@link org.apache.sling.commons.json.JSONObject} based on a category.
      *
@@ -165,4 +188,59 @@ public class DomainToJSONUtil {
 
     }
 
+    /**
+     * Create a {@link org.apache.sling.commons.json.JSONObject} based on a {@link com.citytechinc.cq.clientlibs.api.services.clientlibs.bulk.BulkCompilationResult}.
+     *
+     * @param result result to transform into JSON.
+     * @return {@link org.apache.sling.commons.json.JSONObject} containing the result data.
+     * @throws JSONException
+     */
+    public static JSONObject buildJsonBulkCompilationResult(BulkCompilationResult result) throws JSONException {
+
+        JSONObject jsonResult = new JSONObject();
+
+        jsonResult.put(KEY_BULK_PAGE_COUNT, result.getPageCount());
+        jsonResult.put(KEY_BULK_LIBRARY_COUNT, result.getLibraryCount());
+        jsonResult.put(KEY_BULK_CACHED_LIBRARY_COUNT, result.getCachedLibraryCount());
+        jsonResult.put(KEY_BULK_DISTINCT_COMPILATION_COUNT, result.getDistinctCompilationCount());
+        jsonResult.put(KEY_BULK_COMPILED_LIBRARY_COUNT, result.getCompiledLibraryCount());
+        jsonResult.put(KEY_BULK_FAILURES, new JSONObject(result.getFailures()));
+        jsonResult.put(KEY_BULK_DURATION, result.getDurationMillis());
+
+        return jsonResult;
+
+    }
+
+    /**
+     * Create a {@link org.apache.sling.commons.json.JSONObject} based on a slow compilation.
+     *
+     * @param compilation  The slow compilation
+     * @return  {@link org.apache.sling.commons.json.JSONObject} containing the compilation and its phase breakdown.
+     * @throws JSONException
+     */
+    public static JSONObject buildJsonSlowCompilation(SlowCompilation compilation) throws JSONException {
+
+        JSONObject jsonCompilation = new JSONObject();
+
+        jsonCompilation.put(KEY_SLOW_TIMESTAMP, compilation.getTimestamp());
+        jsonCompilation.put(KEY_SLOW_PATH, compilation.getPath());
+        jsonCompilation.put(KEY_SLOW_TYPE, compilation.getType().name());
+        jsonCompilation.put(KEY_SLOW_BRAND, compilation.getBrand());
+        jsonCompilation.put(KEY_SLOW_LIBRARY_COUNT, compilation.getLibraryCount());
+        jsonCompilation.put(KEY_SLOW_BYTES, compilation.getBytes());
+        jsonCompilation.put(KEY_SLOW_DURATION, compilation.getDurationMillis());
+        jsonCompilation.put(KEY_SLOW_LESS_COMPILE, compilation.getLessCompileMillis());
+
+        JSONObject jsonPhases = new JSONObject();
+
+        for (Map.Entry<CompilationPhase, Long> currentPhase : compilation.getPhaseMillis().entrySet()) {
+            jsonPhases.put(currentPhase.getKey().name(), currentPhase.getValue());
+        }
+
+        jsonCompilation.put(KEY_SLOW_PHASES, jsonPhases);
+
+        return jsonCompilation;
+
+    }
+
 }
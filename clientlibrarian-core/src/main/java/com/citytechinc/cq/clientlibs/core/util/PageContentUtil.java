@@ -0,0 +1,88 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.util;
+
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageManager;
+import com.google.common.collect.Lists;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+public class PageContentUtil {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PageContentUtil.class);
+
+    /**
+     * Collects the content resources of the pages at the provided paths, optionally along with those of every page
+     * below them.  Paths which do not resolve to a page are skipped.
+     *
+     * @param resourceResolver
+     * @param paths
+     * @param deep Whether the pages below each path should be collected
+     * @return The page content resources, as would be passed to the Client Library Repository for compilation
+     */
+    public static List<Resource> getPageContentResources(ResourceResolver resourceResolver, Collection<String> paths, boolean deep) {
+
+        PageManager pageManager = resourceResolver.adaptTo(PageManager.class);
+        Set<String> visitedPagePaths = new LinkedHashSet<String>();
+        List<Resource> pageContentResources = Lists.newArrayList();
+
+        for (String currentPath : paths) {
+            Page currentPage = pageManager.getPage(currentPath);
+
+            if (currentPage == null) {
+                LOG.warn("No page found at " + currentPath + ", skipping");
+                continue;
+            }
+
+            addPageContentResources(currentPage, deep, visitedPagePaths, pageContentResources);
+        }
+
+        return pageContentResources;
+
+    }
+
+    private static void addPageContentResources(Page page, boolean deep, Set<String> visitedPagePaths, List<Resource> pageContentResources) {
+
+        if (!visitedPagePaths.add(page.getPath())) {
+            return;
+        }
+
+        Resource contentResource = page.getContentResource();
+
+        if (contentResource != null) {
+            pageContentResources.add(contentResource);
+        }
+
+        if (deep) {
+            Iterator<Page> childPageIterator = page.listChildren();
+
+            while (childPageIterator.hasNext()) {
+                addPageContentResources(childPageIterator.next(), true, visitedPagePaths, pageContentResources);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.api.util
+
+import com.citytechinc.aem.prosper.specs.ProsperSpec
+import spock.lang.Unroll
+
+/**
+ * Verifies that the traversal and query flattening strategies agree on a wide page (many sibling components under a
+ * single paragraph system) and a deep page (components nested many levels down).
+ */
+class ResourceTreeFlatteningSpec extends ProsperSpec {
+
+    static final Integer WIDE_PAGE_COMPONENT_COUNT = 500
+    static final Integer DEEP_PAGE_DEPTH = 60
+
+    static final String WIDE_PAGE_CONTENT = "/content/flattening/wide/jcr:content"
+    static final String DEEP_PAGE_CONTENT = "/content/flattening/deep/jcr:content"
+
+    def setupSpec() {
+
+        nodeBuilder.content {
+            flattening()
+        }
+
+        def flattening = session.getNode("/content/flattening")
+
+        def widePageContent = flattening.addNode("wide", "nt:unstructured").addNode("jcr:content", "nt:unstructured")
+        widePageContent.setProperty("sling:resourceType", "tacodan/components/page")
+        def wideParsys = widePageContent.addNode("par", "nt:unstructured")
+        wideParsys.setProperty("sling:resourceType", "foundation/components/parsys")
+
+        (0..<WIDE_PAGE_COMPONENT_COUNT).each {
+            def component = wideParsys.addNode("taco_" + it, "nt:unstructured")
+            component.setProperty("sling:resourceType", "tacodan/components/taco" + (it % 10))
+            component.addNode("image", "nt:unstructured")
+        }
+
+        def currentNode = flattening.addNode("deep", "nt:unstructured").addNode("jcr:content", "nt:unstructured")
+        currentNode.setProperty("sling:resourceType", "tacodan/components/page")
+
+        (0..<DEEP_PAGE_DEPTH).each {
+            currentNode = currentNode.addNode("level_" + it, "nt:unstructured")
+            if (it % 2 == 0) {
+                currentNode.setProperty("sling:resourceType", "tacodan/components/salsa" + (it % 5))
+            }
+        }
+
+        session.save()
+
+    }
+
+    @Unroll
+    def "Traversal and query flattening should produce the same resources for the #shape page"() {
+
+        setup: "The page content resource"
+        def root = resourceResolver.getResource(path)
+
+        expect: "Both strategies find the same typed resources"
+        paths(ComponentUtils.flattenResourceTree(root, true, ResourceTreeFlatteningStrategy.TRAVERSAL, ComponentUtils.DEFAULT_TRAVERSAL_LIMIT)) ==
+                paths(ComponentUtils.flattenResourceTree(root, true, ResourceTreeFlatteningStrategy.QUERY, ComponentUtils.DEFAULT_TRAVERSAL_LIMIT))
+
+        where:
+        shape  | path
+        "wide" | WIDE_PAGE_CONTENT
+        "deep" | DEEP_PAGE_CONTENT
+
+    }
+
+    def "A traversal exceeding its limit should fall back to the query"() {
+
+        setup: "The wide page content resource"
+        def root = resourceResolver.getResource(WIDE_PAGE_CONTENT)
+
+        expect: "The traversal gives up and the query result is returned"
+        ComponentUtils.traverseResourceTree(root, 10) == null
+        ComponentUtils.flattenResourceTree(root, false, ResourceTreeFlatteningStrategy.TRAVERSAL, 10).size() == WIDE_PAGE_COMPONENT_COUNT + 1
+
+    }
+
+    def paths(Set resources) {
+        resources.collect { it.path } as Set
+    }
+
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.cache.impl
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class DefaultResourceTypeCacheManagerSpec extends Specification {
+
+    @Unroll
+    def "The page path of #path should be #pagePath"() {
+
+        expect:
+        DefaultResourceTypeCacheManager.getPagePath(path) == pagePath
+
+        where:
+        path                                         | pagePath
+        "/content/site/en"                           | "/content/site/en"
+        "/content/site/en/jcr:content"               | "/content/site/en"
+        "/content/site/en/jcr:content/par/text"      | "/content/site/en"
+        "/content/site/en/jcr:contentful"            | "/content/site/en/jcr:contentful"
+
+    }
+
+    def "Cached resource types should be returned until their page is invalidated"() {
+
+        given:
+        def cacheManager = new DefaultResourceTypeCacheManager()
+        cacheManager.cacheResourceTypes("/content/site/en/jcr:content", ["a/b"] as Set, cacheManager.generation)
+
+        expect:
+        cacheManager.getCachedResourceTypes("/content/site/en/jcr:content").get() == ["a/b"] as Set
+
+        when:
+        cacheManager.invalidateCache("/content/site/en/jcr:content/par/text")
+
+        then:
+        !cacheManager.getCachedResourceTypes("/content/site/en/jcr:content").isPresent()
+
+    }
+
+    def "Invalidating a page should invalidate the pages below it but not its ancestors or siblings"() {
+
+        given:
+        def cacheManager = new DefaultResourceTypeCacheManager()
+        long generation = cacheManager.generation
+        ["/content/site", "/content/site/en", "/content/site/en/child", "/content/site/fr", "/content/site/english"].each {
+            cacheManager.cacheResourceTypes(it + "/jcr:content", ["a/b"] as Set, generation)
+        }
+        cacheManager.cacheInheritedResourceTypes("/content/site/en/child/jcr:content/iparsys", ["/x": "a/b"], generation)
+
+        when:
+        cacheManager.invalidateCache("/content/site/en/jcr:content")
+
+        then:
+        cacheManager.getCachedResourceTypes("/content/site/jcr:content").isPresent()
+        !cacheManager.getCachedResourceTypes("/content/site/en/jcr:content").isPresent()
+        !cacheManager.getCachedResourceTypes("/content/site/en/child/jcr:content").isPresent()
+        !cacheManager.getCachedInheritedResourceTypes("/content/site/en/child/jcr:content/iparsys").isPresent()
+        cacheManager.getCachedResourceTypes("/content/site/fr/jcr:content").isPresent()
+        cacheManager.getCachedResourceTypes("/content/site/english/jcr:content").isPresent()
+
+    }
+
+    def "Resource types resolved before an invalidation of their page should not be cached"() {
+
+        given:
+        def cacheManager = new DefaultResourceTypeCacheManager()
+        long generation = cacheManager.generation
+
+        when:
+        cacheManager.invalidateCache("/content/site/jcr:content")
+        cacheManager.cacheResourceTypes("/content/site/en/jcr:content", ["stale/type"] as Set, generation)
+
+        then:
+        !cacheManager.getCachedResourceTypes("/content/site/en/jcr:content").isPresent()
+
+        when:
+        cacheManager.cacheResourceTypes("/content/site/en/jcr:content", ["fresh/type"] as Set, cacheManager.generation)
+
+        then:
+        cacheManager.getCachedResourceTypes("/content/site/en/jcr:content").get() == ["fresh/type"] as Set
+
+    }
+
+    def "Clearing the cache should discard every entry along with results resolved before the clear"() {
+
+        given:
+        def cacheManager = new DefaultResourceTypeCacheManager()
+        long generation = cacheManager.generation
+        cacheManager.cacheResourceTypes("/content/site/jcr:content", ["a/b"] as Set, generation)
+
+        when:
+        cacheManager.clearCache()
+        cacheManager.cacheInheritedResourceTypes("/content/site/jcr:content/iparsys", ["/x": "a/b"], generation)
+
+        then:
+        !cacheManager.getCachedResourceTypes("/content/site/jcr:content").isPresent()
+        !cacheManager.getCachedInheritedResourceTypes("/content/site/jcr:content/iparsys").isPresent()
+
+    }
+
+    def "Evicting the record of an invalidation should not revive entries resolved before it"() {
+
+        given:
+        def cacheManager = new DefaultResourceTypeCacheManager()
+        cacheManager.activate(["cacheSize": 2])
+        long generation = cacheManager.generation
+        cacheManager.cacheInheritedResourceTypes("/content/site/a/jcr:content/iparsys", ["/x": "a/b"], generation)
+
+        when:
+        ["/content/site/a", "/content/site/b", "/content/site/c", "/content/site/d"].each {
+            cacheManager.invalidateCache(it)
+        }
+
+        then:
+        !cacheManager.getCachedInheritedResourceTypes("/content/site/a/jcr:content/iparsys").isPresent()
+
+    }
+
+}
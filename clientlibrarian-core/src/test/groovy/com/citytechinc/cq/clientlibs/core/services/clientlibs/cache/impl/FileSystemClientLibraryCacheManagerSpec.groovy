@@ -0,0 +1,165 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.cache.impl
+
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType
+import org.apache.sling.api.resource.Resource
+import spock.lang.Specification
+
+import java.nio.file.Files
+
+class FileSystemClientLibraryCacheManagerSpec extends Specification {
+
+    File cacheDirectory
+
+    def setup() {
+        cacheDirectory = Files.createTempDirectory("libraries").toFile()
+    }
+
+    def cleanup() {
+        cacheDirectory.deleteDir()
+    }
+
+    def cacheManager() {
+        def cacheManager = new FileSystemClientLibraryCacheManager()
+        cacheManager.activate([cacheDirectory: cacheDirectory.absolutePath])
+        return cacheManager
+    }
+
+    def root(String path) {
+        return [getPath: { path }] as Resource
+    }
+
+    def read(FileSystemClientLibraryCacheManager cacheManager, String path) {
+        def cachedLibrary = cacheManager.getCachedLibraryEntry(root(path), LibraryType.JS, "default")
+
+        if (!cachedLibrary.isPresent()) {
+            return null
+        }
+
+        def output = new ByteArrayOutputStream()
+        cachedLibrary.get().writeTo(output)
+        cachedLibrary.get().close()
+        return new String(output.toByteArray(), "UTF-8")
+    }
+
+    def libraryFiles() {
+        return cacheDirectory.listFiles().findAll { it.name.endsWith(".lib") }
+    }
+
+    def "A cached library should be read back as cached"() {
+
+        given:
+        def cacheManager = cacheManager()
+
+        when:
+        cacheManager.cacheLibrary(root("/etc/clientlibs/site"), LibraryType.JS, "default", "var café = 'crème';")
+
+        then:
+        read(cacheManager, "/etc/clientlibs/site") == "var café = 'crème';"
+        cacheManager.getCachedLibraryEntry(root("/etc/clientlibs/site"), LibraryType.JS, "default").get().length == "var café = 'crème';".getBytes("UTF-8").length
+        cacheManager.getCachedLibrary(root("/etc/clientlibs/site"), LibraryType.JS, "default").get() == "var café = 'crème';"
+        !cacheManager.getCachedLibrary(root("/etc/clientlibs/site"), LibraryType.CSS, "default").isPresent()
+
+    }
+
+    def "Invalidating a root should invalidate the roots below it but not its siblings"() {
+
+        given:
+        def cacheManager = cacheManager()
+        ["/etc/clientlibs/site", "/etc/clientlibs/site/child", "/etc/clientlibs/site-other", "/etc/clientlibs"].each {
+            cacheManager.cacheLibrary(root(it), LibraryType.JS, "default", it)
+        }
+
+        when:
+        cacheManager.invalidateCache("/etc/clientlibs/site")
+
+        then:
+        read(cacheManager, "/etc/clientlibs/site") == null
+        read(cacheManager, "/etc/clientlibs/site/child") == null
+        read(cacheManager, "/etc/clientlibs/site-other") == "/etc/clientlibs/site-other"
+        read(cacheManager, "/etc/clientlibs") == "/etc/clientlibs"
+        libraryFiles().size() == 2
+
+    }
+
+    def "An entry read before its library is invalidated should remain readable until closed"() {
+
+        given:
+        def cacheManager = cacheManager()
+        cacheManager.cacheLibrary(root("/etc/clientlibs/site"), LibraryType.JS, "default", "var a = 1;")
+        def cachedLibrary = cacheManager.getCachedLibraryEntry(root("/etc/clientlibs/site"), LibraryType.JS, "default").get()
+
+        when:
+        cacheManager.invalidateCache("/etc/clientlibs/site", LibraryType.JS, "default")
+        def output = new ByteArrayOutputStream()
+        cachedLibrary.writeTo(output)
+        cachedLibrary.close()
+
+        then:
+        new String(output.toByteArray(), "UTF-8") == "var a = 1;"
+        read(cacheManager, "/etc/clientlibs/site") == null
+
+    }
+
+    def "Libraries cached before a restart should be indexed on activation"() {
+
+        given:
+        def cacheManager = cacheManager()
+        cacheManager.cacheLibrary(root("/etc/clientlibs/site"), LibraryType.JS, "default", "var a = 1;")
+        cacheManager.cacheLibrary(root("/etc/clientlibs/site/child"), LibraryType.JS, "default", "var b = 2;")
+        cacheManager.deactivate()
+
+        when:
+        def restartedCacheManager = cacheManager()
+        restartedCacheManager.invalidateCache("/etc/clientlibs/site/child")
+
+        then:
+        read(restartedCacheManager, "/etc/clientlibs/site") == "var a = 1;"
+        read(restartedCacheManager, "/etc/clientlibs/site/child") == null
+
+    }
+
+    def "A corrupt or truncated library file should be removed on activation rather than served"() {
+
+        given:
+        def cacheManager = cacheManager()
+        cacheManager.cacheLibrary(root("/etc/clientlibs/site"), LibraryType.JS, "default", "var a = 1;")
+        cacheManager.cacheLibrary(root("/etc/clientlibs/other"), LibraryType.JS, "default", "var b = 2;")
+        cacheManager.deactivate()
+
+        def libraryFiles = libraryFiles()
+        def corruptFile = libraryFiles[0]
+        def truncatedFile = libraryFiles[1]
+
+        byte[] corruptBytes = corruptFile.bytes
+        corruptBytes[corruptBytes.length - 1] = (byte) 'X'
+        corruptFile.bytes = corruptBytes
+        truncatedFile.bytes = truncatedFile.bytes[0..-3] as byte[]
+
+        new File(cacheDirectory, "library1.tmp").text = "interrupted"
+
+        when:
+        def restartedCacheManager = cacheManager()
+
+        then:
+        read(restartedCacheManager, "/etc/clientlibs/site") == null
+        read(restartedCacheManager, "/etc/clientlibs/other") == null
+        cacheDirectory.listFiles().length == 0
+
+    }
+
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.cache.impl
+
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ClientLibraryCacheManager
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCachingException
+import com.google.common.base.Optional
+import org.apache.sling.api.resource.Resource
+import spock.lang.Specification
+
+class TieredClientLibraryCacheManagerSpec extends Specification {
+
+    def heap = Mock(ClientLibraryCacheManager)
+    def disk = Mock(ClientLibraryCacheManager)
+
+    def root = Mock(Resource) {
+        getPath() >> "/etc/clientlibs/site"
+    }
+
+    def cacheManager(String... tiers) {
+
+        def cacheManager = new TieredClientLibraryCacheManager()
+        cacheManager.activate([tiers: tiers])
+        cacheManager.bindTier(heap, [(TieredClientLibraryCacheManager.TIER_NAME): "heap"])
+        cacheManager.bindTier(disk, [(TieredClientLibraryCacheManager.TIER_NAME): "disk"])
+
+        cacheManager
+
+    }
+
+    def "A library should only be cached in the tiers admitting its size"() {
+
+        given:
+        def cacheManager = cacheManager(" heap : 1 ", "disk", "unbound:4")
+
+        when:
+        cacheManager.cacheLibrary(root, LibraryType.JS, "default", "a" * 1024)
+
+        then:
+        1 * heap.cacheLibrary(root, LibraryType.JS, "default", _)
+        1 * disk.cacheLibrary(root, LibraryType.JS, "default", _)
+
+        when:
+        cacheManager.cacheLibrary(root, LibraryType.JS, "default", "a" * 1025)
+
+        then:
+        0 * heap.cacheLibrary(*_)
+        1 * disk.cacheLibrary(root, LibraryType.JS, "default", _)
+
+    }
+
+    def "Only the configured tiers should be used, fastest first"() {
+
+        given:
+        def cacheManager = cacheManager("disk")
+
+        when:
+        def library = cacheManager.getCachedLibrary(root, LibraryType.JS, "default")
+
+        then:
+        0 * heap._
+        1 * disk.getCachedLibrary(root, LibraryType.JS, "default") >> Optional.of("var a = 1;")
+        library.get() == "var a = 1;"
+
+    }
+
+    def "A library found in a slower tier should be promoted to the faster tiers"() {
+
+        given:
+        def cacheManager = cacheManager("heap", "disk")
+
+        when:
+        def library = cacheManager.getCachedLibrary(root, LibraryType.JS, "default")
+
+        then:
+        1 * heap.getCachedLibrary(root, LibraryType.JS, "default") >> Optional.absent()
+        1 * disk.getCachedLibrary(root, LibraryType.JS, "default") >> Optional.of("var a = 1;")
+        1 * heap.cacheLibrary(root, LibraryType.JS, "default", "var a = 1;")
+        library.get() == "var a = 1;"
+
+    }
+
+    def "A library found in a slower tier should not be promoted when promotion is disabled"() {
+
+        given:
+        def cacheManager = cacheManager("heap", "disk")
+        cacheManager.activate([tiers: ["heap", "disk"] as String[], promoteOnHit: false])
+
+        when:
+        cacheManager.getCachedLibrary(root, LibraryType.JS, "default")
+
+        then:
+        1 * heap.getCachedLibrary(root, LibraryType.JS, "default") >> Optional.absent()
+        1 * disk.getCachedLibrary(root, LibraryType.JS, "default") >> Optional.of("var a = 1;")
+        0 * heap.cacheLibrary(*_)
+
+    }
+
+    def "A library invalidated while it is looked up should not be promoted"() {
+
+        given:
+        def cacheManager = cacheManager("heap", "disk")
+
+        when:
+        def library = cacheManager.getCachedLibrary(root, LibraryType.JS, "default")
+
+        then:
+        1 * heap.getCachedLibrary(root, LibraryType.JS, "default") >> Optional.absent()
+        1 * disk.getCachedLibrary(root, LibraryType.JS, "default") >> {
+            cacheManager.invalidateCache("/etc/clientlibs/site")
+            Optional.of("var stale = 1;")
+        }
+        0 * heap.cacheLibrary(*_)
+        library.get() == "var stale = 1;"
+
+    }
+
+    def "A library invalidated while it is promoted should be removed from the faster tiers"() {
+
+        given:
+        def cacheManager = cacheManager("heap", "disk")
+
+        when:
+        cacheManager.getCachedLibrary(root, LibraryType.JS, "default")
+
+        then:
+        1 * heap.getCachedLibrary(root, LibraryType.JS, "default") >> Optional.absent()
+        1 * disk.getCachedLibrary(root, LibraryType.JS, "default") >> Optional.of("var stale = 1;")
+        1 * heap.cacheLibrary(root, LibraryType.JS, "default", "var stale = 1;") >> {
+            cacheManager.clearCache()
+        }
+        1 * heap.invalidateCache("/etc/clientlibs/site", LibraryType.JS, "default")
+
+    }
+
+    def "Every tier should be invalidated before the first failure is rethrown"() {
+
+        given:
+        def cacheManager = cacheManager("heap", "disk")
+        def heapFailure = new ClientLibraryCachingException("heap")
+
+        when:
+        cacheManager.invalidateCache("/etc/clientlibs/site")
+
+        then:
+        1 * heap.invalidateCache("/etc/clientlibs/site") >> { throw heapFailure }
+        1 * disk.invalidateCache("/etc/clientlibs/site") >> { throw new ClientLibraryCachingException("disk") }
+        def exception = thrown(ClientLibraryCachingException)
+        exception.is(heapFailure)
+
+    }
+
+}
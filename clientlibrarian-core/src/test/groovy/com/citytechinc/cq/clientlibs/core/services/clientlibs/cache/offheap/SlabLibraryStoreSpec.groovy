@@ -0,0 +1,104 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.cache.offheap
+
+import spock.lang.Specification
+
+import java.nio.channels.Channels
+import java.nio.charset.StandardCharsets
+
+class SlabLibraryStoreSpec extends Specification {
+
+    def bytes(String content) {
+        return content.getBytes(StandardCharsets.UTF_8)
+    }
+
+    def read(SlabLibraryStore store, String key) {
+        def storedLibrary = store.get(key).get()
+        def output = new ByteArrayOutputStream()
+        storedLibrary.writeTo(Channels.newChannel(output))
+        storedLibrary.release()
+        return new String(output.toByteArray(), StandardCharsets.UTF_8)
+    }
+
+    def "A library spanning several pages should be read back as stored"() {
+
+        given:
+        def store = new SlabLibraryStore(64, 16, 4)
+        def library = "var library = 'spans pages';"
+
+        when:
+        store.put("library", bytes(library))
+
+        then:
+        read(store, "library") == library
+        new String(store.get("library").get().getBytes(), StandardCharsets.UTF_8) == library
+
+    }
+
+    def "The least recently used library should be evicted once the store is full"() {
+
+        given:
+        def store = new SlabLibraryStore(16, 8, 4)
+        store.put("a", bytes("aaaaaaa"))
+        store.put("b", bytes("bbbbbbb"))
+
+        when:
+        read(store, "a")
+        store.put("c", bytes("ccccccc"))
+
+        then:
+        store.get("a").isPresent()
+        !store.get("b").isPresent()
+        read(store, "c") == "ccccccc"
+
+    }
+
+    def "The pages of an evicted library should not be reused while it is being read"() {
+
+        given:
+        def store = new SlabLibraryStore(8, 8, 4)
+        store.put("a", bytes("aaaaaaa"))
+        def heldLibrary = store.get("a").get()
+
+        when:
+        def stored = store.put("b", bytes("bbbbbbb"))
+
+        then:
+        !stored
+        new String(heldLibrary.getBytes(), StandardCharsets.UTF_8) == "aaaaaaa"
+
+        when:
+        heldLibrary.release()
+
+        then:
+        store.put("b", bytes("bbbbbbb"))
+        read(store, "b") == "bbbbbbb"
+
+    }
+
+    def "A library larger than the store should not be stored"() {
+
+        given:
+        def store = new SlabLibraryStore(8, 8, 4)
+
+        expect:
+        !store.put("large", bytes("larger than eight bytes"))
+        store.libraryCount == 0
+
+    }
+
+}
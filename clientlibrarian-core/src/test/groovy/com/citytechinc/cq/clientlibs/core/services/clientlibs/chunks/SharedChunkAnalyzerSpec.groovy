@@ -0,0 +1,181 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.chunks
+
+import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary
+import com.google.common.base.Predicate
+import spock.lang.Specification
+
+class SharedChunkAnalyzerSpec extends Specification {
+
+    static final List<Double> THRESHOLDS = [0.9d, 0.5d]
+
+    def library(String name, List<String> dependencies = [], List<String> conditionalDependencies = [], List<String> embeddedCategories = []) {
+        def library = Mock(ClientLibrary)
+        library.getClientLibraryPath() >> "/etc/clientlibs/" + name
+        library.getCategories() >> ([name] as Set)
+        library.getDependencies() >> dependencies
+        library.getConditionalDependencies() >> conditionalDependencies
+        library.getEmbeddedCategories() >> embeddedCategories
+        library.compareTo(_) >> { ClientLibrary other -> ("/etc/clientlibs/" + name) <=> other.clientLibraryPath }
+        return library
+    }
+
+    /**
+     * Records ten sampled Page Libraries in which each library is used by the number of pages it is mapped to.
+     */
+    def analyzer(Map<ClientLibrary, Integer> usage) {
+        def analyzer = new SharedChunkAnalyzer()
+        (0..<10).each { Integer page ->
+            analyzer.recordUsage(usage.findAll { page < it.value }.keySet())
+        }
+        return analyzer
+    }
+
+    def analyze(SharedChunkAnalyzer analyzer, List<ClientLibrary> libraries, Predicate<ClientLibrary> variableFree = { true } as Predicate<ClientLibrary>) {
+        def librariesByCategory = libraries.collectEntries { [(it.categories.iterator().next()): [it] as Set] }
+        return analyzer.analyze(libraries, librariesByCategory, THRESHOLDS, variableFree)
+    }
+
+    def "Libraries should be placed in the first band whose threshold their usage meets"() {
+
+        given: "Libraries used by all, exactly the first threshold, exactly the second threshold and just under it"
+        def everywhere = library("everywhere")
+        def first = library("first")
+        def second = library("second")
+        def rare = library("rare")
+        def analyzer = analyzer([(everywhere): 10, (first): 9, (second): 5, (rare): 4])
+
+        expect: "Usage equal to a threshold meets it"
+        analyze(analyzer, [everywhere, first, second, rare]) == [[everywhere, first] as Set, [second] as Set]
+
+    }
+
+    def "Nothing should be chunked without samples or thresholds"() {
+
+        given:
+        def everywhere = library("everywhere")
+
+        expect:
+        analyze(new SharedChunkAnalyzer(), [everywhere]).isEmpty()
+        analyzer([(everywhere): 10]).analyze([everywhere], ["everywhere": [everywhere] as Set], [], { true } as Predicate<ClientLibrary>).isEmpty()
+
+    }
+
+    def "Empty bands should be dropped from the chunks"() {
+
+        given: "Libraries used only often enough for the second band"
+        def second = library("second")
+        def analyzer = analyzer([(second): 6])
+
+        expect:
+        analyze(analyzer, [second]) == [[second] as Set]
+
+    }
+
+    def "A library whose dependency falls in a later band should be pushed into that band"() {
+
+        given: "A library used by every page depending on one used by six in ten, and an independent library used by every page"
+        def dependency = library("dependency")
+        def dependent = library("dependent", [], ["dependency"])
+        def independent = library("independent")
+        def analyzer = analyzer([(dependent): 10, (dependency): 6, (independent): 10])
+
+        expect:
+        analyze(analyzer, [dependent, dependency, independent]) == [[independent] as Set, [dependent, dependency] as Set]
+
+    }
+
+    def "A library whose predecessor is not chunked should be evicted along with the libraries depending on it"() {
+
+        given: "A chain of libraries used by every page whose root conditionally depends on a rarely used library"
+        def rare = library("rare")
+        def base = library("base", [], ["rare"])
+        def dependent = library("dependent", ["base"])
+        def independent = library("independent")
+        def analyzer = analyzer([(rare): 2, (base): 10, (dependent): 10, (independent): 10])
+
+        expect:
+        analyze(analyzer, [rare, base, dependent, independent]) == [[independent] as Set]
+
+    }
+
+    def "An embedded library should be chunked no earlier than the library embedding it"() {
+
+        given: "A library used by every page embedded in a library used by six in ten"
+        def embedded = library("embedded")
+        def host = library("host", [], [], ["embedded"])
+        def independent = library("independent")
+        def analyzer = analyzer([(embedded): 10, (host): 6, (independent): 10])
+
+        expect:
+        analyze(analyzer, [embedded, host, independent]) == [[independent] as Set, [embedded, host] as Set]
+
+    }
+
+    def "An embedded library should not be chunked when the library embedding it is not"() {
+
+        given:
+        def embedded = library("embedded")
+        def host = library("host", [], [], ["embedded"])
+        def analyzer = analyzer([(embedded): 10, (host): 2])
+
+        expect:
+        analyze(analyzer, [embedded, host]).isEmpty()
+
+    }
+
+    def "Libraries containing variables should not be chunked, nor should the libraries depending on them"() {
+
+        given: "A variable bearing library, a library depending on it and an independent library all used by every page, and an unused library"
+        def variable = library("variable")
+        def dependent = library("dependent", ["variable"])
+        def independent = library("independent")
+        def unused = library("unused")
+        def analyzer = analyzer([(variable): 10, (dependent): 10, (independent): 10])
+        def consulted = []
+        def variableFree = { ClientLibrary library ->
+            consulted.add(library)
+            library != variable
+        } as Predicate<ClientLibrary>
+
+        when:
+        def chunks = analyze(analyzer, [variable, dependent, independent, unused], variableFree)
+
+        then:
+        chunks == [[independent] as Set]
+
+        and: "Libraries no sampled page used are not checked for variables"
+        !consulted.any { it.is(unused) }
+
+    }
+
+    def "Resetting should discard the recorded usage"() {
+
+        given:
+        def everywhere = library("everywhere")
+        def analyzer = analyzer([(everywhere): 10])
+
+        when:
+        analyzer.reset()
+
+        then:
+        analyzer.sampleCount == 0L
+        analyze(analyzer, [everywhere]).isEmpty()
+
+    }
+
+}
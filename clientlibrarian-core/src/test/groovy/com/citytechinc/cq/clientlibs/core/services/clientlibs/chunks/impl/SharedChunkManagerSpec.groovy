@@ -0,0 +1,184 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.chunks.impl
+
+import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.ClientLibraryManager
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.ResourceDependencyProvider
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ClientLibraryCacheManager
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ResourceTypeCacheManager
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.ClientLibraryMetrics
+import com.citytechinc.cq.clientlibs.api.services.components.DependentComponentManager
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.compilers.PageLibraryCompiler
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.metrics.CompilationPhaseTimer
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.state.manager.impl.ClientLibraryRepositoryStateManager
+import com.google.common.base.Optional
+import org.apache.sling.api.resource.Resource
+import spock.lang.Specification
+
+import java.util.concurrent.locks.ReentrantReadWriteLock
+
+class SharedChunkManagerSpec extends Specification {
+
+    Map<String, ClientLibrary> libraries = [:]
+    Map<String, Set<ClientLibrary>> startingPointsByPage = [:]
+
+    ClientLibraryRepositoryStateManager stateManager
+    ResourceDependencyProvider resourceDependencyProvider
+    SharedChunkManager sharedChunkManager
+
+    def setup() {
+
+        library("jquery")
+        library("common", ["jquery"])
+        library("icons")
+        library("header", ["common"], [], ["icons"])
+        library("form", ["common"])
+        library("slider", ["common"])
+        library("tracking", ["jquery"])
+        library("carousel", ["common"], ["tracking"])
+        library("gallery", ["carousel"])
+
+        (0..<10).each { Integer page ->
+            Set<ClientLibrary> startingPoints = [libraries.header, libraries.form] as Set
+
+            if (page < 7) {
+                startingPoints.add(libraries.slider)
+            }
+            if (page < 5) {
+                startingPoints.add(libraries.gallery)
+            }
+            if (page >= 8) {
+                startingPoints.add(libraries.tracking)
+            }
+
+            startingPointsByPage.put("/content/chunks/" + page, startingPoints)
+        }
+
+        def clientLibraryManager = Mock(ClientLibraryManager) {
+            getVersion() >> 1L
+            getLibraries() >> (libraries.values() as Set)
+            getLibrariesByCategory() >> libraries.collectEntries { [(it.key): [it.value] as Set] }
+        }
+        def dependentComponentManager = Mock(DependentComponentManager) {
+            getVersion() >> 1L
+        }
+        def resourceTypeCacheManager = Mock(ResourceTypeCacheManager) {
+            getGeneration() >> 1L
+            isInvalidatedSince(_, _) >> false
+        }
+        def clientLibraryMetrics = Mock(ClientLibraryMetrics)
+
+        stateManager = new ClientLibraryRepositoryStateManager(clientLibraryManager, dependentComponentManager, [] as Set, 10, new CompilationPhaseTimer(clientLibraryMetrics))
+
+        resourceDependencyProvider = Mock(ResourceDependencyProvider) {
+            getDependenciesForResource(_) >> { Resource root -> startingPointsByPage.get(root.path) }
+        }
+
+        def pageLibraryCompiler = Mock(PageLibraryCompiler) {
+            getFilteredOrderedDependencies(_, _) >> { Resource root, Optional<String> brand -> stateManager.requestFilteredOrderedDependencies(root, [resourceDependencyProvider], brand) }
+            isVariableFree(_) >> { ClientLibrary library -> library.clientLibraryPath != "/etc/clientlibs/form" }
+        }
+
+        sharedChunkManager = new SharedChunkManager(clientLibraryManager, dependentComponentManager, resourceTypeCacheManager,
+                Mock(ClientLibraryCacheManager), clientLibraryMetrics, stateManager, pageLibraryCompiler, new ReentrantReadWriteLock())
+        sharedChunkManager.configure(true, [0.5d, 0.9d], 10, 100)
+
+    }
+
+    def library(String name, List<String> dependencies = [], List<String> conditionalDependencies = [], List<String> embeddedCategories = []) {
+        def library = Mock(ClientLibrary)
+        library.getClientLibraryPath() >> "/etc/clientlibs/" + name
+        library.getCategories() >> ([name] as Set)
+        library.getDependencies() >> dependencies
+        library.getConditionalDependencies() >> conditionalDependencies
+        library.getEmbeddedCategories() >> embeddedCategories
+        library.getBrands() >> ([] as Set)
+        library.isIncludedForRunModes(_) >> true
+        library.hasJs() >> true
+        library.compareTo(_) >> { ClientLibrary other -> ("/etc/clientlibs/" + name) <=> other.clientLibraryPath }
+        libraries.put(name, library)
+        return library
+    }
+
+    def page(String path) {
+        Mock(Resource) {
+            getPath() >> path
+        }
+    }
+
+    def pageLibrary(Resource root) {
+        stateManager.requestFilteredOrderedDependencies(root, [resourceDependencyProvider], Optional.absent())
+    }
+
+    /**
+     * The libraries which must be ordered ahead of a library - its dependencies, its conditional dependencies and the
+     * libraries embedding it.
+     */
+    def predecessors(ClientLibrary library) {
+        def predecessors = (library.dependencies + library.conditionalDependencies).collect { libraries.get(it) }
+        predecessors.addAll(libraries.values().findAll { ClientLibrary host -> host.embeddedCategories.any { library.categories.contains(it) } })
+        return predecessors
+    }
+
+    def ordered(List<ClientLibrary> pageLibrary) {
+        pageLibrary.every { ClientLibrary library ->
+            predecessors(library).every { !pageLibrary.contains(it) || pageLibrary.indexOf(it) < pageLibrary.indexOf(library) }
+        }
+    }
+
+    def "Shared chunks should not be derived until enough Page Libraries have been sampled"() {
+
+        when:
+        (0..<9).each { sharedChunkManager.recordUsage(pageLibrary(page("/content/chunks/" + it))) }
+
+        then:
+        sharedChunkManager.sharedChunks == null
+        !sharedChunkManager.sharedChunkGeneration.present
+        !sharedChunkManager.getPartition(page("/content/chunks/0"), LibraryType.JS, Optional.absent()).partitioned
+
+    }
+
+    def "Chunks followed by the remainder should concatenate to the whole Page Library in dependency order"() {
+
+        given: "Every page has been sampled"
+        (0..<10).each { sharedChunkManager.recordUsage(pageLibrary(page("/content/chunks/" + it))) }
+        def sharedChunks = sharedChunkManager.sharedChunks
+
+        expect: "Thresholds are applied in descending order and libraries depending on unchunked or variable bearing libraries are left to the remainder"
+        sharedChunks.chunks.collect { it*.clientLibraryPath as Set } == [
+                ["/etc/clientlibs/jquery", "/etc/clientlibs/common", "/etc/clientlibs/header", "/etc/clientlibs/icons"] as Set,
+                ["/etc/clientlibs/slider"] as Set]
+
+        and:
+        (0..<10).each { Integer index ->
+            def root = page("/content/chunks/" + index)
+            def partition = sharedChunkManager.getPartition(root, LibraryType.JS, Optional.absent())
+            def concatenated = partition.chunkIndices.collectMany { stateManager.requestFilteredLibraries(sharedChunks.chunks.get(it), Optional.absent()) } + partition.remainder
+            def whole = pageLibrary(root)
+
+            assert partition.partitioned
+            assert partition.chunkIndices == (index < 7 ? [0, 1] : [0])
+            assert concatenated.size() == whole.size()
+            assert concatenated*.clientLibraryPath as Set == whole*.clientLibraryPath as Set
+            assert ordered(whole)
+            assert ordered(concatenated)
+        }
+
+    }
+
+}
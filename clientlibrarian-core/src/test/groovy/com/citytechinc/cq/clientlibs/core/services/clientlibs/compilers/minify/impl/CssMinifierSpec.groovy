@@ -0,0 +1,46 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.compilers.minify.impl
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class CssMinifierSpec extends Specification {
+
+    @Unroll
+    def "Minifying #source should produce #expected"() {
+
+        expect:
+        CssMinifier.minify(source).content == expected
+
+        where:
+        source                                    | expected
+        "a { color : red ; }"                     | "a{color :red}"
+        "a , b { x: y; }"                         | "a,b{x:y}"
+        "width: calc(1px + 2px);"                 | "width:calc(1px + 2px);"
+        "a :hover { color: red; }"                | "a :hover{color:red}"
+        "a:hover{color:red}"                      | "a:hover{color:red}"
+        "margin:0/**/auto"                        | "margin:0 auto"
+        "a { margin: 0 /* x */ auto; }"           | "a{margin:0 auto}"
+        "color:/**/red"                           | "color:red"
+        "a { content: \"a  b\\\" c\"; }"          | "a{content:\"a  b\\\" c\"}"
+        "a { content: '\\'  x'; }"                | "a{content:'\\'  x'}"
+        "/*! license */\na { color: red; }"       | "/*! license */ a{color:red}"
+        "a { } /*! keep */ b { }"                 | "a{}/*! keep */ b{}"
+
+    }
+
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.compilers.minify.impl
+
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.compilers.minify.exceptions.MinificationException
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class JavaScriptMinifierSpec extends Specification {
+
+    @Unroll
+    def "Minifying #source should tell Regular Expression literals from division"() {
+
+        expect:
+        JavaScriptMinifier.minify(source).content == expected
+
+        where:
+        source                        | expected
+        "var a = b / c / d;"          | "var a=b/c/d;"
+        "x = /a\\/b[/]c/g.test(s);"   | "x=/a\\/b[/]c/g.test(s);"
+        "return /x/.test(s);"         | "return/x/.test(s);"
+        "typeof /x/;"                 | "typeof/x/;"
+        "var r = (a) / 2;"            | "var r=(a)/2;"
+        "var r = a[0] / 2;"           | "var r=a[0]/2;"
+
+    }
+
+    @Unroll
+    def "Minifying #source should keep the line feeds automatic semicolon insertion depends on"() {
+
+        expect:
+        JavaScriptMinifier.minify(source).content == expected
+
+        where:
+        source          | expected
+        "a\n++b"        | "a\n++b"
+        "a\n--b"        | "a\n--b"
+        "return\nx"     | "return\nx"
+        "a +\n+b"       | "a+\n+b"
+        "x = `a`\nf()"  | "x=`a`\nf()"
+
+    }
+
+    @Unroll
+    def "Minifying #source should copy template literals as is"() {
+
+        expect:
+        JavaScriptMinifier.minify(source).content == expected
+
+        where:
+        source                                 | expected
+        "var s = `a\tb  c`;"                   | "var s=`a\tb  c`;"
+        "var s = `a\r\nb`;"                    | "var s=`a\r\nb`;"
+        'var s = `a ${ b + `c${ d }` } e`;'    | 'var s=`a ${ b + `c${ d }` } e`;'
+        'var s = `${ "}" } x`;'                | 'var s=`${ "}" } x`;'
+        'var s = `${ { a: 1 }.a /* } */ }`;'   | 'var s=`${ { a: 1 }.a /* } */ }`;'
+        "var s = `a\\`b`;"                     | "var s=`a\\`b`;"
+
+    }
+
+    @Unroll
+    def "Minifying #source should copy string literals and their escapes as is"() {
+
+        expect:
+        JavaScriptMinifier.minify(source).content == expected
+
+        where:
+        source                                      | expected
+        "var s = 'it\\'s  \"x\"';"                  | "var s='it\\'s  \"x\"';"
+        "var s = \"a\\\"b  /* c */\";"              | "var s=\"a\\\"b  /* c */\";"
+        "var s = 'a\tb';"                           | "var s='a\tb';"
+        "var s = 'a\\\\' + b;"                      | "var s='a\\\\'+b;"
+
+    }
+
+    def "Minifying should remove comments"() {
+
+        expect:
+        JavaScriptMinifier.minify("var a = 1; /* block */ var b = 2; // line\nvar c;").content == "var a=1;var b=2;var c;"
+
+    }
+
+    @Unroll
+    def "Minifying #source should fail"() {
+
+        when:
+        JavaScriptMinifier.minify(source)
+
+        then:
+        thrown(MinificationException)
+
+        where:
+        source << [ "var s = 'a", 'var s = `a${ b', "var s = `a", "/* a" ]
+
+    }
+
+}
@@ -0,0 +1,255 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.export.impl
+
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.ClientLibraryRepository
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCompilationException
+import com.day.cq.wcm.api.Page
+import com.day.cq.wcm.api.PageManager
+import com.google.common.base.Optional
+import com.google.common.hash.Hashing
+import org.apache.sling.api.resource.Resource
+import org.apache.sling.api.resource.ResourceResolver
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+
+class DefaultClientLibraryExporterSpec extends Specification {
+
+    File docroot
+
+    /*
+     * Child page paths keyed by page path, the libraries keyed by page path and extension and the resource
+     * resolver mappings may be changed between exports
+     */
+    Map<String, List<String>> pages = [:]
+    Map<String, String> libraries = [:]
+    Map<String, String> mappings = [:]
+
+    def setup() {
+        docroot = Files.createTempDirectory("docroot").toFile()
+    }
+
+    def cleanup() {
+        docroot.deleteDir()
+    }
+
+    def exporter() {
+        def clientLibraryRepository = Mock(ClientLibraryRepository) {
+            compileClientLibrary(_, _, _) >> { Resource root, LibraryType type, Optional<String> brand ->
+                def library = libraries[root.parent.path + type.extension]
+
+                if (library == null) {
+                    throw new ClientLibraryCompilationException("Unable to compile " + root.path)
+                }
+
+                return library
+            }
+        }
+
+        def exporter = new DefaultClientLibraryExporter()
+        exporter.clientLibraryRepository = clientLibraryRepository
+        exporter.activate([docroot: docroot.absolutePath, writerThreads: 2])
+        return exporter
+    }
+
+    def resourceResolver() {
+        def pageManager = Mock(PageManager) {
+            getPage(_) >> { String path -> pages.containsKey(path) ? page(path) : null }
+        }
+
+        return Mock(ResourceResolver) {
+            adaptTo(PageManager) >> pageManager
+            map(_) >> { String path -> mappings.containsKey(path) ? mappings[path] : path }
+        }
+    }
+
+    def page(String path) {
+        def pageResource = Mock(Resource) {
+            getPath() >> path
+        }
+        def contentResource = Mock(Resource) {
+            getPath() >> path + "/jcr:content"
+            getParent() >> pageResource
+        }
+
+        return Mock(Page) {
+            getPath() >> path
+            getContentResource() >> contentResource
+            listChildren() >> { pages[path].collect { page(it) }.iterator() }
+        }
+    }
+
+    def addPage(String path, String parentPath) {
+        pages[path] = []
+
+        if (parentPath) {
+            pages[parentPath] << path
+        }
+
+        libraries[path + ".js"] = "var page = '" + path + "';"
+        libraries[path + ".css"] = "/* " + path + " */"
+    }
+
+    def manifest() {
+        def manifest = new Properties()
+        new File(docroot, DefaultClientLibraryExporter.MANIFEST_FILE_NAME).withInputStream { manifest.load(it) }
+        return manifest
+    }
+
+    def "Page Libraries should be written below the docroot at the path of their URL and recorded in the manifest"() {
+
+        setup:
+        addPage("/content/site", null)
+        addPage("/content/site/en", "/content/site")
+
+        when:
+        def result = exporter().export(resourceResolver(), "/content/site")
+
+        then:
+        result.pageCount == 2
+        result.writtenFileCount == 4
+        result.failures.isEmpty()
+        new File(docroot, "content/site/en.pagelib.js").getText("UTF-8") == "var page = '/content/site/en';"
+        new File(docroot, "content/site.pagelib.css").getText("UTF-8") == "/* /content/site */"
+
+        and:
+        def manifest = manifest()
+        manifest.stringPropertyNames() == ["content/site.pagelib.js", "content/site.pagelib.css", "content/site/en.pagelib.js", "content/site/en.pagelib.css"] as Set
+        manifest.getProperty("content/site/en.pagelib.js") == Hashing.sha256().hashString("var page = '/content/site/en';", StandardCharsets.UTF_8).toString()
+
+    }
+
+    def "Files whose fingerprint is unchanged since the previous export should not be written again"() {
+
+        setup:
+        addPage("/content/site", null)
+        addPage("/content/site/en", "/content/site")
+        def exporter = exporter()
+        exporter.export(resourceResolver(), "/content/site")
+        def unchangedFile = new File(docroot, "content/site.pagelib.js")
+        unchangedFile.setLastModified(0L)
+        libraries["/content/site/en.js"] = "var page = 'changed';"
+
+        when:
+        def result = exporter.export(resourceResolver(), "/content/site")
+
+        then:
+        result.writtenFileCount == 1
+        result.unchangedFileCount == 3
+        unchangedFile.lastModified() == 0L
+        new File(docroot, "content/site/en.pagelib.js").getText("UTF-8") == "var page = 'changed';"
+
+    }
+
+    def "An unchanged file missing from the docroot should be written again"() {
+
+        setup:
+        addPage("/content/site", null)
+        def exporter = exporter()
+        exporter.export(resourceResolver(), "/content/site")
+        new File(docroot, "content/site.pagelib.js").delete()
+
+        when:
+        def result = exporter.export(resourceResolver(), "/content/site")
+
+        then:
+        result.writtenFileCount == 1
+        result.unchangedFileCount == 1
+        new File(docroot, "content/site.pagelib.js").isFile()
+
+    }
+
+    def "Files of pages no longer exported should be removed below the exported root only"() {
+
+        setup:
+        addPage("/content/site", null)
+        addPage("/content/site/en", "/content/site")
+        addPage("/content/site-other", null)
+        addPage("/content/site-other/fr", "/content/site-other")
+        def exporter = exporter()
+        exporter.export(resourceResolver(), "/content/site")
+        exporter.export(resourceResolver(), "/content/site-other")
+
+        when: "a page is deleted from each site and only the first is exported again"
+        pages["/content/site"].clear()
+        pages["/content/site-other"].clear()
+        def result = exporter.export(resourceResolver(), "/content/site")
+
+        then:
+        result.removedFileCount == 2
+        !new File(docroot, "content/site/en.pagelib.js").exists()
+        !new File(docroot, "content/site/en.pagelib.css").exists()
+        new File(docroot, "content/site.pagelib.js").isFile()
+        new File(docroot, "content/site-other/fr.pagelib.js").isFile()
+
+        and:
+        def manifest = manifest()
+        !manifest.containsKey("content/site/en.pagelib.js")
+        manifest.containsKey("content/site-other/fr.pagelib.js")
+
+    }
+
+    def "Page Libraries should be written at the path to which the resource resolver maps their page"() {
+
+        setup:
+        addPage("/content/site", null)
+        addPage("/content/site/en", "/content/site")
+        mappings["/content/site"] = "http://www.example.com/"
+        mappings["/content/site/en"] = "http://www.example.com/en"
+
+        when:
+        def exporter = exporter()
+        def result = exporter.export(resourceResolver(), "/content/site")
+
+        then:
+        result.failures.isEmpty()
+        new File(docroot, "en.pagelib.js").getText("UTF-8") == "var page = '/content/site/en';"
+        !new File(docroot, "content").exists()
+
+        when: "the mapped root covers the whole docroot so a page removed below it is pruned"
+        pages["/content/site"].clear()
+        def secondResult = exporter.export(resourceResolver(), "/content/site")
+
+        then:
+        secondResult.removedFileCount == 2
+        !new File(docroot, "en.pagelib.js").exists()
+
+    }
+
+    def "The file of a previous export should be removed once its library fails to compile"() {
+
+        setup:
+        addPage("/content/site", null)
+        def exporter = exporter()
+        exporter.export(resourceResolver(), "/content/site")
+        libraries.remove("/content/site.js")
+
+        when:
+        def result = exporter.export(resourceResolver(), "/content/site")
+
+        then:
+        result.failures.keySet() == ["content/site.pagelib.js"] as Set
+        result.removedFileCount == 1
+        !new File(docroot, "content/site.pagelib.js").exists()
+        new File(docroot, "content/site.pagelib.css").isFile()
+        !manifest().containsKey("content/site.pagelib.js")
+
+    }
+
+}
@@ -0,0 +1,231 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.granular.impl
+
+import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.ClientLibraryManager
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ResourceTypeCacheManager
+import com.citytechinc.cq.clientlibs.api.services.components.DependentComponentManager
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.compilers.PageLibraryCompiler
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.sourcemap.SourceMapBuilder
+import com.google.common.base.Optional
+import org.apache.sling.api.resource.Resource
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class GranularLibraryManagerSpec extends Specification {
+
+    Long libraryVersion = 1L
+    Long componentVersion = 1L
+    Set<String> invalidatedPaths = [] as Set
+
+    Map<String, ClientLibrary> libraries = [:]
+    Map<String, List<ClientLibrary>> pageLibraries = [:]
+    Set<String> variableLibraries = [] as Set
+
+    PageLibraryCompiler pageLibraryCompiler
+    GranularLibraryManager granularLibraryManager
+
+    def setup() {
+
+        def clientLibraryManager = Mock(ClientLibraryManager) {
+            getVersion() >> { libraryVersion }
+            getLibraries() >> { libraries.values() as Set }
+        }
+        def dependentComponentManager = Mock(DependentComponentManager) {
+            getVersion() >> { componentVersion }
+        }
+        def resourceTypeCacheManager = Mock(ResourceTypeCacheManager) {
+            getGeneration() >> 1L
+            isInvalidatedSince(_, _) >> { String path, long generation -> invalidatedPaths.contains(path) }
+        }
+
+        pageLibraryCompiler = Mock(PageLibraryCompiler) {
+            getFilteredOrderedDependencies(_, _) >> { Resource root, Optional<String> brand -> pageLibraries.get(root.path) }
+            isVariableFree(_) >> { ClientLibrary library -> !variableLibraries.contains(library.clientLibraryPath) }
+            compile(_, _, _, _) >> { LibraryType type, List<ClientLibrary> libraries, Map<String, String> variables, SourceMapBuilder sourceMapBuilder ->
+                "/* " + libraries*.clientLibraryPath.join(", ") + " */"
+            }
+        }
+
+        granularLibraryManager = new GranularLibraryManager(clientLibraryManager, dependentComponentManager, resourceTypeCacheManager, pageLibraryCompiler)
+
+    }
+
+    def library(Map properties = [:], String name) {
+        def library = Mock(ClientLibrary)
+        library.getClientLibraryPath() >> "/etc/clientlibs/" + name
+        library.hasJs() >> properties.get("js", true)
+        library.hasCss() >> properties.get("css", false)
+        library.hasLess() >> properties.get("less", false)
+        library.compareTo(_) >> { ClientLibrary other -> ("/etc/clientlibs/" + name) <=> other.clientLibraryPath }
+        libraries.put(name, library)
+        return library
+    }
+
+    def page(String path) {
+        Mock(Resource) {
+            getPath() >> path
+        }
+    }
+
+    def "The longest prefix of variable free libraries should be served individually, skipping libraries without content"() {
+
+        given: "A page whose fourth library contains variables"
+        def jquery = library("jquery")
+        def styles = library("styles", js: false, css: true)
+        def common = library("common")
+        def personalization = library("personalization")
+        def carousel = library("carousel")
+        variableLibraries.add(personalization.clientLibraryPath)
+        pageLibraries.put("/content/granular", [jquery, styles, common, personalization, carousel])
+
+        when:
+        def split = granularLibraryManager.getGranularSplit(page("/content/granular"), LibraryType.JS, Optional.absent())
+
+        then: "Libraries without JavaScript are passed over and the variable bearing library ends the prefix"
+        split.libraries*.clientLibraryPath == ["/etc/clientlibs/jquery", "/etc/clientlibs/common"]
+        split.libraries*.content == ["/* /etc/clientlibs/jquery */", "/* /etc/clientlibs/common */"]
+
+        and: "The remainder starts at the variable bearing library"
+        split.remainder*.clientLibraryPath == ["/etc/clientlibs/personalization", "/etc/clientlibs/carousel"]
+        split.hasRemainder()
+
+    }
+
+    def "A page whose libraries are all variable free should have no remainder"() {
+
+        given: "A page ending in a library without JavaScript"
+        def jquery = library("jquery")
+        def styles = library("styles", js: false, css: true)
+        pageLibraries.put("/content/granular", [jquery, styles])
+
+        when:
+        def split = granularLibraryManager.getGranularSplit(page("/content/granular"), LibraryType.JS, Optional.absent())
+
+        then:
+        split.libraries*.clientLibraryPath == ["/etc/clientlibs/jquery"]
+        split.remainder.isEmpty()
+        !split.hasRemainder()
+
+    }
+
+    def "CSS Page Libraries using LESS should be served entirely as the remainder"() {
+
+        given:
+        def reset = library("reset", js: false, css: true)
+        def theme = library("theme", js: false, css: true, less: true)
+        pageLibraries.put("/content/granular", [reset, theme])
+
+        when:
+        def split = granularLibraryManager.getGranularSplit(page("/content/granular"), LibraryType.CSS, Optional.absent())
+
+        then:
+        split.libraries.isEmpty()
+        split.remainder*.clientLibraryPath == ["/etc/clientlibs/reset", "/etc/clientlibs/theme"]
+        split.hasRemainder()
+
+    }
+
+    def "Splits should be cached per page, type and brand and libraries compiled once"() {
+
+        given:
+        def jquery = library("jquery")
+        pageLibraries.put("/content/granular/a", [jquery])
+        pageLibraries.put("/content/granular/b", [jquery])
+
+        when:
+        def first = granularLibraryManager.getGranularSplit(page("/content/granular/a"), LibraryType.JS, Optional.absent())
+        def second = granularLibraryManager.getGranularSplit(page("/content/granular/a"), LibraryType.JS, Optional.absent())
+        def otherPage = granularLibraryManager.getGranularSplit(page("/content/granular/b"), LibraryType.JS, Optional.absent())
+        granularLibraryManager.getGranularSplit(page("/content/granular/a"), LibraryType.JS, Optional.of("taco"))
+
+        then: "Each page and brand resolves its dependencies once"
+        3 * pageLibraryCompiler.getFilteredOrderedDependencies(_, _) >> { Resource root, Optional<String> brand -> pageLibraries.get(root.path) }
+        1 * pageLibraryCompiler.compile(LibraryType.JS, [jquery], [:], null) >> "var jquery;"
+
+        and: "Pages share the individually compiled library"
+        second.is(first)
+        otherPage.libraries.first().is(first.libraries.first())
+
+    }
+
+    def applyChange(String change) {
+        switch (change) {
+            case "the page is invalidated":
+                invalidatedPaths.add("/content/granular")
+                break
+            case "the component registry changes":
+                componentVersion++
+                break
+            case "the dependency providers change":
+                granularLibraryManager.invalidateSplits()
+                break
+            case "the library registry changes":
+                libraryVersion++
+                break
+            case "the compiled libraries are cleared":
+                granularLibraryManager.clear()
+                break
+        }
+    }
+
+    @Unroll
+    def "Cached splits should be determined again when #change"() {
+
+        given:
+        def jquery = library("jquery")
+        def root = page("/content/granular")
+        pageLibraries.put("/content/granular", [jquery])
+        granularLibraryManager.getGranularSplit(root, LibraryType.JS, Optional.absent())
+
+        when:
+        applyChange(change)
+        granularLibraryManager.getGranularSplit(root, LibraryType.JS, Optional.absent())
+
+        then: "Individual libraries are only compiled again when the compiled libraries are discarded"
+        1 * pageLibraryCompiler.getFilteredOrderedDependencies(root, _) >> [jquery]
+        compilations * pageLibraryCompiler.compile(*_) >> "var jquery;"
+
+        where:
+        change                                  | compilations
+        "the page is invalidated"               | 0
+        "the component registry changes"        | 0
+        "the dependency providers change"       | 0
+        "the library registry changes"          | 1
+        "the compiled libraries are cleared"    | 1
+
+    }
+
+    def "Individual libraries should only be served when variable free and not using LESS"() {
+
+        given:
+        library("jquery")
+        library("personalization")
+        library("theme", js: false, css: true, less: true)
+        variableLibraries.add("/etc/clientlibs/personalization")
+
+        expect:
+        granularLibraryManager.getGranularLibrary("/etc/clientlibs/jquery", LibraryType.JS).get().content == "/* /etc/clientlibs/jquery */"
+        !granularLibraryManager.getGranularLibrary("/etc/clientlibs/jquery", LibraryType.CSS).present
+        !granularLibraryManager.getGranularLibrary("/etc/clientlibs/personalization", LibraryType.JS).present
+        !granularLibraryManager.getGranularLibrary("/etc/clientlibs/theme", LibraryType.CSS).present
+        !granularLibraryManager.getGranularLibrary("/etc/clientlibs/missing", LibraryType.JS).present
+
+    }
+
+}
@@ -0,0 +1,204 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.impl
+
+import com.citytechinc.aem.prosper.specs.ProsperSpec
+import com.citytechinc.cq.clientlibs.api.constants.Brands
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.ClientLibraryManager
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.ResourceDependencyProvider
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ClientLibraryCacheManager
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.cache.ResourceTypeCacheManager
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.metrics.ClientLibraryMetrics
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.transformer.VariableProvider
+import com.citytechinc.cq.clientlibs.api.services.components.DependentComponentManager
+import com.citytechinc.cq.clientlibs.core.domain.library.ClientLibraries
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.metrics.CompilationPhaseTimer
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.state.manager.impl.ClientLibraryRepositoryStateManager
+import com.google.common.base.Optional
+import org.apache.sling.api.resource.Resource
+
+import java.util.concurrent.locks.ReentrantReadWriteLock
+
+class BulkCompilationSpec extends ProsperSpec {
+
+    Long libraryVersion = 1L
+    Set<String> invalidatedPaths = [] as Set
+
+    def setupSpec() {
+
+        nodeBuilder.etc {
+            clientlibs("sling:Folder") {
+                bulk("sling:Folder") {
+                    tacolib("cq:ClientLibraryFolder", "categories" : "bulk.tacolib") {
+                        "js.txt"("nt:file") {
+                            "jcr:content"("nt:resource", "jcr:mimeType" : "text/plain", "jcr:data" : "taco.js")
+                        }
+                        "taco.js"("nt:file") {
+                            "jcr:content"("nt:resource", "jcr:mimeType" : "application/javascript", "jcr:data" : "var taco = '<%flavor%>';")
+                        }
+                    }
+                }
+            }
+        }
+
+    }
+
+    def "Page Libraries sharing dependencies and variables should be compiled once and cached for each page"() {
+
+        setup:
+        def clientLibraryCacheManager = Mock(ClientLibraryCacheManager)
+        def repository = repository(clientLibraryCacheManager)
+
+        when:
+        def result = repository.compileClientLibraries(roots("/content/bulk/a", "/content/bulk/b", "/content/bulk/spicy"), [LibraryType.JS] as Set, [] as Set)
+
+        then:
+        3 * clientLibraryCacheManager.getCachedLibrary(_, LibraryType.JS, Brands.DEFAULT_BRAND) >> Optional.absent()
+        2 * clientLibraryCacheManager.cacheLibrary({ it.path != "/content/bulk/spicy" }, LibraryType.JS, Brands.DEFAULT_BRAND, { it.contains("var taco = 'mild';") })
+        1 * clientLibraryCacheManager.cacheLibrary({ it.path == "/content/bulk/spicy" }, LibraryType.JS, Brands.DEFAULT_BRAND, { it.contains("var taco = 'spicy';") })
+
+        and:
+        result.libraryCount == 3
+        result.distinctCompilationCount == 2
+        result.compiledLibraryCount == 3
+        result.failures.isEmpty()
+
+    }
+
+    def "Page Libraries which are already cached should not be compiled"() {
+
+        setup:
+        def clientLibraryCacheManager = Mock(ClientLibraryCacheManager)
+        def repository = repository(clientLibraryCacheManager)
+
+        when:
+        def result = repository.compileClientLibraries(roots("/content/bulk/a", "/content/bulk/b"), [LibraryType.JS] as Set, [] as Set)
+
+        then:
+        2 * clientLibraryCacheManager.getCachedLibrary(_, LibraryType.JS, Brands.DEFAULT_BRAND) >> Optional.of("var taco;")
+        0 * clientLibraryCacheManager.cacheLibrary(*_)
+
+        and:
+        result.cachedLibraryCount == 2
+        result.distinctCompilationCount == 0
+
+    }
+
+    def "Page Libraries compiled while the registries change should not be cached"() {
+
+        setup:
+        def clientLibraryCacheManager = Mock(ClientLibraryCacheManager)
+        def repository = repository(clientLibraryCacheManager)
+
+        when:
+        def result = repository.compileClientLibraries(roots("/content/bulk/a", "/content/bulk/b"), [LibraryType.JS] as Set, [] as Set)
+
+        then: "The Client Library registry is refreshed while the pages are being resolved"
+        2 * clientLibraryCacheManager.getCachedLibrary(_, LibraryType.JS, Brands.DEFAULT_BRAND) >> {
+            libraryVersion++
+            Optional.absent()
+        }
+        0 * clientLibraryCacheManager.cacheLibrary(*_)
+
+        and:
+        result.compiledLibraryCount == 0
+        result.failures.keySet() == ["/content/bulk/a", "/content/bulk/b"] as Set
+
+    }
+
+    def "Page Libraries whose page content is invalidated between compilation and caching should not be cached"() {
+
+        setup:
+        def clientLibraryCacheManager = Mock(ClientLibraryCacheManager)
+        def repository = repository(clientLibraryCacheManager)
+
+        when:
+        def result = repository.compileClientLibraries(roots("/content/bulk/a", "/content/bulk/b"), [LibraryType.JS] as Set, [] as Set)
+
+        then:
+        2 * clientLibraryCacheManager.getCachedLibrary(_, LibraryType.JS, Brands.DEFAULT_BRAND) >> Optional.absent()
+
+        then: "The content of one page is invalidated as its library finishes compiling"
+        1 * repository.clientLibraryMetrics.recordCompilation(LibraryType.JS, _) >> { invalidatedPaths.add("/content/bulk/b") }
+
+        then:
+        1 * clientLibraryCacheManager.cacheLibrary({ it.path == "/content/bulk/a" }, LibraryType.JS, Brands.DEFAULT_BRAND, { it.contains("var taco = 'mild';") })
+        0 * clientLibraryCacheManager.cacheLibrary(*_)
+
+        and:
+        result.distinctCompilationCount == 1
+        result.compiledLibraryCount == 1
+        result.failures.keySet() == ["/content/bulk/b"] as Set
+
+    }
+
+    def repository(ClientLibraryCacheManager clientLibraryCacheManager) {
+
+        def tacolib = ClientLibraries.forResource(resourceResolver.getResource("/etc/clientlibs/bulk/tacolib"))
+
+        def clientLibraryManager = Mock(ClientLibraryManager) {
+            getVersion() >> { libraryVersion }
+            getLibraries() >> ([tacolib] as Set)
+            getLibrariesByCategory() >> ["bulk.tacolib": [tacolib] as Set]
+        }
+        def dependentComponentManager = Mock(DependentComponentManager) {
+            getVersion() >> 1L
+        }
+        def resourceDependencyProvider = Mock(ResourceDependencyProvider) {
+            getDependenciesForResource(_) >> ([tacolib] as Set)
+        }
+        def variableProvider = Mock(VariableProvider) {
+            getVariables(_) >> { Resource root -> ["flavor": root.path.endsWith("spicy") ? "spicy" : "mild"] }
+        }
+        def resourceTypeCacheManager = Mock(ResourceTypeCacheManager) {
+            getGeneration() >> 1L
+            isInvalidatedSince(_, _) >> { String path, long generation -> invalidatedPaths.contains(path) }
+        }
+        def clientLibraryMetrics = Mock(ClientLibraryMetrics)
+        def phaseTimer = new CompilationPhaseTimer(clientLibraryMetrics)
+
+        def stateManager = new ClientLibraryRepositoryStateManager(clientLibraryManager, dependentComponentManager, [] as Set, 10, phaseTimer)
+
+        def repository = new DefaultClientLibraryRepository([resourceDependencyProvider], [variableProvider], stateManager,
+                new ReentrantReadWriteLock(), new ReentrantReadWriteLock(), new ReentrantReadWriteLock())
+
+        repository.clientLibraryManager = clientLibraryManager
+        repository.dependentComponentManager = dependentComponentManager
+        repository.clientLibraryCacheManager = clientLibraryCacheManager
+        repository.resourceTypeCacheManager = resourceTypeCacheManager
+        repository.clientLibraryMetrics = clientLibraryMetrics
+        repository.phaseTimer = phaseTimer
+        repository.minify = false
+        repository.strictJavascript = false
+        repository.initializeManagers()
+        repository.configureBulkCompilation([:])
+
+        repository
+
+    }
+
+    def roots(String... paths) {
+
+        paths.collect { String path ->
+            Mock(Resource) {
+                getPath() >> path
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.impl
+
+import com.citytechinc.aem.prosper.specs.ProsperSpec
+import com.citytechinc.cq.clientlibs.api.constants.Types
+import com.citytechinc.cq.clientlibs.api.util.ComponentUtils
+import com.citytechinc.cq.clientlibs.api.util.ResourceTreeFlatteningStrategy
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.cache.impl.DefaultResourceTypeCacheManager
+import spock.lang.Unroll
+
+class IParsysResourceProviderHelperSpec extends ProsperSpec {
+
+    static final String INHERITED_TEXT_PATH = "/content/inheritance/jcr:content/iparsys/text"
+
+    def setupSpec() {
+
+        pageBuilder.content {
+            inheritance {
+                "jcr:content" {
+                    iparsys("sling:resourceType": Types.IPARSYS) {
+                        text("sling:resourceType": "tacodan/components/text")
+                    }
+                }
+                inheriting {
+                    "jcr:content" {
+                        iparsys("sling:resourceType": Types.IPARSYS) {
+                            image("sling:resourceType": "tacodan/components/image")
+                        }
+                    }
+                }
+                cancelled {
+                    "jcr:content" {
+                        iparsys("sling:resourceType": Types.IPARSYS, "inheritance": "cancel")
+                    }
+                    below {
+                        "jcr:content" {
+                            iparsys("sling:resourceType": Types.IPARSYS)
+                        }
+                    }
+                }
+                disabled {
+                    "jcr:content" {
+                        iparsys("sling:resourceType": Types.IPARSYS) {
+                            iparsys_fake_par("inheritance": "cancel")
+                        }
+                    }
+                }
+            }
+        }
+
+    }
+
+    @Unroll
+    def "An inheriting paragraph system should contain the paragraphs of the page above it when flattening by #strategy"() {
+
+        expect:
+        containedPaths("/content/inheritance/inheriting", strategy) == [INHERITED_TEXT_PATH] as Set
+
+        where:
+        strategy << ResourceTreeFlatteningStrategy.values()
+
+    }
+
+    @Unroll
+    def "A cancelled paragraph system should inherit from the page above it but pass nothing down when flattening by #strategy"() {
+
+        expect:
+        containedPaths("/content/inheritance/cancelled", strategy) == [INHERITED_TEXT_PATH] as Set
+        containedPaths("/content/inheritance/cancelled/below", strategy).isEmpty()
+
+        where:
+        strategy << ResourceTreeFlatteningStrategy.values()
+
+    }
+
+    @Unroll
+    def "A disabled paragraph system should not inherit when flattening by #strategy"() {
+
+        expect:
+        containedPaths("/content/inheritance/disabled", strategy).isEmpty()
+
+        where:
+        strategy << ResourceTreeFlatteningStrategy.values()
+
+    }
+
+    def containedPaths(String pagePath, ResourceTreeFlatteningStrategy strategy) {
+
+        def helper = new IParsysResourceProviderHelper()
+        helper.resourceTypeCacheManager = new DefaultResourceTypeCacheManager()
+        helper.activate([flatteningStrategy: strategy.name().toLowerCase(), traversalLimit: ComponentUtils.DEFAULT_TRAVERSAL_LIMIT])
+
+        def iparsys = resourceResolver.getResource(pagePath + "/jcr:content/iparsys")
+
+        helper.getContainedResources(iparsys).collect { it.path } as Set
+
+    }
+
+}
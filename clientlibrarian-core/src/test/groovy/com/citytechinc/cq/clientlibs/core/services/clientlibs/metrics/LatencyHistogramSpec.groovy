@@ -0,0 +1,72 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.metrics
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class LatencyHistogramSpec extends Specification {
+
+    @Unroll
+    def "A value of #value should fall into a bucket whose upper bound is within an eighth of it"() {
+
+        when:
+        def upperBound = LatencyHistogram.getBucketUpperBound(LatencyHistogram.getBucketIndex(value))
+
+        then:
+        upperBound >= value
+        upperBound - value <= value / 8
+
+        where:
+        value << [0L, 1L, 7L, 8L, 15L, 16L, 1000L, 123456789L, Long.MAX_VALUE]
+
+    }
+
+    def "Percentiles should be reported from the recorded latencies"() {
+
+        given:
+        def histogram = new LatencyHistogram()
+        (1..100).each { histogram.record(it * 1000L) }
+
+        when:
+        def statistics = histogram.snapshot()
+
+        then:
+        statistics.count == 100
+        statistics.max == 100000L
+        statistics.mean == 50500L
+        Math.abs(statistics.getPercentile(50) - 50000L) <= 50000L / 8
+        Math.abs(statistics.getPercentile(99) - 99000L) <= 99000L / 8
+        statistics.getPercentile(100) == 100000L
+
+    }
+
+    def "A reset should discard every recorded latency"() {
+
+        given:
+        def histogram = new LatencyHistogram()
+        histogram.record(5000L)
+
+        when:
+        histogram.reset()
+
+        then:
+        histogram.snapshot().count == 0
+        histogram.snapshot().getPercentile(99) == 0L
+
+    }
+
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.metrics
+
+import com.citytechinc.cq.clientlibs.api.domain.library.LibraryType
+import com.citytechinc.cq.clientlibs.core.services.clientlibs.metrics.impl.DefaultSlowCompilation
+import spock.lang.Specification
+
+class SlowCompilationRecorderSpec extends Specification {
+
+    def compilation(long durationMillis, long timestamp = System.currentTimeMillis()) {
+        return new DefaultSlowCompilation(timestamp, "/content/page" + durationMillis, LibraryType.JS, "default", 1, 1, durationMillis, [:])
+    }
+
+    def "Only the slowest compilations should be kept, slowest first"() {
+
+        given:
+        def recorder = new SlowCompilationRecorder(3, 60000)
+
+        when:
+        [ 5L, 40L, 10L, 30L, 20L, 1L ].each { recorder.offer(compilation(it)) }
+
+        then:
+        recorder.getSlowest()*.durationMillis == [ 40L, 30L, 20L ]
+        !recorder.isSlow(20L)
+        recorder.isSlow(21L)
+
+    }
+
+    def "Compilations which have aged out of the window should be replaced by faster ones"() {
+
+        given:
+        def recorder = new SlowCompilationRecorder(1, 60000)
+        recorder.offer(compilation(100L, System.currentTimeMillis() - 120000))
+
+        when:
+        recorder.offer(compilation(5L))
+
+        then:
+        recorder.getSlowest()*.durationMillis == [ 5L ]
+
+    }
+
+    def "Clearing the recorder should forget every compilation"() {
+
+        given:
+        def recorder = new SlowCompilationRecorder(2, 60000)
+        recorder.offer(compilation(10L))
+
+        when:
+        recorder.clear()
+
+        then:
+        recorder.getSlowest().isEmpty()
+
+    }
+
+}
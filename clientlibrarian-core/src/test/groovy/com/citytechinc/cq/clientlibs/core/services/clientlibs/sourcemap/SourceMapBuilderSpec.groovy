@@ -0,0 +1,177 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.sourcemap
+
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.compilers.minify.MinifiedSource
+import com.google.common.base.Optional
+import groovy.json.JsonSlurper
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class SourceMapBuilderSpec extends Specification {
+
+    private static final String BASE64_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+
+    @Unroll
+    def "Encoding #value should produce #expected"() {
+
+        given:
+        def builder = new StringBuilder()
+
+        when:
+        Base64VLQ.encode(builder, value)
+
+        then:
+        builder.toString() == expected
+
+        where:
+        value | expected
+        0     | "A"
+        1     | "C"
+        -1    | "D"
+        15    | "e"
+        16    | "gB"
+        -17   | "jB"
+        123   | "2H"
+        1000  | "w+B"
+
+    }
+
+    def "Encoded values should decode to themselves"() {
+
+        given:
+        def builder = new StringBuilder()
+        def values = (-1100..1100) + [ 65536, -65536, Integer.MAX_VALUE >> 1 ]
+
+        when:
+        values.each { Base64VLQ.encode(builder, it) }
+
+        then:
+        decodeValues(builder.toString()) == values
+
+    }
+
+    def "The mappings of a merged library should lead each generated line back to its source"() {
+
+        given:
+        def one = MappedLibrary.forLibrary("///apps/a/one.js\n\nvar a = 1;\nvar b = '<%color%>';\n", [ "/apps/a/one.js" ], "//", "", Optional.absent())
+        def two = MappedLibrary.forLibrary("///apps/b/two.js\n\nfoo();\n///apps/b/three.js\n\nbar();\n", [ "/apps/b/two.js", "/apps/b/three.js" ], "//", "", Optional.absent())
+
+        def builder = new SourceMapBuilder()
+        def merged = new StringBuilder()
+
+        [ one, two ].each {
+            builder.addLibrary(merged.length(), it)
+            merged.append(it.content).append("\n")
+        }
+
+        builder.setMergedContent(merged.toString(), [ "color": "x\ny" ])
+
+        when:
+        def sourceMap = new JsonSlurper().parseText(builder.build())
+
+        then:
+        sourceMap.version == 3
+        sourceMap.sources == [ "/apps/a/one.js", "/apps/b/two.js", "/apps/b/three.js" ]
+        sourceMap.sourcesContent == [ "var a = 1;\nvar b = '<%color%>';", "foo();", "bar();" ]
+
+        and: "the variable spanning two lines pushes the second library down by a line"
+        decodeMappings(sourceMap.mappings) == [
+                2: [ [ 0, 0, 0, 0 ] ],
+                3: [ [ 0, 0, 1, 0 ] ],
+                8: [ [ 0, 1, 0, 0 ] ],
+                11: [ [ 0, 2, 0, 0 ] ]
+        ]
+
+    }
+
+    def "Mappings of a minified library should point at the column the minified run was taken from"() {
+
+        given:
+        def merged = "///apps/a/one.js\n\nvar a = 1;\n  foo( a );\n"
+        def minified = Mock(MinifiedSource) {
+            getContent() >> "var a=1;foo(a);"
+            getSourceOffset(_) >> { int offset -> [ 18, 19, 20, 21, 22, 24, 26, 27, 31, 32, 33, 34, 36, 38, 39 ][offset] }
+        }
+        def library = MappedLibrary.forLibrary(merged, [ "/apps/a/one.js" ], "//", "", Optional.of(minified))
+
+        def builder = new SourceMapBuilder()
+        builder.addLibrary(0, library)
+        builder.setMergedContent(library.content, [:])
+
+        when:
+        def mappings = decodeMappings(new JsonSlurper().parseText(builder.build()).mappings)
+
+        then: "each run of contiguous source starts a segment"
+        mappings == [
+                0: [ [ 0, 0, 0, 0 ], [ 5, 0, 0, 6 ], [ 6, 0, 0, 8 ], [ 8, 0, 1, 2 ], [ 12, 0, 1, 7 ], [ 13, 0, 1, 9 ] ]
+        ]
+
+    }
+
+    /**
+     * Decodes the segments of the mappings into absolute values keyed by generated line, omitting lines without
+     * segments
+     */
+    private static Map<Integer, List<List<Integer>>> decodeMappings(String mappings) {
+
+        def decoded = [:]
+        def previous = [ 0, 0, 0, 0 ]
+
+        mappings.split(";", -1).eachWithIndex { String line, int lineIndex ->
+            previous[0] = 0
+
+            line.split(",").findAll { !it.isEmpty() }.each { String segment ->
+                def fields = decodeValues(segment)
+                def absolute = []
+
+                fields.eachWithIndex { int field, int i ->
+                    previous[i] += field
+                    absolute.add(previous[i])
+                }
+
+                decoded.get(lineIndex, []).add(absolute)
+            }
+        }
+
+        return decoded
+
+    }
+
+    private static List<Integer> decodeValues(String encoded) {
+
+        def values = []
+        int value = 0
+        int shift = 0
+
+        encoded.each { String digit ->
+            int bits = BASE64_DIGITS.indexOf(digit)
+
+            value += (bits & 31) << shift
+            shift += 5
+
+            if ((bits & 32) == 0) {
+                values.add((value & 1) == 1 ? -(value >> 1) : value >> 1)
+                value = 0
+                shift = 0
+            }
+        }
+
+        return values
+
+    }
+
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.state.index
+
+import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary
+import com.google.common.base.Optional
+import spock.lang.Specification
+
+class ClientLibraryInclusionIndexSpec extends Specification {
+
+    def library(String path, Set<String> brands, Boolean includedForRunModes) {
+        def library = Mock(ClientLibrary)
+        library.getClientLibraryPath() >> path
+        library.getBrands() >> brands
+        library.isIncludedForRunModes(_) >> includedForRunModes
+        return library
+    }
+
+    def "Libraries excluded for the current run modes should be filtered out"() {
+
+        given: "An index over one library included for the run modes and one excluded"
+        def included = library("/etc/clientlibs/included", [] as Set, true)
+        def excluded = library("/etc/clientlibs/excluded", [] as Set, false)
+        def index = ClientLibraryInclusionIndex.forLibraries([included, excluded] as Set, ["publish"] as Set)
+
+        when: "The libraries are filtered"
+        def filtered = index.filter([excluded, included], Optional.absent())
+
+        then: "Only the included library remains"
+        filtered == [included]
+
+    }
+
+    def "Branded libraries should only be included for their brands while unbranded libraries are always included"() {
+
+        given: "An index over unbranded, default branded and taco branded libraries"
+        def unbranded = library("/etc/clientlibs/unbranded", [] as Set, true)
+        def defaultBranded = library("/etc/clientlibs/default", ["default"] as Set, true)
+        def tacoBranded = library("/etc/clientlibs/taco", ["taco"] as Set, true)
+        def index = ClientLibraryInclusionIndex.forLibraries([unbranded, defaultBranded, tacoBranded] as Set, [] as Set)
+        def ordered = [tacoBranded, unbranded, defaultBranded]
+
+        expect: "Each brand request keeps the order of the provided list"
+        index.filter(ordered, Optional.absent()) == [unbranded, defaultBranded]
+        index.filter(ordered, Optional.of("taco")) == [tacoBranded, unbranded]
+        index.filter(ordered, Optional.of("burrito")) == [unbranded]
+
+    }
+
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.state.index
+
+import com.citytechinc.cq.clientlibs.api.domain.component.DependentComponent
+import com.citytechinc.cq.clientlibs.api.domain.component.EmbeddedComponent
+import com.citytechinc.cq.clientlibs.api.domain.library.ClientLibrary
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.ClientLibraryManager
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.exceptions.ClientLibraryCompilationException
+import com.citytechinc.cq.clientlibs.api.services.components.DependentComponentManager
+import com.google.common.base.Optional
+import spock.lang.Specification
+
+class ComponentLibraryClosureIndexSpec extends Specification {
+
+    def embedded(String resourceType) {
+        def embeddedComponent = Mock(EmbeddedComponent)
+        embeddedComponent.getResourceType() >> resourceType
+        return embeddedComponent
+    }
+
+    def component(Set<String> dependencies, Set<EmbeddedComponent> embeddedComponents) {
+        def dependentComponent = Mock(DependentComponent)
+        dependentComponent.getDependencies() >> dependencies
+        dependentComponent.getEmbeddedComponents() >> embeddedComponents
+        return Optional.of(dependentComponent)
+    }
+
+    def "The library closure of a component should include the libraries of the components it embeds, transitively"() {
+
+        given: "A page component embedding a header which embeds a search component which embeds the header again"
+        def pageLibrary = Mock(ClientLibrary)
+        def headerLibrary = Mock(ClientLibrary)
+        def searchLibrary = Mock(ClientLibrary)
+
+        def clientLibraryManager = Mock(ClientLibraryManager)
+        clientLibraryManager.getVersion() >> 1L
+        clientLibraryManager.getLibrariesByCategory() >> ["page": [pageLibrary] as Set, "header": [headerLibrary] as Set, "search": [searchLibrary] as Set]
+
+        def dependentComponentManager = Mock(DependentComponentManager)
+        dependentComponentManager.getVersion() >> 1L
+        dependentComponentManager.getDependentComponentForResourceType("app/page") >> component(["page"] as Set, [embedded("app/header")] as Set)
+        dependentComponentManager.getDependentComponentForResourceType("app/header") >> component(["header"] as Set, [embedded("app/search")] as Set)
+        dependentComponentManager.getDependentComponentForResourceType("app/search") >> component(["search"] as Set, [embedded("app/header")] as Set)
+
+        def index = ComponentLibraryClosureIndex.forRegistries(clientLibraryManager, dependentComponentManager)
+
+        expect: "The closures cover every embedded component without looping"
+        index.getLibraryClosure("app/page") == [pageLibrary, headerLibrary, searchLibrary] as Set
+        index.getEmbeddedTypeClosure("app/page") == ["app/header", "app/search"] as Set
+        index.isCurrent(1L, 1L)
+        !index.isCurrent(1L, 2L)
+
+    }
+
+    def "A dependency on an unknown category should fail the closure"() {
+
+        given: "A component dependent on a category no library answers to"
+        def clientLibraryManager = Mock(ClientLibraryManager)
+        clientLibraryManager.getVersion() >> 1L
+        clientLibraryManager.getLibrariesByCategory() >> [:]
+
+        def dependentComponentManager = Mock(DependentComponentManager)
+        dependentComponentManager.getVersion() >> 1L
+        dependentComponentManager.getDependentComponentForResourceType("app/page") >> component(["missing"] as Set, [] as Set)
+
+        def index = ComponentLibraryClosureIndex.forRegistries(clientLibraryManager, dependentComponentManager)
+
+        when: "The closure is requested"
+        index.getLibraryClosure("app/page")
+
+        then:
+        thrown(ClientLibraryCompilationException)
+
+    }
+
+}
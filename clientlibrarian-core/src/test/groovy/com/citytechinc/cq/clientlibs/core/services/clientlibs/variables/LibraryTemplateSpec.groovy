@@ -0,0 +1,70 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.variables
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class LibraryTemplateSpec extends Specification {
+
+    @Unroll
+    def "Rendering the template of #library should match substituting over it directly"() {
+
+        given:
+        def variables = ["color": "red", "size": "10px", "empty": "", "nested": "<%color%>"]
+        def output = new StringBuilder()
+
+        when:
+        LibraryTemplate.parse(library).render(output, variables)
+
+        then:
+        output.toString() == VariableSubstitution.substitute(library, variables)
+
+        where:
+        library << [
+                "a { color: <%color%>; }",
+                "<%color%><%size%>",
+                "<%unknown%> <%color%>",
+                "<%<%color%>",
+                "<%color%%>",
+                "<%color",
+                "100%> <%size%>",
+                "<%nested%>",
+                "no placeholders",
+                ""
+        ]
+
+    }
+
+    def "A template should be renderable against different sets of variables"() {
+
+        given:
+        def template = LibraryTemplate.parse("a { color: <%color%>; }")
+
+        when:
+        def red = new StringBuilder()
+        def blue = new StringBuilder()
+        template.render(red, ["color": "red"])
+        template.render(blue, ["color": "blue"])
+
+        then:
+        template.hasPlaceholders()
+        red.toString() == "a { color: red; }"
+        blue.toString() == "a { color: blue; }"
+
+    }
+
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.variables
+
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.transformer.ScopedVariableProvider
+import com.citytechinc.cq.clientlibs.api.services.clientlibs.transformer.VariableScope
+import org.apache.sling.api.resource.Resource
+import spock.lang.Specification
+
+class VariableCacheSpec extends Specification {
+
+    def root(String pagePath) {
+        def page = Mock(Resource)
+        page.getPath() >> pagePath
+        def content = Mock(Resource)
+        content.getPath() >> pagePath + "/jcr:content"
+        content.getParent() >> page
+        return content
+    }
+
+    def "Site root scoped variables should be produced once per site root page"() {
+
+        given:
+        def provider = Mock(ScopedVariableProvider)
+        provider.getScope() >> VariableScope.SITE_ROOT
+        provider.getTimeToLive() >> 0L
+        def variableCache = new VariableCache()
+
+        when:
+        variableCache.getVariables(provider, root("/content/site/en/a"))
+        variableCache.getVariables(provider, root("/content/site/en/b"))
+        variableCache.getVariables(provider, root("/content/other/en"))
+
+        then:
+        2 * provider.getVariables(_) >> ["color": "red"]
+
+    }
+
+    def "Page scoped variables should be produced again once the page changes"() {
+
+        given:
+        def provider = Mock(ScopedVariableProvider)
+        provider.getScope() >> VariableScope.PAGE
+        provider.getTimeToLive() >> 0L
+        def variableCache = new VariableCache()
+
+        when:
+        variableCache.getVariables(provider, root("/content/site/en/a"))
+        variableCache.invalidate("/content/site/en/a/jcr:content/par")
+        variableCache.getVariables(provider, root("/content/site/en/a"))
+
+        then:
+        2 * provider.getVariables(_) >> ["color": "red"]
+
+    }
+
+    def "Page scoped variables invalidated while being produced should not be cached"() {
+
+        given:
+        def variableCache = new VariableCache()
+        def provider = Mock(ScopedVariableProvider)
+        provider.getScope() >> VariableScope.PAGE
+        provider.getTimeToLive() >> 0L
+
+        when:
+        variableCache.getVariables(provider, root("/content/site/en/a"))
+        variableCache.getVariables(provider, root("/content/site/en/a"))
+
+        then:
+        1 * provider.getVariables(_) >> {
+            variableCache.invalidate("/content/site/en/a/jcr:content")
+            ["color": "red"]
+        }
+        1 * provider.getVariables(_) >> ["color": "blue"]
+
+    }
+
+    def "Page scoped variables should be held for at most the maximum number of pages"() {
+
+        given:
+        def provider = Mock(ScopedVariableProvider)
+        provider.getScope() >> VariableScope.PAGE
+        provider.getTimeToLive() >> 0L
+        def variableCache = new VariableCache()
+        variableCache.maximumSize = 1
+
+        when:
+        variableCache.getVariables(provider, root("/content/site/en/a"))
+        variableCache.getVariables(provider, root("/content/site/en/b"))
+        variableCache.getVariables(provider, root("/content/site/en/a"))
+
+        then:
+        3 * provider.getVariables(_) >> ["color": "red"]
+
+    }
+
+    def "The site root of a page should be its ancestor at the configured depth"() {
+
+        expect:
+        VariableCache.getSiteRootPath(pagePath, depth) == siteRootPath
+
+        where:
+        pagePath                | depth | siteRootPath
+        "/content/site/en/page" | 2     | "/content/site"
+        "/content/site/en/page" | 3     | "/content/site/en"
+        "/content/site"         | 2     | "/content/site"
+        "/content"              | 2     | "/content"
+
+    }
+
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright 2014 CITYTECH, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.citytechinc.cq.clientlibs.core.services.clientlibs.variables
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class VariableSubstitutionSpec extends Specification {
+
+    @Unroll
+    def "Substituting #library should produce #expected"() {
+
+        expect:
+        VariableSubstitution.substitute(library, ["color": "red", "size": "10px", "empty": "", "nested": "<%color%>"]) == expected
+
+        where:
+        library                              | expected
+        "a { color: <%color%>; }"            | "a { color: red; }"
+        "<%color%><%size%>"                  | "red10px"
+        "<%color%> <%color%>"                | "red red"
+        "<%empty%>x"                         | "x"
+        "<%unknown%> <%color%>"              | "<%unknown%> red"
+        "<%<%color%>"                        | "<%red"
+        "<%color"                            | "<%color"
+        "100%> <%size%>"                     | "100%> 10px"
+        "<%nested%>"                         | "<%color%>"
+        "no placeholders"                    | "no placeholders"
+        ""                                   | ""
+
+    }
+
+    def "Substituting without variables should return the library as is"() {
+
+        given:
+        def library = "a { color: <%color%>; }"
+
+        expect:
+        VariableSubstitution.substitute(library, [:]).is(library)
+
+    }
+
+}